@@ -0,0 +1,99 @@
+package com.contactbook.benchmark;
+
+import com.contactbook.model.Contact;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The contact list as ContactService originally kept it: an ArrayList scanned for every lookup,
+ * removeIf for deletes and a full copy for getAllContacts(). The methods mirror the ones in
+ * ContactServiceBenchmark, so the two can be compared size for size.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class ArrayListBaselineBenchmark {
+
+    @Param({"10000", "100000", "1000000"})
+    public int size;
+
+    private List<Contact> contacts;
+    private int nextId;
+
+    @State(Scope.Thread)
+    public static class Picker {
+        final BenchmarkData.Sequence sequence = new BenchmarkData.Sequence((int) Thread.currentThread().threadId());
+        int counter;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        contacts = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            Contact contact = BenchmarkData.contact(i);
+            contact.setId(i + 1);
+            contacts.add(contact);
+        }
+        nextId = size + 1;
+    }
+
+    @Benchmark
+    public Contact getContact(Picker picker) {
+        int id = picker.sequence.next(size) + 1;
+        for (Contact contact : contacts) {
+            if (contact.getId() == id) {
+                return contact;
+            }
+        }
+        return null;
+    }
+
+    @Benchmark
+    public boolean updateContact(Picker picker) {
+        int id = picker.sequence.next(size) + 1;
+        int n = picker.counter++;
+        for (Contact contact : contacts) {
+            if (contact.getId() == id) {
+                contact.setName("Updated " + n);
+                contact.setPhone("+91 00000 " + (n % 100_000));
+                contact.setEmail("updated" + n + "@example.com");
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Appends a contact and removes it again with removeIf, as deleteContact() used to.
+     */
+    @Benchmark
+    public boolean addAndDeleteContact(Picker picker) {
+        Contact contact = BenchmarkData.contact(picker.counter++);
+        int id = nextId++;
+        contact.setId(id);
+        contacts.add(contact);
+        return contacts.removeIf(c -> c.getId() == id);
+    }
+
+    @Benchmark
+    public int getAllContacts() {
+        return new ArrayList<>(contacts).size();
+    }
+}
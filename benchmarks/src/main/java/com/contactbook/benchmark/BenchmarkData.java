@@ -0,0 +1,62 @@
+package com.contactbook.benchmark;
+
+import com.contactbook.model.Contact;
+import com.contactbook.monitoring.Log;
+
+/**
+ * Shared fixtures for the benchmarks: deterministic contacts and a cheap random sequence.
+ * Public so the benchmarks that sit in the application's own packages can use it too.
+ */
+public final class BenchmarkData {
+
+    private static final String[] FIRST_NAMES = {"Aarav", "Priya", "John", "Meera", "Karthik", "Anita", "David", "Lakshmi",
+            "Rahul", "Sara", "Vikram", "Divya", "Arjun", "Fatima", "Ravi", "Emma"};
+    private static final String[] LAST_NAMES = {"Kumar", "Sharma", "Smith", "Iyer", "Rajan", "Das", "Brown", "Nair",
+            "Patel", "Khan", "Reddy", "Menon", "Singh", "Wilson", "Murugan", "Pillai"};
+
+    private BenchmarkData() {
+    }
+
+    /**
+     * @param i Any number; the same number always gives the same contact.
+     * @return A new contact without an ID, with a realistic name, phone number and email.
+     */
+    public static Contact contact(int i) {
+        String first = FIRST_NAMES[i & 15];
+        String last = LAST_NAMES[(i >>> 4) & 15];
+        return new Contact(first + " " + last + " " + i,
+                String.format("+91 %05d %05d", (i / 100_000) % 100_000, i % 100_000),
+                first.toLowerCase() + "." + last.toLowerCase() + i + "@example.com");
+    }
+
+    /**
+     * Per-operation messages are DEBUG and already off, but loads and setup still log at INFO every
+     * iteration. Only warnings and errors are kept; JMH reports through its own channel.
+     */
+    static void silenceConsole() {
+        Log.setLevel(Log.Level.WARN);
+    }
+
+    /**
+     * A xorshift sequence, far cheaper than java.util.Random, so picking the next ID stays out of the measurement.
+     */
+    static final class Sequence {
+        private int state;
+
+        Sequence(int seed) {
+            this.state = seed == 0 ? 0x9E3779B9 : seed;
+        }
+
+        /**
+         * @return The next number in [0, bound).
+         */
+        int next(int bound) {
+            int x = state;
+            x ^= x << 13;
+            x ^= x >>> 17;
+            x ^= x << 5;
+            state = x;
+            return (x & Integer.MAX_VALUE) % bound;
+        }
+    }
+}
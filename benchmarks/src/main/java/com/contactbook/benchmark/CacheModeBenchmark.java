@@ -0,0 +1,85 @@
+package com.contactbook.benchmark;
+
+import com.contactbook.model.Contact;
+import com.contactbook.service.ContactService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ContactService in cache mode over a million contacts, with a working set of 10% of them getting
+ * 90% of the reads. Misses go to the in-memory repository, so they are far cheaper here than against
+ * MySQL; what this measures is the cache itself: the hit path, the eviction policy, and how much
+ * reading rows for the table costs. The cache.hitRatio gauge shows how well each size holds the working set.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class CacheModeBenchmark {
+
+    private static final int SIZE = 1_000_000;
+    private static final int HOT = SIZE / 10;
+
+    @Param({"16m", "64m"})
+    public String cacheSize;
+
+    private ContactService service;
+
+    @State(Scope.Thread)
+    public static class Picker {
+        final BenchmarkData.Sequence sequence = new BenchmarkData.Sequence((int) Thread.currentThread().threadId());
+
+        int nextId() {
+            // IDs run from 1 to SIZE; the first tenth is the working set
+            return 1 + (sequence.next(10) < 9 ? sequence.next(HOT) : HOT + sequence.next(SIZE - HOT));
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        BenchmarkData.silenceConsole();
+        long bytes = Long.parseLong(cacheSize.substring(0, cacheSize.length() - 1)) * 1024 * 1024;
+        service = new ContactService(new InMemoryContactRepository(SIZE), false, false, bytes);
+        service.registerGauges(); // For the cache.hitRatio gauge
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        service.shutdown();
+    }
+
+    @Benchmark
+    public Contact getContact(Picker picker) {
+        return service.getContact(picker.nextId());
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Contact getContactFourThreads(Picker picker) {
+        return service.getContact(picker.nextId());
+    }
+
+    /**
+     * Rows among the first ten thousand, as a table scrolling around in them would read them.
+     */
+    @Benchmark
+    public Contact getContactAt(Picker picker) {
+        return service.getContactAt(picker.sequence.next(10_000));
+    }
+}
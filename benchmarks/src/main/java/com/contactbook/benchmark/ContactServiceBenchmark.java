@@ -0,0 +1,126 @@
+package com.contactbook.benchmark;
+
+import com.contactbook.model.Contact;
+import com.contactbook.service.ContactService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ContactService operations at 10k, 100k and 1M contacts, with both in-memory layouts.
+ * The service runs on an in-memory repository, so the numbers are the cost of the service itself:
+ * its locks, store, search index and change events. Compare with ArrayListBaselineBenchmark for
+ * what the same operations cost on the plain ArrayList the service used to keep.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class ContactServiceBenchmark {
+
+    @Param({"10000", "100000", "1000000"})
+    public int size;
+
+    @Param({"false", "true"})
+    public boolean compactStorage;
+
+    private ContactService service;
+    private int[] ids;
+
+    @State(Scope.Thread)
+    public static class Picker {
+        final BenchmarkData.Sequence sequence = new BenchmarkData.Sequence((int) Thread.currentThread().threadId());
+        int counter;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        BenchmarkData.silenceConsole();
+        service = new ContactService(new InMemoryContactRepository(size), true, compactStorage);
+        List<Contact> all = service.getAllContacts();
+        ids = new int[all.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = all.get(i).getId();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        service.shutdown();
+    }
+
+    @Benchmark
+    public Contact getContact(Picker picker) {
+        return service.getContact(ids[picker.sequence.next(ids.length)]);
+    }
+
+    @Benchmark
+    public boolean updateContact(Picker picker) {
+        int id = ids[picker.sequence.next(ids.length)];
+        int n = picker.counter++;
+        return service.updateContact(id, "Updated " + n, "+91 00000 " + (n % 100_000), "updated" + n + "@example.com");
+    }
+
+    /**
+     * Adds a contact and deletes it again, so the store keeps its size across invocations.
+     */
+    @Benchmark
+    public boolean addAndDeleteContact(Picker picker) {
+        Contact template = BenchmarkData.contact(picker.counter++);
+        Contact added = service.addContact(template.getName(), template.getPhone(), template.getEmail());
+        return service.deleteContact(added.getId());
+    }
+
+    @Benchmark
+    public int getAllContacts() {
+        return service.getAllContacts().size();
+    }
+
+    /**
+     * A write followed by a snapshot, as an export running next to the editor sees it. Each snapshot is a new
+     * version: O(log n) with plain contacts, a full copy with compact storage.
+     */
+    @Benchmark
+    public int updateThenGetAllContacts(Picker picker) {
+        updateContact(picker);
+        return service.getAllContacts().size();
+    }
+
+    /**
+     * Edits a contact and undoes the edit, so the contact keeps its details across invocations.
+     */
+    @Benchmark
+    public boolean updateAndUndo(Picker picker) {
+        updateContact(picker);
+        return service.undo().isSaved();
+    }
+
+    @Benchmark
+    public int search(Picker picker) {
+        return service.search(BenchmarkData.contact(picker.sequence.next(ids.length)).getName().substring(0, 4), 50).size();
+    }
+
+    /**
+     * The duplicate check the GUI runs before every add, for a contact that is already there.
+     */
+    @Benchmark
+    public int findPossibleDuplicates(Picker picker) {
+        Contact existing = BenchmarkData.contact(picker.sequence.next(ids.length));
+        return service.findPossibleDuplicates(existing.getName(), existing.getPhone(), existing.getEmail()).size();
+    }
+}
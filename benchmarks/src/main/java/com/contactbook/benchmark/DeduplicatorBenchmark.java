@@ -0,0 +1,65 @@
+package com.contactbook.benchmark;
+
+import com.contactbook.model.Contact;
+import com.contactbook.service.ContactDeduplicator;
+import com.contactbook.service.DuplicateCluster;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A full duplicate scan with ContactDeduplicator, sequential and on the fork-join pool.
+ * One contact in a hundred is added again the way imports tend to duplicate them: the name in
+ * another case and word order, the phone number with other punctuation, and no email.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class DeduplicatorBenchmark {
+
+    @Param({"100000", "1000000"})
+    public int size;
+
+    @Param({"false", "true"})
+    public boolean parallel;
+
+    private final ContactDeduplicator deduplicator = new ContactDeduplicator();
+    private List<Contact> contacts;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        contacts = new ArrayList<>(size + size / 100);
+        for (int i = 0; i < size; i++) {
+            Contact contact = BenchmarkData.contact(i);
+            contact.setId(i + 1);
+            contacts.add(contact);
+        }
+        for (int i = 0; i < size; i += 100) {
+            Contact original = contacts.get(i);
+            String[] words = original.getName().split(" ");
+            contacts.add(new Contact(size + i + 1, (words[1] + ", " + words[0] + " " + words[2]).toUpperCase(),
+                    original.getPhone().replace(' ', '-'), ""));
+        }
+    }
+
+    @Benchmark
+    public List<DuplicateCluster> findClusters() {
+        return deduplicator.findClusters(contacts, parallel);
+    }
+}
@@ -0,0 +1,241 @@
+package com.contactbook.benchmark;
+
+import com.contactbook.database.ContactRepository;
+import com.contactbook.model.Contact;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * A ContactRepository that keeps its rows in a map and does no I/O, so the ContactService and
+ * table model benchmarks measure those layers rather than the storage behind them.
+ * Change tracking is not supported: the sync methods report that nothing changed.
+ */
+final class InMemoryContactRepository implements ContactRepository {
+
+    private final Map<Integer, Contact> rows = new ConcurrentSkipListMap<>();
+    private final AtomicInteger nextId = new AtomicInteger(1);
+    private volatile int batchSize = 1000;
+
+    /**
+     * @param count The number of generated contacts to start with (see BenchmarkData.contact()).
+     */
+    InMemoryContactRepository(int count) {
+        for (int i = 0; i < count; i++) {
+            addContact(BenchmarkData.contact(i));
+        }
+    }
+
+    @Override
+    public boolean addContact(Contact contact) {
+        contact.setId(nextId.getAndIncrement());
+        contact.setVersion(1);
+        rows.put(contact.getId(), contact);
+        return true;
+    }
+
+    @Override
+    public List<Contact> getAllContacts() {
+        return new ArrayList<>(rows.values());
+    }
+
+    @Override
+    public long forEachContact(Consumer<Contact> action) {
+        long count = 0;
+        for (Contact contact : rows.values()) {
+            // A copy, as a real repository would build a fresh object per row
+            action.accept(new Contact(contact.getId(), contact.getName(), contact.getPhone(), contact.getEmail(), contact.getVersion()));
+            count++;
+        }
+        return count;
+    }
+
+    @Override
+    public long forEachContactInRange(int fromId, int toId, Consumer<Contact> action) {
+        if (fromId > toId) {
+            return 0;
+        }
+        long count = 0;
+        for (Contact contact : ((ConcurrentSkipListMap<Integer, Contact>) rows).subMap(fromId, true, toId, true).values()) {
+            action.accept(new Contact(contact.getId(), contact.getName(), contact.getPhone(), contact.getEmail(), contact.getVersion()));
+            count++;
+        }
+        return count;
+    }
+
+    @Override
+    public int[] getIdRange() {
+        ConcurrentSkipListMap<Integer, Contact> sorted = (ConcurrentSkipListMap<Integer, Contact>) rows;
+        Map.Entry<Integer, Contact> first = sorted.firstEntry();
+        Map.Entry<Integer, Contact> last = sorted.lastEntry();
+        return first == null || last == null ? new int[0] : new int[]{first.getKey(), last.getKey()};
+    }
+
+    @Override
+    public int getMaxConcurrency() {
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    @Override
+    public List<Contact> getContacts(int afterId, int limit) {
+        List<Contact> page = new ArrayList<>(limit);
+        for (Contact contact : ((ConcurrentSkipListMap<Integer, Contact>) rows).tailMap(afterId, false).values()) {
+            if (page.size() == limit) {
+                break;
+            }
+            page.add(contact);
+        }
+        return page;
+    }
+
+    @Override
+    public Contact getContact(int contactId) {
+        Contact contact = rows.get(contactId);
+        return contact != null ? new Contact(contact.getId(), contact.getName(), contact.getPhone(), contact.getEmail(), contact.getVersion()) : null;
+    }
+
+    @Override
+    public int getContactCount() {
+        return rows.size();
+    }
+
+    @Override
+    public List<Contact> getContactsAt(int offset, int limit) {
+        List<Contact> page = new ArrayList<>(limit);
+        int position = 0;
+        for (Contact contact : rows.values()) {
+            if (page.size() == limit) {
+                break;
+            }
+            if (position++ >= offset) {
+                page.add(contact);
+            }
+        }
+        return page;
+    }
+
+    @Override
+    public List<Contact> getContactsSortedAt(SortColumn column, int offset, int limit) {
+        Comparator<Contact> order = Comparator.comparing(
+                (Contact contact) -> column == SortColumn.NAME ? contact.getName() : contact.getEmail(),
+                Comparator.nullsLast(String.CASE_INSENSITIVE_ORDER));
+        return rows.values().stream()
+                .sorted(order.thenComparingInt(Contact::getId))
+                .skip(offset)
+                .limit(limit)
+                .toList();
+    }
+
+    @Override
+    public boolean updateContact(Contact contact) {
+        return rows.replace(contact.getId(), contact) != null;
+    }
+
+    @Override
+    public int updateContactIfVersion(Contact contact, long expectedVersion) {
+        boolean[] updated = new boolean[1];
+        // The skip list may call the function more than once, so every call sets the outcome afresh
+        rows.computeIfPresent(contact.getId(), (id, existing) -> {
+            updated[0] = existing.getVersion() == expectedVersion;
+            return updated[0] ? new Contact(id, contact.getName(), contact.getPhone(), contact.getEmail(), expectedVersion + 1) : existing;
+        });
+        return updated[0] ? 1 : 0;
+    }
+
+    @Override
+    public boolean deleteContact(int contactId) {
+        return rows.remove(contactId) != null;
+    }
+
+    @Override
+    public int deleteContactIfVersion(int contactId, long expectedVersion) {
+        Contact existing = rows.get(contactId);
+        return existing != null && existing.getVersion() == expectedVersion && rows.remove(contactId, existing) ? 1 : 0;
+    }
+
+    @Override
+    public boolean restoreContact(Contact contact) {
+        return rows.putIfAbsent(contact.getId(), contact) == null;
+    }
+
+    @Override
+    public boolean[] addContacts(List<Contact> contacts) {
+        boolean[] added = new boolean[contacts.size()];
+        for (int i = 0; i < added.length; i++) {
+            added[i] = addContact(contacts.get(i));
+        }
+        return added;
+    }
+
+    @Override
+    public boolean[] updateContacts(List<Contact> contacts) {
+        boolean[] updated = new boolean[contacts.size()];
+        for (int i = 0; i < updated.length; i++) {
+            updated[i] = updateContact(contacts.get(i));
+        }
+        return updated;
+    }
+
+    @Override
+    public int[] updateContactsIfVersion(List<Contact> contacts) {
+        int[] results = new int[contacts.size()];
+        for (int i = 0; i < results.length; i++) {
+            Contact contact = contacts.get(i);
+            results[i] = updateContactIfVersion(contact, contact.getVersion());
+            if (results[i] > 0) {
+                contact.setVersion(contact.getVersion() + 1);
+            }
+        }
+        return results;
+    }
+
+    @Override
+    public boolean[] deleteContacts(int[] contactIds) {
+        boolean[] deleted = new boolean[contactIds.length];
+        for (int i = 0; i < deleted.length; i++) {
+            deleted[i] = deleteContact(contactIds[i]);
+        }
+        return deleted;
+    }
+
+    @Override
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    @Override
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    @Override
+    public Timestamp getDatabaseTime() {
+        return new Timestamp(System.currentTimeMillis());
+    }
+
+    @Override
+    public List<Contact> getContactsChangedSince(Timestamp since) {
+        return new ArrayList<>();
+    }
+
+    @Override
+    public int[] getDeletedIdsSince(Timestamp since) {
+        return new int[0];
+    }
+
+    @Override
+    public int purgeTombstones(Timestamp olderThan) {
+        return 0;
+    }
+
+    @Override
+    public void close() {
+        rows.clear();
+    }
+}
@@ -0,0 +1,88 @@
+package com.contactbook.benchmark;
+
+import com.contactbook.database.ContactRepository;
+import com.contactbook.database.DatabaseManager;
+import com.contactbook.model.Contact;
+import com.contactbook.service.ContactService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A full load of the contacts table into ContactService with 1, 2, 4 and 8 shards, which gives the speed-up
+ * curve of the parallel load; 1 is the plain load over a single result set. Each shard uses a connection of
+ * its own, and the pool has 10, so 8 shards never wait for one.
+ *
+ * By default the table lives in an in-memory H2 database in MySQL mode, the same stand-in as RepositoryBenchmark,
+ * and is filled with the given number of contacts. With -Dcontactbook.benchmark.jdbcUrl (and .user, .password)
+ * it loads a real MySQL contacts table instead, whatever it holds; the size parameter is then ignored.
+ * The curve flattens at the number of cores.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class ParallelLoadBenchmark {
+
+    private static final String H2_URL = "jdbc:h2:mem:contactbook-load;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1";
+
+    @Param({"100000", "1000000"})
+    public int size;
+
+    @Param({"1", "2", "4", "8"})
+    public int shards;
+
+    private ContactRepository repository;
+    private ContactService service;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        BenchmarkData.silenceConsole();
+        String url = System.getProperty("contactbook.benchmark.jdbcUrl", H2_URL);
+        String user = System.getProperty("contactbook.benchmark.user", "sa");
+        String password = System.getProperty("contactbook.benchmark.password", "");
+        if (url.startsWith("jdbc:h2:")) {
+            RepositoryBenchmark.createH2Schema(url, user, password);
+        }
+        repository = new DatabaseManager(url, user, password);
+        if (url.startsWith("jdbc:h2:")) {
+            List<Contact> batch = new ArrayList<>(repository.getBatchSize());
+            for (int i = 0; i < size; i++) {
+                batch.add(BenchmarkData.contact(i));
+                if (batch.size() == repository.getBatchSize() || i == size - 1) {
+                    repository.addContacts(batch);
+                    batch.clear();
+                }
+            }
+        }
+        service = new ContactService(repository, false, false, 0);
+        service.setLoadShards(shards);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        service.shutdown(); // Closes the repository too
+    }
+
+    @Benchmark
+    public int load() {
+        return service.reloadContacts();
+    }
+}
@@ -0,0 +1,173 @@
+package com.contactbook.benchmark;
+
+import com.contactbook.database.ContactRepository;
+import com.contactbook.database.DatabaseManager;
+import com.contactbook.database.FileContactRepository;
+import com.contactbook.model.Contact;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * CRUD through each ContactRepository implementation, on a table of 10k contacts.
+ * <ul>
+ *   <li>database: DatabaseManager. By default it runs against an in-memory H2 database in MySQL mode,
+ *       a local stand-in that needs no server. Point it at a real MySQL server with
+ *       -Dcontactbook.benchmark.jdbcUrl, -Dcontactbook.benchmark.user and -Dcontactbook.benchmark.password
+ *       (the contacts and contact_tombstones tables must exist there, and are left with extra rows).</li>
+ *   <li>file: FileContactRepository in a temporary directory.</li>
+ * </ul>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RepositoryBenchmark {
+
+    private static final String H2_URL = "jdbc:h2:mem:contactbook;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1";
+    private static final int ROWS = 10_000;
+    private static final int BATCH = 1000;
+    private static final int PAGE = 100;
+
+    @Param({"database", "file"})
+    public String backend;
+
+    private ContactRepository repository;
+    private Path directory; // For the file backend
+    private int[] ids;
+
+    @State(Scope.Thread)
+    public static class Picker {
+        final BenchmarkData.Sequence sequence = new BenchmarkData.Sequence((int) Thread.currentThread().threadId());
+        int counter;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, SQLException {
+        BenchmarkData.silenceConsole();
+        if (backend.equals("file")) {
+            directory = Files.createTempDirectory("contactbook-bench");
+            repository = new FileContactRepository(directory);
+        } else {
+            String url = System.getProperty("contactbook.benchmark.jdbcUrl", H2_URL);
+            String user = System.getProperty("contactbook.benchmark.user", "sa");
+            String password = System.getProperty("contactbook.benchmark.password", "");
+            if (url.startsWith("jdbc:h2:")) {
+                createH2Schema(url, user, password);
+            }
+            repository = new DatabaseManager(url, user, password);
+        }
+        List<Contact> rows = new ArrayList<>(ROWS);
+        for (int i = 0; i < ROWS; i++) {
+            rows.add(BenchmarkData.contact(i));
+        }
+        repository.addContacts(rows);
+        ids = new int[ROWS];
+        for (int i = 0; i < ROWS; i++) {
+            ids[i] = rows.get(i).getId();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        repository.close();
+        if (directory != null) {
+            try (Stream<Path> files = Files.walk(directory)) {
+                for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                    Files.delete(file);
+                }
+            }
+        }
+    }
+
+    /**
+     * The same tables as the MySQL schema in the README, in syntax H2 accepts. Also used by ParallelLoadBenchmark.
+     */
+    static void createH2Schema(String url, String user, String password) throws SQLException {
+        try (Connection conn = DriverManager.getConnection(url, user, password);
+             Statement stmt = conn.createStatement()) {
+            stmt.execute("DROP TABLE IF EXISTS contacts");
+            stmt.execute("DROP TABLE IF EXISTS contact_tombstones");
+            stmt.execute("CREATE TABLE contacts ("
+                    + "id INT AUTO_INCREMENT PRIMARY KEY, "
+                    + "name VARCHAR(255) NOT NULL, "
+                    + "phone VARCHAR(20), "
+                    + "email VARCHAR(255), "
+                    + "version BIGINT NOT NULL DEFAULT 1, "
+                    + "updated_at TIMESTAMP(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3) ON UPDATE CURRENT_TIMESTAMP(3))");
+            stmt.execute("CREATE INDEX idx_contacts_updated_at ON contacts (updated_at)");
+            stmt.execute("CREATE TABLE contact_tombstones (id INT PRIMARY KEY, deleted_at TIMESTAMP(3) NOT NULL)");
+            stmt.execute("CREATE INDEX idx_tombstones_deleted_at ON contact_tombstones (deleted_at)");
+        }
+    }
+
+    /**
+     * Inserts a contact and deletes it again, so the table keeps its size across invocations.
+     */
+    @Benchmark
+    public boolean addAndDeleteContact(Picker picker) {
+        Contact contact = BenchmarkData.contact(ROWS + picker.counter++);
+        return repository.addContact(contact) && repository.deleteContact(contact.getId());
+    }
+
+    @Benchmark
+    public boolean updateContact(Picker picker) {
+        int id = ids[picker.sequence.next(ids.length)];
+        Contact contact = BenchmarkData.contact(picker.counter++);
+        contact.setId(id);
+        return repository.updateContact(contact);
+    }
+
+    @Benchmark
+    public int getContactsPage(Picker picker) {
+        return repository.getContacts(ids[picker.sequence.next(ids.length)], PAGE).size();
+    }
+
+    /**
+     * One batched insert of 1000 contacts followed by one batched delete of them.
+     */
+    @Benchmark
+    public int addAndDeleteContactsBatch(Picker picker) {
+        List<Contact> batch = new ArrayList<>(BATCH);
+        for (int i = 0; i < BATCH; i++) {
+            batch.add(BenchmarkData.contact(ROWS + picker.counter++));
+        }
+        boolean[] added = repository.addContacts(batch);
+        int[] addedIds = new int[BATCH];
+        for (int i = 0; i < BATCH; i++) {
+            addedIds[i] = added[i] ? batch.get(i).getId() : -1;
+        }
+        return repository.deleteContacts(addedIds).length;
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public long forEachContact() {
+        return repository.forEachContact(contact -> { });
+    }
+}
@@ -0,0 +1,79 @@
+package com.contactbook.benchmark;
+
+import com.contactbook.model.Contact;
+import com.contactbook.service.ContactService;
+import com.contactbook.service.ContactSortKey;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sorted views of ContactService: reading a page of contacts in name order, and what keeping the name
+ * and email indexes up to date adds to an update that renames a contact (compare with
+ * ContactServiceBenchmark.updateContact, which runs without sort indexes). Both indexes are built in setUp().
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class SortIndexBenchmark {
+
+    private static final int PAGE = 50; // About one screen of the table
+
+    @Param({"100000", "1000000"})
+    public int size;
+
+    private ContactService service;
+    private int[] ids;
+
+    @State(Scope.Thread)
+    public static class Picker {
+        final BenchmarkData.Sequence sequence = new BenchmarkData.Sequence((int) Thread.currentThread().threadId());
+        int counter;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        BenchmarkData.silenceConsole();
+        service = new ContactService(new InMemoryContactRepository(size), true, false);
+        service.getContacts(ContactSortKey.NAME, 0, 1);
+        service.getContacts(ContactSortKey.EMAIL, 0, 1);
+        List<Contact> all = service.getAllContacts();
+        ids = new int[all.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = all.get(i).getId();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        service.shutdown();
+    }
+
+    @Benchmark
+    public List<Contact> pageByName(Picker picker) {
+        return service.getContacts(ContactSortKey.NAME, picker.sequence.next(size - PAGE), PAGE);
+    }
+
+    @Benchmark
+    public boolean updateContactSorted(Picker picker) {
+        int id = ids[picker.sequence.next(ids.length)];
+        int n = picker.counter++;
+        return service.updateContact(id, "Updated " + n, "+91 00000 " + (n % 100_000), "updated" + n + "@example.com");
+    }
+}
@@ -0,0 +1,110 @@
+package com.contactbook.benchmark;
+
+import com.contactbook.gui.ContactTableModel;
+import com.contactbook.model.Contact;
+import com.contactbook.service.ContactService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import javax.swing.table.DefaultTableModel;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building and updating the contact table's model, headless (no window is ever shown).
+ * <ul>
+ *   <li>populateDefaultTableModel: what ContactBookGUI.populateTable() used to do, one Object[] row per contact
+ *       copied into a DefaultTableModel.</li>
+ *   <li>readAllCells: every cell of the virtual ContactTableModel, the worst case of a table scrolled end to end.</li>
+ *   <li>readVisibleRows: one screen (40 rows) at a random position, what a repaint actually reads.</li>
+ *   <li>updateAndApplyEvent: an edit through the service, delivered to the model as a row-level event.</li>
+ * </ul>
+ * Benchmarks run on their own thread rather than the EDT; no JTable is attached, so nothing else touches the model.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Djava.awt.headless=true", "-Xms4g", "-Xmx4g"})
+public class TableModelBenchmark {
+
+    private static final int VISIBLE_ROWS = 40;
+    private static final String[] COLUMN_NAMES = {"ID", "Name", "Phone", "Email"};
+
+    @Param({"10000", "100000", "1000000"})
+    public int size;
+
+    private ContactService service;
+    private ContactTableModel model;
+
+    @State(Scope.Thread)
+    public static class Picker {
+        final BenchmarkData.Sequence sequence = new BenchmarkData.Sequence((int) Thread.currentThread().threadId());
+        int counter;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        BenchmarkData.silenceConsole();
+        service = new ContactService(new InMemoryContactRepository(size), true, false);
+        model = new ContactTableModel(service);
+        service.addChangeListener(model::contactsChanged);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        service.shutdown();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public DefaultTableModel populateDefaultTableModel() {
+        DefaultTableModel table = new DefaultTableModel(COLUMN_NAMES, 0);
+        for (Contact contact : service.getAllContacts()) {
+            table.addRow(new Object[]{contact.getId(), contact.getName(), contact.getPhone(), contact.getEmail()});
+        }
+        return table;
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public void readAllCells(Blackhole blackhole) {
+        int rows = model.getRowCount();
+        int columns = model.getColumnCount();
+        for (int row = 0; row < rows; row++) {
+            for (int column = 0; column < columns; column++) {
+                blackhole.consume(model.getValueAt(row, column));
+            }
+        }
+    }
+
+    @Benchmark
+    public void readVisibleRows(Picker picker, Blackhole blackhole) {
+        int first = picker.sequence.next(Math.max(1, model.getRowCount() - VISIBLE_ROWS));
+        int columns = model.getColumnCount();
+        for (int row = first; row < first + VISIBLE_ROWS; row++) {
+            for (int column = 0; column < columns; column++) {
+                blackhole.consume(model.getValueAt(row, column));
+            }
+        }
+    }
+
+    @Benchmark
+    public boolean updateAndApplyEvent(Picker picker) {
+        Contact contact = model.getContactAt(picker.sequence.next(model.getRowCount()));
+        int n = picker.counter++;
+        return service.updateContact(contact.getId(), "Updated " + n, contact.getPhone(), contact.getEmail());
+    }
+}
@@ -0,0 +1,105 @@
+package com.contactbook.service;
+
+import com.contactbook.benchmark.BenchmarkData;
+import com.contactbook.model.Contact;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures how much heap each way of holding contacts in memory retains:
+ * <ul>
+ *   <li>arrayList: an ArrayList of Contact objects, as ContactService originally kept them.</li>
+ *   <li>objects: a ContactStore with the plain layout (one Contact per slot).</li>
+ *   <li>packed: a ContactStore with the packed columnar layout (PackedContactSlots).</li>
+ * </ul>
+ * JMH measures time, not retained memory, so this is a plain program: for each layout and size it
+ * builds the structure, forces a few garbage collections and records the growth of the used heap.
+ * It sits in the service package because ContactStore is package-private.
+ *
+ * Usage: ContactStoreFootprint [results.json]. Run it with a heap large enough for 1M contacts (-Xmx4g).
+ */
+public final class ContactStoreFootprint {
+
+    private static final int[] SIZES = {10_000, 100_000, 1_000_000};
+    private static final String[] LAYOUTS = {"arrayList", "objects", "packed"};
+
+    private ContactStoreFootprint() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        Path resultsFile = Paths.get(args.length > 0 ? args[0] : "footprint.json");
+        List<String> results = new ArrayList<>();
+        // Warm-up, so class loading, JIT and the first use of the measuring code itself are not counted
+        for (String layout : LAYOUTS) {
+            keepAlive(build(layout, SIZES[0]));
+        }
+        usedHeapAfterGc();
+        for (int size : SIZES) {
+            for (String layout : LAYOUTS) {
+                long before = usedHeapAfterGc();
+                Object contacts = build(layout, size);
+                long retained = usedHeapAfterGc() - before;
+                keepAlive(contacts);
+                System.out.printf("%-10s %,10d contacts: %,14d bytes (%,d bytes per contact)%n",
+                        layout, size, retained, retained / size);
+                results.add(String.format("    {\"layout\": \"%s\", \"contacts\": %d, \"retainedBytes\": %d, \"bytesPerContact\": %d}",
+                        layout, size, retained, retained / size));
+            }
+        }
+        String json = "{\n  \"benchmark\": \"ContactStoreFootprint\",\n  \"jvm\": \"" + System.getProperty("java.vm.name")
+                + " " + System.getProperty("java.version") + "\",\n  \"results\": [\n" + String.join(",\n", results) + "\n  ]\n}\n";
+        Path parent = resultsFile.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        Files.write(resultsFile, json.getBytes(StandardCharsets.UTF_8));
+        System.out.println("ContactStoreFootprint: Results written to " + resultsFile);
+    }
+
+    private static Object build(String layout, int size) {
+        if (layout.equals("arrayList")) {
+            List<Contact> list = new ArrayList<>();
+            for (int i = 0; i < size; i++) {
+                list.add(numbered(i));
+            }
+            return list;
+        }
+        ContactStore store = new ContactStore(16, layout.equals("packed"));
+        for (int i = 0; i < size; i++) {
+            store.add(numbered(i));
+        }
+        return store;
+    }
+
+    private static Contact numbered(int i) {
+        Contact contact = BenchmarkData.contact(i);
+        contact.setId(i + 1);
+        return contact;
+    }
+
+    private static long usedHeapAfterGc() {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        for (int i = 0; i < 4; i++) {
+            System.gc();
+        }
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+
+    private static volatile Object sink;
+
+    /**
+     * Keeps the measured structure reachable until after the measurement.
+     */
+    private static void keepAlive(Object contacts) {
+        sink = contacts;
+        sink = null;
+    }
+}
@@ -0,0 +1,455 @@
+package com.contactbook.database;
+
+import com.contactbook.monitoring.Log;
+import com.contactbook.monitoring.Metrics;
+import com.contactbook.monitoring.Timer;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * A small, bounded JDBC connection pool used by DatabaseManager.
+ * Connections are opened through DriverManager once and then handed out again and again,
+ * so a single-row edit no longer pays a full TCP + MySQL authentication handshake.
+ *
+ * Callers use the borrowed Connection exactly like a normal one: calling close() on it
+ * returns it to the pool instead of closing the physical connection.
+ *
+ * Each connection also keeps its prepared statements open between borrows (see StatementCache),
+ * so a statement that has run before on that connection is not parsed and planned again.
+ */
+public class ConnectionPool {
+
+    // Time spent waiting for a free connection, shared by every pool in the process
+    private static final Timer BORROW_WAIT = Metrics.timer("pool.borrowWait");
+
+    /** The number of prepared statements each connection keeps open unless open() is told otherwise. */
+    public static final int DEFAULT_STATEMENT_CACHE_SIZE = 64;
+
+    private final String jdbcUrl;
+    private final String user;
+    private final String password;
+
+    private final int minIdle; // Connections kept open even when the pool is quiet
+    private final int maxSize; // Hard upper bound on open connections
+    private final long idleTimeoutMillis; // Idle connections above minIdle are closed after this long
+    private final long borrowTimeoutMillis; // How long getConnection() waits for a free connection
+    private final long validationBypassMillis; // Connections used more recently than this are not re-validated
+    private final int statementCacheSize; // Prepared statements kept open per connection; 0 turns the cache off
+
+    // Idle connections, most recently returned first (LIFO keeps the hot connections warm)
+    private final LinkedBlockingDeque<PooledConnection> idleConnections = new LinkedBlockingDeque<>();
+    // One permit per connection that may be checked out at the same time
+    private final Semaphore permits;
+    private final ScheduledExecutorService evictor;
+    private volatile boolean closed;
+    // The gauges this pool registered, so close() removes these and not a newer pool's
+    private final Map<String, Supplier<? extends Number>> gauges = new LinkedHashMap<>();
+
+    // --- Metrics ---
+    private final AtomicInteger openCount = new AtomicInteger();
+    private final AtomicLong borrowCount = new AtomicLong();
+    private final AtomicLong borrowTimeoutCount = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final AtomicLong createdCount = new AtomicLong();
+    private final AtomicLong validationFailureCount = new AtomicLong();
+    private final AtomicLong evictedCount = new AtomicLong();
+    private final StatementCache.HitRate statementHitRate = new StatementCache.HitRate();
+
+    /**
+     * Creates and starts a new pool. No connection is opened on the calling thread; the pool is
+     * filled up to minIdle in the background so a missing database does not block startup.
+     * @param jdbcUrl The JDBC URL of the database.
+     * @param user The database user.
+     * @param password The database password.
+     * @param minIdle The number of idle connections the pool tries to keep open.
+     * @param maxSize The maximum number of open connections.
+     * @param idleTimeoutMillis How long a connection above minIdle may stay idle before it is closed.
+     * @param borrowTimeoutMillis How long a caller waits for a connection before getting an SQLTimeoutException.
+     */
+    public static ConnectionPool open(String jdbcUrl, String user, String password,
+                                      int minIdle, int maxSize, long idleTimeoutMillis, long borrowTimeoutMillis) {
+        return open(jdbcUrl, user, password, minIdle, maxSize, idleTimeoutMillis, borrowTimeoutMillis, DEFAULT_STATEMENT_CACHE_SIZE);
+    }
+
+    /**
+     * Creates and starts a new pool with a custom statement cache size.
+     * @param statementCacheSize The number of prepared statements each connection keeps open for reuse; 0 turns
+     *                           the cache off. Every cached statement holds a server-side statement when server
+     *                           prepares are on, so keep maxSize * statementCacheSize below MySQL's max_prepared_stmt_count.
+     * @see #open(String, String, String, int, int, long, long)
+     */
+    public static ConnectionPool open(String jdbcUrl, String user, String password, int minIdle, int maxSize,
+                                      long idleTimeoutMillis, long borrowTimeoutMillis, int statementCacheSize) {
+        ConnectionPool pool = new ConnectionPool(jdbcUrl, user, password, minIdle, maxSize, idleTimeoutMillis,
+                borrowTimeoutMillis, statementCacheSize);
+        pool.start();
+        return pool;
+    }
+
+    private ConnectionPool(String jdbcUrl, String user, String password, int minIdle, int maxSize,
+                           long idleTimeoutMillis, long borrowTimeoutMillis, int statementCacheSize) {
+        if (statementCacheSize < 0) {
+            throw new IllegalArgumentException("Invalid statement cache size: " + statementCacheSize);
+        }
+        if (maxSize < 1 || minIdle < 0 || minIdle > maxSize) {
+            throw new IllegalArgumentException("Invalid pool size: minIdle=" + minIdle + ", maxSize=" + maxSize);
+        }
+        this.jdbcUrl = jdbcUrl;
+        this.user = user;
+        this.password = password;
+        this.minIdle = minIdle;
+        this.maxSize = maxSize;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.borrowTimeoutMillis = borrowTimeoutMillis;
+        this.validationBypassMillis = 500;
+        this.statementCacheSize = statementCacheSize;
+        this.permits = new Semaphore(maxSize, true);
+
+        this.evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "ConnectionPool-evictor");
+            t.setDaemon(true); // Never keep the JVM alive just for housekeeping
+            return t;
+        });
+    }
+
+    /**
+     * Starts the evictor and registers the gauges. Done by open() once the pool is fully constructed, so no
+     * other thread or the metrics registry ever sees a half-built pool.
+     */
+    private void start() {
+        long period = Math.max(1000, idleTimeoutMillis / 2);
+        evictor.scheduleWithFixedDelay(this::maintain, 0, period, TimeUnit.MILLISECONDS);
+
+        // Current pool state for JMX and the periodic metrics dump; the most recently created pool wins
+        gauges.put("pool.open", this::getOpenCount);
+        gauges.put("pool.idle", this::getIdleCount);
+        gauges.put("pool.active", this::getActiveCount);
+        gauges.put("pool.borrowTimeouts", this::getBorrowTimeoutCount);
+        gauges.put("statements.parsesAvoidedPerSecond", statementHitRate::perSecond);
+        gauges.forEach(Metrics::gauge);
+    }
+
+    /**
+     * Borrows a connection from the pool, opening a new one if none is idle and the pool is not full.
+     * Idle connections are validated before they are handed out.
+     * @return A Connection whose close() returns it to the pool.
+     * @throws SQLException if no connection becomes available within the borrow timeout, or the database cannot be reached.
+     */
+    public Connection getConnection() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool is closed.");
+        }
+        long start = System.nanoTime();
+        try {
+            if (!permits.tryAcquire(borrowTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                borrowTimeoutCount.incrementAndGet();
+                BORROW_WAIT.record(start, false);
+                throw new SQLTimeoutException("Timed out after " + borrowTimeoutMillis
+                        + " ms waiting for a database connection (pool size " + maxSize + ").");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a database connection.", e);
+        }
+        recordWait(System.nanoTime() - start);
+        BORROW_WAIT.record(start, true);
+
+        try {
+            PooledConnection pooled;
+            while ((pooled = idleConnections.pollFirst()) != null) {
+                if (isUsable(pooled)) {
+                    borrowCount.incrementAndGet();
+                    return pooled.lease();
+                }
+                validationFailureCount.incrementAndGet();
+                destroy(pooled);
+            }
+            // Nothing usable was idle, so open a fresh physical connection
+            pooled = createConnection();
+            borrowCount.incrementAndGet();
+            return pooled.lease();
+        } catch (SQLException | RuntimeException e) {
+            permits.release(); // The caller never got a connection, give the slot back
+            throw e;
+        }
+    }
+
+    /**
+     * Closes every idle connection and stops the background evictor.
+     * Connections that are still borrowed are closed when they are returned.
+     */
+    public void close() {
+        closed = true;
+        evictor.shutdownNow();
+        PooledConnection pooled;
+        while ((pooled = idleConnections.pollFirst()) != null) {
+            destroy(pooled);
+        }
+        gauges.forEach(Metrics::removeGauge); // Unless a newer pool has taken them over
+        Log.info("ConnectionPool: Closed. " + getMetricsSummary());
+    }
+
+    // --- Metrics getters ---
+
+    public int getOpenCount() {
+        return openCount.get();
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public int getIdleCount() {
+        return idleConnections.size();
+    }
+
+    public int getActiveCount() {
+        return maxSize - permits.availablePermits();
+    }
+
+    public long getBorrowCount() {
+        return borrowCount.get();
+    }
+
+    public long getBorrowTimeoutCount() {
+        return borrowTimeoutCount.get();
+    }
+
+    public long getCreatedCount() {
+        return createdCount.get();
+    }
+
+    public long getValidationFailureCount() {
+        return validationFailureCount.get();
+    }
+
+    public long getEvictedCount() {
+        return evictedCount.get();
+    }
+
+    public int getStatementCacheSize() {
+        return statementCacheSize;
+    }
+
+    /**
+     * @return How many prepared statements were found in a connection's statement cache, and so were not
+     *         parsed again. Counted over every pool in the process, like the statements.cacheHits counter.
+     */
+    public long getStatementCacheHitCount() {
+        return StatementCache.getHitCount();
+    }
+
+    /**
+     * @return How many prepared statements had to be prepared because they were not cached (yet).
+     */
+    public long getStatementCacheMissCount() {
+        return StatementCache.getMissCount();
+    }
+
+    /**
+     * @return The statement parses the cache avoided per second, measured over the last second or so.
+     */
+    public double getStatementParsesAvoidedPerSecond() {
+        return statementHitRate.perSecond();
+    }
+
+    /**
+     * @return The average time callers waited for a free connection, in milliseconds.
+     */
+    public double getAverageWaitMillis() {
+        long borrows = borrowCount.get();
+        return borrows == 0 ? 0.0 : totalWaitNanos.get() / 1_000_000.0 / borrows;
+    }
+
+    /**
+     * @return The longest time any caller waited for a free connection, in milliseconds.
+     */
+    public double getMaxWaitMillis() {
+        return maxWaitNanos.get() / 1_000_000.0;
+    }
+
+    /**
+     * @return A one-line summary of the pool metrics, handy for logging.
+     */
+    public String getMetricsSummary() {
+        return String.format("open=%d, idle=%d, active=%d, borrows=%d, timeouts=%d, created=%d, evicted=%d, "
+                        + "validationFailures=%d, avgWait=%.3f ms, maxWait=%.3f ms, statementHits=%d, statementMisses=%d",
+                getOpenCount(), getIdleCount(), getActiveCount(), getBorrowCount(), getBorrowTimeoutCount(),
+                getCreatedCount(), getEvictedCount(), getValidationFailureCount(),
+                getAverageWaitMillis(), getMaxWaitMillis(), getStatementCacheHitCount(), getStatementCacheMissCount());
+    }
+
+    private void recordWait(long waitNanos) {
+        totalWaitNanos.addAndGet(waitNanos);
+        maxWaitNanos.accumulateAndGet(waitNanos, Math::max);
+    }
+
+    private PooledConnection createConnection() throws SQLException {
+        Connection physical = DriverManager.getConnection(jdbcUrl, user, password);
+        openCount.incrementAndGet();
+        createdCount.incrementAndGet();
+        return new PooledConnection(physical);
+    }
+
+    /**
+     * Validation on borrow: a connection that has been idle for a while is pinged before use.
+     * Connections returned a moment ago are trusted, so back-to-back calls do not pay an extra round trip.
+     */
+    private boolean isUsable(PooledConnection pooled) {
+        try {
+            if (pooled.physical.isClosed()) {
+                return false;
+            }
+            if (System.currentTimeMillis() - pooled.lastUsedMillis < validationBypassMillis) {
+                return true;
+            }
+            return pooled.physical.isValid(2);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Called when a borrowed connection is closed by the caller.
+     */
+    private void release(PooledConnection pooled) {
+        try {
+            if (closed || pooled.physical.isClosed()) {
+                destroy(pooled);
+                return;
+            }
+            // Leave the connection the way the next borrower expects to find it
+            pooled.statements.reclaim();
+            if (!pooled.physical.getAutoCommit()) {
+                pooled.physical.rollback();
+                pooled.physical.setAutoCommit(true);
+            }
+            pooled.lastUsedMillis = System.currentTimeMillis();
+            idleConnections.offerFirst(pooled);
+        } catch (SQLException e) {
+            Log.warn("ConnectionPool: Discarding connection that failed to reset: " + e.getMessage());
+            destroy(pooled);
+        } finally {
+            permits.release();
+        }
+    }
+
+    private void destroy(PooledConnection pooled) {
+        try {
+            pooled.physical.close();
+        } catch (SQLException e) {
+            // Nothing useful to do, the connection is gone either way
+        }
+        openCount.decrementAndGet();
+    }
+
+    /**
+     * Background housekeeping: closes connections that sat idle too long (down to minIdle)
+     * and tops the pool back up to minIdle.
+     */
+    private void maintain() {
+        if (closed) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        Iterator<PooledConnection> it = idleConnections.descendingIterator(); // Oldest first
+        while (it.hasNext() && idleConnections.size() > minIdle) {
+            PooledConnection pooled = it.next();
+            if (now - pooled.lastUsedMillis > idleTimeoutMillis && idleConnections.remove(pooled)) {
+                destroy(pooled);
+                evictedCount.incrementAndGet();
+            }
+        }
+        // Top up while holding a permit, so pre-opening can never push the pool past maxSize
+        while (!closed && idleConnections.size() < minIdle && openCount.get() < maxSize && permits.tryAcquire()) {
+            try {
+                PooledConnection pooled = createConnection();
+                pooled.lastUsedMillis = System.currentTimeMillis();
+                idleConnections.offerLast(pooled);
+            } catch (SQLException e) {
+                Log.warn("ConnectionPool: Could not pre-open connection: " + e.getMessage());
+                return;
+            } finally {
+                permits.release();
+            }
+        }
+    }
+
+    /**
+     * Wraps one physical connection. Each lease hands out a fresh proxy so a caller that
+     * closes its Connection twice cannot return it to the pool twice.
+     */
+    private class PooledConnection {
+        private final Connection physical;
+        private final StatementCache statements;
+        private volatile long lastUsedMillis = System.currentTimeMillis();
+
+        PooledConnection(Connection physical) {
+            this.physical = physical;
+            this.statements = new StatementCache(physical, statementCacheSize);
+        }
+
+        Connection lease() {
+            InvocationHandler handler = new InvocationHandler() {
+                private boolean returned;
+
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                    String name = method.getName();
+                    if (name.equals("close")) {
+                        if (!returned) {
+                            returned = true;
+                            release(PooledConnection.this);
+                        }
+                        return null;
+                    }
+                    if (name.equals("isClosed")) {
+                        return returned || physical.isClosed();
+                    }
+                    if (returned) {
+                        throw new SQLException("Connection has already been returned to the pool.");
+                    }
+                    if (name.equals("prepareStatement") && isCacheable(args)) {
+                        int autoGeneratedKeys = args.length == 2 ? (Integer) args[1] : Statement.NO_GENERATED_KEYS;
+                        return statements.prepare((String) args[0], autoGeneratedKeys);
+                    }
+                    try {
+                        return method.invoke(physical, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                }
+            };
+            return (Connection) Proxy.newProxyInstance(ConnectionPool.class.getClassLoader(),
+                    new Class<?>[]{Connection.class}, handler);
+        }
+    }
+
+    /**
+     * @return true for prepareStatement(sql) and prepareStatement(sql, autoGeneratedKeys); the overloads
+     *         with result set options or key columns are rare here and are prepared each time.
+     */
+    private static boolean isCacheable(Object[] args) {
+        return args.length == 1 || (args.length == 2 && args[1] instanceof Integer);
+    }
+}
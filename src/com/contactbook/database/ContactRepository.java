@@ -0,0 +1,253 @@
+package com.contactbook.database;
+
+import com.contactbook.model.Contact;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * The storage backend behind ContactService.
+ *
+ * Two implementations exist:
+ * <ul>
+ *   <li>DatabaseManager stores contacts in a MySQL server, shared by every client that connects to it.</li>
+ *   <li>FileContactRepository stores them in an append-only log plus a compacted snapshot in a local
+ *       directory. No server is needed, and a write costs an append to a file instead of a network round trip.</li>
+ * </ul>
+ * Errors are reported the same way by every implementation: they are logged, and the method returns
+ * false, null, -1 or an empty result as documented, instead of throwing.
+ */
+public interface ContactRepository extends AutoCloseable {
+
+    /** System property choosing the backend used by openDefault(): "mysql" (the default) or "file". */
+    String STORAGE_PROPERTY = "contactbook.storage";
+    /** System property with the directory used by the "file" backend. Defaults to ~/.contactbook. */
+    String DATA_DIR_PROPERTY = "contactbook.dataDir";
+
+    /** The columns getContactsSortedAt() can order contacts by. */
+    enum SortColumn {
+        NAME,
+        EMAIL
+    }
+
+    /**
+     * Opens the backend selected by the contactbook.storage system property,
+     * e.g. -Dcontactbook.storage=file -Dcontactbook.dataDir=/path/to/data.
+     * @return The repository.
+     */
+    static ContactRepository openDefault() {
+        String storage = System.getProperty(STORAGE_PROPERTY, "mysql");
+        if (storage.equalsIgnoreCase("file")) {
+            Path directory = Paths.get(System.getProperty(DATA_DIR_PROPERTY,
+                    Paths.get(System.getProperty("user.home"), ".contactbook").toString()));
+            return new FileContactRepository(directory);
+        }
+        if (!storage.equalsIgnoreCase("mysql")) {
+            throw new IllegalArgumentException("Unknown " + STORAGE_PROPERTY + ": " + storage + " (expected mysql or file)");
+        }
+        return new DatabaseManager();
+    }
+
+    /**
+     * Adds a new contact.
+     * @param contact The Contact object to add. Its ID will be updated after successful insertion.
+     * @return true if the contact was added successfully, false otherwise.
+     */
+    boolean addContact(Contact contact);
+
+    /**
+     * Retrieves all contacts.
+     * @return A List of Contact objects. Returns an empty list if no contacts or an error occurs.
+     */
+    List<Contact> getAllContacts();
+
+    /**
+     * Hands every contact to the given callback, one at a time, without building a list of all of them.
+     * @param action Called once for every contact.
+     * @return The number of contacts read, or -1 if an error occurred.
+     */
+    long forEachContact(Consumer<Contact> action);
+
+    /**
+     * Like forEachContact(action), but only for the contacts with an ID from fromId to toId (both included).
+     * Calls for different ranges may run at the same time, each on its own connection; ContactService uses
+     * that to load a large table in parallel shards.
+     * @param fromId The lowest ID to read.
+     * @param toId The highest ID to read.
+     * @param action Called once for every contact in the range.
+     * @return The number of contacts read, or -1 if an error occurred.
+     */
+    long forEachContactInRange(int fromId, int toId, Consumer<Contact> action);
+
+    /**
+     * @return The lowest and the highest contact ID as {min, max}, an empty array if there are no contacts,
+     *         or null if an error occurred.
+     */
+    int[] getIdRange();
+
+    /**
+     * @return How many calls the repository can serve at the same time, e.g. the size of its connection
+     *         pool. Parallel work such as a sharded load uses no more threads than this.
+     */
+    int getMaxConcurrency();
+
+    /**
+     * Retrieves one page of contacts ordered by ID, using keyset pagination.
+     * @param afterId Only contacts with an ID greater than this are returned; 0 for the first page.
+     * @param limit The maximum number of contacts to return.
+     * @return The page of contacts, empty when there are no more contacts or an error occurs.
+     */
+    List<Contact> getContacts(int afterId, int limit);
+
+    /**
+     * Retrieves one contact by its ID.
+     * @param contactId The ID of the contact.
+     * @return The contact, or null if there is no contact with that ID or an error occurs.
+     */
+    Contact getContact(int contactId);
+
+    /**
+     * @return The number of contacts, or -1 if an error occurred.
+     */
+    int getContactCount();
+
+    /**
+     * Retrieves the contacts at the given positions of the ID order. Unlike getContacts(afterId, limit),
+     * the page is found by position, so the cost grows with the offset; use it to jump to a row, and
+     * keyset pagination to walk through the contacts.
+     * @param offset The number of contacts to skip.
+     * @param limit The maximum number of contacts to return.
+     * @return The page of contacts, empty when the offset is past the end or an error occurs.
+     */
+    List<Contact> getContactsAt(int offset, int limit);
+
+    /**
+     * Like getContactsAt(offset, limit), but in the order of a column, then by ID. Contacts with an empty or
+     * missing value come last, in ID order. Values are compared ignoring case and accents, by the database's
+     * collation where there is one, so the order can differ in details from ContactSortKey's locale rules.
+     * MySQL reads the page from the column's index, so only the skipped and returned rows are touched.
+     * @param column The column to order by.
+     * @param offset The number of contacts to skip.
+     * @param limit The maximum number of contacts to return.
+     * @return The page of contacts, empty when the offset is past the end or an error occurs.
+     */
+    List<Contact> getContactsSortedAt(SortColumn column, int offset, int limit);
+
+    /**
+     * Updates an existing contact and increments its version.
+     * @param contact The Contact object with updated information (its ID is used to identify the record).
+     * @return true if the contact was updated successfully, false otherwise.
+     */
+    boolean updateContact(Contact contact);
+
+    /**
+     * Updates a contact only if its stored version is still the one the caller read (optimistic concurrency).
+     * The version is checked by the same statement that writes the row, so nothing is locked between the
+     * caller's read and this write, and of two clients editing the same version only the first succeeds.
+     * The stored version becomes expectedVersion + 1.
+     * @param contact The Contact object with updated information (its ID is used to identify the record).
+     * @param expectedVersion The version the changes were made to.
+     * @return 1 if the contact was updated; 0 if it has another version by now or no longer exists; -1 on error.
+     */
+    int updateContactIfVersion(Contact contact, long expectedVersion);
+
+    /**
+     * Deletes a contact.
+     * @param contactId The ID of the contact to delete.
+     * @return true if the contact was deleted successfully, false otherwise.
+     */
+    boolean deleteContact(int contactId);
+
+    /**
+     * Deletes a contact, but only if it is still at the given version, so that a change made meanwhile by
+     * another client is not deleted with it.
+     * @param contactId The ID of the contact to delete.
+     * @param expectedVersion The version the contact must be at.
+     * @return 1 if the contact was deleted; 0 if it has another version by now or no longer exists; -1 on error.
+     */
+    int deleteContactIfVersion(int contactId, long expectedVersion);
+
+    /**
+     * Puts a deleted contact back under its old ID, e.g. to undo the delete. The ID must not be in use;
+     * IDs are never handed out twice, so it is free unless the contact was restored already.
+     * @param contact The contact to restore, with its ID and the version to store.
+     * @return true if the contact was restored, false if the ID is in use or an error occurred.
+     */
+    boolean restoreContact(Contact contact);
+
+    /**
+     * Adds many contacts in chunks of getBatchSize(). Generated IDs are set back on every added Contact.
+     * @param contacts The contacts to add.
+     * @return One flag per contact (same order), true if that contact was added.
+     */
+    boolean[] addContacts(List<Contact> contacts);
+
+    /**
+     * Updates many contacts in chunks of getBatchSize().
+     * @param contacts The contacts with updated information (their IDs identify the records).
+     * @return One flag per contact (same order), true if that contact was updated.
+     */
+    boolean[] updateContacts(List<Contact> contacts);
+
+    /**
+     * Updates many contacts in chunks of getBatchSize(), each only if its stored version is still the
+     * contact's version, like updateContactIfVersion(). The version of every contact that was updated is
+     * set to the version now stored.
+     * @param contacts The contacts with updated information; their versions are the ones the changes were made to.
+     * @return One result per contact (same order): 1 if it was updated; 0 if it has another version by now,
+     *         no longer exists or the outcome is unknown; -1 on error.
+     */
+    int[] updateContactsIfVersion(List<Contact> contacts);
+
+    /**
+     * Deletes many contacts in chunks of getBatchSize().
+     * @param contactIds The IDs of the contacts to delete.
+     * @return One flag per ID (same order), true if that contact was deleted.
+     */
+    boolean[] deleteContacts(int[] contactIds);
+
+    /**
+     * @return The number of contacts written per batch (and per transaction) by the bulk methods.
+     */
+    int getBatchSize();
+
+    /**
+     * @param batchSize The number of contacts written per batch by the bulk methods, must be at least 1.
+     */
+    void setBatchSize(int batchSize);
+
+    // --- Change tracking, used by ContactSynchronizer to pick up changes made by other clients ---
+
+    /**
+     * @return The repository's current time, which the change-tracking watermarks are based on, or null on error.
+     */
+    Timestamp getDatabaseTime();
+
+    /**
+     * @param since The watermark.
+     * @return The contacts inserted or updated at or after the given time, or null if an error occurred.
+     */
+    List<Contact> getContactsChangedSince(Timestamp since);
+
+    /**
+     * @param since The watermark.
+     * @return The IDs of contacts deleted at or after the given time, or null if an error occurred.
+     */
+    int[] getDeletedIdsSince(Timestamp since);
+
+    /**
+     * Forgets deletes older than the given time.
+     * @param olderThan The cut-off time.
+     * @return The number of deletes forgotten, or -1 if an error occurred.
+     */
+    int purgeTombstones(Timestamp olderThan);
+
+    /**
+     * Releases the connections or files held by the repository. Call this when the application shuts down.
+     */
+    @Override
+    void close();
+}
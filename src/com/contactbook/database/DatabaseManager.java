@@ -1,15 +1,25 @@
 package com.contactbook.database;
 
 import com.contactbook.model.Contact;
+import com.contactbook.monitoring.Log;
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
 
-public class DatabaseManager {
+/**
+ * The MySQL implementation of ContactRepository. Contacts live in the contacts table of a MySQL
+ * server, and connections are borrowed from a ConnectionPool.
+ */
+public class DatabaseManager implements ContactRepository {
 
     // Database connection details
     // Using your provided credentials and database name
@@ -17,26 +27,176 @@ public class DatabaseManager {
     private static final String DB_USER = "root";
     private static final String DB_PASSWORD = "Kgisl@123";
 
+    // Connection pool settings
+    private static final int POOL_MIN_IDLE = 2;
+    private static final int POOL_MAX_SIZE = 10;
+    private static final long POOL_IDLE_TIMEOUT_MS = 5 * 60 * 1000;
+    private static final long POOL_BORROW_TIMEOUT_MS = 10 * 1000;
+
+    /** System property with the number of prepared statements each pooled connection keeps open (0 turns it off). */
+    public static final String STATEMENT_CACHE_SIZE_PROPERTY = "contactbook.db.statementCacheSize";
+    /**
+     * Prefix of system properties that override the Connector/J settings below, or add others,
+     * e.g. -Dcontactbook.db.jdbc.useServerPrepStmts=false. Settings already in the JDBC URL win.
+     */
+    public static final String DRIVER_PROPERTY_PREFIX = "contactbook.db.jdbc.";
+
+    // Connector/J settings added to MySQL URLs that do not set them
+    private static final String[][] DRIVER_DEFAULTS = {
+            // Prepare on the server, so a reused statement skips parsing and planning and sends parameters in binary
+            {"useServerPrepStmts", "true"},
+            // Keep closed server-side statements for reuse too, covering statements the pool does not cache
+            {"cachePrepStmts", "true"},
+            {"prepStmtCacheSize", "250"},
+            {"prepStmtCacheSqlLimit", "2048"},
+            // Answer getAutoCommit()/setAutoCommit() from the session state the driver tracks, without a round trip
+            {"useLocalSessionState", "true"},
+            // Send a batch of inserts as one multi-row INSERT
+            {"rewriteBatchedStatements", "true"},
+    };
+
+    // Records a deleted ID so other clients can drop it from their caches (see getDeletedIdsSince)
+    private static final String TOMBSTONE_SQL =
+            "INSERT INTO contact_tombstones (id, deleted_at) VALUES (?, CURRENT_TIMESTAMP(3)) "
+            + "ON DUPLICATE KEY UPDATE deleted_at = CURRENT_TIMESTAMP(3)";
+
+    // Number of rows sent per JDBC batch; each batch is committed as its own transaction
+    private static final int DEFAULT_BATCH_SIZE = 1000;
+
+    private final ConnectionPool connectionPool;
+    // Connector/J streams a result set row by row only for Integer.MIN_VALUE, which other drivers reject
+    private final int streamingFetchSize;
+    private volatile int batchSize = DEFAULT_BATCH_SIZE;
+
     public DatabaseManager() {
+        this(POOL_MIN_IDLE, POOL_MAX_SIZE, POOL_IDLE_TIMEOUT_MS, POOL_BORROW_TIMEOUT_MS);
+    }
+
+    /**
+     * Creates a DatabaseManager with a custom connection pool configuration.
+     * @param minIdle The number of idle connections the pool keeps open.
+     * @param maxSize The maximum number of open connections.
+     * @param idleTimeoutMillis How long a connection above minIdle may stay idle before it is closed.
+     * @param borrowTimeoutMillis How long a call waits for a free connection before failing.
+     */
+    public DatabaseManager(int minIdle, int maxSize, long idleTimeoutMillis, long borrowTimeoutMillis) {
+        this(JDBC_URL, DB_USER, DB_PASSWORD, minIdle, maxSize, idleTimeoutMillis, borrowTimeoutMillis);
+    }
+
+    /**
+     * Creates a DatabaseManager for another database than the configured one, such as a local test
+     * database or a stand-in for benchmarks. The database must have the same contacts and
+     * contact_tombstones tables. The default connection pool settings are used.
+     * @param jdbcUrl The JDBC URL to connect to.
+     * @param user The database user.
+     * @param password The password of the user.
+     */
+    public DatabaseManager(String jdbcUrl, String user, String password) {
+        this(jdbcUrl, user, password, POOL_MIN_IDLE, POOL_MAX_SIZE, POOL_IDLE_TIMEOUT_MS, POOL_BORROW_TIMEOUT_MS);
+    }
+
+    private DatabaseManager(String jdbcUrl, String user, String password,
+                            int minIdle, int maxSize, long idleTimeoutMillis, long borrowTimeoutMillis) {
         try {
             // Load the MySQL JDBC driver.
             // This line ensures the driver is registered with DriverManager.
             Class.forName("com.mysql.cj.jdbc.Driver");
         } catch (ClassNotFoundException e) {
-            System.err.println("MySQL JDBC Driver not found. Make sure the JAR is in your classpath.");
-            e.printStackTrace();
+            Log.error("MySQL JDBC Driver not found. Make sure the JAR is in your classpath.", e);
             // Propagate as a runtime exception to indicate a critical setup error
             throw new RuntimeException("Failed to load JDBC driver.", e);
         }
+        int statementCacheSize = Integer.getInteger(STATEMENT_CACHE_SIZE_PROPERTY, ConnectionPool.DEFAULT_STATEMENT_CACHE_SIZE);
+        this.streamingFetchSize = jdbcUrl.startsWith("jdbc:mysql:") ? Integer.MIN_VALUE : 1000;
+        this.connectionPool = ConnectionPool.open(withDriverSettings(jdbcUrl), user, password,
+                minIdle, maxSize, idleTimeoutMillis, borrowTimeoutMillis, statementCacheSize);
+    }
+
+    /**
+     * Adds the tuned Connector/J settings (DRIVER_DEFAULTS, overridden by contactbook.db.jdbc.* system
+     * properties) to a MySQL JDBC URL. Settings the URL already has are left alone, and other URLs are
+     * returned unchanged.
+     */
+    static String withDriverSettings(String jdbcUrl) {
+        if (!jdbcUrl.startsWith("jdbc:mysql:")) {
+            return jdbcUrl;
+        }
+        Map<String, String> settings = new LinkedHashMap<>();
+        for (String[] setting : DRIVER_DEFAULTS) {
+            settings.put(setting[0], setting[1]);
+        }
+        for (String name : System.getProperties().stringPropertyNames()) {
+            if (name.startsWith(DRIVER_PROPERTY_PREFIX) && name.length() > DRIVER_PROPERTY_PREFIX.length()) {
+                settings.put(name.substring(DRIVER_PROPERTY_PREFIX.length()), System.getProperty(name));
+            }
+        }
+        int query = jdbcUrl.indexOf('?');
+        String existing = query < 0 ? "" : jdbcUrl.substring(query + 1);
+        StringBuilder url = new StringBuilder(jdbcUrl);
+        char separator = query < 0 ? '?' : '&';
+        for (Map.Entry<String, String> setting : settings.entrySet()) {
+            if (!hasParameter(existing, setting.getKey())) {
+                url.append(separator).append(setting.getKey()).append('=').append(setting.getValue());
+                separator = '&';
+            }
+        }
+        return url.toString();
+    }
+
+    private static boolean hasParameter(String query, String name) {
+        for (String parameter : query.split("&")) {
+            int equals = parameter.indexOf('=');
+            if ((equals < 0 ? parameter : parameter.substring(0, equals)).equalsIgnoreCase(name)) {
+                return true;
+            }
+        }
+        return false;
     }
 
     /**
-     * Establishes a connection to the MySQL database.
+     * Borrows a connection to the MySQL database from the connection pool.
+     * Closing the returned connection hands it back to the pool.
      * @return A Connection object.
-     * @throws SQLException if a database access error occurs.
+     * @throws SQLException if a database access error occurs or no connection is free in time.
      */
     private Connection getConnection() throws SQLException {
-        return DriverManager.getConnection(JDBC_URL, DB_USER, DB_PASSWORD);
+        return connectionPool.getConnection();
+    }
+
+    /**
+     * @return The connection pool backing this DatabaseManager, for reading its metrics.
+     */
+    public ConnectionPool getConnectionPool() {
+        return connectionPool;
+    }
+
+    /**
+     * Closes all pooled database connections. Call this when the application shuts down.
+     */
+    @Override
+    public void close() {
+        connectionPool.close();
+    }
+
+    /**
+     * @return The number of rows sent per JDBC batch by the bulk methods.
+     */
+    @Override
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Sets the number of rows sent per JDBC batch by the bulk methods.
+     * Each batch is committed as its own transaction.
+     * @param batchSize The batch size, must be at least 1.
+     */
+    @Override
+    public void setBatchSize(int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be at least 1: " + batchSize);
+        }
+        this.batchSize = batchSize;
     }
 
     /**
@@ -44,6 +204,7 @@ public class DatabaseManager {
      * @param contact The Contact object to add. Its ID will be updated after successful insertion.
      * @return true if the contact was added successfully, false otherwise.
      */
+    @Override
     public boolean addContact(Contact contact) {
         String sql = "INSERT INTO contacts (name, phone, email) VALUES (?, ?, ?)";
         // Use try-with-resources to ensure resources are closed automatically
@@ -64,12 +225,11 @@ public class DatabaseManager {
                         contact.setId(generatedKeys.getInt(1)); // Set the generated ID back to the Contact object
                     }
                 }
-                System.out.println("DatabaseManager: Contact added successfully: " + contact.getName() + " (ID: " + contact.getId() + ")");
+                Log.debug(() -> "DatabaseManager: Contact added successfully: " + contact.getName() + " (ID: " + contact.getId() + ")");
                 return true;
             }
         } catch (SQLException e) {
-            System.err.println("DatabaseManager: Error adding contact: " + e.getMessage());
-            e.printStackTrace();
+            Log.error("DatabaseManager: Error adding contact: " + e.getMessage(), e);
         }
         return false;
     }
@@ -78,35 +238,269 @@ public class DatabaseManager {
      * Retrieves all contacts from the database.
      * @return A List of Contact objects. Returns an empty list if no contacts or an error occurs.
      */
+    @Override
     public List<Contact> getAllContacts() {
         List<Contact> contacts = new ArrayList<>();
-        String sql = "SELECT id, name, phone, email FROM contacts";
+        String sql = "SELECT id, name, phone, email, version FROM contacts";
         try (Connection conn = getConnection();
              PreparedStatement pstmt = conn.prepareStatement(sql);
              ResultSet rs = pstmt.executeQuery()) { // Execute the select query
 
             while (rs.next()) { // Iterate through the result set
-                int id = rs.getInt("id");
-                String name = rs.getString("name");
-                String phone = rs.getString("phone");
-                String email = rs.getString("email");
-                contacts.add(new Contact(id, name, phone, email)); // Create Contact object and add to list
+                contacts.add(readContact(rs)); // Create Contact object and add to list
             }
-            System.out.println("DatabaseManager: Retrieved " + contacts.size() + " contacts from database.");
+            Log.debug(() -> "DatabaseManager: Retrieved " + contacts.size() + " contacts from database.");
         } catch (SQLException e) {
-            System.err.println("DatabaseManager: Error retrieving contacts: " + e.getMessage());
-            e.printStackTrace();
+            Log.error("DatabaseManager: Error retrieving contacts: " + e.getMessage(), e);
         }
         return contacts;
     }
 
+    /**
+     * Streams every contact in the table to the given callback, one row at a time.
+     * The driver is asked to stream rows from the server instead of buffering the whole
+     * result set, so memory use stays constant no matter how large the table is.
+     * The connection stays busy until all rows have been read, so keep the callback quick.
+     * @param action Called once for every contact.
+     * @return The number of contacts read, or -1 if an error occurred.
+     */
+    @Override
+    public long forEachContact(Consumer<Contact> action) {
+        String sql = "SELECT id, name, phone, email, version FROM contacts";
+        long count = 0;
+        try (Connection conn = getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            // Integer.MIN_VALUE tells Connector/J to stream rows instead of reading them all into memory
+            pstmt.setFetchSize(streamingFetchSize);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    action.accept(readContact(rs));
+                    count++;
+                }
+            }
+            Log.info("DatabaseManager: Streamed " + count + " contacts from database.");
+            return count;
+        } catch (SQLException e) {
+            Log.error("DatabaseManager: Error streaming contacts: " + e.getMessage(), e);
+        }
+        return -1;
+    }
+
+    /**
+     * Streams the contacts with an ID from fromId to toId, like forEachContact(). The range is a scan of
+     * the primary key, and each call uses a connection of its own, so several ranges can be read at once.
+     * @param fromId The lowest ID to read.
+     * @param toId The highest ID to read.
+     * @param action Called once for every contact in the range.
+     * @return The number of contacts read, or -1 if an error occurred.
+     */
+    @Override
+    public long forEachContactInRange(int fromId, int toId, Consumer<Contact> action) {
+        String sql = "SELECT id, name, phone, email, version FROM contacts WHERE id BETWEEN ? AND ?";
+        long count = 0;
+        try (Connection conn = getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            pstmt.setFetchSize(streamingFetchSize);
+            pstmt.setInt(1, fromId);
+            pstmt.setInt(2, toId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    action.accept(readContact(rs));
+                    count++;
+                }
+            }
+            long streamed = count;
+            Log.debug(() -> "DatabaseManager: Streamed " + streamed + " contacts with IDs " + fromId + " to " + toId + ".");
+            return count;
+        } catch (SQLException e) {
+            Log.error("DatabaseManager: Error streaming contacts " + fromId + " to " + toId + ": " + e.getMessage(), e);
+        }
+        return -1;
+    }
+
+    /**
+     * Reads the lowest and highest ID, which the primary key index answers without a scan.
+     * @return {min, max}, an empty array if the table is empty, or null if an error occurred.
+     */
+    @Override
+    public int[] getIdRange() {
+        String sql = "SELECT MIN(id), MAX(id) FROM contacts";
+        try (Connection conn = getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql);
+             ResultSet rs = pstmt.executeQuery()) {
+            if (rs.next()) {
+                int min = rs.getInt(1);
+                if (!rs.wasNull()) {
+                    return new int[]{min, rs.getInt(2)};
+                }
+            }
+            return new int[0];
+        } catch (SQLException e) {
+            Log.error("DatabaseManager: Error reading the ID range: " + e.getMessage(), e);
+        }
+        return null;
+    }
+
+    /**
+     * @return The size of the connection pool.
+     */
+    @Override
+    public int getMaxConcurrency() {
+        return connectionPool.getMaxSize();
+    }
+
+    /**
+     * Retrieves one page of contacts ordered by ID, using keyset pagination.
+     * Pass 0 as afterId for the first page, then the ID of the last contact of each page
+     * to get the next one. Unlike OFFSET paging, every page costs the same no matter how deep it is.
+     * @param afterId Only contacts with an ID greater than this are returned.
+     * @param limit The maximum number of contacts to return.
+     * @return The page of contacts, empty when there are no more contacts or an error occurs.
+     */
+    @Override
+    public List<Contact> getContacts(int afterId, int limit) {
+        List<Contact> contacts = new ArrayList<>(Math.min(limit, 10_000));
+        String sql = "SELECT id, name, phone, email, version FROM contacts WHERE id > ? ORDER BY id LIMIT ?";
+        try (Connection conn = getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+            pstmt.setInt(1, afterId);
+            pstmt.setInt(2, limit);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    contacts.add(readContact(rs));
+                }
+            }
+        } catch (SQLException e) {
+            Log.error("DatabaseManager: Error retrieving contacts after ID " + afterId + ": " + e.getMessage(), e);
+        }
+        return contacts;
+    }
+
+    /**
+     * Retrieves one contact by its primary key.
+     * @param contactId The ID of the contact.
+     * @return The contact, or null if there is no contact with that ID or an error occurs.
+     */
+    @Override
+    public Contact getContact(int contactId) {
+        String sql = "SELECT id, name, phone, email, version FROM contacts WHERE id = ?";
+        try (Connection conn = getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+            pstmt.setInt(1, contactId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (rs.next()) {
+                    return readContact(rs);
+                }
+            }
+        } catch (SQLException e) {
+            Log.error("DatabaseManager: Error retrieving contact with ID " + contactId + ": " + e.getMessage(), e);
+        }
+        return null;
+    }
+
+    /**
+     * Counts the contacts in the table.
+     * @return The number of contacts, or -1 if an error occurred.
+     */
+    @Override
+    public int getContactCount() {
+        String sql = "SELECT COUNT(*) FROM contacts";
+        try (Connection conn = getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql);
+             ResultSet rs = pstmt.executeQuery()) {
+            if (rs.next()) {
+                return rs.getInt(1);
+            }
+        } catch (SQLException e) {
+            Log.error("DatabaseManager: Error counting contacts: " + e.getMessage(), e);
+        }
+        return -1;
+    }
+
+    /**
+     * Retrieves the contacts at the given positions of the ID order with LIMIT/OFFSET.
+     * MySQL still walks the skipped entries of the primary key index, so this is meant for
+     * jumping to a row; use getContacts(afterId, limit) to read page after page.
+     * @param offset The number of contacts to skip.
+     * @param limit The maximum number of contacts to return.
+     * @return The page of contacts, empty when the offset is past the end or an error occurs.
+     */
+    @Override
+    public List<Contact> getContactsAt(int offset, int limit) {
+        List<Contact> contacts = new ArrayList<>(Math.min(limit, 10_000));
+        String sql = "SELECT id, name, phone, email, version FROM contacts ORDER BY id LIMIT ? OFFSET ?";
+        try (Connection conn = getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+            pstmt.setInt(1, limit);
+            pstmt.setInt(2, offset);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    contacts.add(readContact(rs));
+                }
+            }
+        } catch (SQLException e) {
+            Log.error("DatabaseManager: Error retrieving contacts at offset " + offset + ": " + e.getMessage(), e);
+        }
+        return contacts;
+    }
+
+    /**
+     * Reads a page of contacts in name or email order. The contacts with a value come from the column's index
+     * (idx_contacts_name, idx_contacts_email); putting "IS NULL" in the ORDER BY instead would make MySQL sort
+     * the whole table for every page. Once they run out, the page goes on with the contacts without a value.
+     */
+    @Override
+    public List<Contact> getContactsSortedAt(SortColumn column, int offset, int limit) {
+        String field = column == SortColumn.NAME ? "name" : "email";
+        String valuedSql = "SELECT id, name, phone, email, version FROM contacts WHERE " + field + " <> '' ORDER BY "
+                + field + ", id LIMIT ? OFFSET ?";
+        String countSql = "SELECT COUNT(*) FROM contacts WHERE " + field + " <> ''";
+        String blankSql = "SELECT id, name, phone, email, version FROM contacts WHERE " + field + " IS NULL OR "
+                + field + " = '' ORDER BY id LIMIT ? OFFSET ?";
+        List<Contact> contacts = new ArrayList<>(Math.min(limit, 10_000));
+        try (Connection conn = getConnection()) {
+            readPage(conn, valuedSql, offset, limit, contacts);
+            if (contacts.size() < limit) {
+                int blankOffset = 0;
+                if (contacts.isEmpty()) {
+                    // The page starts past the contacts with a value; count them to know how far past
+                    try (PreparedStatement pstmt = conn.prepareStatement(countSql);
+                         ResultSet rs = pstmt.executeQuery()) {
+                        blankOffset = Math.max(0, offset - (rs.next() ? rs.getInt(1) : 0));
+                    }
+                }
+                readPage(conn, blankSql, blankOffset, limit - contacts.size(), contacts);
+            }
+        } catch (SQLException e) {
+            Log.error("DatabaseManager: Error retrieving contacts by " + field + " at offset " + offset + ": " + e.getMessage(), e);
+            contacts.clear();
+        }
+        return contacts;
+    }
+
+    private static void readPage(Connection conn, String sql, int offset, int limit, List<Contact> page) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setInt(1, limit);
+            pstmt.setInt(2, offset);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    page.add(readContact(rs));
+                }
+            }
+        }
+    }
+
     /**
      * Updates an existing contact in the database.
      * @param contact The Contact object with updated information (its ID is used to identify the record).
      * @return true if the contact was updated successfully, false otherwise.
      */
+    @Override
     public boolean updateContact(Contact contact) {
-        String sql = "UPDATE contacts SET name = ?, phone = ?, email = ? WHERE id = ?";
+        String sql = "UPDATE contacts SET name = ?, phone = ?, email = ?, version = version + 1 WHERE id = ?";
         try (Connection conn = getConnection();
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
 
@@ -117,14 +511,13 @@ public class DatabaseManager {
 
             int affectedRows = pstmt.executeUpdate();
             if (affectedRows > 0) {
-                System.out.println("DatabaseManager: Contact updated successfully: " + contact.getName() + " (ID: " + contact.getId() + ")");
+                Log.debug(() -> "DatabaseManager: Contact updated successfully: " + contact.getName() + " (ID: " + contact.getId() + ")");
                 return true;
             } else {
-                System.out.println("DatabaseManager: No contact found for update with ID: " + contact.getId());
+                Log.debug(() -> "DatabaseManager: No contact found for update with ID: " + contact.getId());
             }
         } catch (SQLException e) {
-            System.err.println("DatabaseManager: Error updating contact: " + e.getMessage());
-            e.printStackTrace();
+            Log.error("DatabaseManager: Error updating contact: " + e.getMessage(), e);
         }
         return false;
     }
@@ -134,24 +527,427 @@ public class DatabaseManager {
      * @param contactId The ID of the contact to delete.
      * @return true if the contact was deleted successfully, false otherwise.
      */
+    @Override
     public boolean deleteContact(int contactId) {
         String sql = "DELETE FROM contacts WHERE id = ?";
+        try (Connection conn = getConnection()) {
+            // The delete and its tombstone (read by other clients' sync) are committed together
+            conn.setAutoCommit(false);
+            try (PreparedStatement pstmt = conn.prepareStatement(sql);
+                 PreparedStatement tombstone = conn.prepareStatement(TOMBSTONE_SQL)) {
+
+                pstmt.setInt(1, contactId);
+
+                int affectedRows = pstmt.executeUpdate();
+                if (affectedRows > 0) {
+                    tombstone.setInt(1, contactId);
+                    tombstone.executeUpdate();
+                    conn.commit();
+                    Log.debug(() -> "DatabaseManager: Contact deleted successfully with ID: " + contactId);
+                    return true;
+                } else {
+                    conn.rollback();
+                    Log.debug(() -> "DatabaseManager: No contact found for deletion with ID: " + contactId);
+                }
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+        } catch (SQLException e) {
+            Log.error("DatabaseManager: Error deleting contact: " + e.getMessage(), e);
+        }
+        return false;
+    }
+
+    /**
+     * Deletes a contact only if it is still at the expected version, with its tombstone in the same transaction.
+     */
+    @Override
+    public int deleteContactIfVersion(int contactId, long expectedVersion) {
+        String sql = "DELETE FROM contacts WHERE id = ? AND version = ?";
+        try (Connection conn = getConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement pstmt = conn.prepareStatement(sql);
+                 PreparedStatement tombstone = conn.prepareStatement(TOMBSTONE_SQL)) {
+
+                pstmt.setInt(1, contactId);
+                pstmt.setLong(2, expectedVersion);
+
+                int affectedRows = pstmt.executeUpdate();
+                if (affectedRows > 0) {
+                    tombstone.setInt(1, contactId);
+                    tombstone.executeUpdate();
+                    conn.commit();
+                    Log.debug(() -> "DatabaseManager: Contact deleted successfully with ID: " + contactId);
+                    return 1;
+                }
+                conn.rollback();
+                Log.debug(() -> "DatabaseManager: Contact " + contactId + " is no longer at version " + expectedVersion + ", not deleted.");
+                return 0;
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+        } catch (SQLException e) {
+            Log.error("DatabaseManager: Error deleting contact: " + e.getMessage(), e);
+        }
+        return -1;
+    }
+
+    /**
+     * Inserts a deleted contact again under its old ID and drops its tombstone, in one transaction. Without
+     * the tombstone, other clients' sync sees the row as changed, and adds it back if they had removed it.
+     * @param contact The contact to restore, with its ID and the version to store.
+     * @return true if the contact was restored, false if the ID is in use or an error occurred.
+     */
+    @Override
+    public boolean restoreContact(Contact contact) {
+        String sql = "INSERT INTO contacts (id, name, phone, email, version) VALUES (?, ?, ?, ?, ?)";
+        try (Connection conn = getConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement pstmt = conn.prepareStatement(sql);
+                 PreparedStatement tombstone = conn.prepareStatement("DELETE FROM contact_tombstones WHERE id = ?")) {
+
+                pstmt.setInt(1, contact.getId());
+                pstmt.setString(2, contact.getName());
+                pstmt.setString(3, contact.getPhone());
+                pstmt.setString(4, contact.getEmail());
+                pstmt.setLong(5, contact.getVersion());
+                pstmt.executeUpdate(); // A duplicate ID fails here with a constraint violation
+
+                tombstone.setInt(1, contact.getId());
+                tombstone.executeUpdate();
+                conn.commit();
+                Log.debug(() -> "DatabaseManager: Contact restored successfully: " + contact.getName() + " (ID: " + contact.getId() + ")");
+                return true;
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+        } catch (SQLException e) {
+            Log.error("DatabaseManager: Error restoring contact " + contact.getId() + ": " + e.getMessage(), e);
+        }
+        return false;
+    }
+
+    /**
+     * Adds many contacts using JDBC batching. The contacts are sent in chunks of getBatchSize() rows,
+     * and each chunk is committed as one transaction. Generated IDs are set back on every added Contact.
+     * If a chunk fails it is rolled back as a whole and the remaining chunks are still attempted.
+     * @param contacts The contacts to add.
+     * @return One flag per contact (same order), true if that contact was added.
+     */
+    @Override
+    public boolean[] addContacts(List<Contact> contacts) {
+        String sql = "INSERT INTO contacts (name, phone, email) VALUES (?, ?, ?)";
+        boolean[] added = new boolean[contacts.size()];
+        int chunkSize = batchSize;
+        for (int from = 0; from < contacts.size(); from += chunkSize) {
+            int to = Math.min(from + chunkSize, contacts.size());
+            try (Connection conn = getConnection()) {
+                conn.setAutoCommit(false);
+                try (PreparedStatement pstmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+                    for (int i = from; i < to; i++) {
+                        Contact contact = contacts.get(i);
+                        pstmt.setString(1, contact.getName());
+                        pstmt.setString(2, contact.getPhone());
+                        pstmt.setString(3, contact.getEmail());
+                        pstmt.addBatch();
+                    }
+                    pstmt.executeBatch();
+                    // Keys come back in the same order the rows were batched
+                    List<Integer> keys = new ArrayList<>(to - from);
+                    try (ResultSet generatedKeys = pstmt.getGeneratedKeys()) {
+                        while (generatedKeys.next()) {
+                            keys.add(generatedKeys.getInt(1));
+                        }
+                    }
+                    if (keys.size() != to - from) {
+                        throw new SQLException("Expected " + (to - from) + " generated keys but got " + keys.size());
+                    }
+                    conn.commit();
+                    for (int i = from; i < to; i++) {
+                        contacts.get(i).setId(keys.get(i - from));
+                        added[i] = true;
+                    }
+                } catch (SQLException e) {
+                    conn.rollback();
+                    throw e;
+                }
+            } catch (SQLException e) {
+                Log.error("DatabaseManager: Error adding contacts " + from + " to " + (to - 1) + ": " + e.getMessage(), e);
+            }
+        }
+        Log.debug(() -> "DatabaseManager: Batch insert finished for " + contacts.size() + " contacts.");
+        return added;
+    }
+
+    /**
+     * Updates a contact if its version in the database is still expectedVersion. The version check is part
+     * of the UPDATE's WHERE clause, so no row is locked beyond the statement itself.
+     * @return 1 if the contact was updated; 0 if it has another version by now or no longer exists; -1 on error.
+     */
+    @Override
+    public int updateContactIfVersion(Contact contact, long expectedVersion) {
+        String sql = "UPDATE contacts SET name = ?, phone = ?, email = ?, version = version + 1 WHERE id = ? AND version = ?";
         try (Connection conn = getConnection();
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
 
-            pstmt.setInt(1, contactId);
+            pstmt.setString(1, contact.getName());
+            pstmt.setString(2, contact.getPhone());
+            pstmt.setString(3, contact.getEmail());
+            pstmt.setInt(4, contact.getId());
+            pstmt.setLong(5, expectedVersion);
 
             int affectedRows = pstmt.executeUpdate();
             if (affectedRows > 0) {
-                System.out.println("DatabaseManager: Contact deleted successfully with ID: " + contactId);
-                return true;
-            } else {
-                System.out.println("DatabaseManager: No contact found for deletion with ID: " + contactId);
+                Log.debug(() -> "DatabaseManager: Contact updated successfully: " + contact.getName() + " (ID: " + contact.getId() + ")");
+                return 1;
             }
+            Log.debug(() -> "DatabaseManager: Contact " + contact.getId() + " is no longer at version " + expectedVersion + ", not updated.");
+            return 0;
         } catch (SQLException e) {
-            System.err.println("DatabaseManager: Error deleting contact: " + e.getMessage());
-            e.printStackTrace();
+            Log.error("DatabaseManager: Error updating contact: " + e.getMessage(), e);
         }
-        return false;
+        return -1;
+    }
+
+    /**
+     * Updates many contacts using JDBC batching, in transactional chunks of getBatchSize() rows.
+     * @param contacts The contacts with updated information (their IDs identify the records).
+     * @return One flag per contact (same order), true if a row with that ID was updated.
+     */
+    @Override
+    public boolean[] updateContacts(List<Contact> contacts) {
+        String sql = "UPDATE contacts SET name = ?, phone = ?, email = ?, version = version + 1 WHERE id = ?";
+        boolean[] updated = new boolean[contacts.size()];
+        int chunkSize = batchSize;
+        for (int from = 0; from < contacts.size(); from += chunkSize) {
+            int to = Math.min(from + chunkSize, contacts.size());
+            try (Connection conn = getConnection()) {
+                conn.setAutoCommit(false);
+                try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                    for (int i = from; i < to; i++) {
+                        Contact contact = contacts.get(i);
+                        pstmt.setString(1, contact.getName());
+                        pstmt.setString(2, contact.getPhone());
+                        pstmt.setString(3, contact.getEmail());
+                        pstmt.setInt(4, contact.getId());
+                        pstmt.addBatch();
+                    }
+                    int[] counts = pstmt.executeBatch();
+                    conn.commit();
+                    for (int i = from; i < to; i++) {
+                        updated[i] = isBatchSuccess(counts[i - from]);
+                    }
+                } catch (SQLException e) {
+                    conn.rollback();
+                    throw e;
+                }
+            } catch (SQLException e) {
+                Log.error("DatabaseManager: Error updating contacts " + from + " to " + (to - 1) + ": " + e.getMessage(), e);
+            }
+        }
+        Log.debug(() -> "DatabaseManager: Batch update finished for " + contacts.size() + " contacts.");
+        return updated;
+    }
+
+    /**
+     * Updates many contacts using JDBC batching, in transactional chunks of getBatchSize() rows, each row only
+     * if it is still at the contact's version. A driver that answers SUCCESS_NO_INFO does not say whether the
+     * version matched, so such rows are reported as 0 and the caller reads them back.
+     * @param contacts The contacts with updated information; their versions are the ones the changes were made to.
+     * @return One result per contact (same order): 1 updated, 0 not updated or unknown, -1 on error.
+     */
+    @Override
+    public int[] updateContactsIfVersion(List<Contact> contacts) {
+        String sql = "UPDATE contacts SET name = ?, phone = ?, email = ?, version = version + 1 WHERE id = ? AND version = ?";
+        int[] results = new int[contacts.size()];
+        int chunkSize = batchSize;
+        for (int from = 0; from < contacts.size(); from += chunkSize) {
+            int to = Math.min(from + chunkSize, contacts.size());
+            try (Connection conn = getConnection()) {
+                conn.setAutoCommit(false);
+                try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                    for (int i = from; i < to; i++) {
+                        Contact contact = contacts.get(i);
+                        pstmt.setString(1, contact.getName());
+                        pstmt.setString(2, contact.getPhone());
+                        pstmt.setString(3, contact.getEmail());
+                        pstmt.setInt(4, contact.getId());
+                        pstmt.setLong(5, contact.getVersion());
+                        pstmt.addBatch();
+                    }
+                    int[] counts = pstmt.executeBatch();
+                    conn.commit();
+                    for (int i = from; i < to; i++) {
+                        if (counts[i - from] > 0) {
+                            // The row matched the expected version, so the statement moved it exactly one on
+                            contacts.get(i).setVersion(contacts.get(i).getVersion() + 1);
+                            results[i] = 1;
+                        }
+                    }
+                } catch (SQLException e) {
+                    conn.rollback();
+                    throw e;
+                }
+            } catch (SQLException e) {
+                Log.error("DatabaseManager: Error updating contacts " + from + " to " + (to - 1) + ": " + e.getMessage(), e);
+                Arrays.fill(results, from, to, -1);
+            }
+        }
+        Log.debug(() -> "DatabaseManager: Version-checked batch update finished for " + contacts.size() + " contacts.");
+        return results;
+    }
+
+    /**
+     * Deletes many contacts using JDBC batching, in transactional chunks of getBatchSize() rows. Each chunk
+     * writes tombstones for the IDs its update counts report as deleted. A driver that answers
+     * SUCCESS_NO_INFO leaves that unknown, and such IDs get a tombstone as before.
+     * @param contactIds The IDs of the contacts to delete.
+     * @return One flag per ID (same order), true if a row with that ID was deleted.
+     */
+    @Override
+    public boolean[] deleteContacts(int[] contactIds) {
+        String sql = "DELETE FROM contacts WHERE id = ?";
+        boolean[] deleted = new boolean[contactIds.length];
+        int chunkSize = batchSize;
+        for (int from = 0; from < contactIds.length; from += chunkSize) {
+            int to = Math.min(from + chunkSize, contactIds.length);
+            try (Connection conn = getConnection()) {
+                conn.setAutoCommit(false);
+                try (PreparedStatement pstmt = conn.prepareStatement(sql);
+                     PreparedStatement tombstone = conn.prepareStatement(TOMBSTONE_SQL)) {
+                    for (int i = from; i < to; i++) {
+                        pstmt.setInt(1, contactIds[i]);
+                        pstmt.addBatch();
+                    }
+                    int[] counts = pstmt.executeBatch();
+                    // Tombstones only for the IDs that were really deleted, in the same transaction; an ID
+                    // that did not exist must not make other clients drop a contact they may still have
+                    boolean anyDeleted = false;
+                    for (int i = from; i < to; i++) {
+                        deleted[i] = isBatchSuccess(counts[i - from]);
+                        if (deleted[i]) {
+                            tombstone.setInt(1, contactIds[i]);
+                            tombstone.addBatch();
+                            anyDeleted = true;
+                        }
+                    }
+                    if (anyDeleted) {
+                        tombstone.executeBatch();
+                    }
+                    conn.commit();
+                } catch (SQLException e) {
+                    conn.rollback();
+                    throw e;
+                }
+            } catch (SQLException e) {
+                Log.error("DatabaseManager: Error deleting contacts " + from + " to " + (to - 1) + ": " + e.getMessage(), e);
+            }
+        }
+        Log.debug(() -> "DatabaseManager: Batch delete finished for " + contactIds.length + " contacts.");
+        return deleted;
+    }
+
+    /**
+     * The driver may report SUCCESS_NO_INFO for rewritten batches, which still means the statement ran.
+     */
+    private static boolean isBatchSuccess(int updateCount) {
+        return updateCount > 0 || updateCount == Statement.SUCCESS_NO_INFO;
+    }
+
+    // --- Change data capture. Used by ContactSynchronizer to keep several clients' caches in step. ---
+
+    /**
+     * @return The database server's current time, or null if it cannot be read. Sync watermarks use
+     *         the server clock so that clients with skewed clocks still agree.
+     */
+    @Override
+    public Timestamp getDatabaseTime() {
+        try (Connection conn = getConnection();
+             PreparedStatement pstmt = conn.prepareStatement("SELECT CURRENT_TIMESTAMP(3)");
+             ResultSet rs = pstmt.executeQuery()) {
+            if (rs.next()) {
+                return rs.getTimestamp(1);
+            }
+        } catch (SQLException e) {
+            Log.error("DatabaseManager: Error reading database time: " + e.getMessage(), e);
+        }
+        return null;
+    }
+
+    /**
+     * Retrieves the contacts inserted or updated at or after the given time (uses the updated_at index).
+     * @param since The watermark.
+     * @return The changed contacts, or null if an error occurred.
+     */
+    @Override
+    public List<Contact> getContactsChangedSince(Timestamp since) {
+        String sql = "SELECT id, name, phone, email, version FROM contacts WHERE updated_at >= ?";
+        List<Contact> contacts = new ArrayList<>();
+        try (Connection conn = getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setTimestamp(1, since);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    contacts.add(readContact(rs));
+                }
+            }
+            return contacts;
+        } catch (SQLException e) {
+            Log.error("DatabaseManager: Error retrieving changed contacts: " + e.getMessage(), e);
+        }
+        return null;
+    }
+
+    /**
+     * Retrieves the IDs of contacts deleted at or after the given time, from the tombstone table.
+     * @param since The watermark.
+     * @return The deleted IDs, or null if an error occurred.
+     */
+    @Override
+    public int[] getDeletedIdsSince(Timestamp since) {
+        String sql = "SELECT id FROM contact_tombstones WHERE deleted_at >= ?";
+        try (Connection conn = getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setTimestamp(1, since);
+            List<Integer> ids = new ArrayList<>();
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    ids.add(rs.getInt(1));
+                }
+            }
+            return ids.stream().mapToInt(Integer::intValue).toArray();
+        } catch (SQLException e) {
+            Log.error("DatabaseManager: Error retrieving deleted contacts: " + e.getMessage(), e);
+        }
+        return null;
+    }
+
+    /**
+     * Removes tombstones older than the given time. Clients whose sync watermark is older than
+     * this must do a full reload, because they may have missed deletes.
+     * @param olderThan The cut-off time.
+     * @return The number of tombstones removed, or -1 if an error occurred.
+     */
+    @Override
+    public int purgeTombstones(Timestamp olderThan) {
+        String sql = "DELETE FROM contact_tombstones WHERE deleted_at < ?";
+        try (Connection conn = getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setTimestamp(1, olderThan);
+            return pstmt.executeUpdate();
+        } catch (SQLException e) {
+            Log.error("DatabaseManager: Error purging tombstones: " + e.getMessage(), e);
+        }
+        return -1;
+    }
+
+    /**
+     * Builds a Contact from the current row of a result set selecting id, name, phone, email, version.
+     */
+    private static Contact readContact(ResultSet rs) throws SQLException {
+        return new Contact(rs.getInt(1), rs.getString(2), rs.getString(3), rs.getString(4), rs.getLong(5));
     }
 }
@@ -0,0 +1,1018 @@
+package com.contactbook.database;
+
+import com.contactbook.model.Contact;
+import com.contactbook.monitoring.Log;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Timestamp;
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * An embedded ContactRepository that keeps contacts in a local directory, for single-user and
+ * edge installs that should not need a MySQL server.
+ *
+ * The directory holds:
+ * <ul>
+ *   <li>contacts.snapshot - every contact as of some point in time, written by compaction.</li>
+ *   <li>contacts-N.log - append-only logs of the changes made after that point. Each record is
+ *       [length][CRC32C][payload], so a record torn by a crash is detected and ignored on the next start.</li>
+ *   <li>contacts.lock - locked while the directory is open, so two processes never write to it at once.</li>
+ * </ul>
+ * All contacts are also held in memory, so reads never touch the disk. A write appends one record to the
+ * current log through a FileChannel, which only copies it into the OS page cache: a write costs
+ * microseconds. The log is forced to disk once a second by a background thread, so an OS crash or power
+ * loss can lose the last second of changes (an application crash loses nothing). Pass syncEveryWrite = true
+ * to force the log on every write instead, at the cost of one disk flush per write.
+ *
+ * When the logs grow large the background thread compacts them: it switches writes to a new log, writes a
+ * fresh snapshot next to the old one, swaps it in with an atomic rename and deletes the logs the snapshot
+ * now covers. Writers are only held up for the log switch. On startup the snapshot and the logs are read
+ * through memory-mapped buffers. Every log record sets the full state of one contact, so replaying a log
+ * on top of a snapshot that already contains some of its changes gives the same result; a crash at any
+ * point of a compaction therefore leaves a directory that recovers correctly.
+ *
+ * Snapshot and log files are mapped in one piece, so each must stay below 2 GB (roughly 20 million contacts).
+ */
+public class FileContactRepository implements ContactRepository {
+
+    private static final String SNAPSHOT_FILE = "contacts.snapshot";
+    private static final String LOCK_FILE = "contacts.lock";
+    private static final String LOG_PREFIX = "contacts-";
+    private static final String LOG_SUFFIX = ".log";
+
+    private static final int SNAPSHOT_MAGIC = 0x43425331; // "CBS1"
+    private static final byte SNAPSHOT_RECORD = 1;
+    private static final byte SNAPSHOT_END = 0;
+    private static final byte OP_PUT = 1; // Log record holding the full state of one contact
+    private static final byte OP_DELETE = 2; // Log record holding the ID of a deleted contact
+    private static final int RECORD_HEADER_BYTES = 8; // Payload length + CRC32C
+
+    private static final long FLUSH_INTERVAL_MS = 1000;
+    private static final long COMPACT_THRESHOLD_BYTES = 16L * 1024 * 1024; // Compact once the logs hold this much
+    private static final int COMPACT_THRESHOLD_FILES = 8; // ...or this many logs (one is started per open)
+    private static final int DEFAULT_BATCH_SIZE = 1000;
+
+    private final Path directory;
+    private final boolean syncEveryWrite;
+
+    // All contacts by ID. Reads go straight to the map; writes are ordered by writeLock so the map and the log agree
+    private final ConcurrentSkipListMap<Integer, Contact> contacts = new ConcurrentSkipListMap<>();
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final CRC32C checksum = new CRC32C(); // Guarded by writeLock
+    private ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024); // Records are encoded here, guarded by writeLock
+
+    private final FileChannel lockChannel;
+    private final FileLock directoryLock;
+    private final ScheduledExecutorService housekeeper;
+
+    // --- Guarded by writeLock ---
+    private FileChannel log; // The log currently appended to
+    private long logGeneration;
+    private long logBytesSinceSnapshot; // Bytes in all logs the snapshot does not cover yet
+    private int logFilesSinceSnapshot;
+    private boolean dirty; // Written since the last force()
+    private int nextId = 1; // IDs are never reused, even after a delete
+    private boolean closed;
+    private boolean failed; // The log could not be written safely; no further writes are accepted
+
+    private volatile int batchSize = DEFAULT_BATCH_SIZE;
+
+    public FileContactRepository(Path directory) {
+        this(directory, false);
+    }
+
+    /**
+     * Opens (or creates) a contact directory and loads its contents into memory.
+     * @param directory The directory holding the snapshot and logs. It is created if it does not exist.
+     * @param syncEveryWrite true to force every write to disk before returning; false to force once a second.
+     * @throws RuntimeException if the directory cannot be read, or is already open in another process.
+     */
+    public FileContactRepository(Path directory, boolean syncEveryWrite) {
+        this.directory = directory;
+        this.syncEveryWrite = syncEveryWrite;
+        FileChannel lockFile = null;
+        try {
+            Files.createDirectories(directory);
+            lockFile = FileChannel.open(directory.resolve(LOCK_FILE), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            FileLock lock = lockFile.tryLock();
+            if (lock == null) {
+                throw new IOException("The directory is in use by another process.");
+            }
+            this.lockChannel = lockFile;
+            this.directoryLock = lock;
+            recover();
+        } catch (IOException | OverlappingFileLockException e) {
+            Log.error("FileContactRepository: Could not open " + directory + ": " + e.getMessage(), e);
+            closeQuietly(lockFile);
+            throw new RuntimeException("Failed to open contact directory " + directory, e);
+        }
+
+        this.housekeeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "FileContactRepository-housekeeper");
+            t.setDaemon(true);
+            return t;
+        });
+        housekeeper.scheduleWithFixedDelay(this::housekeep, FLUSH_INTERVAL_MS, FLUSH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        Log.info("FileContactRepository: Opened " + directory + " with " + contacts.size() + " contacts.");
+    }
+
+    /**
+     * @return The directory this repository stores its files in.
+     */
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Stops the background thread, forces the log to disk and releases the directory.
+     */
+    @Override
+    public void close() {
+        housekeeper.shutdown();
+        try {
+            housekeeper.awaitTermination(30, TimeUnit.SECONDS); // Let a running compaction finish
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        writeLock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (log.isOpen()) {
+                log.force(false);
+                log.close();
+            }
+            directoryLock.release();
+            lockChannel.close();
+            Log.info("FileContactRepository: Closed " + directory + ".");
+        } catch (IOException e) {
+            Log.error("FileContactRepository: Error closing " + directory + ": " + e.getMessage(), e);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    @Override
+    public void setBatchSize(int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be at least 1: " + batchSize);
+        }
+        this.batchSize = batchSize;
+    }
+
+    // --- Reads, served from memory. Callers get copies, so they can never change the stored contacts. ---
+
+    @Override
+    public List<Contact> getAllContacts() {
+        List<Contact> all = new ArrayList<>(contacts.size());
+        for (Contact contact : contacts.values()) {
+            all.add(copyOf(contact));
+        }
+        return all;
+    }
+
+    @Override
+    public long forEachContact(Consumer<Contact> action) {
+        long count = 0;
+        for (Contact contact : contacts.values()) {
+            action.accept(copyOf(contact));
+            count++;
+        }
+        return count;
+    }
+
+    @Override
+    public long forEachContactInRange(int fromId, int toId, Consumer<Contact> action) {
+        if (fromId > toId) {
+            return 0;
+        }
+        long count = 0;
+        for (Contact contact : contacts.subMap(fromId, true, toId, true).values()) {
+            action.accept(copyOf(contact));
+            count++;
+        }
+        return count;
+    }
+
+    @Override
+    public int[] getIdRange() {
+        Map.Entry<Integer, Contact> first = contacts.firstEntry();
+        Map.Entry<Integer, Contact> last = contacts.lastEntry();
+        return first == null || last == null ? new int[0] : new int[]{first.getKey(), last.getKey()};
+    }
+
+    /**
+     * Reads never lock the map, so every core can read a range at the same time.
+     */
+    @Override
+    public int getMaxConcurrency() {
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    @Override
+    public List<Contact> getContacts(int afterId, int limit) {
+        List<Contact> page = new ArrayList<>(Math.min(limit, 10_000));
+        for (Contact contact : contacts.tailMap(afterId, false).values()) {
+            if (page.size() >= limit) {
+                break;
+            }
+            page.add(copyOf(contact));
+        }
+        return page;
+    }
+
+    @Override
+    public Contact getContact(int contactId) {
+        Contact contact = contacts.get(contactId);
+        return contact != null ? copyOf(contact) : null;
+    }
+
+    @Override
+    public int getContactCount() {
+        return contacts.size();
+    }
+
+    /**
+     * Walks the map up to the offset, so the cost grows with the offset, as with OFFSET in SQL.
+     */
+    @Override
+    public List<Contact> getContactsAt(int offset, int limit) {
+        List<Contact> page = new ArrayList<>(Math.min(limit, 10_000));
+        int position = 0;
+        for (Contact contact : contacts.values()) {
+            if (page.size() >= limit) {
+                break;
+            }
+            if (position++ >= offset) {
+                page.add(copyOf(contact));
+            }
+        }
+        return page;
+    }
+
+    /**
+     * Every contact is in memory already, so the page is cut from a sort of all of them, compared like the
+     * default MySQL collation: ignoring case and accents.
+     */
+    @Override
+    public List<Contact> getContactsSortedAt(SortColumn column, int offset, int limit) {
+        Collator collator = Collator.getInstance();
+        collator.setStrength(Collator.PRIMARY);
+        List<Contact> sorted = new ArrayList<>(contacts.values());
+        Comparator<Contact> order = Comparator.comparing((Contact contact) -> sortValue(column, contact),
+                Comparator.nullsLast(collator::compare));
+        sorted.sort(order.thenComparingInt(Contact::getId));
+        List<Contact> page = new ArrayList<>(Math.min(limit, 10_000));
+        for (int i = offset; i < sorted.size() && page.size() < limit; i++) {
+            page.add(copyOf(sorted.get(i)));
+        }
+        return page;
+    }
+
+    private static String sortValue(SortColumn column, Contact contact) {
+        String value = column == SortColumn.NAME ? contact.getName() : contact.getEmail();
+        return value == null || value.isEmpty() ? null : value;
+    }
+
+    // --- Writes. Each one appends to the log first and changes the map only once the append succeeded. ---
+
+    @Override
+    public boolean addContact(Contact contact) {
+        writeLock.lock();
+        try {
+            Contact stored = new Contact(nextId, contact.getName(), contact.getPhone(), contact.getEmail(), 1);
+            buffer.clear();
+            encodePut(stored);
+            if (!appendBuffer("adding contact")) {
+                return false;
+            }
+            nextId++;
+            contacts.put(stored.getId(), stored);
+            contact.setId(stored.getId());
+            contact.setVersion(stored.getVersion());
+            return true;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public boolean updateContact(Contact contact) {
+        writeLock.lock();
+        try {
+            Contact existing = contacts.get(contact.getId());
+            if (existing == null) {
+                Log.debug(() -> "FileContactRepository: No contact found for update with ID: " + contact.getId());
+                return false;
+            }
+            Contact stored = new Contact(contact.getId(), contact.getName(), contact.getPhone(), contact.getEmail(),
+                    existing.getVersion() + 1);
+            buffer.clear();
+            encodePut(stored);
+            if (!appendBuffer("updating contact")) {
+                return false;
+            }
+            contacts.put(stored.getId(), stored);
+            return true;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public int updateContactIfVersion(Contact contact, long expectedVersion) {
+        writeLock.lock();
+        try {
+            Contact existing = contacts.get(contact.getId());
+            if (existing == null || existing.getVersion() != expectedVersion) {
+                Log.debug(() -> "FileContactRepository: Contact " + contact.getId() + " is no longer at version " + expectedVersion + ", not updated.");
+                return 0;
+            }
+            Contact stored = new Contact(contact.getId(), contact.getName(), contact.getPhone(), contact.getEmail(),
+                    expectedVersion + 1);
+            buffer.clear();
+            encodePut(stored);
+            if (!appendBuffer("updating contact")) {
+                return -1;
+            }
+            contacts.put(stored.getId(), stored);
+            return 1;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public boolean deleteContact(int contactId) {
+        writeLock.lock();
+        try {
+            if (!contacts.containsKey(contactId)) {
+                Log.debug(() -> "FileContactRepository: No contact found for deletion with ID: " + contactId);
+                return false;
+            }
+            buffer.clear();
+            encodeDelete(contactId);
+            if (!appendBuffer("deleting contact")) {
+                return false;
+            }
+            contacts.remove(contactId);
+            return true;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public int deleteContactIfVersion(int contactId, long expectedVersion) {
+        writeLock.lock();
+        try {
+            Contact existing = contacts.get(contactId);
+            if (existing == null || existing.getVersion() != expectedVersion) {
+                Log.debug(() -> "FileContactRepository: Contact " + contactId + " is no longer at version " + expectedVersion + ", not deleted.");
+                return 0;
+            }
+            buffer.clear();
+            encodeDelete(contactId);
+            if (!appendBuffer("deleting contact")) {
+                return -1;
+            }
+            contacts.remove(contactId);
+            return 1;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public boolean restoreContact(Contact contact) {
+        writeLock.lock();
+        try {
+            if (contacts.containsKey(contact.getId())) {
+                Log.debug(() -> "FileContactRepository: ID " + contact.getId() + " is in use, contact not restored.");
+                return false;
+            }
+            Contact stored = copyOf(contact);
+            buffer.clear();
+            encodePut(stored);
+            if (!appendBuffer("restoring contact")) {
+                return false;
+            }
+            contacts.put(stored.getId(), stored);
+            nextId = Math.max(nextId, stored.getId() + 1);
+            return true;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Each chunk of getBatchSize() contacts is appended with a single write, so it is stored as a whole or not at all.
+     */
+    @Override
+    public boolean[] addContacts(List<Contact> contactsToAdd) {
+        boolean[] added = new boolean[contactsToAdd.size()];
+        int chunkSize = batchSize;
+        for (int from = 0; from < contactsToAdd.size(); from += chunkSize) {
+            int to = Math.min(from + chunkSize, contactsToAdd.size());
+            writeLock.lock();
+            try {
+                Contact[] stored = new Contact[to - from];
+                buffer.clear();
+                for (int i = from; i < to; i++) {
+                    Contact contact = contactsToAdd.get(i);
+                    stored[i - from] = new Contact(nextId + i - from, contact.getName(), contact.getPhone(), contact.getEmail(), 1);
+                    encodePut(stored[i - from]);
+                }
+                if (!appendBuffer("adding contacts " + from + " to " + (to - 1))) {
+                    continue;
+                }
+                nextId += to - from;
+                for (int i = from; i < to; i++) {
+                    Contact contact = stored[i - from];
+                    contacts.put(contact.getId(), contact);
+                    contactsToAdd.get(i).setId(contact.getId());
+                    contactsToAdd.get(i).setVersion(contact.getVersion());
+                    added[i] = true;
+                }
+            } finally {
+                writeLock.unlock();
+            }
+        }
+        return added;
+    }
+
+    @Override
+    public boolean[] updateContacts(List<Contact> contactsToUpdate) {
+        boolean[] updated = new boolean[contactsToUpdate.size()];
+        int chunkSize = batchSize;
+        for (int from = 0; from < contactsToUpdate.size(); from += chunkSize) {
+            int to = Math.min(from + chunkSize, contactsToUpdate.size());
+            writeLock.lock();
+            try {
+                List<Contact> stored = new ArrayList<>(to - from);
+                buffer.clear();
+                for (int i = from; i < to; i++) {
+                    Contact contact = contactsToUpdate.get(i);
+                    Contact existing = contacts.get(contact.getId());
+                    if (existing == null) {
+                        continue;
+                    }
+                    // The same ID may appear twice in one chunk; the later entry must build on the earlier one
+                    Contact previous = findLast(stored, contact.getId());
+                    long version = (previous != null ? previous.getVersion() : existing.getVersion()) + 1;
+                    Contact next = new Contact(contact.getId(), contact.getName(), contact.getPhone(), contact.getEmail(), version);
+                    stored.add(next);
+                    encodePut(next);
+                    updated[i] = true;
+                }
+                if (stored.isEmpty()) {
+                    continue;
+                }
+                if (!appendBuffer("updating contacts " + from + " to " + (to - 1))) {
+                    Arrays.fill(updated, from, to, false);
+                    continue;
+                }
+                for (Contact contact : stored) {
+                    contacts.put(contact.getId(), contact);
+                }
+            } finally {
+                writeLock.unlock();
+            }
+        }
+        return updated;
+    }
+
+    @Override
+    public int[] updateContactsIfVersion(List<Contact> contactsToUpdate) {
+        int[] results = new int[contactsToUpdate.size()];
+        int chunkSize = batchSize;
+        for (int from = 0; from < contactsToUpdate.size(); from += chunkSize) {
+            int to = Math.min(from + chunkSize, contactsToUpdate.size());
+            writeLock.lock();
+            try {
+                List<Contact> stored = new ArrayList<>(to - from);
+                buffer.clear();
+                for (int i = from; i < to; i++) {
+                    Contact contact = contactsToUpdate.get(i);
+                    // The same ID may appear twice in one chunk; the later entry is checked against the earlier one
+                    Contact previous = findLast(stored, contact.getId());
+                    Contact existing = previous != null ? previous : contacts.get(contact.getId());
+                    if (existing == null || existing.getVersion() != contact.getVersion()) {
+                        continue;
+                    }
+                    Contact next = new Contact(contact.getId(), contact.getName(), contact.getPhone(), contact.getEmail(),
+                            existing.getVersion() + 1);
+                    stored.add(next);
+                    encodePut(next);
+                    results[i] = 1;
+                }
+                if (stored.isEmpty()) {
+                    continue;
+                }
+                if (!appendBuffer("updating contacts " + from + " to " + (to - 1))) {
+                    for (int i = from; i < to; i++) {
+                        results[i] = results[i] > 0 ? -1 : results[i];
+                    }
+                    continue;
+                }
+                for (Contact contact : stored) {
+                    contacts.put(contact.getId(), contact);
+                }
+                for (int i = from; i < to; i++) {
+                    if (results[i] > 0) {
+                        contactsToUpdate.get(i).setVersion(contactsToUpdate.get(i).getVersion() + 1);
+                    }
+                }
+            } finally {
+                writeLock.unlock();
+            }
+        }
+        return results;
+    }
+
+    @Override
+    public boolean[] deleteContacts(int[] contactIds) {
+        boolean[] deleted = new boolean[contactIds.length];
+        int chunkSize = batchSize;
+        for (int from = 0; from < contactIds.length; from += chunkSize) {
+            int to = Math.min(from + chunkSize, contactIds.length);
+            writeLock.lock();
+            try {
+                Set<Integer> ids = new LinkedHashSet<>();
+                buffer.clear();
+                for (int i = from; i < to; i++) {
+                    int id = contactIds[i];
+                    if (contacts.containsKey(id) && ids.add(id)) {
+                        encodeDelete(id);
+                        deleted[i] = true;
+                    }
+                }
+                if (ids.isEmpty()) {
+                    continue;
+                }
+                if (!appendBuffer("deleting contacts " + from + " to " + (to - 1))) {
+                    Arrays.fill(deleted, from, to, false);
+                    continue;
+                }
+                for (int id : ids) {
+                    contacts.remove(id);
+                }
+            } finally {
+                writeLock.unlock();
+            }
+        }
+        return deleted;
+    }
+
+    // --- Change tracking. The directory lock guarantees this process is the only writer,
+    //     so there are never changes made by anyone else to report. ---
+
+    @Override
+    public Timestamp getDatabaseTime() {
+        return new Timestamp(System.currentTimeMillis());
+    }
+
+    @Override
+    public List<Contact> getContactsChangedSince(Timestamp since) {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public int[] getDeletedIdsSince(Timestamp since) {
+        return new int[0];
+    }
+
+    @Override
+    public int purgeTombstones(Timestamp olderThan) {
+        return 0;
+    }
+
+    // --- Log writing ---
+
+    private void encodePut(Contact contact) {
+        byte[] name = toBytes(contact.getName());
+        byte[] phone = toBytes(contact.getPhone());
+        byte[] email = toBytes(contact.getEmail());
+        int length = 1 + 4 + 8 + 3 * 4 + byteLength(name) + byteLength(phone) + byteLength(email);
+        int start = beginRecord(length);
+        buffer.put(OP_PUT).putInt(contact.getId()).putLong(contact.getVersion());
+        putBytes(buffer, name);
+        putBytes(buffer, phone);
+        putBytes(buffer, email);
+        endRecord(start, length);
+    }
+
+    private void encodeDelete(int contactId) {
+        int length = 1 + 4;
+        int start = beginRecord(length);
+        buffer.put(OP_DELETE).putInt(contactId);
+        endRecord(start, length);
+    }
+
+    private int beginRecord(int payloadLength) {
+        int needed = RECORD_HEADER_BYTES + payloadLength;
+        if (buffer.remaining() < needed) {
+            ByteBuffer larger = ByteBuffer.allocateDirect(Math.max(buffer.capacity() * 2, buffer.position() + needed));
+            buffer.flip();
+            larger.put(buffer);
+            buffer = larger;
+        }
+        int start = buffer.position();
+        buffer.putInt(payloadLength).putInt(0); // The checksum is filled in by endRecord()
+        return start;
+    }
+
+    private void endRecord(int start, int payloadLength) {
+        checksum.reset();
+        checksum.update(buffer.slice(start + RECORD_HEADER_BYTES, payloadLength));
+        buffer.putInt(start + 4, (int) checksum.getValue());
+    }
+
+    /**
+     * Appends the encoded records in the buffer to the log. If the write fails, the log is cut back to where
+     * it was, so a half-written record can never hide records written after it.
+     * Must be called with the write lock held.
+     * @return true if the records were appended.
+     */
+    private boolean appendBuffer(String action) {
+        if (closed || failed) {
+            Log.error("FileContactRepository: Error " + action + ": the repository is "
+                    + (closed ? "closed." : "read-only after an earlier write failure."));
+            buffer.clear();
+            return false;
+        }
+        buffer.flip();
+        int length = buffer.remaining();
+        long start = -1;
+        try {
+            start = log.position();
+            while (buffer.hasRemaining()) {
+                log.write(buffer);
+            }
+            if (syncEveryWrite) {
+                log.force(false);
+            } else {
+                dirty = true;
+            }
+            logBytesSinceSnapshot += length;
+            return true;
+        } catch (IOException e) {
+            Log.error("FileContactRepository: Error " + action + ": " + e.getMessage(), e);
+            if (start >= 0) {
+                try {
+                    log.truncate(start);
+                    log.position(start);
+                } catch (IOException truncateError) {
+                    // The log may now end in a torn record; stop writing rather than risk losing later changes
+                    Log.error("FileContactRepository: Could not repair the log, no further writes are accepted.");
+                    failed = true;
+                }
+            }
+            return false;
+        } finally {
+            buffer.clear();
+        }
+    }
+
+    // --- Background flushing and compaction ---
+
+    private void housekeep() {
+        long generation;
+        int snapshotNextId;
+        FileChannel toForce;
+        writeLock.lock();
+        try {
+            if (closed || failed) {
+                return;
+            }
+            toForce = dirty ? log : null;
+            dirty = false;
+            boolean compact = logBytesSinceSnapshot >= COMPACT_THRESHOLD_BYTES || logFilesSinceSnapshot > COMPACT_THRESHOLD_FILES;
+            if (!compact) {
+                generation = -1;
+                snapshotNextId = 0;
+            } else {
+                // Start a new log: the snapshot will cover everything written to the older ones
+                log.force(false);
+                log.close();
+                toForce = null;
+                generation = logGeneration + 1;
+                log = openLog(generation);
+                logGeneration = generation;
+                logBytesSinceSnapshot = 0;
+                logFilesSinceSnapshot = 1;
+                snapshotNextId = nextId;
+            }
+        } catch (IOException e) {
+            Log.error("FileContactRepository: Could not switch to a new log: " + e.getMessage(), e);
+            failed = true; // Without a log there is nowhere safe to write
+            return;
+        } finally {
+            writeLock.unlock();
+        }
+
+        try {
+            // Forcing outside the lock keeps writers from waiting on the disk
+            if (toForce != null) {
+                toForce.force(false);
+            }
+            if (generation >= 0) {
+                long started = System.nanoTime();
+                int written = writeSnapshot(generation, snapshotNextId);
+                deleteLogsBefore(generation);
+                Log.info("FileContactRepository: Compacted " + written + " contacts into a snapshot in "
+                        + (System.nanoTime() - started) / 1_000_000 + " ms.");
+            }
+        } catch (IOException e) {
+            Log.error("FileContactRepository: Background flush or compaction failed: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Writes every contact into a new snapshot file and atomically replaces the old snapshot with it.
+     * The map is read while writers carry on; anything that changes meanwhile is also in the new log,
+     * whose replay brings the snapshot up to date.
+     * @return The number of contacts written.
+     */
+    private int writeSnapshot(long firstUncoveredLog, int snapshotNextId) throws IOException {
+        Path target = directory.resolve(SNAPSHOT_FILE);
+        Path temp = directory.resolve(SNAPSHOT_FILE + ".tmp");
+        CRC32C crc = new CRC32C();
+        int count = 0;
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            DataOutputStream out = new DataOutputStream(new CheckedOutputStream(
+                    new BufferedOutputStream(Channels.newOutputStream(channel), 256 * 1024), crc));
+            // Layout: magic, first log not covered, next ID, records (each after a marker byte), end marker, CRC32C
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeLong(firstUncoveredLog);
+            out.writeInt(snapshotNextId);
+            for (Contact contact : contacts.values()) {
+                out.writeByte(SNAPSHOT_RECORD);
+                out.writeInt(contact.getId());
+                out.writeLong(contact.getVersion());
+                writeBytes(out, toBytes(contact.getName()));
+                writeBytes(out, toBytes(contact.getPhone()));
+                writeBytes(out, toBytes(contact.getEmail()));
+                count++;
+            }
+            out.writeByte(SNAPSHOT_END);
+            out.writeInt((int) crc.getValue());
+            out.flush();
+            channel.force(true);
+        }
+        Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        return count;
+    }
+
+    // --- Recovery ---
+
+    /**
+     * Loads the snapshot, replays the logs it does not cover, and starts a fresh log.
+     * A fresh log is used on every start, so a record torn by a crash stays at the end of an old log,
+     * where replay stops cleanly, and is never followed by new records.
+     */
+    private void recover() throws IOException {
+        long firstLog = 0;
+        Path snapshot = directory.resolve(SNAPSHOT_FILE);
+        if (Files.exists(snapshot)) {
+            firstLog = readSnapshot(snapshot);
+        }
+        long lastLog = firstLog - 1;
+        for (long generation : listLogGenerations()) {
+            if (generation < firstLog) {
+                Files.deleteIfExists(logPath(generation)); // Left behind by a compaction that was interrupted
+                continue;
+            }
+            logBytesSinceSnapshot += replayLog(logPath(generation));
+            logFilesSinceSnapshot++;
+            lastLog = generation;
+        }
+        logGeneration = Math.max(firstLog, lastLog + 1);
+        log = openLog(logGeneration);
+        logFilesSinceSnapshot++;
+    }
+
+    /**
+     * @return The generation of the first log the snapshot does not cover.
+     */
+    private long readSnapshot(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer map = mapReadOnly(channel, path);
+            int size = map.limit();
+            if (size < 4 + 8 + 4 + 1 + 4) {
+                throw new IOException("Snapshot " + path + " is truncated.");
+            }
+            CRC32C crc = new CRC32C();
+            crc.update(map.slice(0, size - 4));
+            if ((int) crc.getValue() != map.getInt(size - 4)) {
+                throw new IOException("Snapshot " + path + " is corrupt (checksum mismatch).");
+            }
+            if (map.getInt() != SNAPSHOT_MAGIC) {
+                throw new IOException(path + " is not a contact snapshot.");
+            }
+            long firstUncoveredLog = map.getLong();
+            nextId = map.getInt();
+            while (map.get() == SNAPSHOT_RECORD) {
+                Contact contact = readContact(map);
+                contacts.put(contact.getId(), contact);
+                nextId = Math.max(nextId, contact.getId() + 1);
+            }
+            return firstUncoveredLog;
+        }
+    }
+
+    /**
+     * Applies every intact record of a log, stopping at the first torn or corrupt one.
+     * @return The number of bytes replayed.
+     */
+    private long replayLog(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer map = mapReadOnly(channel, path);
+            int size = map.limit();
+            int position = 0;
+            CRC32C crc = new CRC32C();
+            while (size - position >= RECORD_HEADER_BYTES) {
+                int length = map.getInt(position);
+                if (length <= 0 || length > size - position - RECORD_HEADER_BYTES) {
+                    break;
+                }
+                ByteBuffer payload = map.slice(position + RECORD_HEADER_BYTES, length);
+                crc.reset();
+                crc.update(payload.duplicate());
+                if ((int) crc.getValue() != map.getInt(position + 4)) {
+                    break;
+                }
+                applyRecord(payload);
+                position += RECORD_HEADER_BYTES + length;
+            }
+            if (position < size) {
+                Log.warn("FileContactRepository: Ignoring " + (size - position)
+                        + " bytes of incomplete log data at the end of " + path + ".");
+            }
+            return position;
+        }
+    }
+
+    private void applyRecord(ByteBuffer payload) throws IOException {
+        byte op = payload.get();
+        if (op == OP_PUT) {
+            Contact contact = readContact(payload);
+            contacts.put(contact.getId(), contact);
+            nextId = Math.max(nextId, contact.getId() + 1);
+        } else if (op == OP_DELETE) {
+            int id = payload.getInt();
+            contacts.remove(id);
+            nextId = Math.max(nextId, id + 1);
+        } else {
+            throw new IOException("Unknown log record type " + op);
+        }
+    }
+
+    private List<Long> listLogGenerations() throws IOException {
+        List<Long> generations = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, LOG_PREFIX + "*" + LOG_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                try {
+                    generations.add(Long.parseLong(name.substring(LOG_PREFIX.length(), name.length() - LOG_SUFFIX.length())));
+                } catch (NumberFormatException e) {
+                    Log.warn("FileContactRepository: Ignoring unexpected file " + file);
+                }
+            }
+        }
+        Collections.sort(generations);
+        return generations;
+    }
+
+    private void deleteLogsBefore(long generation) throws IOException {
+        for (long older : listLogGenerations()) {
+            if (older < generation) {
+                Files.deleteIfExists(logPath(older));
+            }
+        }
+    }
+
+    private FileChannel openLog(long generation) throws IOException {
+        FileChannel channel = FileChannel.open(logPath(generation), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        channel.position(channel.size());
+        return channel;
+    }
+
+    private Path logPath(long generation) {
+        return directory.resolve(LOG_PREFIX + generation + LOG_SUFFIX);
+    }
+
+    // --- Encoding helpers. Strings are stored as [length][UTF-8 bytes], with length -1 for null. ---
+
+    private static MappedByteBuffer mapReadOnly(FileChannel channel, Path path) throws IOException {
+        long size = channel.size();
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException(path + " is too large to map (" + size + " bytes).");
+        }
+        return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+    }
+
+    private static Contact readContact(ByteBuffer in) {
+        int id = in.getInt();
+        long version = in.getLong();
+        String name = readString(in);
+        String phone = readString(in);
+        String email = readString(in);
+        return new Contact(id, name, phone, email, version);
+    }
+
+    private static String readString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static byte[] toBytes(String value) {
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int byteLength(byte[] bytes) {
+        return bytes == null ? 0 : bytes.length;
+    }
+
+    private static void putBytes(ByteBuffer out, byte[] bytes) {
+        if (bytes == null) {
+            out.putInt(-1);
+        } else {
+            out.putInt(bytes.length).put(bytes);
+        }
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        if (bytes == null) {
+            out.writeInt(-1);
+        } else {
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private static Contact copyOf(Contact contact) {
+        return new Contact(contact.getId(), contact.getName(), contact.getPhone(), contact.getEmail(), contact.getVersion());
+    }
+
+    private static Contact findLast(List<Contact> list, int id) {
+        for (int i = list.size() - 1; i >= 0; i--) {
+            if (list.get(i).getId() == id) {
+                return list.get(i);
+            }
+        }
+        return null;
+    }
+
+    private static void closeQuietly(FileChannel channel) {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // Already failing; nothing more to do
+            }
+        }
+    }}
@@ -0,0 +1,300 @@
+package com.contactbook.database;
+
+import com.contactbook.model.Contact;
+import com.contactbook.monitoring.Histogram;
+import com.contactbook.monitoring.Metrics;
+import com.contactbook.monitoring.Timer;
+
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * A ContactRepository that times every call to another one and records the outcome in Metrics,
+ * as "repository.&lt;method&gt;" timers. A call counts as failed when it returns what the interface
+ * documents for an error (false, null or -1); bulk calls count every row that failed. Rows read by full
+ * loads and by change polls also go into the "repository.rowsLoaded" and "repository.rowsChanged" histograms.
+ *
+ * ContactService wraps whatever repository it is given in one of these, so both backends are measured
+ * the same way without any timing code in them.
+ */
+public final class MeteredContactRepository implements ContactRepository {
+
+    private static final Timer ADD = Metrics.timer("repository.addContact");
+    private static final Timer GET_ALL = Metrics.timer("repository.getAllContacts");
+    private static final Timer FOR_EACH = Metrics.timer("repository.forEachContact");
+    private static final Timer FOR_EACH_IN_RANGE = Metrics.timer("repository.forEachContactInRange");
+    private static final Timer ID_RANGE = Metrics.timer("repository.getIdRange");
+    private static final Timer GET_PAGE = Metrics.timer("repository.getContacts");
+    private static final Timer GET_ONE = Metrics.timer("repository.getContact");
+    private static final Timer COUNT = Metrics.timer("repository.getContactCount");
+    private static final Timer GET_PAGE_AT = Metrics.timer("repository.getContactsAt");
+    private static final Timer GET_SORTED_PAGE_AT = Metrics.timer("repository.getContactsSortedAt");
+    private static final Timer UPDATE = Metrics.timer("repository.updateContact");
+    private static final Timer UPDATE_IF_VERSION = Metrics.timer("repository.updateContactIfVersion");
+    private static final Timer DELETE = Metrics.timer("repository.deleteContact");
+    private static final Timer DELETE_IF_VERSION = Metrics.timer("repository.deleteContactIfVersion");
+    private static final Timer RESTORE = Metrics.timer("repository.restoreContact");
+    private static final Timer ADD_BATCH = Metrics.timer("repository.addContacts");
+    private static final Timer UPDATE_BATCH = Metrics.timer("repository.updateContacts");
+    private static final Timer UPDATE_BATCH_IF_VERSION = Metrics.timer("repository.updateContactsIfVersion");
+    private static final Timer DELETE_BATCH = Metrics.timer("repository.deleteContacts");
+    private static final Timer DATABASE_TIME = Metrics.timer("repository.getDatabaseTime");
+    private static final Timer CHANGED_SINCE = Metrics.timer("repository.getContactsChangedSince");
+    private static final Timer DELETED_SINCE = Metrics.timer("repository.getDeletedIdsSince");
+    private static final Timer PURGE = Metrics.timer("repository.purgeTombstones");
+    private static final Histogram ROWS_LOADED = Metrics.histogram("repository.rowsLoaded");
+    private static final Histogram ROWS_CHANGED = Metrics.histogram("repository.rowsChanged");
+
+    private final ContactRepository delegate;
+
+    private MeteredContactRepository(ContactRepository delegate) {
+        this.delegate = delegate;
+    }
+
+    /**
+     * @return The repository with metering added, or the repository itself if it is already metered.
+     */
+    public static ContactRepository wrap(ContactRepository repository) {
+        return repository instanceof MeteredContactRepository ? repository : new MeteredContactRepository(repository);
+    }
+
+    /**
+     * @return The repository doing the actual work.
+     */
+    public ContactRepository getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public boolean addContact(Contact contact) {
+        long started = System.nanoTime();
+        boolean added = delegate.addContact(contact);
+        ADD.record(started, added);
+        return added;
+    }
+
+    @Override
+    public List<Contact> getAllContacts() {
+        long started = System.nanoTime();
+        List<Contact> contacts = delegate.getAllContacts();
+        GET_ALL.record(started, true); // An error looks like an empty table here
+        ROWS_LOADED.record(contacts.size());
+        return contacts;
+    }
+
+    @Override
+    public long forEachContact(Consumer<Contact> action) {
+        long started = System.nanoTime();
+        long count = delegate.forEachContact(action);
+        FOR_EACH.record(started, count >= 0);
+        if (count >= 0) {
+            ROWS_LOADED.record(count);
+        }
+        return count;
+    }
+
+    /**
+     * Shards of a parallel load are timed one by one, so a skewed ID range shows up as a long tail.
+     */
+    @Override
+    public long forEachContactInRange(int fromId, int toId, Consumer<Contact> action) {
+        long started = System.nanoTime();
+        long count = delegate.forEachContactInRange(fromId, toId, action);
+        FOR_EACH_IN_RANGE.record(started, count >= 0);
+        return count;
+    }
+
+    @Override
+    public int[] getIdRange() {
+        long started = System.nanoTime();
+        int[] range = delegate.getIdRange();
+        ID_RANGE.record(started, range != null);
+        return range;
+    }
+
+    @Override
+    public int getMaxConcurrency() {
+        return delegate.getMaxConcurrency();
+    }
+
+    @Override
+    public List<Contact> getContacts(int afterId, int limit) {
+        long started = System.nanoTime();
+        List<Contact> page = delegate.getContacts(afterId, limit);
+        GET_PAGE.record(started, page != null);
+        return page;
+    }
+
+    @Override
+    public Contact getContact(int contactId) {
+        long started = System.nanoTime();
+        Contact contact = delegate.getContact(contactId);
+        GET_ONE.record(started, true); // null is also the answer for an unknown ID
+        return contact;
+    }
+
+    @Override
+    public int getContactCount() {
+        long started = System.nanoTime();
+        int count = delegate.getContactCount();
+        COUNT.record(started, count >= 0);
+        return count;
+    }
+
+    @Override
+    public List<Contact> getContactsAt(int offset, int limit) {
+        long started = System.nanoTime();
+        List<Contact> page = delegate.getContactsAt(offset, limit);
+        GET_PAGE_AT.record(started, page != null);
+        return page;
+    }
+
+    @Override
+    public List<Contact> getContactsSortedAt(SortColumn column, int offset, int limit) {
+        long started = System.nanoTime();
+        List<Contact> page = delegate.getContactsSortedAt(column, offset, limit);
+        GET_SORTED_PAGE_AT.record(started, page != null);
+        return page;
+    }
+
+    @Override
+    public boolean updateContact(Contact contact) {
+        long started = System.nanoTime();
+        boolean updated = delegate.updateContact(contact);
+        UPDATE.record(started, updated);
+        return updated;
+    }
+
+    @Override
+    public int updateContactIfVersion(Contact contact, long expectedVersion) {
+        long started = System.nanoTime();
+        int result = delegate.updateContactIfVersion(contact, expectedVersion);
+        UPDATE_IF_VERSION.record(started, result >= 0); // A version mismatch is an answer, not a failure
+        return result;
+    }
+
+    @Override
+    public boolean deleteContact(int contactId) {
+        long started = System.nanoTime();
+        boolean deleted = delegate.deleteContact(contactId);
+        DELETE.record(started, deleted);
+        return deleted;
+    }
+
+    @Override
+    public int deleteContactIfVersion(int contactId, long expectedVersion) {
+        long started = System.nanoTime();
+        int result = delegate.deleteContactIfVersion(contactId, expectedVersion);
+        DELETE_IF_VERSION.record(started, result >= 0);
+        return result;
+    }
+
+    @Override
+    public boolean restoreContact(Contact contact) {
+        long started = System.nanoTime();
+        boolean restored = delegate.restoreContact(contact);
+        RESTORE.record(started, restored);
+        return restored;
+    }
+
+    @Override
+    public boolean[] addContacts(List<Contact> contacts) {
+        long started = System.nanoTime();
+        boolean[] added = delegate.addContacts(contacts);
+        ADD_BATCH.record(started, allTrue(added));
+        return added;
+    }
+
+    @Override
+    public boolean[] updateContacts(List<Contact> contacts) {
+        long started = System.nanoTime();
+        boolean[] updated = delegate.updateContacts(contacts);
+        UPDATE_BATCH.record(started, allTrue(updated));
+        return updated;
+    }
+
+    @Override
+    public int[] updateContactsIfVersion(List<Contact> contacts) {
+        long started = System.nanoTime();
+        int[] results = delegate.updateContactsIfVersion(contacts);
+        UPDATE_BATCH_IF_VERSION.record(started, noErrors(results)); // Version mismatches are answers, not failures
+        return results;
+    }
+
+    @Override
+    public boolean[] deleteContacts(int[] contactIds) {
+        long started = System.nanoTime();
+        boolean[] deleted = delegate.deleteContacts(contactIds);
+        DELETE_BATCH.record(started, allTrue(deleted));
+        return deleted;
+    }
+
+    @Override
+    public int getBatchSize() {
+        return delegate.getBatchSize();
+    }
+
+    @Override
+    public void setBatchSize(int batchSize) {
+        delegate.setBatchSize(batchSize);
+    }
+
+    @Override
+    public Timestamp getDatabaseTime() {
+        long started = System.nanoTime();
+        Timestamp time = delegate.getDatabaseTime();
+        DATABASE_TIME.record(started, time != null);
+        return time;
+    }
+
+    @Override
+    public List<Contact> getContactsChangedSince(Timestamp since) {
+        long started = System.nanoTime();
+        List<Contact> changed = delegate.getContactsChangedSince(since);
+        CHANGED_SINCE.record(started, changed != null);
+        if (changed != null) {
+            ROWS_CHANGED.record(changed.size());
+        }
+        return changed;
+    }
+
+    @Override
+    public int[] getDeletedIdsSince(Timestamp since) {
+        long started = System.nanoTime();
+        int[] deleted = delegate.getDeletedIdsSince(since);
+        DELETED_SINCE.record(started, deleted != null);
+        return deleted;
+    }
+
+    @Override
+    public int purgeTombstones(Timestamp olderThan) {
+        long started = System.nanoTime();
+        int purged = delegate.purgeTombstones(olderThan);
+        PURGE.record(started, purged >= 0);
+        return purged;
+    }
+
+    @Override
+    public void close() {
+        delegate.close();
+    }
+
+    private static boolean allTrue(boolean[] results) {
+        for (boolean result : results) {
+            if (!result) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean noErrors(int[] results) {
+        for (int result : results) {
+            if (result < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,233 @@
+package com.contactbook.database;
+
+import com.contactbook.monitoring.Metrics;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The prepared statements of one pooled connection, kept open between borrows and looked up by their SQL.
+ *
+ * Without it every DatabaseManager call prepares its SQL again, and with server-side prepares that is a
+ * round trip in which MySQL parses and plans the statement once more. With it the first call on a connection
+ * prepares the statement, and every later call with the same SQL gets it back ready to run. Callers see no
+ * difference: they still call prepareStatement() and close() the statement, and close() hands it back to
+ * the cache with its parameters cleared instead of closing it.
+ *
+ * Only prepareStatement(sql) and prepareStatement(sql, autoGeneratedKeys) are cached. A statement whose
+ * settings are changed (setFetchSize(), setMaxRows() and so on) is closed for real afterwards, so the next
+ * borrower never inherits them. The least recently used statement is closed when the cache is full.
+ *
+ * A connection is only used by one borrower at a time, so the cache needs no locking.
+ */
+final class StatementCache {
+
+    private static final LongAdder HITS = Metrics.counter("statements.cacheHits");
+    private static final LongAdder MISSES = Metrics.counter("statements.cacheMisses");
+    private static final LongAdder EVICTIONS = Metrics.counter("statements.cacheEvictions");
+
+    private final Connection physical;
+    private final int maxSize;
+    private final Map<Key, Entry> entries;
+    private int checkedOut; // Entries a caller has not closed yet
+
+    /**
+     * @param physical The physical connection the statements are prepared on.
+     * @param maxSize The most statements kept open; 0 turns caching off.
+     */
+    StatementCache(Connection physical, int maxSize) {
+        this.physical = physical;
+        this.maxSize = maxSize;
+        // Access order, so iteration starts at the least recently used statement
+        this.entries = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    /**
+     * @return The total number of cache hits of every pool, i.e. the statement parses avoided.
+     */
+    static long getHitCount() {
+        return HITS.sum();
+    }
+
+    /**
+     * @return The total number of cache misses of every pool, i.e. the statements that had to be prepared.
+     */
+    static long getMissCount() {
+        return MISSES.sum();
+    }
+
+    /**
+     * Returns the cached statement for the SQL, preparing it on a miss.
+     * @param autoGeneratedKeys Statement.RETURN_GENERATED_KEYS or Statement.NO_GENERATED_KEYS.
+     */
+    PreparedStatement prepare(String sql, int autoGeneratedKeys) throws SQLException {
+        if (maxSize <= 0) {
+            return physical.prepareStatement(sql, autoGeneratedKeys);
+        }
+        Key key = new Key(sql, autoGeneratedKeys);
+        Entry entry = entries.get(key);
+        if (entry != null && !entry.inUse && !entry.statement.isClosed()) {
+            HITS.increment();
+            return entry.checkOut();
+        }
+        MISSES.increment();
+        PreparedStatement statement = physical.prepareStatement(sql, autoGeneratedKeys);
+        if (entry != null && entry.inUse) {
+            // The same SQL twice at once on one connection: the second one is used once and closed
+            return statement;
+        }
+        if (entry != null) {
+            entries.remove(key); // Closed underneath us, e.g. by a failed execute
+        }
+        evictIfFull();
+        entry = new Entry(key, statement);
+        entries.put(key, entry);
+        return entry.checkOut();
+    }
+
+    /**
+     * Hands back every statement the borrower forgot to close, so it does not stay checked out forever.
+     * Called when the connection is returned to the pool.
+     */
+    void reclaim() {
+        if (checkedOut == 0) {
+            return;
+        }
+        for (Entry entry : new ArrayList<>(entries.values())) {
+            if (entry.inUse) {
+                entry.checkIn();
+            }
+        }
+    }
+
+    private void evictIfFull() {
+        Iterator<Entry> it = entries.values().iterator();
+        while (entries.size() >= maxSize && it.hasNext()) {
+            Entry eldest = it.next();
+            if (eldest.inUse) {
+                continue; // Still being used; the next one goes instead
+            }
+            it.remove();
+            closeQuietly(eldest.statement);
+            EVICTIONS.increment();
+        }
+    }
+
+    private static void closeQuietly(Statement statement) {
+        try {
+            statement.close();
+        } catch (SQLException e) {
+            // The statement is gone either way
+        }
+    }
+
+    private record Key(String sql, int autoGeneratedKeys) {
+    }
+
+    /**
+     * One cached statement. Each checkOut() hands out a fresh proxy, so a caller that closes its statement
+     * twice, or uses it after closing it, cannot disturb the next caller.
+     */
+    private final class Entry {
+        private final Key key;
+        private final PreparedStatement statement;
+        private boolean inUse;
+        private boolean dirty; // A statement setting was changed, so it must not be reused
+        private InvocationHandler lease;
+
+        Entry(Key key, PreparedStatement statement) {
+            this.key = key;
+            this.statement = statement;
+        }
+
+        PreparedStatement checkOut() {
+            inUse = true;
+            checkedOut++;
+            InvocationHandler handler = new InvocationHandler() {
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                    String name = method.getName();
+                    if (name.equals("close")) {
+                        if (lease == this) {
+                            checkIn();
+                        }
+                        return null;
+                    }
+                    if (name.equals("isClosed")) {
+                        return lease != this || statement.isClosed();
+                    }
+                    if (lease != this) {
+                        throw new SQLException("Statement has already been closed.");
+                    }
+                    if (method.getDeclaringClass() == Statement.class && name.startsWith("set")) {
+                        dirty = true; // setFetchSize(), setMaxRows(), ... but not the parameter setters
+                    }
+                    try {
+                        return method.invoke(statement, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                }
+            };
+            lease = handler;
+            return (PreparedStatement) Proxy.newProxyInstance(StatementCache.class.getClassLoader(),
+                    new Class<?>[]{PreparedStatement.class}, handler);
+        }
+
+        void checkIn() {
+            lease = null;
+            inUse = false;
+            checkedOut--;
+            try {
+                if (!dirty && !statement.isClosed()) {
+                    // Leave it the way a fresh statement would be; an open result set would also block the connection
+                    ResultSet results = statement.getResultSet();
+                    if (results != null) {
+                        results.close();
+                    }
+                    statement.clearParameters();
+                    statement.clearBatch();
+                    return;
+                }
+            } catch (SQLException e) {
+                // Not reusable; drop it below
+            }
+            entries.remove(key);
+            closeQuietly(statement);
+        }
+    }
+
+    /**
+     * The rate of cache hits, i.e. statement parses avoided per second, over the last second or longer.
+     * Read by the statements.parsesAvoidedPerSecond gauge.
+     */
+    static final class HitRate {
+        private long lastNanos = System.nanoTime();
+        private long lastHits = getHitCount();
+        private double rate;
+
+        synchronized double perSecond() {
+            long now = System.nanoTime();
+            long elapsed = now - lastNanos;
+            if (elapsed >= 1_000_000_000L) {
+                long hits = getHitCount();
+                rate = (hits - lastHits) * 1e9 / elapsed;
+                lastHits = hits;
+                lastNanos = now;
+            }
+            return rate;
+        }
+    }
+}
@@ -1,32 +1,97 @@
 package com.contactbook.gui;
 
+import com.contactbook.io.ContactExporter;
+import com.contactbook.io.ContactFileFormat;
+import com.contactbook.io.ContactImporter;
+import com.contactbook.io.ImportResult;
 import com.contactbook.model.Contact;
+import com.contactbook.monitoring.Log;
+import com.contactbook.monitoring.Metrics;
+import com.contactbook.service.ContactChangeEvent;
 import com.contactbook.service.ContactService;
+import com.contactbook.service.ContactSortKey;
+import com.contactbook.service.UpdateResult;
 
 import javax.swing.*;
-import javax.swing.table.DefaultTableModel;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.awt.event.KeyEvent;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.List;
-import java.util.Vector; // Used by DefaultTableModel
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 
 public class ContactBookGUI extends JFrame {
 
+    private static final long SYNC_INTERVAL_MS = 3000; // How often to pick up changes made by other clients
+    // Local copy of the contacts shown instantly on the next start, while the real load runs
+    private static final Path SNAPSHOT_FILE = Paths.get(System.getProperty("user.home"), ".contactbook", "startup-snapshot.bin");
+    // Write-behind mode (-Dcontactbook.writeBehind=true): journal of changes not yet written to the database
+    private static final Path WRITE_BEHIND_JOURNAL = Paths.get(System.getProperty("user.home"), ".contactbook", "write-behind.journal");
+    private static final long WRITE_BEHIND_FLUSH_MS = 500;
+    private static final int WRITE_BEHIND_MAX_PENDING = 10_000;
+    // -Dcontactbook.metrics.dumpInterval=60 writes all metrics to the log once a minute
+    private static final String METRICS_DUMP_INTERVAL_PROPERTY = "contactbook.metrics.dumpInterval";
+
     private ContactService contactService;
 
     // GUI Components
     private JTextField nameField, phoneField, emailField;
     private JButton addButton, updateButton, deleteButton, clearButton, refreshButton;
+    private JButton importButton, exportButton;
+    private JButton undoButton, redoButton;
     private JTable contactTable;
-    private DefaultTableModel tableModel; // Using DefaultTableModel for simplicity
+    private ContactTableModel tableModel; // Virtual model reading straight from the ContactService
     private JLabel selectedContactIdLabel; // To display the ID of the selected contact
+    private transient Contact editedContact; // The selected contact as it was when selected: the base version for an update
+    private JLabel statusLabel; // Shows what is running in the background
+    private int operationsInProgress; // Background operations not yet finished (EDT only)
+
+    // Change events from the service, waiting to be applied to the table model on the EDT
+    private final ConcurrentLinkedQueue<ContactChangeEvent> pendingChanges = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean drainScheduled = new AtomicBoolean();
+    // Runs imports and exports, which block on file and database I/O, one at a time and off the common pool
+    private final transient ExecutorService fileTransfers = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "ContactBookGUI-fileTransfer");
+        t.setDaemon(true);
+        return t;
+    });
 
     public ContactBookGUI() {
-        // Initialize the ContactService, which in turn initializes DatabaseManager
-        contactService = new ContactService();
+        // Latency percentiles, pool and cache figures for jconsole / VisualVM
+        Metrics.registerMBean();
+        long dumpSeconds = Long.getLong(METRICS_DUMP_INTERVAL_PROPERTY, 0);
+        if (dumpSeconds > 0) {
+            Metrics.startPeriodicDump(dumpSeconds * 1000);
+        }
+        // Initialize the ContactService, which in turn initializes DatabaseManager.
+        // Contacts are loaded in the background below, so the window appears straight away.
+        contactService = new ContactService(false);
+        contactService.registerGauges();
+        // Show the contacts saved by the last run straight away; the load below then brings them up to date
+        contactService.useSnapshotFile(SNAPSHOT_FILE);
+        if (Boolean.getBoolean(ContactService.WRITE_BEHIND_PROPERTY)) {
+            if (contactService.isCacheMode()) {
+                Log.warn("ContactBookGUI: Write-behind is not available in cache mode, writing directly.");
+            } else {
+                // Edits return at once; the database catches up in the background
+                contactService.enableWriteBehind(WRITE_BEHIND_JOURNAL, WRITE_BEHIND_FLUSH_MS, WRITE_BEHIND_MAX_PENDING);
+            }
+        }
 
         // --- Frame Setup ---
         setTitle("Contact Book Manager");
@@ -81,26 +146,32 @@ public class ContactBookGUI extends JFrame {
         addButton = new JButton("Add Contact");
         updateButton = new JButton("Update Contact");
         deleteButton = new JButton("Delete Contact");
+        undoButton = new JButton("Undo");
+        redoButton = new JButton("Redo");
         clearButton = new JButton("Clear Fields");
         refreshButton = new JButton("Refresh Table");
+        importButton = new JButton("Import...");
+        exportButton = new JButton("Export...");
 
         buttonPanel.add(addButton);
         buttonPanel.add(updateButton);
         buttonPanel.add(deleteButton);
+        buttonPanel.add(undoButton);
+        buttonPanel.add(redoButton);
         buttonPanel.add(clearButton);
         buttonPanel.add(refreshButton);
+        buttonPanel.add(importButton);
+        buttonPanel.add(exportButton);
+
+        statusLabel = new JLabel(" ");
+        buttonPanel.add(statusLabel);
 
         add(buttonPanel, BorderLayout.CENTER); // Place buttons below input fields
 
         // --- Table Panel (South/Remaining Space) ---
-        String[] columnNames = {"ID", "Name", "Phone", "Email"};
-        tableModel = new DefaultTableModel(columnNames, 0) {
-            @Override
-            public boolean isCellEditable(int row, int column) {
-                // Make all cells non-editable directly in the table
-                return false;
-            }
-        };
+        tableModel = new ContactTableModel(contactService);
+        // Apply only the changed rows, whichever thread (or other client) made the change
+        contactService.addChangeListener(this::enqueueChange);
         contactTable = new JTable(tableModel);
         contactTable.setSelectionMode(ListSelectionModel.SINGLE_SELECTION); // Only allow single row selection
         contactTable.getTableHeader().setReorderingAllowed(false); // Prevent column reordering
@@ -130,6 +201,42 @@ public class ContactBookGUI extends JFrame {
             }
         });
 
+        undoButton.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                undoChange();
+            }
+        });
+
+        redoButton.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                redoChange();
+            }
+        });
+
+        // Ctrl+Z and Ctrl+Y (Cmd on macOS) anywhere in the window, as long as the buttons are enabled
+        int shortcut = Toolkit.getDefaultToolkit().getMenuShortcutKeyMaskEx();
+        InputMap keys = getRootPane().getInputMap(JComponent.WHEN_IN_FOCUSED_WINDOW);
+        keys.put(KeyStroke.getKeyStroke(KeyEvent.VK_Z, shortcut), "undo");
+        keys.put(KeyStroke.getKeyStroke(KeyEvent.VK_Y, shortcut), "redo");
+        getRootPane().getActionMap().put("undo", new AbstractAction() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                if (undoButton.isEnabled()) {
+                    undoChange();
+                }
+            }
+        });
+        getRootPane().getActionMap().put("redo", new AbstractAction() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                if (redoButton.isEnabled()) {
+                    redoChange();
+                }
+            }
+        });
+
         clearButton.addActionListener(new ActionListener() {
             @Override
             public void actionPerformed(ActionEvent e) {
@@ -140,7 +247,30 @@ public class ContactBookGUI extends JFrame {
         refreshButton.addActionListener(new ActionListener() {
             @Override
             public void actionPerformed(ActionEvent e) {
-                populateTable();
+                refreshTable();
+            }
+        });
+
+        importButton.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                importContacts();
+            }
+        });
+
+        exportButton.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                exportContacts();
+            }
+        });
+
+        // Release background threads and database connections when the window closes
+        addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosing(WindowEvent e) {
+                fileTransfers.shutdown();
+                contactService.shutdown();
             }
         });
 
@@ -149,44 +279,130 @@ public class ContactBookGUI extends JFrame {
             @Override
             public void mouseClicked(MouseEvent e) {
                 int selectedRow = contactTable.getSelectedRow();
-                if (selectedRow != -1) {
-                    // Get data from selected row
-                    int id = (int) tableModel.getValueAt(selectedRow, 0);
-                    String name = (String) tableModel.getValueAt(selectedRow, 1);
-                    String phone = (String) tableModel.getValueAt(selectedRow, 2);
-                    String email = (String) tableModel.getValueAt(selectedRow, 3);
-
-                    // Populate text fields
-                    selectedContactIdLabel.setText(String.valueOf(id));
-                    nameField.setText(name);
-                    phoneField.setText(phone);
-                    emailField.setText(email);
+                Contact contact = selectedRow != -1 ? tableModel.getContactAt(selectedRow) : null;
+                if (contact != null) {
+                    // Populate text fields from the selected contact
+                    selectedContactIdLabel.setText(String.valueOf(contact.getId()));
+                    editedContact = contact;
+                    nameField.setText(contact.getName());
+                    phoneField.setText(contact.getPhone());
+                    emailField.setText(contact.getEmail());
+                }
+            }
+        });
+
+        // Click a column header to sort by it, and again to go back to the order contacts were added in
+        contactTable.getTableHeader().addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                int column = contactTable.columnAtPoint(e.getPoint());
+                ContactSortKey clicked = tableModel.getSortKeyForColumn(column);
+                if (clicked != null) {
+                    sortTable(clicked == tableModel.getSortKey() ? null : clicked);
                 }
             }
         });
 
         // --- Initial Population ---
-        populateTable(); // Load contacts into the table when the GUI starts
         clearFields(); // Clear fields initially
+        refreshTable(); // Load contacts into the table when the GUI starts
+        contactService.startSync(SYNC_INTERVAL_MS); // Then keep them in step with other clients
+    }
+
+    /**
+     * Runs once a background operation finishes: the result is handed to onSuccess on the
+     * Event Dispatch Thread, and the in-progress state is cleared.
+     * @param busyMessage The status text to show while the operation runs.
+     * @param operation The running operation.
+     * @param onSuccess Called on the EDT with the result if the operation did not throw.
+     */
+    private <T> void runInBackground(String busyMessage, CompletableFuture<T> operation, Consumer<T> onSuccess) {
+        operationsInProgress++;
+        updateBusyState(busyMessage);
+        operation.whenComplete((result, error) -> SwingUtilities.invokeLater(() -> {
+            operationsInProgress--;
+            updateBusyState(" ");
+            if (error != null) {
+                Log.error("ContactBookGUI: Background operation failed: " + error.getMessage(), error);
+                JOptionPane.showMessageDialog(this, "Operation failed: " + error.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+            } else {
+                onSuccess.accept(result);
+            }
+        }));
+    }
+
+    /**
+     * Shows the in-progress state: a status message, a wait cursor, and disabled edit buttons
+     * so the same edit cannot be submitted twice. Undo and redo are only enabled when there is
+     * something to undo or redo, with a tooltip saying what.
+     */
+    private void updateBusyState(String message) {
+        boolean busy = operationsInProgress > 0;
+        statusLabel.setText(busy ? message : " ");
+        setCursor(busy ? Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR) : Cursor.getDefaultCursor());
+        addButton.setEnabled(!busy);
+        updateButton.setEnabled(!busy);
+        deleteButton.setEnabled(!busy);
+        importButton.setEnabled(!busy);
+        exportButton.setEnabled(!busy);
+        String undo = contactService.getUndoDescription();
+        String redo = contactService.getRedoDescription();
+        undoButton.setEnabled(!busy && undo != null);
+        undoButton.setToolTipText(undo != null ? "Undo " + undo : null);
+        redoButton.setEnabled(!busy && redo != null);
+        redoButton.setToolTipText(redo != null ? "Redo " + redo : null);
+    }
+
+    /**
+     * Reloads the contacts from the database in the background and then repopulates the table.
+     * Clicking refresh repeatedly while a reload is running does not queue up extra reloads.
+     */
+    private void refreshTable() {
+        // The table itself is repopulated by the RELOADED change event
+        runInBackground("Loading contacts...", contactService.reloadContactsAsync(), loaded -> {
+            if (loaded < 0) {
+                JOptionPane.showMessageDialog(this, "Failed to load contacts. Check server logs.", "Error", JOptionPane.ERROR_MESSAGE);
+            }
+        });
+    }
+
+    /**
+     * Called by the ContactService on whichever thread made a change. Events are queued and
+     * applied on the EDT in batches, so a bulk import does not flood the EDT with one task per row.
+     */
+    private void enqueueChange(ContactChangeEvent event) {
+        pendingChanges.add(event);
+        if (drainScheduled.compareAndSet(false, true)) {
+            SwingUtilities.invokeLater(this::applyPendingChanges);
+        }
+    }
+
+    /**
+     * Applies every queued change event to the table model, in order. Runs on the EDT.
+     */
+    private void applyPendingChanges() {
+        drainScheduled.set(false);
+        ContactChangeEvent event;
+        while ((event = pendingChanges.poll()) != null) {
+            tableModel.contactsChanged(event);
+        }
     }
 
     /**
-     * Populates the JTable with contact data from the ContactService.
+     * Sorts the table by the given order, or shows insertion order for null. The first sort by a column
+     * builds its index in the service, which can take a moment for a large contact book, so that first
+     * page is read in the background.
      */
-    private void populateTable() {
-        // Clear existing data from the table model
-        tableModel.setRowCount(0);
-        List<Contact> contacts = contactService.getAllContacts();
-        for (Contact contact : contacts) {
-            // Create a Vector (or Object array) for each row
-            Vector<Object> row = new Vector<>();
-            row.add(contact.getId());
-            row.add(contact.getName());
-            row.add(contact.getPhone());
-            row.add(contact.getEmail());
-            tableModel.addRow(row);
+    private void sortTable(ContactSortKey sortKey) {
+        if (sortKey == null) {
+            tableModel.setSortKey(null);
+            return;
         }
-        System.out.println("GUI: Table populated with " + contacts.size() + " contacts.");
+        CompletableFuture<List<Contact>> firstPage = contactService.getContactsAsync(sortKey, 0, 1);
+        runInBackground("Sorting contacts...", firstPage, page -> {
+            contactTable.clearSelection();
+            tableModel.setSortKey(sortKey);
+        });
     }
 
     /**
@@ -202,13 +418,35 @@ public class ContactBookGUI extends JFrame {
             return;
         }
 
-        if (contactService.addContact(name, phone, email) != null) {
-            JOptionPane.showMessageDialog(this, "Contact added successfully!", "Success", JOptionPane.INFORMATION_MESSAGE);
-            populateTable(); // Refresh table to show new contact
-            clearFields(); // Clear input fields
-        } else {
-            JOptionPane.showMessageDialog(this, "Failed to add contact. Check server logs.", "Error", JOptionPane.ERROR_MESSAGE);
-        }
+        // Usually a few index lookups, but a scan while the startup snapshot is shown, so it runs in the background
+        runInBackground("Checking for duplicates...", contactService.findPossibleDuplicatesAsync(name, phone, email), duplicates -> {
+            if (!duplicates.isEmpty()) {
+                StringBuilder message = new StringBuilder("This looks like a contact you already have:\n");
+                for (Contact existing : duplicates.subList(0, Math.min(5, duplicates.size()))) {
+                    message.append("\n").append(existing.getName()).append(" (ID ").append(existing.getId()).append(")");
+                }
+                message.append("\n\nAdd it anyway?");
+                int choice = JOptionPane.showConfirmDialog(this, message.toString(), "Possible Duplicate", JOptionPane.YES_NO_OPTION, JOptionPane.WARNING_MESSAGE);
+                if (choice != JOptionPane.YES_OPTION) {
+                    return;
+                }
+            }
+            saveNewContact(name, phone, email);
+        });
+    }
+
+    /**
+     * Adds the contact in the background, once the duplicate check has passed or the user confirmed it.
+     */
+    private void saveNewContact(String name, String phone, String email) {
+        runInBackground("Adding contact...", contactService.addContactAsync(name, phone, email), added -> {
+            if (added != null) {
+                JOptionPane.showMessageDialog(this, "Contact added successfully!", "Success", JOptionPane.INFORMATION_MESSAGE);
+                clearFields(); // Clear input fields
+            } else {
+                JOptionPane.showMessageDialog(this, "Failed to add contact. Check server logs.", "Error", JOptionPane.ERROR_MESSAGE);
+            }
+        });
     }
 
     /**
@@ -242,13 +480,64 @@ public class ContactBookGUI extends JFrame {
                 "Confirm Update", JOptionPane.YES_NO_OPTION);
 
         if (confirm == JOptionPane.YES_OPTION) {
-            if (contactService.updateContact(selectedId, name, phone, email)) {
+            // Changes are checked against the version the form was filled from, so an edit made meanwhile by
+            // another user is merged (other fields) or reported (same fields) instead of silently overwritten
+            Contact base = editedContact != null && editedContact.getId() == selectedId ? editedContact : contactService.getContact(selectedId);
+            if (base == null) {
+                JOptionPane.showMessageDialog(this, "This contact no longer exists.", "Error", JOptionPane.ERROR_MESSAGE);
+                clearFields();
+                return;
+            }
+            saveUpdate(base, name, phone, email, true);
+        }
+    }
+
+    private void saveUpdate(Contact base, String name, String phone, String email, boolean merge) {
+        runInBackground("Updating contact...", contactService.updateContactAsync(base, name, phone, email, merge),
+                result -> showUpdateResult(result, name, phone, email));
+    }
+
+    /**
+     * Tells the user how an update went. On a conflict, shows the other user's version next to the form's
+     * and lets the user keep their own changes, take the other version, or go on editing.
+     */
+    private void showUpdateResult(UpdateResult result, String name, String phone, String email) {
+        switch (result.getStatus()) {
+            case UPDATED:
                 JOptionPane.showMessageDialog(this, "Contact updated successfully!", "Success", JOptionPane.INFORMATION_MESSAGE);
-                populateTable(); // Refresh table
                 clearFields(); // Clear fields
-            } else {
-                JOptionPane.showMessageDialog(this, "Failed to update contact. Check server logs.", "Error", JOptionPane.ERROR_MESSAGE);
+                break;
+            case MERGED:
+                JOptionPane.showMessageDialog(this, "Contact updated. Another user had changed other details of this contact meanwhile; their changes were kept too.",
+                        "Success", JOptionPane.INFORMATION_MESSAGE);
+                clearFields();
+                break;
+            case CONFLICT: {
+                Contact current = result.getContact();
+                String message = "Another user changed this contact while you were editing it.\n\n"
+                        + "Their version:\n  " + current.getName() + "\n  " + current.getPhone() + "\n  " + current.getEmail() + "\n\n"
+                        + "Your version:\n  " + name + "\n  " + phone + "\n  " + email;
+                Object[] options = {"Save Mine", "Use Theirs", "Cancel"};
+                int choice = JOptionPane.showOptionDialog(this, message, "Edit Conflict", JOptionPane.YES_NO_CANCEL_OPTION,
+                        JOptionPane.WARNING_MESSAGE, null, options, options[2]);
+                if (choice == 0) {
+                    saveUpdate(current, name, phone, email, false); // Overwrite exactly the version just shown
+                } else if (choice == 1) {
+                    nameField.setText(current.getName());
+                    phoneField.setText(current.getPhone());
+                    emailField.setText(current.getEmail());
+                    editedContact = current;
+                }
+                break;
             }
+            case NOT_FOUND:
+                JOptionPane.showMessageDialog(this, "This contact has been deleted by another user.", "Error", JOptionPane.ERROR_MESSAGE);
+                clearFields();
+                break;
+            case FAILED:
+            default:
+                JOptionPane.showMessageDialog(this, "Failed to update contact. Check server logs.", "Error", JOptionPane.ERROR_MESSAGE);
+                break;
         }
     }
 
@@ -262,22 +551,153 @@ public class ContactBookGUI extends JFrame {
             return;
         }
 
-        // Get the ID from the selected row in the table model
-        int contactId = (int) tableModel.getValueAt(selectedRow, 0);
+        // Get the contact from the selected row in the table model
+        Contact contact = tableModel.getContactAt(selectedRow);
+        if (contact == null) {
+            return;
+        }
+        int contactId = contact.getId();
 
-        int confirm = JOptionPane.showConfirmDialog(this,
-                "Are you sure you want to delete contact ID: " + contactId + " (" + tableModel.getValueAt(selectedRow, 1) + ")?",
-                "Confirm Delete", JOptionPane.YES_NO_OPTION);
+        String question = "Are you sure you want to delete contact ID: " + contactId + " (" + contact.getName() + ")?";
+        if (!contactService.isWriteBehind()) {
+            question += "\nYou can bring it back with Undo.";
+        }
+        int confirm = JOptionPane.showConfirmDialog(this, question, "Confirm Delete", JOptionPane.YES_NO_OPTION);
 
         if (confirm == JOptionPane.YES_OPTION) {
-            if (contactService.deleteContact(contactId)) {
-                JOptionPane.showMessageDialog(this, "Contact deleted successfully!", "Success", JOptionPane.INFORMATION_MESSAGE);
-                populateTable(); // Refresh table
-                clearFields(); // Clear fields
-            } else {
-                JOptionPane.showMessageDialog(this, "Failed to delete contact. Check server logs.", "Error", JOptionPane.ERROR_MESSAGE);
+            runInBackground("Deleting contact...", contactService.deleteContactAsync(contactId), deleted -> {
+                if (deleted) {
+                    JOptionPane.showMessageDialog(this, "Contact deleted successfully!", "Success", JOptionPane.INFORMATION_MESSAGE);
+                    clearFields(); // Clear fields
+                } else {
+                    JOptionPane.showMessageDialog(this, "Failed to delete contact. Check server logs.", "Error", JOptionPane.ERROR_MESSAGE);
+                }
+            });
+        }
+    }
+
+    /**
+     * Reverts the last add, update or delete in the background.
+     */
+    private void undoChange() {
+        String description = contactService.getUndoDescription();
+        runInBackground("Undoing...", contactService.undoAsync(), result -> showUndoResult("Undo", description, result));
+    }
+
+    /**
+     * Makes the last undone change again in the background.
+     */
+    private void redoChange() {
+        String description = contactService.getRedoDescription();
+        runInBackground("Redoing...", contactService.redoAsync(), result -> showUndoResult("Redo", description, result));
+    }
+
+    /**
+     * Tells the user how an undo or redo went: in the status label if it worked, in a dialog if not.
+     * @param action "Undo" or "Redo".
+     */
+    private void showUndoResult(String action, String description, UpdateResult result) {
+        if (result == null) {
+            return; // Nothing was left to do, e.g. the shortcut was pressed twice
+        }
+        switch (result.getStatus()) {
+            case UPDATED:
+            case MERGED:
+                statusLabel.setText(action + " of " + description + " done.");
+                clearFields(); // The selected contact may have changed or be gone
+                break;
+            case CONFLICT:
+                JOptionPane.showMessageDialog(this, "Cannot " + action.toLowerCase(Locale.ROOT) + " the " + description
+                        + ": another user has changed this contact since.", action, JOptionPane.WARNING_MESSAGE);
+                break;
+            case NOT_FOUND:
+                JOptionPane.showMessageDialog(this, "Cannot " + action.toLowerCase(Locale.ROOT) + " the " + description
+                        + ": this contact has been deleted by another user.", action, JOptionPane.WARNING_MESSAGE);
+                break;
+            case FAILED:
+            default:
+                JOptionPane.showMessageDialog(this, action + " failed. Check server logs.", "Error", JOptionPane.ERROR_MESSAGE);
+                break;
+        }
+    }
+
+    /**
+     * Asks for a CSV or vCard file and imports its contacts in the background. The table fills in as the
+     * contacts are added, and the status label shows how much of the file has been read.
+     */
+    private void importContacts() {
+        JFileChooser chooser = new JFileChooser();
+        chooser.setDialogTitle("Import Contacts");
+        chooser.setFileFilter(new javax.swing.filechooser.FileNameExtensionFilter("Contacts (CSV, vCard)", "csv", "vcf", "vcard"));
+        if (chooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        Path file = chooser.getSelectedFile().toPath();
+        ContactImporter importer = new ContactImporter(contactService);
+        CompletableFuture<ImportResult> operation = CompletableFuture.supplyAsync(() -> {
+            try {
+                return importer.importFile(file, (done, total, contacts) -> showProgress(
+                        "Importing... " + (total > 0 ? done * 100 / total + "%, " : "") + contacts + " contacts"));
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        }, fileTransfers);
+        runInBackground("Importing contacts...", operation, result -> {
+            StringBuilder message = new StringBuilder("Imported " + result.getImported() + " contacts from " + file.getFileName() + ".");
+            if (result.getRejected() > 0) {
+                message.append("\n").append(result.getRejected()).append(" records were skipped:");
+                int shown = 0;
+                for (String problem : result.getProblems()) {
+                    if (shown++ == 10) {
+                        message.append("\n...");
+                        break;
+                    }
+                    message.append("\n").append(problem);
+                }
+            }
+            if (result.getFailed() > 0) {
+                message.append("\n").append(result.getFailed()).append(" contacts could not be saved. Check server logs.");
             }
+            int type = result.getRejected() > 0 || result.getFailed() > 0 ? JOptionPane.WARNING_MESSAGE : JOptionPane.INFORMATION_MESSAGE;
+            JOptionPane.showMessageDialog(this, message.toString(), "Import", type);
+        });
+    }
+
+    /**
+     * Asks for a file name and exports all contacts to it in the background, as vCard if the name ends
+     * in .vcf and as CSV otherwise.
+     */
+    private void exportContacts() {
+        JFileChooser chooser = new JFileChooser();
+        chooser.setDialogTitle("Export Contacts");
+        chooser.setSelectedFile(new File("contacts.csv"));
+        if (chooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return;
         }
+        Path file = chooser.getSelectedFile().toPath();
+        ContactFileFormat format = ContactFileFormat.of(file);
+        ContactExporter exporter = new ContactExporter(contactService);
+        CompletableFuture<Long> operation = CompletableFuture.supplyAsync(() -> {
+            try {
+                return exporter.exportFile(file, format, (done, total, contacts) -> showProgress(
+                        "Exporting... " + contacts + (total > 0 ? " of " + total : "") + " contacts"));
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        }, fileTransfers);
+        runInBackground("Exporting contacts...", operation, exported -> JOptionPane.showMessageDialog(this,
+                "Exported " + exported + " contacts to " + file.getFileName() + ".", "Export", JOptionPane.INFORMATION_MESSAGE));
+    }
+
+    /**
+     * Shows import or export progress in the status label. Called from the background thread.
+     */
+    private void showProgress(String message) {
+        SwingUtilities.invokeLater(() -> {
+            if (operationsInProgress > 0) {
+                statusLabel.setText(message);
+            }
+        });
     }
 
     /**
@@ -288,6 +708,7 @@ public class ContactBookGUI extends JFrame {
         phoneField.setText("");
         emailField.setText("");
         selectedContactIdLabel.setText("None");
+        editedContact = null;
         contactTable.clearSelection(); // Clear table selection
     }
 
@@ -304,7 +725,7 @@ public class ContactBookGUI extends JFrame {
                     // Set an attractive look and feel (optional, but good for aesthetics)
                     UIManager.setLookAndFeel(UIManager.getSystemLookAndFeelClassName());
                 } catch (Exception e) {
-                    e.printStackTrace();
+                    Log.warn("ContactBookGUI: Could not set the system look and feel: " + e.getMessage());
                 }
                 new ContactBookGUI().setVisible(true);
             }
@@ -0,0 +1,297 @@
+package com.contactbook.gui;
+
+import com.contactbook.model.Contact;
+import com.contactbook.service.ContactChangeEvent;
+import com.contactbook.service.ContactService;
+import com.contactbook.service.ContactSortKey;
+
+import javax.swing.SwingUtilities;
+import javax.swing.table.AbstractTableModel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A virtual table model that reads contacts straight from the ContactService store.
+ * No row objects are built up front: JTable only asks for the cells it paints, so only
+ * the rows in the visible part of the viewport are ever looked up, however many contacts exist.
+ * Changes arrive as ContactChangeEvents from the service and are applied as row-level table events
+ * for just the affected rows, so a single edit costs O(1) UI work regardless of table size.
+ *
+ * With setSortKey() the rows follow one of the service's sort orders instead of insertion order. Rows are
+ * then read a page at a time with ContactService.getContacts(), and since an edit can move a contact to
+ * another row, every change refreshes the table instead of touching a single row.
+ *
+ * Pages are never read on the EDT. A sorted page may need a scan of the whole contact book, and in cache mode
+ * (ContactService.isCacheMode()) even an insertion-order row may need a database query, so such rows are read
+ * a page at a time with ContactService.getContactsAsync(). Until a page arrives its rows show "Loading...", and
+ * when it does, just those rows are repainted. Every page is tagged with the generation it was read in; a
+ * change that may shift rows starts a new generation, and a page of an older one is still shown (better than
+ * a blank row) but read again. In cache mode the row count is fetched in the background, too.
+ *
+ * Like every Swing model, this must only be used on the Event Dispatch Thread.
+ */
+public final class ContactTableModel extends AbstractTableModel {
+    private static final long serialVersionUID = 1L;
+
+    private static final String[] COLUMN_NAMES = {"ID", "Name", "Phone", "Email"};
+    // The order each column sorts by; phone numbers have no sort order
+    private static final ContactSortKey[] COLUMN_SORT_KEYS = {ContactSortKey.ID, ContactSortKey.NAME, null, ContactSortKey.EMAIL};
+    private static final int PAGE_SIZE = 100; // Rows read at once in a paged view
+    private static final int MAX_PAGES = 64; // Pages kept; a screenful of rows needs one or two
+    private static final String LOADING = "Loading...";
+
+    /** Rows from page * PAGE_SIZE on, as read in the given generation. */
+    private record Page(int generation, List<Contact> contacts) {
+    }
+
+    private final transient ContactService contactService;
+    private int rowCount; // The row count last announced to the table
+    private ContactSortKey sortKey; // null for insertion order
+    private int generation; // Bumped whenever the rows may have shifted
+    private int countRequests; // Bumped for each background count, so only the newest one is applied
+    // Pages read so far, least recently used first
+    private final transient Map<Integer, Page> pages = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, Page> eldest) {
+            return size() > MAX_PAGES;
+        }
+    };
+    private final transient Map<Integer, Integer> loading = new HashMap<>(); // Page -> generation it is being read for
+
+    public ContactTableModel(ContactService contactService) {
+        this.contactService = contactService;
+        if (contactService.isCacheMode()) {
+            requestRowCount(); // Counting may query the database; the table starts empty until it is known
+        } else {
+            this.rowCount = contactService.getContactCount();
+        }
+    }
+
+    @Override
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return COLUMN_NAMES.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        if (sortKey != null && COLUMN_SORT_KEYS[column] == sortKey) {
+            return COLUMN_NAMES[column] + " \u25B2"; // Up-pointing triangle
+        }
+        return COLUMN_NAMES[column];
+    }
+
+    /**
+     * @return The order a column sorts by, or null if it cannot be sorted.
+     */
+    public ContactSortKey getSortKeyForColumn(int column) {
+        return column >= 0 && column < COLUMN_SORT_KEYS.length ? COLUMN_SORT_KEYS[column] : null;
+    }
+
+    public ContactSortKey getSortKey() {
+        return sortKey;
+    }
+
+    /**
+     * Shows the contacts in the given order, or in insertion order for null.
+     */
+    public void setSortKey(ContactSortKey sortKey) {
+        this.sortKey = sortKey;
+        generation++;
+        pages.clear(); // Rows of another order are no use, not even while the new ones load
+        fireTableStructureChanged(); // The header text changes too
+    }
+
+    @Override
+    public Class<?> getColumnClass(int column) {
+        return column == 0 ? Integer.class : String.class;
+    }
+
+    @Override
+    public boolean isCellEditable(int row, int column) {
+        // Make all cells non-editable directly in the table
+        return false;
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        Contact contact = getContactAt(row);
+        if (contact == null) {
+            // The page is being read, or the store changed and the event for it has not arrived yet
+            return column == 1 && isPaged() && row < rowCount ? LOADING : null;
+        }
+        switch (column) {
+            case 0:
+                return contact.getId();
+            case 1:
+                return contact.getName();
+            case 2:
+                return contact.getPhone();
+            case 3:
+                return contact.getEmail();
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * @param row A row of this model.
+     * @return The contact shown in that row, or null if the row is out of range or its page is still being read.
+     */
+    public Contact getContactAt(int row) {
+        if (row < 0 || row >= rowCount) {
+            return null;
+        }
+        if (!isPaged()) {
+            return contactService.getContactAt(row); // Insertion order in memory: an O(log n) lookup
+        }
+        int pageNumber = row / PAGE_SIZE;
+        Page page = pages.get(pageNumber);
+        if (page == null || page.generation() != generation) {
+            requestPage(pageNumber);
+        }
+        if (page == null) {
+            return null;
+        }
+        int index = row - pageNumber * PAGE_SIZE;
+        return index < page.contacts().size() ? page.contacts().get(index) : null;
+    }
+
+    /**
+     * Re-reads the row count and tells the table that everything may have changed.
+     * This is a single event, not one per row. Pages already read stay on screen until their new
+     * contents arrive, so a refresh does not make the table flicker.
+     */
+    public void refresh() {
+        generation++;
+        if (!contactService.isCacheMode()) {
+            rowCount = contactService.getContactCount();
+            fireTableDataChanged();
+            return;
+        }
+        requestRowCount();
+    }
+
+    /**
+     * Counts the contacts in the background (cache mode) and applies the count, unless a newer count
+     * was asked for in the meantime.
+     */
+    private void requestRowCount() {
+        int request = ++countRequests;
+        contactService.getContactCountAsync().thenAccept(count -> SwingUtilities.invokeLater(() -> {
+            if (request == countRequests) {
+                rowCount = count;
+                fireTableDataChanged();
+            }
+        }));
+    }
+
+    /**
+     * @return Whether rows are read a page at a time in the background rather than looked up directly.
+     */
+    private boolean isPaged() {
+        return sortKey != null || contactService.isCacheMode();
+    }
+
+    /**
+     * Starts reading a page in the background, unless it is already being read for this generation.
+     * When it arrives, its rows are repainted.
+     */
+    private void requestPage(int pageNumber) {
+        Integer pending = loading.get(pageNumber);
+        if (pending != null && pending == generation) {
+            return;
+        }
+        int requestGeneration = generation;
+        ContactSortKey requestKey = sortKey;
+        loading.put(pageNumber, requestGeneration);
+        // In cache mode insertion order is ID order, so an unsorted view reads its pages by ID
+        ContactSortKey order = requestKey != null ? requestKey : ContactSortKey.ID;
+        contactService.getContactsAsync(order, pageNumber * PAGE_SIZE, PAGE_SIZE)
+                .whenComplete((contacts, error) -> SwingUtilities.invokeLater(
+                        () -> pageArrived(pageNumber, requestGeneration, requestKey, contacts)));
+    }
+
+    private void pageArrived(int pageNumber, int requestGeneration, ContactSortKey requestKey, List<Contact> contacts) {
+        Integer pending = loading.get(pageNumber);
+        if (pending != null && pending == requestGeneration) {
+            loading.remove(pageNumber);
+        }
+        if (contacts == null || requestKey != sortKey) {
+            return; // The read failed (and was logged), or the table shows another order by now
+        }
+        Page current = pages.get(pageNumber);
+        if (current != null && current.generation() > requestGeneration) {
+            return; // A newer read of this page arrived first
+        }
+        pages.put(pageNumber, new Page(requestGeneration, contacts));
+        int first = pageNumber * PAGE_SIZE;
+        int last = Math.min(first + PAGE_SIZE, rowCount) - 1;
+        if (first <= last) {
+            fireTableRowsUpdated(first, last);
+        }
+    }
+
+    /**
+     * Applies one change published by the ContactService. Events must be applied in the order
+     * they were published.
+     * @param event The change to apply.
+     */
+    public void contactsChanged(ContactChangeEvent event) {
+        if (sortKey != null) {
+            refresh(); // The row in the event is the insertion-order row, and the contact may have moved
+            return;
+        }
+        int row = event.getRow();
+        switch (event.getType()) {
+            case ADDED:
+                rowCount++;
+                if (isPaged()) {
+                    generation++; // Cheap: only the pages on screen are read again
+                }
+                fireTableRowsInserted(row, row);
+                break;
+            case UPDATED:
+                if (isPaged()) {
+                    patchPage(row, event.getContact());
+                }
+                fireTableRowsUpdated(row, row);
+                break;
+            case REMOVED:
+                rowCount--;
+                if (isPaged()) {
+                    generation++; // Every later row moved up by one
+                }
+                fireTableRowsDeleted(row, row);
+                break;
+            case RELOADED:
+            default:
+                refresh();
+                break;
+        }
+    }
+
+    /**
+     * Puts an updated contact into the page already read for its row, so an edit shows without a read.
+     */
+    private void patchPage(int row, Contact contact) {
+        Page page = pages.get(row / PAGE_SIZE);
+        int index = row % PAGE_SIZE;
+        if (page == null || contact == null || index >= page.contacts().size()) {
+            return;
+        }
+        if (page.contacts().get(index) == null || page.contacts().get(index).getId() != contact.getId()) {
+            return; // The page is stale anyway and will be read again
+        }
+        List<Contact> patched = new ArrayList<>(page.contacts());
+        patched.set(index, contact);
+        pages.put(row / PAGE_SIZE, new Page(page.generation(), patched));
+    }
+}
@@ -0,0 +1,192 @@
+package com.contactbook.io;
+
+import com.contactbook.model.Contact;
+import com.contactbook.monitoring.Log;
+import com.contactbook.monitoring.Metrics;
+import com.contactbook.service.ContactService;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Exports all contacts to a CSV or vCard file. Contacts are streamed from the repository (a database cursor
+ * for MySQL) straight into a buffered file writer, so an export never holds more than one contact in memory.
+ *
+ * The file is written under a temporary name next to the target and only moved into place once it is
+ * complete, so a failed export never leaves half a file behind or destroys the previous export.
+ */
+public final class ContactExporter {
+
+    private static final int WRITE_BUFFER_CHARS = 64 * 1024;
+    private static final int PROGRESS_EVERY = 1000;
+    private static final int VCARD_LINE_CHARS = 75; // RFC 6350 line length limit, before the line break
+    private static final String CRLF = "\r\n"; // vCard lines end with CRLF
+
+    private static final LongAdder EXPORTED = Metrics.counter("export.contacts");
+
+    private final ContactService service;
+
+    public ContactExporter(ContactService service) {
+        this.service = service;
+    }
+
+    /**
+     * Exports to a file, taking the format from its name (see ContactFileFormat.of()).
+     */
+    public long exportFile(Path file, TransferListener listener) throws IOException {
+        return exportFile(file, ContactFileFormat.of(file), listener);
+    }
+
+    /**
+     * Writes every contact to a file, replacing the file if it exists.
+     * @param file The file to write.
+     * @param format The format to write.
+     * @param listener Told about progress in contacts written; may be null.
+     * @return The number of contacts exported.
+     * @throws IOException if the contacts cannot be read or the file cannot be written.
+     */
+    public long exportFile(Path file, ContactFileFormat format, TransferListener listener) throws IOException {
+        long started = System.currentTimeMillis();
+        long total = service.getContactCount();
+        Path target = file.toAbsolutePath();
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        long count;
+        try {
+            try (Writer out = new BufferedWriter(Files.newBufferedWriter(temp, StandardCharsets.UTF_8), WRITE_BUFFER_CHARS)) {
+                if (format == ContactFileFormat.CSV) {
+                    out.write("Name,Phone,Email\r\n");
+                }
+                long[] written = {0};
+                count = service.forEachStoredContact(contact -> {
+                    try {
+                        if (format == ContactFileFormat.VCARD) {
+                            writeVCard(out, contact);
+                        } else {
+                            writeCsv(out, contact);
+                        }
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e); // Stops the cursor; unwrapped below
+                    }
+                    if (++written[0] % PROGRESS_EVERY == 0 && listener != null) {
+                        listener.onProgress(written[0], total, written[0]);
+                    }
+                });
+                if (count < 0) {
+                    throw new IOException("Could not read the contacts from the database.");
+                }
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            try {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        if (listener != null) {
+            listener.onProgress(count, total, count);
+        }
+        EXPORTED.add(count);
+        Log.info("ContactExporter: Exported " + count + " contacts to " + target + " in "
+                + (System.currentTimeMillis() - started) + " ms.");
+        return count;
+    }
+
+    private static void writeCsv(Writer out, Contact contact) throws IOException {
+        writeCsvField(out, contact.getName());
+        out.write(',');
+        writeCsvField(out, contact.getPhone());
+        out.write(',');
+        writeCsvField(out, contact.getEmail());
+        out.write("\r\n");
+    }
+
+    /**
+     * Quotes the field only if it has to be: when it contains a comma, quote or line break (RFC 4180).
+     */
+    private static void writeCsvField(Writer out, String value) throws IOException {
+        if (value == null) {
+            return;
+        }
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            out.write(value);
+            return;
+        }
+        out.write('"');
+        out.write(value.replace("\"", "\"\""));
+        out.write('"');
+    }
+
+    private static void writeVCard(Writer out, Contact contact) throws IOException {
+        String name = contact.getName() != null ? contact.getName().trim() : "";
+        out.write("BEGIN:VCARD" + CRLF);
+        out.write("VERSION:3.0" + CRLF);
+        writeVCardLine(out, "FN:" + escape(name));
+        // N is "Family;Given;...": the last word is taken as the family name, everything before it as given names
+        int space = name.lastIndexOf(' ');
+        String family = space >= 0 ? name.substring(space + 1) : name;
+        String given = space >= 0 ? name.substring(0, space) : "";
+        writeVCardLine(out, "N:" + escape(family) + ";" + escape(given) + ";;;");
+        if (contact.getPhone() != null && !contact.getPhone().isEmpty()) {
+            writeVCardLine(out, "TEL:" + escape(contact.getPhone()));
+        }
+        if (contact.getEmail() != null && !contact.getEmail().isEmpty()) {
+            writeVCardLine(out, "EMAIL;TYPE=INTERNET:" + escape(contact.getEmail()));
+        }
+        out.write("END:VCARD" + CRLF);
+    }
+
+    /**
+     * Folds lines longer than 75 characters: each continuation line starts with a space.
+     */
+    private static void writeVCardLine(Writer out, String line) throws IOException {
+        int start = 0;
+        int width = VCARD_LINE_CHARS;
+        while (line.length() - start > width) {
+            int end = start + width;
+            if (Character.isHighSurrogate(line.charAt(end - 1))) {
+                end--; // Never split a character made of two chars
+            }
+            out.write(line, start, end - start);
+            out.write(CRLF + " ");
+            start = end;
+            width = VCARD_LINE_CHARS - 1; // The leading space counts towards the limit
+        }
+        out.write(line, start, line.length() - start);
+        out.write(CRLF);
+    }
+
+    /**
+     * Escapes the characters that have a meaning in vCard values.
+     */
+    private static String escape(String value) {
+        StringBuilder sb = new StringBuilder(value.length() + 8);
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' || c == ',' || c == ';') {
+                sb.append('\\').append(c);
+            } else if (c == '\n') {
+                sb.append("\\n");
+            } else if (c != '\r') {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,36 @@
+package com.contactbook.io;
+
+import java.nio.file.Path;
+import java.util.Locale;
+
+/**
+ * The file formats contacts can be imported from and exported to.
+ */
+public enum ContactFileFormat {
+
+    /** Comma-separated values (RFC 4180), with a header row naming the columns. Semicolons are accepted too. */
+    CSV("csv"),
+    /** vCard 3.0 (.vcf), as exported by phones, Outlook and most address books. */
+    VCARD("vcf");
+
+    private final String extension;
+
+    ContactFileFormat(String extension) {
+        this.extension = extension;
+    }
+
+    /**
+     * @return The usual file extension, without the dot.
+     */
+    public String getExtension() {
+        return extension;
+    }
+
+    /**
+     * Picks the format from the file name: .vcf and .vcard are vCard, anything else is CSV.
+     */
+    public static ContactFileFormat of(Path file) {
+        String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+        return name.endsWith(".vcf") || name.endsWith(".vcard") ? VCARD : CSV;
+    }
+}
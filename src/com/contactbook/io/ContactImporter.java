@@ -0,0 +1,281 @@
+package com.contactbook.io;
+
+import com.contactbook.model.Contact;
+import com.contactbook.monitoring.Log;
+import com.contactbook.monitoring.Metrics;
+import com.contactbook.service.ContactDeduplicator;
+import com.contactbook.service.ContactService;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Imports contacts from CSV and vCard files of any size, in constant memory. Three stages run at once:
+ * <ol>
+ *   <li>a reader thread reads the file through a FileChannel into a direct buffer, decodes it as UTF-8 and
+ *       parses it into records, a thousand or so at a time;</li>
+ *   <li>a small pool of workers checks and tidies each chunk of records (trims, collapses spaces, rejects
+ *       records without a name or with fields too long for the database columns);</li>
+ *   <li>the calling thread adds each checked chunk through ContactService.addContacts(), which writes it to
+ *       the database in batches and updates the in-memory contacts, search index and views.</li>
+ * </ol>
+ * Chunks travel between the stages in a bounded queue, in file order. When the database is the slowest
+ * stage the queue fills up and the reader waits, so at most a few chunks are in memory however large the file.
+ */
+public final class ContactImporter {
+
+    private static final int READ_BUFFER_BYTES = 256 * 1024;
+    private static final int CHUNK_RECORDS = 1000;
+    private static final int MAX_PROBLEMS = 100; // Messages kept for the user; the counts cover everything
+    // Column sizes of the contacts table
+    private static final int MAX_NAME = 255;
+    private static final int MAX_PHONE = 20;
+    private static final int MAX_EMAIL = 255;
+
+    private static final Chunk END = new Chunk(null, 0, List.of(), 0);
+
+    private static final LongAdder IMPORTED = Metrics.counter("import.contacts");
+    private static final LongAdder REJECTED = Metrics.counter("import.rejected");
+
+    private final ContactService service;
+    private final int workers;
+
+    /**
+     * Creates an importer that checks records on up to four cores, leaving one for the reader.
+     */
+    public ContactImporter(ContactService service) {
+        this(service, Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() - 1)));
+    }
+
+    /**
+     * @param service The service the contacts are added through.
+     * @param workers The number of threads checking records.
+     */
+    public ContactImporter(ContactService service, int workers) {
+        if (workers < 1) {
+            throw new IllegalArgumentException("Invalid number of workers: " + workers);
+        }
+        this.service = service;
+        this.workers = workers;
+    }
+
+    /**
+     * Imports a file, taking the format from its name (see ContactFileFormat.of()).
+     */
+    public ImportResult importFile(Path file, TransferListener listener) throws IOException {
+        return importFile(file, ContactFileFormat.of(file), listener);
+    }
+
+    /**
+     * Imports all contacts from a file. Blocks until the whole file has been read and written.
+     * @param file The file to read.
+     * @param format The format of the file.
+     * @param listener Told about progress in bytes read; may be null.
+     * @return How many contacts were imported, rejected and not accepted by the database.
+     * @throws IOException if the file cannot be read or is malformed. Contacts from before the problem stay imported.
+     */
+    public ImportResult importFile(Path file, ContactFileFormat format, TransferListener listener) throws IOException {
+        long started = System.currentTimeMillis();
+        long total = Files.size(file);
+        AtomicInteger threadCount = new AtomicInteger();
+        ExecutorService checkers = Executors.newFixedThreadPool(workers, r -> {
+            Thread t = new Thread(r, "contactbook-import-check-" + threadCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        BlockingQueue<Future<Chunk>> pipeline = new ArrayBlockingQueue<>(workers * 2);
+        AtomicReference<IOException> readError = new AtomicReference<>();
+        Thread reader = new Thread(() -> read(file, format, checkers, pipeline, readError), "contactbook-import-reader");
+        reader.setDaemon(true);
+        reader.start();
+
+        long imported = 0, rejected = 0, failed = 0;
+        List<String> problems = new ArrayList<>();
+        try {
+            while (true) {
+                Chunk chunk = pipeline.take().get();
+                if (chunk == END) {
+                    break; // End of file, or the reader gave up
+                }
+                int added = chunk.contacts.isEmpty() ? 0 : service.addContacts(chunk.contacts).size();
+                imported += added;
+                failed += chunk.contacts.size() - added;
+                rejected += chunk.rejected;
+                for (String problem : chunk.problems) {
+                    if (problems.size() < MAX_PROBLEMS) {
+                        problems.add(problem);
+                    }
+                }
+                IMPORTED.add(added);
+                REJECTED.add(chunk.rejected);
+                if (listener != null) {
+                    listener.onProgress(chunk.bytesRead, total, imported);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Import of " + file + " was interrupted after " + imported + " contacts.");
+        } catch (ExecutionException e) {
+            throw new IOException("Checking contacts from " + file + " failed: " + e.getCause(), e.getCause());
+        } finally {
+            reader.interrupt(); // Only matters if this thread stopped early
+            checkers.shutdownNow();
+        }
+        if (readError.get() != null) {
+            throw readError.get();
+        }
+        ImportResult result = new ImportResult(imported, rejected, failed, problems);
+        Log.info("ContactImporter: Imported " + file + " in " + (System.currentTimeMillis() - started) + " ms: " + result + ".");
+        return result;
+    }
+
+    /**
+     * The reader stage. Always ends by queueing END, also after an error, so the writer never waits forever.
+     */
+    private static void read(Path file, ContactFileFormat format, ExecutorService checkers,
+                             BlockingQueue<Future<Chunk>> pipeline, AtomicReference<IOException> error) {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer bytes = ByteBuffer.allocateDirect(READ_BUFFER_BYTES);
+            CharBuffer chars = CharBuffer.allocate(READ_BUFFER_BYTES); // UTF-8 never decodes to more chars than bytes
+            CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            RecordParser parser = RecordParser.forFormat(format);
+            List<ContactRecord> records = new ArrayList<>();
+            boolean endOfFile = false;
+            while (!endOfFile) {
+                endOfFile = channel.read(bytes) < 0;
+                bytes.flip();
+                decoder.decode(bytes, chars, endOfFile);
+                if (endOfFile) {
+                    decoder.flush(chars);
+                }
+                bytes.compact(); // Keeps a multi-byte character split across reads for the next round
+                chars.flip();
+                parser.feed(chars, records::add);
+                chars.clear();
+                if (endOfFile) {
+                    parser.finish(records::add);
+                }
+                long position = channel.position();
+                int from = 0;
+                // One read can hold several chunks' worth of short records
+                while (records.size() - from >= CHUNK_RECORDS || (endOfFile && from < records.size())) {
+                    List<ContactRecord> chunk = new ArrayList<>(
+                            records.subList(from, Math.min(records.size(), from + CHUNK_RECORDS)));
+                    from += chunk.size();
+                    pipeline.put(checkers.submit(() -> check(chunk, position))); // Blocks while the pipeline is full
+                }
+                records.subList(0, from).clear();
+            }
+        } catch (IOException e) {
+            error.set(e);
+        } catch (RuntimeException e) {
+            error.set(new IOException("Could not read " + file + ": " + e, e));
+        } catch (InterruptedException e) {
+            return; // The writer has stopped, nobody is waiting for the end marker
+        }
+        try {
+            pipeline.put(CompletableFuture.completedFuture(END));
+        } catch (InterruptedException e) {
+            // The writer has stopped
+        }
+    }
+
+    /**
+     * The checking stage: tidies each record and turns the valid ones into contacts.
+     */
+    private static Chunk check(List<ContactRecord> records, long bytesRead) {
+        List<Contact> contacts = new ArrayList<>(records.size());
+        List<String> problems = new ArrayList<>();
+        int rejected = 0;
+        for (ContactRecord record : records) {
+            String name = tidy(record.name);
+            String phone = tidy(record.phone);
+            String email = tidy(record.email);
+            String problem = null;
+            if (name.isEmpty()) {
+                problem = "no name";
+            } else if (name.length() > MAX_NAME) {
+                problem = "the name is longer than " + MAX_NAME + " characters";
+            } else if (phone.length() > MAX_PHONE) {
+                problem = "the phone number '" + phone + "' is longer than " + MAX_PHONE + " characters";
+            } else if (email.length() > MAX_EMAIL) {
+                problem = "the email address is longer than " + MAX_EMAIL + " characters";
+            } else if (!email.isEmpty() && ContactDeduplicator.emailKey(email) == null) {
+                problem = "'" + email + "' is not an email address";
+            }
+            if (problem == null) {
+                contacts.add(new Contact(name, phone, email));
+            } else {
+                rejected++;
+                if (problems.size() < MAX_PROBLEMS) {
+                    problems.add("Line " + record.line + ": " + problem);
+                }
+            }
+        }
+        return new Chunk(contacts, rejected, problems, bytesRead);
+    }
+
+    /**
+     * Trims the value and replaces every run of whitespace (including line breaks from quoted fields) with one space.
+     */
+    private static String tidy(String value) {
+        if (value == null) {
+            return "";
+        }
+        StringBuilder sb = new StringBuilder(value.length());
+        boolean space = false;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (Character.isWhitespace(c) || Character.isSpaceChar(c)) {
+                space = sb.length() > 0;
+            } else {
+                if (space) {
+                    sb.append(' ');
+                    space = false;
+                }
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * One checked chunk of contacts.
+     */
+    private static final class Chunk {
+        final List<Contact> contacts;
+        final int rejected;
+        final List<String> problems;
+        final long bytesRead;
+
+        Chunk(List<Contact> contacts, int rejected, List<String> problems, long bytesRead) {
+            this.contacts = contacts;
+            this.rejected = rejected;
+            this.problems = problems;
+            this.bytesRead = bytesRead;
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.contactbook.io;
+
+/**
+ * One contact as read from a file, before it is checked. The line is where the record starts, for error messages.
+ */
+final class ContactRecord {
+
+    final long line;
+    final String name;
+    final String phone;
+    final String email;
+
+    ContactRecord(long line, String name, String phone, String email) {
+        this.line = line;
+        this.name = name;
+        this.phone = phone;
+        this.email = email;
+    }
+}
@@ -0,0 +1,209 @@
+package com.contactbook.io;
+
+import java.io.IOException;
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Consumer;
+
+/**
+ * A streaming RFC 4180 CSV parser: quoted fields may contain delimiters, doubled quotes and line breaks.
+ *
+ * The delimiter (comma, semicolon or tab) is taken from whichever occurs most in the first line, since
+ * spreadsheets in many locales save with semicolons. If the first row names its columns, the name, phone
+ * and email columns are found by their headings, including the "First Name" / "Last Name" and
+ * "Mobile Phone" / "E-mail Address" style used by Outlook and Google exports. Without a header row the
+ * columns are name, phone, email in that order.
+ */
+final class CsvParser implements RecordParser {
+
+    private static final int MAX_FIELDS = 1024;
+
+    private char delimiter; // 0 until the first line has been seen
+    private boolean firstRecord = true;
+    private boolean started; // Past a byte order mark, if there was one
+
+    // Column positions, -1 if the file has no such column
+    private int nameColumn = 0;
+    private int firstNameColumn = -1;
+    private int lastNameColumn = -1;
+    private int phoneColumn = 1;
+    private int emailColumn = 2;
+
+    // The record in progress
+    private final List<String> fields = new ArrayList<>();
+    private final StringBuilder field = new StringBuilder();
+    private boolean inQuotes;
+    private boolean afterQuote; // Just saw the closing quote, or the first of a doubled quote
+    private boolean fieldQuoted;
+    private long line = 1;
+    private long recordLine = 1;
+
+    @Override
+    public void feed(CharBuffer chars, Consumer<ContactRecord> records) throws IOException {
+        if (delimiter == 0) {
+            delimiter = detectDelimiter(chars);
+        }
+        while (chars.hasRemaining()) {
+            char c = chars.get();
+            if (!started) {
+                started = true;
+                if (c == '\uFEFF') {
+                    continue; // Byte order mark written by Excel
+                }
+            }
+            if (inQuotes) {
+                if (c == '"') {
+                    inQuotes = false;
+                    afterQuote = true;
+                } else if (c == '\n') {
+                    line++;
+                    append(c);
+                } else if (c != '\r') {
+                    append(c); // Line breaks in quoted fields come out as \n, as outside them
+                }
+                continue;
+            }
+            if (afterQuote) {
+                afterQuote = false;
+                if (c == '"') {
+                    inQuotes = true; // "" inside a quoted field is one quote character
+                    append('"');
+                    continue;
+                }
+            }
+            if (c == '"' && field.length() == 0 && !fieldQuoted) {
+                inQuotes = true;
+                fieldQuoted = true;
+            } else if (c == delimiter) {
+                endField();
+            } else if (c == '\n') {
+                endField();
+                endRecord(records);
+                line++;
+                recordLine = line;
+            } else if (c != '\r') {
+                append(c);
+            }
+        }
+    }
+
+    @Override
+    public void finish(Consumer<ContactRecord> records) throws IOException {
+        if (inQuotes) {
+            throw new IOException("Line " + recordLine + ": the file ends inside a quoted field.");
+        }
+        if (field.length() > 0 || !fields.isEmpty() || fieldQuoted) {
+            endField();
+            endRecord(records);
+        }
+    }
+
+    private void append(char c) throws IOException {
+        if (field.length() >= MAX_FIELD_CHARS) {
+            throw new IOException("Line " + recordLine + ": a field is longer than " + MAX_FIELD_CHARS
+                    + " characters. The file may have a quote that is never closed.");
+        }
+        field.append(c);
+    }
+
+    private void endField() throws IOException {
+        if (fields.size() >= MAX_FIELDS) {
+            throw new IOException("Line " + recordLine + ": more than " + MAX_FIELDS + " columns.");
+        }
+        fields.add(field.toString());
+        field.setLength(0);
+        fieldQuoted = false;
+    }
+
+    private void endRecord(Consumer<ContactRecord> records) {
+        boolean blank = fields.size() == 1 && fields.get(0).isBlank();
+        if (!blank) {
+            if (firstRecord && readHeader()) {
+                firstRecord = false;
+            } else {
+                firstRecord = false;
+                records.accept(new ContactRecord(recordLine, name(), column(phoneColumn), column(emailColumn)));
+            }
+        }
+        fields.clear();
+    }
+
+    private String name() {
+        String name = column(nameColumn);
+        if ((name == null || name.isBlank()) && (firstNameColumn >= 0 || lastNameColumn >= 0)) {
+            String first = column(firstNameColumn);
+            String last = column(lastNameColumn);
+            name = ((first != null ? first.trim() : "") + " " + (last != null ? last.trim() : "")).trim();
+        }
+        return name;
+    }
+
+    private String column(int index) {
+        return index >= 0 && index < fields.size() ? fields.get(index) : null;
+    }
+
+    /**
+     * Looks for known column headings in the first row.
+     * @return true if the row is a header row and the columns have been mapped from it.
+     */
+    private boolean readHeader() {
+        int name = -1, first = -1, last = -1, phone = -1, email = -1;
+        for (int i = 0; i < fields.size(); i++) {
+            String heading = fields.get(i).trim().toLowerCase(Locale.ROOT);
+            if (heading.endsWith(" type") || heading.endsWith(" label")) {
+                continue; // Google's "Phone 1 - Type" next to "Phone 1 - Value"
+            }
+            if (name < 0 && (heading.equals("name") || heading.equals("full name") || heading.equals("display name")
+                    || heading.equals("fn"))) {
+                name = i;
+            } else if (first < 0 && (heading.equals("first name") || heading.equals("given name"))) {
+                first = i;
+            } else if (last < 0 && (heading.equals("last name") || heading.equals("family name") || heading.equals("surname"))) {
+                last = i;
+            } else if (phone < 0 && (heading.contains("phone") || heading.contains("mobile") || heading.equals("tel"))) {
+                phone = i;
+            } else if (email < 0 && (heading.contains("email") || heading.contains("e-mail"))) {
+                email = i;
+            }
+        }
+        if (name < 0 && first < 0 && last < 0 && phone < 0 && email < 0) {
+            return false; // Plain data in the default column order
+        }
+        nameColumn = name;
+        firstNameColumn = first;
+        lastNameColumn = last;
+        phoneColumn = phone;
+        emailColumn = email;
+        return true;
+    }
+
+    /**
+     * Counts the candidate delimiters outside quotes in the first line of the buffer, without consuming it.
+     */
+    private static char detectDelimiter(CharBuffer chars) {
+        int commas = 0, semicolons = 0, tabs = 0;
+        boolean quoted = false;
+        for (int i = chars.position(); i < chars.limit(); i++) {
+            char c = chars.get(i);
+            if (c == '"') {
+                quoted = !quoted;
+            } else if (!quoted) {
+                if (c == '\n') {
+                    break;
+                } else if (c == ',') {
+                    commas++;
+                } else if (c == ';') {
+                    semicolons++;
+                } else if (c == '\t') {
+                    tabs++;
+                }
+            }
+        }
+        if (semicolons > commas && semicolons >= tabs) {
+            return ';';
+        }
+        return tabs > commas ? '\t' : ',';
+    }
+}
@@ -0,0 +1,55 @@
+package com.contactbook.io;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * What ContactImporter did with a file.
+ */
+public final class ImportResult {
+
+    private final long imported;
+    private final long rejected;
+    private final long failed;
+    private final List<String> problems;
+
+    ImportResult(long imported, long rejected, long failed, List<String> problems) {
+        this.imported = imported;
+        this.rejected = rejected;
+        this.failed = failed;
+        this.problems = Collections.unmodifiableList(problems);
+    }
+
+    /**
+     * @return The number of contacts added.
+     */
+    public long getImported() {
+        return imported;
+    }
+
+    /**
+     * @return The number of records skipped because they are not valid contacts (no name, overlong fields, ...).
+     */
+    public long getRejected() {
+        return rejected;
+    }
+
+    /**
+     * @return The number of valid contacts the database did not accept.
+     */
+    public long getFailed() {
+        return failed;
+    }
+
+    /**
+     * @return Messages for the first rejected records ("Line 12: no name"), for showing to the user.
+     */
+    public List<String> getProblems() {
+        return problems;
+    }
+
+    @Override
+    public String toString() {
+        return imported + " imported, " + rejected + " rejected, " + failed + " failed";
+    }
+}
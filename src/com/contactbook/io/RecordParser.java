@@ -0,0 +1,32 @@
+package com.contactbook.io;
+
+import java.io.IOException;
+import java.nio.CharBuffer;
+import java.util.function.Consumer;
+
+/**
+ * Turns a stream of characters into contact records. Characters arrive in buffers of any size, and a
+ * record may be split across buffers, so parsers keep only the record in progress and never the whole file.
+ */
+interface RecordParser {
+
+    /** The longest single field or line a parser accepts. Anything longer is a broken file, not a contact. */
+    int MAX_FIELD_CHARS = 64 * 1024;
+
+    /**
+     * Parses all remaining characters of the buffer.
+     * @param chars The next characters of the file.
+     * @param records Receives every record completed by these characters.
+     * @throws IOException if the file is malformed beyond recovery.
+     */
+    void feed(CharBuffer chars, Consumer<ContactRecord> records) throws IOException;
+
+    /**
+     * Called after the last buffer, to complete a record that was not followed by a line break.
+     */
+    void finish(Consumer<ContactRecord> records) throws IOException;
+
+    static RecordParser forFormat(ContactFileFormat format) {
+        return format == ContactFileFormat.VCARD ? new VCardParser() : new CsvParser();
+    }
+}
@@ -0,0 +1,16 @@
+package com.contactbook.io;
+
+/**
+ * Receives progress updates from ContactImporter and ContactExporter, roughly once per thousand contacts.
+ * Called from a background thread; a GUI must hand the update over to its own thread.
+ */
+@FunctionalInterface
+public interface TransferListener {
+
+    /**
+     * @param done How far the transfer is: bytes read for an import, contacts written for an export.
+     * @param total What done counts up to, or -1 if that is not known.
+     * @param contacts The number of contacts imported or exported so far.
+     */
+    void onProgress(long done, long total, long contacts);
+}
@@ -0,0 +1,183 @@
+package com.contactbook.io;
+
+import java.io.IOException;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.function.Consumer;
+
+/**
+ * A streaming vCard parser (versions 2.1, 3.0 and 4.0). Folded lines (continued by a leading space or tab)
+ * are joined before they are read. Of each card it takes FN as the name (or builds one from N when FN is
+ * missing), and the first TEL and EMAIL. All other properties are skipped.
+ */
+final class VCardParser implements RecordParser {
+
+    private final StringBuilder current = new StringBuilder(); // The logical line in progress
+    private boolean started; // Past a byte order mark, if there was one
+    private boolean lineEnded; // A line break was seen; the next character decides if the line is folded
+    private long line = 1;
+    private long cardLine;
+
+    // The card in progress
+    private boolean inCard;
+    private String fullName;
+    private String structuredName;
+    private String phone;
+    private String email;
+
+    @Override
+    public void feed(CharBuffer chars, Consumer<ContactRecord> records) throws IOException {
+        while (chars.hasRemaining()) {
+            char c = chars.get();
+            if (!started) {
+                started = true;
+                if (c == '\uFEFF') {
+                    continue; // Byte order mark, as for CSV files
+                }
+            }
+            if (c == '\r') {
+                continue;
+            }
+            if (lineEnded) {
+                lineEnded = false;
+                if (c == ' ' || c == '\t') {
+                    continue; // Folded line: the rest continues the current line
+                }
+                if (current.length() > 0 && current.charAt(current.length() - 1) == '='
+                        && current.indexOf("QUOTED-PRINTABLE") >= 0) {
+                    current.setLength(current.length() - 1); // Quoted-printable soft line break (vCard 2.1)
+                } else {
+                    processLine(records);
+                }
+            }
+            if (c == '\n') {
+                lineEnded = true;
+                line++;
+            } else {
+                if (current.length() >= MAX_FIELD_CHARS) {
+                    throw new IOException("Line " + line + ": a line is longer than " + MAX_FIELD_CHARS + " characters.");
+                }
+                current.append(c);
+            }
+        }
+    }
+
+    @Override
+    public void finish(Consumer<ContactRecord> records) {
+        processLine(records);
+    }
+
+    private void processLine(Consumer<ContactRecord> records) {
+        String text = current.toString();
+        current.setLength(0);
+        int colon = text.indexOf(':');
+        if (colon <= 0) {
+            return;
+        }
+        String property = text.substring(0, colon);
+        String value = text.substring(colon + 1);
+        int semicolon = property.indexOf(';');
+        String params = semicolon >= 0 ? property.substring(semicolon + 1).toUpperCase(Locale.ROOT) : "";
+        String name = (semicolon >= 0 ? property.substring(0, semicolon) : property).trim().toUpperCase(Locale.ROOT);
+        int dot = name.indexOf('.');
+        if (dot >= 0) {
+            name = name.substring(dot + 1); // Apple's "item1.TEL" grouping
+        }
+
+        switch (name) {
+            case "BEGIN":
+                if (value.trim().equalsIgnoreCase("VCARD")) {
+                    inCard = true;
+                    cardLine = line - 1;
+                    fullName = structuredName = phone = email = null;
+                }
+                break;
+            case "END":
+                if (inCard && value.trim().equalsIgnoreCase("VCARD")) {
+                    inCard = false;
+                    String cardName = fullName != null && !fullName.isBlank() ? fullName : structuredName;
+                    records.accept(new ContactRecord(cardLine, cardName, phone, email));
+                }
+                break;
+            case "FN":
+                if (inCard && fullName == null) {
+                    fullName = unescape(value, params);
+                }
+                break;
+            case "N":
+                if (inCard && structuredName == null) {
+                    structuredName = fromStructuredName(value, params);
+                }
+                break;
+            case "TEL":
+                if (inCard && phone == null) {
+                    phone = unescape(value, params).replaceFirst("^(?i)tel:", "");
+                }
+                break;
+            case "EMAIL":
+                if (inCard && email == null) {
+                    email = unescape(value, params);
+                }
+                break;
+            default:
+                break; // Photos, addresses and everything else are not kept
+        }
+    }
+
+    /**
+     * N is "Family;Given;Additional;Prefixes;Suffixes"; the contact name is "Given Additional Family".
+     */
+    private static String fromStructuredName(String value, String params) {
+        String[] parts = value.split("(?<!\\\\);", -1);
+        StringBuilder name = new StringBuilder();
+        for (int index : new int[]{1, 2, 0}) {
+            if (index < parts.length) {
+                String part = unescape(parts[index], params).trim();
+                if (!part.isEmpty()) {
+                    name.append(name.length() > 0 ? " " : "").append(part);
+                }
+            }
+        }
+        return name.toString();
+    }
+
+    private static String unescape(String value, String params) {
+        if (params.contains("QUOTED-PRINTABLE")) {
+            value = decodeQuotedPrintable(value);
+        }
+        if (value.indexOf('\\') < 0) {
+            return value;
+        }
+        StringBuilder sb = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' && i + 1 < value.length()) {
+                char next = value.charAt(++i);
+                sb.append(next == 'n' || next == 'N' ? ' ' : next); // A line break in a name or number is just a space
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * vCard 2.1 exports from older phones encode non-ASCII names as quoted-printable UTF-8 ("=C3=A9").
+     */
+    private static String decodeQuotedPrintable(String value) {
+        byte[] bytes = new byte[value.length()];
+        int count = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '=' && i + 2 < value.length() && Character.digit(value.charAt(i + 1), 16) >= 0
+                    && Character.digit(value.charAt(i + 2), 16) >= 0) {
+                bytes[count++] = (byte) Integer.parseInt(value.substring(i + 1, i + 3), 16);
+                i += 2;
+            } else {
+                bytes[count++] = (byte) c;
+            }
+        }
+        return new String(bytes, 0, count, StandardCharsets.UTF_8);
+    }
+}
@@ -5,6 +5,7 @@ public class Contact {
     private String name;
     private String phone;
     private String email;
+    private long version = 1; // Row version in the database, incremented on every update
 
     // Constructor for creating new contacts (ID will be generated by DB)
     public Contact(String name, String phone, String email) {
@@ -21,6 +22,12 @@ public class Contact {
         this.email = email;
     }
 
+    // Constructor for retrieving contacts from the database with their row version
+    public Contact(int id, String name, String phone, String email, long version) {
+        this(id, name, phone, email);
+        this.version = version;
+    }
+
     // Getters
     public int getId() {
         return id;
@@ -38,6 +45,10 @@ public class Contact {
         return email;
     }
 
+    public long getVersion() {
+        return version;
+    }
+
     // Setters (useful for editing contacts)
     public void setId(int id) {
         this.id = id;
@@ -55,6 +66,10 @@ public class Contact {
         this.email = email;
     }
 
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
     @Override
     public String toString() {
         return "ID: " + id + ", Name: " + name + ", Phone: " + phone + ", Email: " + email;
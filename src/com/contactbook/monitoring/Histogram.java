@@ -0,0 +1,110 @@
+package com.contactbook.monitoring;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A fixed-size, lock-free histogram of non-negative long values (latencies in nanoseconds, row counts),
+ * built the same way as HdrHistogram: values below 128 get a bucket each, and every power of two above
+ * that is split into 64 linear sub-buckets. Any recorded value is therefore known to within 1/64
+ * (about 1.6%), whatever its magnitude, and a percentile costs one pass over the buckets.
+ *
+ * record() is a few atomic increments with no allocation, so it can sit on hot paths. Readers may see a
+ * value counted in one field and not yet in another; that is fine for monitoring.
+ */
+public final class Histogram {
+
+    private static final int SUB_BUCKET_BITS = 6; // 64 sub-buckets per power of two
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int LINEAR_LIMIT = SUB_BUCKETS * 2; // Values below this get an exact bucket
+    private static final long MAX_TRACKABLE = (1L << 42) - 1; // About 73 minutes in nanoseconds; larger values are clamped
+    private static final int BUCKET_COUNT = indexOf(MAX_TRACKABLE) + 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final LongAdder total = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * @param value The value to record; negative values are recorded as 0.
+     */
+    public void record(long value) {
+        long v = Math.max(0, value);
+        counts.incrementAndGet(indexOf(Math.min(v, MAX_TRACKABLE)));
+        total.increment();
+        sum.add(v);
+        if (v > max.get()) {
+            max.accumulateAndGet(v, Math::max);
+        }
+    }
+
+    public long getCount() {
+        return total.sum();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    public double getMean() {
+        long count = total.sum();
+        return count == 0 ? 0.0 : (double) sum.sum() / count;
+    }
+
+    /**
+     * @param percentile The percentile, from 0 to 100 (for example 99.9).
+     * @return The value at or below which the given share of the recorded values lie (the upper edge of its bucket),
+     *         or 0 if nothing was recorded.
+     */
+    public long getValueAtPercentile(double percentile) {
+        long[] snapshot = new long[BUCKET_COUNT];
+        long count = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            snapshot[i] = counts.get(i);
+            count += snapshot[i];
+        }
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(count * Math.min(100.0, Math.max(0.0, percentile)) / 100.0));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return Math.min(highestValueIn(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * Clears all recorded values. Values recorded while the reset runs may or may not survive it.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts.set(i, 0);
+        }
+        total.reset();
+        sum.reset();
+        max.set(0);
+    }
+
+    private static int indexOf(long value) {
+        if (value < LINEAR_LIMIT) {
+            return (int) value;
+        }
+        // Shift the value down until it has SUB_BUCKET_BITS + 1 significant bits: [64, 127]
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return (shift << SUB_BUCKET_BITS) + (int) (value >>> shift);
+    }
+
+    private static long highestValueIn(int index) {
+        if (index < LINEAR_LIMIT) {
+            return index;
+        }
+        int shift = (index >>> SUB_BUCKET_BITS) - 1;
+        long subBucket = index - ((long) shift << SUB_BUCKET_BITS);
+        return ((subBucket + 1) << shift) - 1;
+    }
+}
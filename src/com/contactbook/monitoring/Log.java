@@ -0,0 +1,189 @@
+package com.contactbook.monitoring;
+
+import java.io.PrintStream;
+import java.time.Instant;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * The application's logger. Callers only put a message on a bounded queue; a background thread formats
+ * it and writes it to the console, so a slow terminal never holds up a database call or the Swing EDT.
+ *
+ * DEBUG is for per-operation messages ("contact 42 updated") and is off by default: debug() takes a
+ * Supplier, so when DEBUG is off not even the message string is built. The level comes from the
+ * contactbook.logLevel system property (DEBUG, INFO, WARN, ERROR or OFF; INFO by default) and can be
+ * changed at runtime with setLevel().
+ *
+ * If the queue is full, DEBUG and INFO messages are dropped and counted (see getDroppedCount());
+ * WARN and ERROR messages are then written directly by the caller instead, so no error is lost.
+ * Pending messages are written out when the JVM shuts down.
+ */
+public final class Log {
+
+    public enum Level { DEBUG, INFO, WARN, ERROR, OFF }
+
+    /** System property holding the initial log level. */
+    public static final String LEVEL_PROPERTY = "contactbook.logLevel";
+
+    private static final int QUEUE_CAPACITY = 8192;
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("HH:mm:ss.SSS");
+
+    private static volatile Level level = parseLevel(System.getProperty(LEVEL_PROPERTY));
+    private static final BlockingQueue<Entry> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private static final LongAdder dropped = new LongAdder();
+    private static long droppedReported; // Writer thread only
+
+    private static final Object writeLock = new Object(); // Keeps lines from the writer and from direct writes apart
+
+    static {
+        Thread writer = new Thread(Log::drainForever, "contactbook-log");
+        writer.setDaemon(true);
+        writer.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(Log::drain, "contactbook-log-flush"));
+    }
+
+    private Log() {
+    }
+
+    /**
+     * One message waiting to be written. The time and thread are captured by the caller, the text is formatted later.
+     */
+    private record Entry(long timeMillis, Level level, String thread, String message, Throwable error) {
+    }
+
+    public static Level getLevel() {
+        return level;
+    }
+
+    public static void setLevel(Level newLevel) {
+        level = newLevel;
+    }
+
+    public static boolean isDebugEnabled() {
+        return level == Level.DEBUG;
+    }
+
+    /**
+     * Logs a per-operation detail. The supplier is only called when DEBUG is on.
+     */
+    public static void debug(Supplier<String> message) {
+        if (level == Level.DEBUG) {
+            enqueue(Level.DEBUG, message.get(), null);
+        }
+    }
+
+    public static void info(String message) {
+        if (level.compareTo(Level.INFO) <= 0) {
+            enqueue(Level.INFO, message, null);
+        }
+    }
+
+    public static void warn(String message) {
+        if (level.compareTo(Level.WARN) <= 0) {
+            enqueue(Level.WARN, message, null);
+        }
+    }
+
+    public static void error(String message) {
+        error(message, null);
+    }
+
+    /**
+     * Logs an error together with the stack trace of its cause.
+     */
+    public static void error(String message, Throwable error) {
+        if (level.compareTo(Level.ERROR) <= 0) {
+            enqueue(Level.ERROR, message, error);
+        }
+    }
+
+    /**
+     * @return The number of DEBUG and INFO messages dropped because the queue was full.
+     */
+    public static long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    /**
+     * Waits (up to a second) until every message logged so far has been written.
+     */
+    public static void flush() {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+        while (!queue.isEmpty() && System.nanoTime() < deadline) {
+            Thread.onSpinWait();
+            Thread.yield();
+        }
+        synchronized (writeLock) {
+            System.out.flush(); // Also waits for a line the writer is in the middle of
+        }
+    }
+
+    private static void enqueue(Level messageLevel, String message, Throwable error) {
+        Entry entry = new Entry(System.currentTimeMillis(), messageLevel, Thread.currentThread().getName(), message, error);
+        if (!queue.offer(entry)) {
+            if (messageLevel.compareTo(Level.WARN) >= 0) {
+                write(entry); // Never drop a warning or an error
+            } else {
+                dropped.increment();
+            }
+        }
+    }
+
+    private static void drainForever() {
+        while (true) {
+            try {
+                write(queue.take());
+                drain();
+            } catch (InterruptedException e) {
+                return;
+            } catch (RuntimeException e) {
+                // Keep the writer alive whatever a message's toString() or stack trace does
+            }
+        }
+    }
+
+    private static void drain() {
+        Entry entry;
+        while ((entry = queue.poll()) != null) {
+            write(entry);
+        }
+        long droppedNow = dropped.sum();
+        if (droppedNow != droppedReported) {
+            synchronized (writeLock) {
+                System.err.println("Log: " + (droppedNow - droppedReported) + " messages dropped, the log queue was full.");
+            }
+            droppedReported = droppedNow;
+        }
+    }
+
+    private static void write(Entry entry) {
+        PrintStream out = entry.level().compareTo(Level.WARN) >= 0 ? System.err : System.out;
+        String time = LocalTime.ofInstant(Instant.ofEpochMilli(entry.timeMillis()), ZoneId.systemDefault())
+                .format(TIME_FORMAT);
+        synchronized (writeLock) {
+            out.println(time + " " + String.format("%-5s", entry.level()) + " [" + entry.thread() + "] " + entry.message());
+            if (entry.error() != null) {
+                entry.error().printStackTrace(out);
+            }
+        }
+    }
+
+    private static Level parseLevel(String value) {
+        if (value == null || value.isBlank()) {
+            return Level.INFO;
+        }
+        try {
+            return Level.valueOf(value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            System.err.println("Log: Unknown " + LEVEL_PROPERTY + " '" + value + "', using INFO.");
+            return Level.INFO;
+        }
+    }
+}
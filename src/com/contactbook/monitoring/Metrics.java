@@ -0,0 +1,293 @@
+package com.contactbook.monitoring;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.MBeanParameterInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * The application-wide registry of metrics, shared by the database and service layers:
+ * <ul>
+ *   <li>timers - latency percentiles and failure counts per operation (see Timer),</li>
+ *   <li>histograms - distributions of other values, such as the rows read per load,</li>
+ *   <li>counters - plain event counts,</li>
+ *   <li>gauges - current values read on demand, such as the number of cached contacts.</li>
+ * </ul>
+ * Metrics are created on first use by name, so instrumented code simply keeps the Timer it asked for in a
+ * static field. registerMBean() publishes everything over JMX (jconsole, VisualVM) as one MBean named
+ * com.contactbook:type=Metrics, and startPeriodicDump() writes a summary to the log at a fixed interval.
+ */
+public final class Metrics {
+
+    /** The JMX name the metrics are published under. */
+    public static final String OBJECT_NAME = "com.contactbook:type=Metrics";
+
+    private static final ConcurrentMap<String, Timer> timers = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<String, Histogram> histograms = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<String, LongAdder> counters = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<String, Supplier<? extends Number>> gauges = new ConcurrentHashMap<>();
+
+    private static ScheduledExecutorService dumper; // Guarded by Metrics.class
+    private static boolean registered; // Guarded by Metrics.class
+
+    static {
+        gauge("log.dropped", Log::getDroppedCount);
+    }
+
+    private Metrics() {
+    }
+
+    /**
+     * @return The timer with the given name, created if needed.
+     */
+    public static Timer timer(String name) {
+        return timers.computeIfAbsent(name, Timer::new);
+    }
+
+    /**
+     * @return The histogram with the given name, created if needed.
+     */
+    public static Histogram histogram(String name) {
+        return histograms.computeIfAbsent(name, n -> new Histogram());
+    }
+
+    /**
+     * @return The counter with the given name, created if needed.
+     */
+    public static LongAdder counter(String name) {
+        return counters.computeIfAbsent(name, n -> new LongAdder());
+    }
+
+    /**
+     * Registers a gauge, replacing any gauge of the same name.
+     * @param name The name of the gauge.
+     * @param value Reads the current value. Called from monitoring threads, so it must be thread-safe and cheap.
+     */
+    public static void gauge(String name, Supplier<? extends Number> value) {
+        gauges.put(name, value);
+    }
+
+    /**
+     * Removes a gauge, so the registry no longer holds on to the object it reads.
+     */
+    public static void removeGauge(String name) {
+        gauges.remove(name);
+    }
+
+    /**
+     * Removes a gauge only if it is still the given one. An owner that is shut down uses this, so it does not
+     * remove the gauge a newer owner has registered under the same name meanwhile.
+     */
+    public static void removeGauge(String name, Supplier<? extends Number> value) {
+        gauges.remove(name, value);
+    }
+
+    /**
+     * Clears every timer, histogram and counter. Gauges are current values and are left alone.
+     */
+    public static void reset() {
+        timers.values().forEach(Timer::reset);
+        histograms.values().forEach(Histogram::reset);
+        counters.values().forEach(LongAdder::reset);
+    }
+
+    /**
+     * @return A multi-line summary of all metrics, sorted by name.
+     */
+    public static String dump() {
+        StringBuilder sb = new StringBuilder("Metrics:");
+        for (Timer timer : new TreeMap<>(timers).values()) {
+            if (timer.getCount() > 0) {
+                sb.append("\n  ").append(timer.getSummary());
+            }
+        }
+        for (Map.Entry<String, Histogram> entry : new TreeMap<>(histograms).entrySet()) {
+            Histogram histogram = entry.getValue();
+            if (histogram.getCount() > 0) {
+                sb.append(String.format("%n  %s: count=%d, mean=%.1f, p50=%d, p99=%d, max=%d", entry.getKey(),
+                        histogram.getCount(), histogram.getMean(), histogram.getValueAtPercentile(50),
+                        histogram.getValueAtPercentile(99), histogram.getMax()));
+            }
+        }
+        for (Map.Entry<String, LongAdder> entry : new TreeMap<>(counters).entrySet()) {
+            sb.append("\n  ").append(entry.getKey()).append(" = ").append(entry.getValue().sum());
+        }
+        for (Map.Entry<String, Supplier<? extends Number>> entry : new TreeMap<>(gauges).entrySet()) {
+            sb.append("\n  ").append(entry.getKey()).append(" = ").append(readGauge(entry.getValue()));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Writes dump() to the log every intervalMillis, on a background thread. Replaces any earlier schedule.
+     */
+    public static synchronized void startPeriodicDump(long intervalMillis) {
+        stopPeriodicDump();
+        dumper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "contactbook-metrics");
+            t.setDaemon(true);
+            return t;
+        });
+        dumper.scheduleAtFixedRate(() -> Log.info(dump()), intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public static synchronized void stopPeriodicDump() {
+        if (dumper != null) {
+            dumper.shutdownNow();
+            dumper = null;
+        }
+    }
+
+    /**
+     * Publishes the metrics on the platform MBean server under OBJECT_NAME. Calling it again does nothing.
+     * @return true if the MBean is registered afterwards.
+     */
+    public static synchronized boolean registerMBean() {
+        if (registered) {
+            return true;
+        }
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            server.registerMBean(new MetricsBean(), new ObjectName(OBJECT_NAME));
+            registered = true;
+            Log.info("Metrics: Published over JMX as " + OBJECT_NAME + ".");
+        } catch (JMException e) {
+            Log.error("Metrics: Could not register the JMX MBean: " + e.getMessage(), e);
+        }
+        return registered;
+    }
+
+    private static Object readGauge(Supplier<? extends Number> gauge) {
+        try {
+            return gauge.get();
+        } catch (RuntimeException e) {
+            return -1; // A gauge whose source has gone away
+        }
+    }
+
+    /**
+     * Every metric as JMX attributes. A timer "db.addContact" becomes db.addContact.count, .failures,
+     * .meanMicros, .p50Micros, .p99Micros, .p999Micros and .maxMicros; a histogram gets .count, .mean,
+     * .p50, .p99 and .max; counters and gauges are one attribute each. The attribute set follows the
+     * registry as metrics are created.
+     */
+    private static final class MetricsBean implements DynamicMBean {
+
+        private static Map<String, Supplier<Object>> attributes() {
+            Map<String, Supplier<Object>> all = new LinkedHashMap<>();
+            for (Timer timer : new TreeMap<>(timers).values()) {
+                String n = timer.getName();
+                all.put(n + ".count", timer::getCount);
+                all.put(n + ".failures", timer::getFailureCount);
+                all.put(n + ".meanMicros", timer::getMeanMicros);
+                all.put(n + ".p50Micros", () -> timer.getPercentileMicros(50));
+                all.put(n + ".p99Micros", () -> timer.getPercentileMicros(99));
+                all.put(n + ".p999Micros", () -> timer.getPercentileMicros(99.9));
+                all.put(n + ".maxMicros", timer::getMaxMicros);
+            }
+            for (Map.Entry<String, Histogram> entry : new TreeMap<>(histograms).entrySet()) {
+                String n = entry.getKey();
+                Histogram histogram = entry.getValue();
+                all.put(n + ".count", histogram::getCount);
+                all.put(n + ".mean", histogram::getMean);
+                all.put(n + ".p50", () -> histogram.getValueAtPercentile(50));
+                all.put(n + ".p99", () -> histogram.getValueAtPercentile(99));
+                all.put(n + ".max", histogram::getMax);
+            }
+            for (Map.Entry<String, LongAdder> entry : new TreeMap<>(counters).entrySet()) {
+                LongAdder counter = entry.getValue();
+                all.put(entry.getKey(), counter::sum);
+            }
+            for (Map.Entry<String, Supplier<? extends Number>> entry : new TreeMap<>(gauges).entrySet()) {
+                Supplier<? extends Number> gauge = entry.getValue();
+                all.put(entry.getKey(), () -> readGauge(gauge));
+            }
+            return all;
+        }
+
+        @Override
+        public Object getAttribute(String attribute) throws AttributeNotFoundException {
+            Supplier<Object> value = attributes().get(attribute);
+            if (value == null) {
+                throw new AttributeNotFoundException(attribute);
+            }
+            return value.get();
+        }
+
+        @Override
+        public AttributeList getAttributes(String[] names) {
+            Map<String, Supplier<Object>> all = attributes();
+            AttributeList list = new AttributeList();
+            for (String name : names) {
+                Supplier<Object> value = all.get(name);
+                if (value != null) {
+                    list.add(new Attribute(name, value.get()));
+                }
+            }
+            return list;
+        }
+
+        @Override
+        public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+            throw new AttributeNotFoundException("Metrics are read-only: " + attribute.getName());
+        }
+
+        @Override
+        public AttributeList setAttributes(AttributeList attributes) {
+            return new AttributeList(); // Nothing is writable
+        }
+
+        @Override
+        public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+            switch (actionName) {
+                case "dump":
+                    return dump();
+                case "reset":
+                    reset();
+                    return null;
+                default:
+                    throw new ReflectionException(new NoSuchMethodException(actionName));
+            }
+        }
+
+        @Override
+        public MBeanInfo getMBeanInfo() {
+            List<MBeanAttributeInfo> infos = new ArrayList<>();
+            for (Map.Entry<String, Supplier<Object>> entry : attributes().entrySet()) {
+                Object value = entry.getValue().get();
+                String type = value instanceof Double ? "java.lang.Double"
+                        : value instanceof Integer ? "java.lang.Integer" : "java.lang.Long";
+                infos.add(new MBeanAttributeInfo(entry.getKey(), type, entry.getKey(), true, false, false));
+            }
+            MBeanOperationInfo[] operations = {
+                    new MBeanOperationInfo("dump", "All metrics as text", new MBeanParameterInfo[0],
+                            "java.lang.String", MBeanOperationInfo.INFO),
+                    new MBeanOperationInfo("reset", "Clears timers, histograms and counters", new MBeanParameterInfo[0],
+                            "void", MBeanOperationInfo.ACTION)
+            };
+            return new MBeanInfo(Metrics.class.getName(), "Contact Book metrics",
+                    infos.toArray(new MBeanAttributeInfo[0]), null, operations, null);
+        }
+    }
+}
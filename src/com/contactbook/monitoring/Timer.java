@@ -0,0 +1,92 @@
+package com.contactbook.monitoring;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency and outcome of one kind of operation: a Histogram of durations in nanoseconds plus a count of failures.
+ * Typical use:
+ * <pre>
+ * long started = System.nanoTime();
+ * boolean ok = doTheWork();
+ * TIMER.record(started, ok);
+ * </pre>
+ */
+public final class Timer {
+
+    private final String name;
+    private final Histogram latencies = new Histogram();
+    private final LongAdder failures = new LongAdder();
+
+    Timer(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Records one operation that started at the given System.nanoTime() and ends now.
+     * @param startNanos The System.nanoTime() taken when the operation started.
+     * @param succeeded false if the operation failed; it is then also counted as a failure.
+     */
+    public void record(long startNanos, boolean succeeded) {
+        latencies.record(System.nanoTime() - startNanos);
+        if (!succeeded) {
+            failures.increment();
+        }
+    }
+
+    public long getCount() {
+        return latencies.getCount();
+    }
+
+    public long getFailureCount() {
+        return failures.sum();
+    }
+
+    public Histogram getLatencies() {
+        return latencies;
+    }
+
+    /**
+     * @return The latency at the given percentile (0 to 100) in microseconds.
+     */
+    public double getPercentileMicros(double percentile) {
+        return latencies.getValueAtPercentile(percentile) / 1_000.0;
+    }
+
+    public double getMeanMicros() {
+        return latencies.getMean() / 1_000.0;
+    }
+
+    public double getMaxMicros() {
+        return latencies.getMax() / 1_000.0;
+    }
+
+    /**
+     * @return A one-line summary: count, failures, mean, p50, p99, p99.9 and max.
+     */
+    public String getSummary() {
+        if (getCount() == 0) {
+            return name + ": no calls";
+        }
+        return String.format("%s: count=%d, failures=%d, mean=%s, p50=%s, p99=%s, p99.9=%s, max=%s",
+                name, getCount(), getFailureCount(), format(latencies.getMean()),
+                format(latencies.getValueAtPercentile(50)), format(latencies.getValueAtPercentile(99)),
+                format(latencies.getValueAtPercentile(99.9)), format(latencies.getMax()));
+    }
+
+    void reset() {
+        latencies.reset();
+        failures.reset();
+    }
+
+    private static String format(double nanos) {
+        if (nanos >= TimeUnit.MILLISECONDS.toNanos(1)) {
+            return String.format("%.2f ms", nanos / 1_000_000.0);
+        }
+        return String.format("%.1f us", nanos / 1_000.0);
+    }
+}
@@ -0,0 +1,426 @@
+package com.contactbook.server;
+
+import com.contactbook.model.Contact;
+import com.contactbook.monitoring.Log;
+import com.contactbook.service.ContactService;
+import com.contactbook.service.ContactSortKey;
+import com.contactbook.service.UpdateResult;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Serves the /contacts resource:
+ * <pre>
+ *   GET    /contacts?offset=0&amp;limit=100   one page of contacts, in the service's row order
+ *   GET    /contacts?sort=name&amp;offset=0   one page sorted by id, name or email (see ContactService.getContacts())
+ *   GET    /contacts/search?q=ann&amp;limit=20 contacts matching a query (see ContactService.search())
+ *   POST   /contacts                      add a contact: {"name": "...", "phone": "...", "email": "..."}
+ *   GET    /contacts/{id}                 one contact
+ *   PUT    /contacts/{id}                 replace a contact's name, phone and email (If-Match: "version" to require it)
+ *   DELETE /contacts/{id}                 delete a contact
+ * </pre>
+ * Lists are encoded while they are sent, one contact at a time, so even a page of a hundred thousand contacts
+ * never sits in memory as JSON. Every GET answers with an ETag (the contact's version for one contact, the
+ * service's change counter for lists), and a request whose If-None-Match still matches gets 304 Not Modified
+ * without a body.
+ */
+final class ContactHandler implements HttpHandler {
+
+    static final int DEFAULT_LIMIT = 100;
+    static final int MAX_LIMIT = 100_000;
+    private static final int MAX_BODY_BYTES = 64 * 1024;
+    private static final int WRITE_BUFFER_CHARS = 16 * 1024;
+
+    private final ContactService service;
+
+    ContactHandler(ContactService service) {
+        this.service = service;
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        try {
+            route(exchange);
+        } catch (BadRequestException e) {
+            sendError(exchange, e.status, e.getMessage());
+        } catch (RuntimeException e) {
+            Log.error("ContactHandler: " + exchange.getRequestMethod() + " " + exchange.getRequestURI() + " failed: " + e, e);
+            sendError(exchange, 500, "Internal error.");
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void route(HttpExchange exchange) throws IOException {
+        String method = exchange.getRequestMethod();
+        String path = exchange.getRequestURI().getPath();
+        String rest = path.length() > "/contacts".length() ? path.substring("/contacts".length() + 1) : "";
+        if (rest.endsWith("/")) {
+            rest = rest.substring(0, rest.length() - 1);
+        }
+        if (!path.equals("/contacts") && !path.startsWith("/contacts/")) {
+            throw new BadRequestException(404, "No such resource: " + path);
+        }
+
+        if (rest.isEmpty()) {
+            switch (method) {
+                case "GET":
+                    listContacts(exchange);
+                    return;
+                case "POST":
+                    addContact(exchange);
+                    return;
+                default:
+                    methodNotAllowed(exchange, "GET, POST");
+                    return;
+            }
+        }
+        if (rest.equals("search")) {
+            if (method.equals("GET")) {
+                searchContacts(exchange);
+            } else {
+                methodNotAllowed(exchange, "GET");
+            }
+            return;
+        }
+        int id = parseId(rest);
+        switch (method) {
+            case "GET":
+                getContact(exchange, id);
+                break;
+            case "PUT":
+                updateContact(exchange, id);
+                break;
+            case "DELETE":
+                deleteContact(exchange, id);
+                break;
+            default:
+                methodNotAllowed(exchange, "GET, PUT, DELETE");
+                break;
+        }
+    }
+
+    // --- Collection ---
+
+    private void listContacts(HttpExchange exchange) throws IOException {
+        Map<String, String> query = parseQuery(exchange);
+        int offset = intParameter(query, "offset", 0, 0, Integer.MAX_VALUE);
+        int limit = intParameter(query, "limit", DEFAULT_LIMIT, 0, MAX_LIMIT);
+        ContactSortKey sortKey = sortParameter(query);
+        String etag = collectionTag();
+        if (notModified(exchange, etag)) {
+            return;
+        }
+        int total = service.getContactCount();
+        // Sorted pages come from the sort index as a list; the row order is read row by row while writing
+        List<Contact> sorted = sortKey != null ? service.getContacts(sortKey, offset, limit) : null;
+        int end = sorted != null ? sorted.size() : (int) Math.max(0, Math.min(total, (long) offset + limit) - offset);
+        try (Writer out = startJson(exchange, 200, etag)) {
+            out.write("{\"total\":" + total + ",\"offset\":" + offset + ",\"limit\":" + limit + ",\"contacts\":[");
+            boolean first = true;
+            for (int i = 0; i < end; i++) {
+                Contact contact = sorted != null ? sorted.get(i) : service.getContactAt(offset + i);
+                if (contact == null) {
+                    continue; // Removed while the page was being written
+                }
+                if (!first) {
+                    out.write(',');
+                }
+                Json.writeContact(out, contact);
+                first = false;
+            }
+            out.write("]}");
+        }
+    }
+
+    private void searchContacts(HttpExchange exchange) throws IOException {
+        Map<String, String> query = parseQuery(exchange);
+        String text = query.get("q");
+        if (text == null || text.isBlank()) {
+            throw new BadRequestException(400, "The query parameter q is required.");
+        }
+        int limit = intParameter(query, "limit", DEFAULT_LIMIT, 0, MAX_LIMIT);
+        String etag = collectionTag();
+        if (notModified(exchange, etag)) {
+            return;
+        }
+        List<Contact> found = service.search(text, limit);
+        try (Writer out = startJson(exchange, 200, etag)) {
+            out.write('[');
+            for (int i = 0; i < found.size(); i++) {
+                if (i > 0) {
+                    out.write(',');
+                }
+                Json.writeContact(out, found.get(i));
+            }
+            out.write(']');
+        }
+    }
+
+    private void addContact(HttpExchange exchange) throws IOException {
+        ContactFields fields = readFields(exchange);
+        Contact added = service.addContact(fields.name, fields.phone, fields.email);
+        if (added == null) {
+            throw new BadRequestException(500, "The contact could not be saved.");
+        }
+        exchange.getResponseHeaders().set("Location", "/contacts/" + added.getId());
+        sendContact(exchange, 201, added);
+    }
+
+    // --- Single contact ---
+
+    private void getContact(HttpExchange exchange, int id) throws IOException {
+        Contact contact = requireContact(id);
+        if (notModified(exchange, contactTag(contact))) {
+            return;
+        }
+        sendContact(exchange, 200, contact);
+    }
+
+    /**
+     * With If-Match, the update only goes through if the contact is still at that version (412 Precondition
+     * Failed otherwise). Without it, changes made meanwhile to other fields are merged in, and a change to the
+     * same fields is a 409 Conflict. Both error responses carry the current version as their ETag.
+     */
+    private void updateContact(HttpExchange exchange, int id) throws IOException {
+        ContactFields fields = readFields(exchange);
+        Contact base = requireContact(id);
+        String ifMatch = exchange.getRequestHeaders().getFirst("If-Match");
+        boolean conditional = ifMatch != null && !ifMatch.trim().equals("*");
+        if (conditional && !ifMatch.trim().equals(contactTag(base))) {
+            preconditionFailed(exchange, base);
+            return;
+        }
+        UpdateResult result = service.updateContact(base, fields.name, fields.phone, fields.email, !conditional);
+        switch (result.getStatus()) {
+            case UPDATED:
+            case MERGED:
+                sendContact(exchange, 200, result.getContact());
+                break;
+            case CONFLICT:
+                if (conditional) {
+                    preconditionFailed(exchange, result.getContact());
+                } else {
+                    exchange.getResponseHeaders().set("ETag", contactTag(result.getContact()));
+                    sendError(exchange, 409, "Another client changed the same fields of this contact meanwhile.");
+                }
+                break;
+            case NOT_FOUND:
+                throw new BadRequestException(404, "No contact with ID " + id + ".");
+            case FAILED:
+            default:
+                throw new BadRequestException(500, "The contact could not be updated.");
+        }
+    }
+
+    private static void preconditionFailed(HttpExchange exchange, Contact current) throws IOException {
+        exchange.getResponseHeaders().set("ETag", contactTag(current));
+        sendError(exchange, 412, "The contact is no longer at that version.");
+    }
+
+    private void deleteContact(HttpExchange exchange, int id) throws IOException {
+        requireContact(id);
+        if (!service.deleteContact(id)) {
+            requireContact(id);
+            throw new BadRequestException(500, "The contact could not be deleted.");
+        }
+        exchange.sendResponseHeaders(204, -1);
+    }
+
+    private Contact requireContact(int id) {
+        Contact contact = service.getContact(id);
+        if (contact == null) {
+            throw new BadRequestException(404, "No contact with ID " + id + ".");
+        }
+        return contact;
+    }
+
+    // --- Requests ---
+
+    private static final class ContactFields {
+        String name;
+        String phone;
+        String email;
+    }
+
+    private static ContactFields readFields(HttpExchange exchange) throws IOException {
+        Map<String, String> members;
+        try {
+            members = Json.parseObject(readBody(exchange));
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestException(400, "Invalid JSON: " + e.getMessage());
+        }
+        ContactFields fields = new ContactFields();
+        fields.name = members.get("name") != null ? members.get("name").trim() : "";
+        fields.phone = members.get("phone") != null ? members.get("phone").trim() : "";
+        fields.email = members.get("email") != null ? members.get("email").trim() : "";
+        if (fields.name.isEmpty()) {
+            throw new BadRequestException(400, "A contact needs a name.");
+        }
+        return fields;
+    }
+
+    private static String readBody(HttpExchange exchange) throws IOException {
+        try (InputStream in = exchange.getRequestBody()) {
+            byte[] body = in.readNBytes(MAX_BODY_BYTES + 1);
+            if (body.length > MAX_BODY_BYTES) {
+                throw new BadRequestException(413, "The request body is larger than " + MAX_BODY_BYTES + " bytes.");
+            }
+            return new String(body, StandardCharsets.UTF_8);
+        }
+    }
+
+    private static Map<String, String> parseQuery(HttpExchange exchange) {
+        Map<String, String> parameters = new HashMap<>();
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query == null || query.isEmpty()) {
+            return parameters;
+        }
+        for (String pair : query.split("&")) {
+            int equals = pair.indexOf('=');
+            String name = equals >= 0 ? pair.substring(0, equals) : pair;
+            String value = equals >= 0 ? pair.substring(equals + 1) : "";
+            try {
+                parameters.putIfAbsent(URLDecoder.decode(name, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+            } catch (IllegalArgumentException e) {
+                throw new BadRequestException(400, "Invalid query string.");
+            }
+        }
+        return parameters;
+    }
+
+    private static int intParameter(Map<String, String> query, String name, int defaultValue, int min, int max) {
+        String value = query.get(name);
+        if (value == null || value.isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            int parsed = Integer.parseInt(value);
+            if (parsed >= min && parsed <= max) {
+                return parsed;
+            }
+        } catch (NumberFormatException e) {
+            // Reported below
+        }
+        throw new BadRequestException(400, "The parameter " + name + " must be a number from " + min + " to " + max + ".");
+    }
+
+    private static ContactSortKey sortParameter(Map<String, String> query) {
+        String value = query.get("sort");
+        if (value == null || value.isEmpty()) {
+            return null;
+        }
+        try {
+            return ContactSortKey.valueOf(value.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestException(400, "The parameter sort must be id, name or email.");
+        }
+    }
+
+    private static int parseId(String text) {
+        try {
+            return Integer.parseInt(text);
+        } catch (NumberFormatException e) {
+            throw new BadRequestException(404, "No such resource: /contacts/" + text);
+        }
+    }
+
+    // --- Conditional GETs ---
+
+    /**
+     * Lists change whenever any contact changes, so their tag is the service's change counter. It is weak,
+     * because the same page may come out byte-for-byte different (a row skipped mid-change) for the same tag.
+     */
+    private String collectionTag() {
+        return "W/\"" + Long.toHexString(service.getChangeCount()) + "\"";
+    }
+
+    private static String contactTag(Contact contact) {
+        return "\"" + contact.getVersion() + "\"";
+    }
+
+    /**
+     * Answers 304 Not Modified if the client's If-None-Match lists the current tag.
+     * @return true if the response has been sent.
+     */
+    private static boolean notModified(HttpExchange exchange, String etag) throws IOException {
+        String ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        String bare = etag.startsWith("W/") ? etag.substring(2) : etag; // GET compares tags weakly
+        for (String candidate : ifNoneMatch.split(",")) {
+            candidate = candidate.trim();
+            if (candidate.startsWith("W/")) {
+                candidate = candidate.substring(2);
+            }
+            if (candidate.equals("*") || candidate.equals(bare)) {
+                exchange.getResponseHeaders().set("ETag", etag);
+                exchange.sendResponseHeaders(304, -1);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // --- Responses ---
+
+    /**
+     * Starts a chunked JSON response, for bodies written while they are produced.
+     */
+    private static Writer startJson(HttpExchange exchange, int status, String etag) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        if (etag != null) {
+            exchange.getResponseHeaders().set("ETag", etag);
+        }
+        exchange.sendResponseHeaders(status, 0); // 0: length unknown, sent in chunks
+        return new BufferedWriter(new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8), WRITE_BUFFER_CHARS);
+    }
+
+    private static void sendContact(HttpExchange exchange, int status, Contact contact) throws IOException {
+        try (Writer out = startJson(exchange, status, contactTag(contact))) {
+            Json.writeContact(out, contact);
+        }
+    }
+
+    static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        try (Writer out = startJson(exchange, status, null)) {
+            out.write("{\"error\":");
+            Json.writeString(out, message);
+            out.write('}');
+        } catch (IOException e) {
+            // The headers were already sent, or the client has gone; nothing more to tell it
+        }
+    }
+
+    private static void methodNotAllowed(HttpExchange exchange, String allowed) throws IOException {
+        exchange.getResponseHeaders().set("Allow", allowed);
+        sendError(exchange, 405, "Allowed methods: " + allowed + ".");
+    }
+
+    /**
+     * Ends a request early with an error status.
+     */
+    static final class BadRequestException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        final int status;
+
+        BadRequestException(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+}
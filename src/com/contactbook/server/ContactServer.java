@@ -0,0 +1,153 @@
+package com.contactbook.server;
+
+import com.contactbook.monitoring.Log;
+import com.contactbook.monitoring.Metrics;
+import com.contactbook.monitoring.Timer;
+import com.contactbook.service.ContactService;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * An embedded HTTP server exposing a ContactService as a small REST API (see ContactHandler for the
+ * endpoints). It is built on the JDK's own com.sun.net.httpserver, so it needs no library, and handles
+ * each request on its own virtual thread: a request waiting on MySQL costs a few hundred bytes of stack
+ * rather than a platform thread.
+ *
+ * Virtual threads make accepting requests nearly free, so the server bounds the work instead: at most
+ * maxConcurrentRequests requests are handled at once. A request that cannot get a slot within a short wait
+ * is answered 503 Service Unavailable with Retry-After, rather than queueing up in front of the database pool.
+ *
+ * Run it headless with "gradle runServer" (or the main() below); by default it listens on 127.0.0.1:8080.
+ */
+public class ContactServer {
+
+    /** System property with the port to listen on (0 picks a free one). */
+    public static final String PORT_PROPERTY = "contactbook.server.port";
+    /** System property with the address to listen on; 0.0.0.0 for every interface. */
+    public static final String BIND_ADDRESS_PROPERTY = "contactbook.server.bindAddress";
+    /** System property with the most requests handled at the same time. */
+    public static final String MAX_CONCURRENT_REQUESTS_PROPERTY = "contactbook.server.maxConcurrentRequests";
+
+    public static final int DEFAULT_PORT = 8080;
+    public static final int DEFAULT_MAX_CONCURRENT_REQUESTS = 64;
+    private static final long ADMISSION_WAIT_MS = 100; // How long a request may wait for a free slot
+    private static final int STOP_DELAY_SECONDS = 2; // How long stop() lets requests in progress finish
+    private static final long SYNC_INTERVAL_MS = 3000; // As in the GUI
+
+    private final HttpServer httpServer;
+    private final ExecutorService executor;
+    private final Semaphore slots;
+    private final AtomicInteger active = new AtomicInteger();
+    private final Supplier<Integer> activeGauge = active::get; // Kept so stop() removes only this server's gauge
+
+    /**
+     * Creates a server bound to the given address; call start() to begin answering requests.
+     * @param maxConcurrentRequests The most requests handled at the same time.
+     * @throws IOException if the address cannot be bound (for example, the port is in use).
+     */
+    public ContactServer(ContactService service, InetSocketAddress address, int maxConcurrentRequests) throws IOException {
+        if (maxConcurrentRequests < 1) {
+            throw new IllegalArgumentException("maxConcurrentRequests must be at least 1: " + maxConcurrentRequests);
+        }
+        this.slots = new Semaphore(maxConcurrentRequests);
+        this.executor = Executors.newVirtualThreadPerTaskExecutor();
+        this.httpServer = HttpServer.create(address, 0);
+        httpServer.setExecutor(executor);
+        httpServer.createContext("/contacts", new LimitingHandler(new ContactHandler(service)));
+    }
+
+    public void start() {
+        Metrics.gauge("http.active", activeGauge);
+        httpServer.start();
+        Log.info("ContactServer: Listening on http://" + httpServer.getAddress().getHostString() + ":" + getPort() + "/contacts");
+    }
+
+    /**
+     * Stops accepting requests, gives the ones in progress a moment to finish, and releases the port.
+     */
+    public void stop() {
+        httpServer.stop(STOP_DELAY_SECONDS);
+        executor.shutdown();
+        Metrics.removeGauge("http.active", activeGauge);
+        Log.info("ContactServer: Stopped.");
+    }
+
+    /**
+     * @return The port the server listens on; useful when it was created with port 0.
+     */
+    public int getPort() {
+        return httpServer.getAddress().getPort();
+    }
+
+    /**
+     * Admits at most maxConcurrentRequests requests at a time and times each one, per method.
+     */
+    private final class LimitingHandler implements HttpHandler {
+        private final HttpHandler delegate;
+
+        LimitingHandler(HttpHandler delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            boolean admitted;
+            try {
+                admitted = slots.tryAcquire(ADMISSION_WAIT_MS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                admitted = false;
+            }
+            if (!admitted) {
+                Metrics.counter("http.rejected").increment();
+                exchange.getResponseHeaders().set("Retry-After", "1");
+                ContactHandler.sendError(exchange, 503, "Too many requests in progress; try again shortly.");
+                exchange.close();
+                return;
+            }
+            active.incrementAndGet();
+            Timer timer = Metrics.timer("http." + exchange.getRequestMethod());
+            long start = System.nanoTime();
+            boolean ok = false;
+            try {
+                delegate.handle(exchange);
+                ok = exchange.getResponseCode() < 500;
+            } finally {
+                timer.record(start, ok);
+                active.decrementAndGet();
+                slots.release();
+            }
+        }
+    }
+
+    /**
+     * Runs the server on its own, without the GUI, against the configured repository.
+     * @param args Command line arguments (not used; see the system properties above).
+     */
+    public static void main(String[] args) throws IOException {
+        Metrics.registerMBean();
+        int port = Integer.getInteger(PORT_PROPERTY, DEFAULT_PORT);
+        String bindAddress = System.getProperty(BIND_ADDRESS_PROPERTY, "127.0.0.1");
+        int maxConcurrent = Integer.getInteger(MAX_CONCURRENT_REQUESTS_PROPERTY, DEFAULT_MAX_CONCURRENT_REQUESTS);
+
+        ContactService service = new ContactService(true);
+        service.registerGauges();
+        service.startSync(SYNC_INTERVAL_MS); // Pick up changes made by GUI clients
+        ContactServer server = new ContactServer(service, new InetSocketAddress(bindAddress, port), maxConcurrent);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.stop();
+            service.shutdown();
+        }, "contact-server-shutdown"));
+        server.start();
+    }
+}
@@ -0,0 +1,220 @@
+package com.contactbook.server;
+
+import com.contactbook.model.Contact;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The little JSON the REST API needs, without a library: contacts are written straight to the response
+ * stream, and request bodies are flat objects ({"name": "...", "phone": "...", "email": "..."}).
+ */
+final class Json {
+
+    private Json() {
+    }
+
+    static void writeContact(Writer out, Contact contact) throws IOException {
+        out.write("{\"id\":");
+        out.write(Integer.toString(contact.getId()));
+        out.write(",\"name\":");
+        writeString(out, contact.getName());
+        out.write(",\"phone\":");
+        writeString(out, contact.getPhone());
+        out.write(",\"email\":");
+        writeString(out, contact.getEmail());
+        out.write(",\"version\":");
+        out.write(Long.toString(contact.getVersion()));
+        out.write('}');
+    }
+
+    static void writeString(Writer out, String value) throws IOException {
+        if (value == null) {
+            out.write("null");
+            return;
+        }
+        out.write('"');
+        int start = 0; // Runs of characters that need no escaping are written in one call
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            String escaped;
+            if (c == '"') {
+                escaped = "\\\"";
+            } else if (c == '\\') {
+                escaped = "\\\\";
+            } else if (c == '\n') {
+                escaped = "\\n";
+            } else if (c == '\r') {
+                escaped = "\\r";
+            } else if (c == '\t') {
+                escaped = "\\t";
+            } else if (c < 0x20 || c == '\u2028' || c == '\u2029') {
+                escaped = String.format("\\u%04x", (int) c);
+            } else {
+                continue;
+            }
+            out.write(value, start, i - start);
+            out.write(escaped);
+            start = i + 1;
+        }
+        out.write(value, start, value.length() - start);
+        out.write('"');
+    }
+
+    /**
+     * Parses a JSON object whose values are strings, numbers, booleans or null. Numbers and booleans are
+     * returned as their text; nested objects and arrays are rejected.
+     * @return The members, in the order they appear.
+     * @throws IllegalArgumentException if the text is not such an object.
+     */
+    static Map<String, String> parseObject(String text) {
+        Parser parser = new Parser(text);
+        parser.skipSpace();
+        Map<String, String> members = parser.object();
+        parser.skipSpace();
+        if (parser.position < text.length()) {
+            throw parser.error("Unexpected text after the object");
+        }
+        return members;
+    }
+
+    private static final class Parser {
+        private final String text;
+        private int position;
+
+        Parser(String text) {
+            this.text = text;
+        }
+
+        Map<String, String> object() {
+            Map<String, String> members = new LinkedHashMap<>();
+            expect('{');
+            skipSpace();
+            if (peek() == '}') {
+                position++;
+                return members;
+            }
+            while (true) {
+                skipSpace();
+                String name = string();
+                skipSpace();
+                expect(':');
+                skipSpace();
+                members.put(name, value());
+                skipSpace();
+                char c = next();
+                if (c == '}') {
+                    return members;
+                }
+                if (c != ',') {
+                    throw error("Expected ',' or '}'");
+                }
+            }
+        }
+
+        private String value() {
+            char c = peek();
+            if (c == '"') {
+                return string();
+            }
+            if (c == '{' || c == '[') {
+                throw error("Nested objects and arrays are not supported");
+            }
+            int start = position;
+            while (position < text.length() && ",} \t\r\n".indexOf(text.charAt(position)) < 0) {
+                position++;
+            }
+            String literal = text.substring(start, position);
+            if (literal.equals("null")) {
+                return null;
+            }
+            if (literal.equals("true") || literal.equals("false") || literal.matches("-?\\d+(\\.\\d+)?([eE][+-]?\\d+)?")) {
+                return literal;
+            }
+            throw error("Invalid value '" + literal + "'");
+        }
+
+        private String string() {
+            expect('"');
+            StringBuilder sb = new StringBuilder();
+            while (true) {
+                char c = next();
+                if (c == '"') {
+                    return sb.toString();
+                }
+                if (c != '\\') {
+                    sb.append(c);
+                    continue;
+                }
+                char escape = next();
+                switch (escape) {
+                    case '"':
+                    case '\\':
+                    case '/':
+                        sb.append(escape);
+                        break;
+                    case 'b':
+                        sb.append('\b');
+                        break;
+                    case 'f':
+                        sb.append('\f');
+                        break;
+                    case 'n':
+                        sb.append('\n');
+                        break;
+                    case 'r':
+                        sb.append('\r');
+                        break;
+                    case 't':
+                        sb.append('\t');
+                        break;
+                    case 'u':
+                        if (position + 4 > text.length()) {
+                            throw error("Truncated \\u escape");
+                        }
+                        try {
+                            sb.append((char) Integer.parseInt(text.substring(position, position + 4), 16));
+                        } catch (NumberFormatException e) {
+                            throw error("Invalid \\u escape");
+                        }
+                        position += 4;
+                        break;
+                    default:
+                        throw error("Invalid escape '\\" + escape + "'");
+                }
+            }
+        }
+
+        void skipSpace() {
+            while (position < text.length() && Character.isWhitespace(text.charAt(position))) {
+                position++;
+            }
+        }
+
+        private char peek() {
+            if (position >= text.length()) {
+                throw error("Unexpected end of input");
+            }
+            return text.charAt(position);
+        }
+
+        private char next() {
+            char c = peek();
+            position++;
+            return c;
+        }
+
+        private void expect(char expected) {
+            if (next() != expected) {
+                position--;
+                throw error("Expected '" + expected + "'");
+            }
+        }
+
+        IllegalArgumentException error(String message) {
+            return new IllegalArgumentException(message + " at position " + position + ".");
+        }
+    }
+}
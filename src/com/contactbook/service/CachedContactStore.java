@@ -0,0 +1,235 @@
+package com.contactbook.service;
+
+import com.contactbook.database.ContactRepository;
+import com.contactbook.model.Contact;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * What ContactService keeps in cache mode instead of a ContactStore: only the contacts that are actually
+ * being used, in a size-bounded ContactCache, with every miss read through from the repository. Heap use is
+ * set by the cache size and does not grow with the contacts table.
+ *
+ * Rows are the positions in ID order. Table pages are fetched from the repository a few hundred rows at a
+ * time, and the IDs of the last pages read are remembered so the rows on screen stay cheap to read. The
+ * next page after a remembered one is read by keyset (ID greater than its last ID); any other page by offset.
+ *
+ * Like ContactStore, this tells an optional listener about every change with its row, in the order the
+ * changes were made (events are queued under the page lock and delivered after it is released). A row is
+ * only known while its page is remembered; an update of any other row is not announced (no view can be
+ * showing it), and a remove of one is announced as RELOADED, since all later rows move up.
+ */
+final class CachedContactStore {
+
+    static final int PAGE_SIZE = 256;
+    private static final int MAX_PAGES = 64; // Page IDs remembered, about 64 KB
+
+    private final ContactRepository repository;
+    private final ContactCache cache;
+    // Page number to the IDs on it, least recently used first; guarded by itself
+    private final LinkedHashMap<Integer, int[]> pages = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, int[]> eldest) {
+            return size() > MAX_PAGES;
+        }
+    };
+    private long pagesVersion; // Bumped whenever rows may have moved; guarded by pages
+    private volatile int size = -1; // Number of contacts in the repository, -1 until counted
+    private final ChangeEventQueue events = new ChangeEventQueue();
+
+    CachedContactStore(ContactRepository repository, long maximumBytes) {
+        this.repository = repository;
+        this.cache = new ContactCache(maximumBytes);
+    }
+
+    ContactCache cache() {
+        return cache;
+    }
+
+    void setChangeListener(ContactChangeListener listener) {
+        events.setListener(listener);
+    }
+
+    /**
+     * @return The number of contacts in the repository. Counted on first use and after remote changes,
+     *         then kept up to date by this store's own adds and removes.
+     */
+    int size() {
+        int n = size;
+        if (n < 0) {
+            n = Math.max(0, repository.getContactCount());
+            size = n;
+        }
+        return n;
+    }
+
+    /**
+     * @return The contact with the given ID, from the cache or else from the repository; null if there is none.
+     */
+    Contact get(int id) {
+        Contact contact = cache.get(id);
+        if (contact == null) {
+            long stamp = cache.writeStamp();
+            contact = repository.getContact(id);
+            if (contact != null) {
+                cache.putLoaded(contact, stamp);
+            }
+        }
+        return contact;
+    }
+
+    /**
+     * @return The contact at a row of the ID order, or null if the row is out of range.
+     */
+    Contact getAt(int row) {
+        if (row < 0 || row >= size()) {
+            return null;
+        }
+        int[] ids = page(row / PAGE_SIZE);
+        int index = row % PAGE_SIZE;
+        return index < ids.length ? get(ids[index]) : null;
+    }
+
+    /**
+     * @return The row of a contact, or -1 if it is not on a remembered page (or there is no such contact).
+     */
+    int rowOf(int id) {
+        synchronized (pages) {
+            for (Map.Entry<Integer, int[]> page : pages.entrySet()) {
+                int[] ids = page.getValue();
+                if (ids.length > 0 && id >= ids[0] && id <= ids[ids.length - 1]) {
+                    int index = Arrays.binarySearch(ids, id);
+                    return index >= 0 ? page.getKey() * PAGE_SIZE + index : -1;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Records a contact just added to the repository. Its ID is the highest so far, so it takes the last row.
+     */
+    void add(Contact contact) {
+        cache.put(contact);
+        synchronized (pages) {
+            int row = size();
+            size = row + 1;
+            pages.remove(row / PAGE_SIZE); // The last page grows
+            pagesVersion++;
+            publish(ContactChangeEvent.Type.ADDED, contact, row);
+        }
+        events.deliver();
+    }
+
+    /**
+     * Records a contact just updated in the repository.
+     * @return The previous version if it was cached, otherwise null.
+     */
+    Contact replace(Contact contact) {
+        Contact previous = cache.peek(contact.getId());
+        cache.put(contact);
+        synchronized (pages) {
+            int row = rowOf(contact.getId());
+            if (row >= 0) {
+                publish(ContactChangeEvent.Type.UPDATED, contact, row);
+            }
+        }
+        events.deliver();
+        return previous;
+    }
+
+    /**
+     * Records a contact just deleted from the repository.
+     * @return The contact if it was cached, otherwise null.
+     */
+    Contact remove(int id) {
+        Contact removed = cache.remove(id);
+        synchronized (pages) {
+            int row = rowOf(id);
+            if (size > 0) {
+                size--;
+            }
+            pages.clear(); // Every later row moves up
+            pagesVersion++;
+            if (row >= 0) {
+                publish(ContactChangeEvent.Type.REMOVED, removed, row);
+            } else {
+                publish(ContactChangeEvent.Type.RELOADED, null, -1);
+            }
+        }
+        events.deliver();
+        return removed;
+    }
+
+    /**
+     * Forgets a contact that another client changed or deleted, and everything that depends on the row
+     * order. The count is read again on next use.
+     */
+    void invalidate(int id) {
+        cache.remove(id);
+        synchronized (pages) {
+            pages.clear();
+            pagesVersion++;
+            size = -1;
+            publish(ContactChangeEvent.Type.RELOADED, null, -1);
+        }
+        events.deliver();
+    }
+
+    /**
+     * Forgets everything, for a reload. Does not publish anything; the caller announces the reload.
+     */
+    void clear() {
+        cache.clear();
+        synchronized (pages) {
+            pages.clear();
+            pagesVersion++;
+            size = -1;
+        }
+    }
+
+    /**
+     * @return The IDs on a page, from the remembered pages or else from the repository.
+     */
+    private int[] page(int number) {
+        long version;
+        int afterId = -1;
+        synchronized (pages) {
+            int[] ids = pages.get(number);
+            if (ids != null) {
+                return ids;
+            }
+            int[] previous = number > 0 ? pages.get(number - 1) : null;
+            if (previous != null && previous.length == PAGE_SIZE) {
+                afterId = previous[PAGE_SIZE - 1];
+            }
+            version = pagesVersion;
+        }
+        long stamp = cache.writeStamp();
+        List<Contact> contacts = afterId >= 0
+                ? repository.getContacts(afterId, PAGE_SIZE)
+                : repository.getContactsAt(number * PAGE_SIZE, PAGE_SIZE);
+        int[] ids = new int[contacts.size()];
+        for (int i = 0; i < ids.length; i++) {
+            Contact contact = contacts.get(i);
+            ids[i] = contact.getId();
+            cache.putLoaded(contact, stamp);
+        }
+        synchronized (pages) {
+            if (pagesVersion == version) {
+                pages.put(number, ids); // Otherwise rows moved while reading; read the page again next time
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Queues an event for delivery once the page lock is released. Must be called holding the page lock.
+     */
+    private void publish(ContactChangeEvent.Type type, Contact contact, int row) {
+        events.add(new ContactChangeEvent(type, contact, row));
+    }
+}
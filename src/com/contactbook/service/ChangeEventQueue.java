@@ -0,0 +1,64 @@
+package com.contactbook.service;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Hands a store's change events to its listener outside the store's lock.
+ *
+ * A store queues each event while it still holds its lock, so the events queue up in exactly the order the
+ * changes happened, and calls deliver() once it has released the lock. Delivery takes a lock of its own,
+ * so events reach the listener one at a time and in order, and by the time deliver() returns the caller's
+ * own events have been delivered (by itself or by a writer that got there first). A slow listener therefore
+ * holds up other writers' deliveries, but never a reader or a writer's change itself.
+ */
+final class ChangeEventQueue {
+
+    private final Queue<ContactChangeEvent> events = new ConcurrentLinkedQueue<>();
+    private final ReentrantLock deliveryLock = new ReentrantLock(); // Reentrant: a listener may change the store
+    private volatile ContactChangeListener listener;
+
+    /**
+     * Sets the listener that is told about every change, or null for none.
+     */
+    void setListener(ContactChangeListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * @return true if there is a listener, so events are worth building.
+     */
+    boolean hasListener() {
+        return listener != null;
+    }
+
+    /**
+     * Queues an event. Call this with the store's lock held.
+     */
+    void add(ContactChangeEvent event) {
+        if (listener != null) {
+            events.add(event);
+        }
+    }
+
+    /**
+     * Delivers the queued events in order. Call this after releasing the store's lock.
+     * Always waits for the delivery lock, even when the queue looks empty: another writer may have taken the
+     * caller's events from the queue already and still be handing them to the listener.
+     */
+    void deliver() {
+        deliveryLock.lock();
+        try {
+            ContactChangeEvent event;
+            while ((event = events.poll()) != null) {
+                ContactChangeListener current = listener;
+                if (current != null) {
+                    current.contactsChanged(event);
+                }
+            }
+        } finally {
+            deliveryLock.unlock();
+        }
+    }
+}
@@ -0,0 +1,458 @@
+package com.contactbook.service;
+
+import com.contactbook.model.Contact;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A size-bounded cache of contacts by ID, limited by the (estimated) bytes the cached contacts take
+ * rather than by their number, with the W-TinyLFU eviction policy:
+ * <ul>
+ *   <li>New contacts enter a small LRU window (1% of the capacity), so a burst of new IDs cannot flush the cache.</li>
+ *   <li>The rest is a segmented LRU: contacts read again move from probation to the protected part (80%).</li>
+ *   <li>A contact leaving the window only gets into the main part if a FrequencySketch says it is asked for
+ *       more often than the contact it would push out; otherwise it is dropped itself.</li>
+ * </ul>
+ * That keeps the hit ratio close to optimal both for a stable working set and for one-off scans (an export,
+ * scrolling through the whole table), which a plain LRU would let sweep everything else out.
+ *
+ * The cache is split into segments by ID, each with its own lock, LRU lists and sketch, so threads reading
+ * different contacts rarely wait for each other. Hits, misses and evictions are counted for Metrics.
+ */
+final class ContactCache {
+
+    private static final int SEGMENTS = 16;
+    private static final double WINDOW_SHARE = 0.01;
+    private static final double PROTECTED_SHARE = 0.80; // Of the main part
+    // Estimated heap cost of one cached contact besides its strings: the Contact, the list node,
+    // the HashMap entry and the boxed key
+    private static final int ENTRY_OVERHEAD = 40 + 40 + 32 + 16;
+    private static final int STRING_OVERHEAD = 40; // String object plus its array header
+    private static final int TYPICAL_ENTRY_BYTES = 256; // For sizing the sketches
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+    private final long maximumBytes;
+    // Bumped by every put() and remove(), so a read-through can tell that its row may be out of date
+    private final AtomicLong writes = new AtomicLong();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param maximumBytes The most heap the cached contacts may take, as estimated by weigh().
+     */
+    ContactCache(long maximumBytes) {
+        if (maximumBytes < SEGMENTS * 1024L) {
+            throw new IllegalArgumentException("Cache size too small: " + maximumBytes + " bytes");
+        }
+        this.maximumBytes = maximumBytes;
+        long perSegment = maximumBytes / SEGMENTS;
+        int expectedEntries = (int) Math.min(Integer.MAX_VALUE, perSegment / TYPICAL_ENTRY_BYTES);
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(perSegment, expectedEntries);
+        }
+    }
+
+    /**
+     * Estimates how many bytes of heap a cached contact takes. Strings are counted at two bytes per char,
+     * so the estimate errs on the large side for Latin-1 text.
+     */
+    static int weigh(Contact contact) {
+        return ENTRY_OVERHEAD + weigh(contact.getName()) + weigh(contact.getPhone()) + weigh(contact.getEmail());
+    }
+
+    private static int weigh(String value) {
+        return value == null ? 0 : STRING_OVERHEAD + 2 * value.length();
+    }
+
+    /**
+     * Looks up a contact and counts the request, as a hit or a miss.
+     * @return The cached contact, or null if it is not cached.
+     */
+    Contact get(int id) {
+        Contact contact = segmentFor(id).get(id);
+        if (contact != null) {
+            hits.increment();
+        } else {
+            misses.increment();
+        }
+        return contact;
+    }
+
+    /**
+     * Looks up a contact without counting the request or changing its place in the LRU order.
+     */
+    Contact peek(int id) {
+        return segmentFor(id).peek(id);
+    }
+
+    /**
+     * Caches a contact the caller just wrote, replacing any older copy.
+     */
+    void put(Contact contact) {
+        writes.incrementAndGet();
+        segmentFor(contact.getId()).put(contact);
+    }
+
+    /**
+     * Caches a contact read from the repository, unless a write happened since the read started: the row
+     * read may then be older than what was written, and it is safer to read it again next time.
+     * @param stamp The value of writeStamp() taken before the read.
+     */
+    void putLoaded(Contact contact, long stamp) {
+        Segment segment = segmentFor(contact.getId());
+        segment.lock.lock();
+        try {
+            if (writes.get() == stamp) {
+                segment.putLocked(contact);
+            }
+        } finally {
+            segment.lock.unlock();
+        }
+    }
+
+    /**
+     * @return A stamp to pass to putLoaded(), taken before reading from the repository.
+     */
+    long writeStamp() {
+        return writes.get();
+    }
+
+    /**
+     * Drops a contact from the cache.
+     * @return The contact that was cached, or null if it was not.
+     */
+    Contact remove(int id) {
+        writes.incrementAndGet();
+        return segmentFor(id).remove(id);
+    }
+
+    void clear() {
+        writes.incrementAndGet();
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+    }
+
+    /**
+     * @return A copy of the cached contacts, in no particular order.
+     */
+    List<Contact> values() {
+        List<Contact> values = new ArrayList<>();
+        for (Segment segment : segments) {
+            segment.lock.lock();
+            try {
+                for (Node node : segment.nodes.values()) {
+                    values.add(node.contact);
+                }
+            } finally {
+                segment.lock.unlock();
+            }
+        }
+        return values;
+    }
+
+    int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    /**
+     * @return The estimated bytes taken by the cached contacts.
+     */
+    long weight() {
+        long weight = 0;
+        for (Segment segment : segments) {
+            weight += segment.weight();
+        }
+        return weight;
+    }
+
+    long maximumWeight() {
+        return maximumBytes;
+    }
+
+    long hitCount() {
+        return hits.sum();
+    }
+
+    long missCount() {
+        return misses.sum();
+    }
+
+    long evictionCount() {
+        return evictions.sum();
+    }
+
+    /**
+     * @return The share of get() calls that were hits, from 0 to 1 (0 before the first call).
+     */
+    double hitRatio() {
+        long h = hits.sum();
+        long total = h + misses.sum();
+        return total == 0 ? 0 : (double) h / total;
+    }
+
+    private Segment segmentFor(int id) {
+        int h = id * 0x9E3779B9;
+        return segments[(h ^ (h >>> 16)) & (SEGMENTS - 1)];
+    }
+
+    // --- One segment: a window LRU, a probation LRU and a protected LRU, plus a frequency sketch ---
+
+    private static final byte WINDOW = 0;
+    private static final byte PROBATION = 1;
+    private static final byte PROTECTED = 2;
+
+    private final class Segment {
+        final ReentrantLock lock = new ReentrantLock();
+        final Map<Integer, Node> nodes = new HashMap<>();
+        final FrequencySketch sketch;
+        final long maximum;
+        final long windowMaximum;
+        final long protectedMaximum;
+        final Queue window = new Queue();
+        final Queue probation = new Queue();
+        final Queue protectedQueue = new Queue();
+
+        Segment(long maximum, int expectedEntries) {
+            this.maximum = maximum;
+            this.windowMaximum = Math.max(1, (long) (maximum * WINDOW_SHARE));
+            this.protectedMaximum = (long) ((maximum - windowMaximum) * PROTECTED_SHARE);
+            this.sketch = new FrequencySketch(expectedEntries);
+        }
+
+        Contact get(int id) {
+            lock.lock();
+            try {
+                sketch.increment(id);
+                Node node = nodes.get(id);
+                if (node == null) {
+                    return null;
+                }
+                onHit(node);
+                return node.contact;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        Contact peek(int id) {
+            lock.lock();
+            try {
+                Node node = nodes.get(id);
+                return node != null ? node.contact : null;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void put(Contact contact) {
+            lock.lock();
+            try {
+                putLocked(contact);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void putLocked(Contact contact) {
+            int weight = weigh(contact);
+            Node node = nodes.get(contact.getId());
+            if (node != null) {
+                queueOf(node).weight += weight - node.weight;
+                node.contact = contact;
+                node.weight = weight;
+                onHit(node);
+            } else {
+                if (weight > maximum) {
+                    return; // Would not fit even in an empty segment
+                }
+                sketch.increment(contact.getId());
+                node = new Node(contact, weight);
+                nodes.put(contact.getId(), node);
+                node.queue = WINDOW;
+                window.addLast(node);
+            }
+            evict();
+        }
+
+        Contact remove(int id) {
+            lock.lock();
+            try {
+                Node node = nodes.remove(id);
+                if (node == null) {
+                    return null;
+                }
+                queueOf(node).remove(node);
+                return node.contact;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void clear() {
+            lock.lock();
+            try {
+                nodes.clear();
+                window.clear();
+                probation.clear();
+                protectedQueue.clear();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        int size() {
+            lock.lock();
+            try {
+                return nodes.size();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        long weight() {
+            lock.lock();
+            try {
+                return window.weight + probation.weight + protectedQueue.weight;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private Queue queueOf(Node node) {
+            return node.queue == WINDOW ? window : node.queue == PROBATION ? probation : protectedQueue;
+        }
+
+        /**
+         * A hit moves the contact to the back of its LRU list; a contact on probation is promoted.
+         */
+        private void onHit(Node node) {
+            if (node.queue == PROBATION) {
+                probation.remove(node);
+                node.queue = PROTECTED;
+                protectedQueue.addLast(node);
+                // Demote the least recently used protected contacts to keep the protected part in bounds
+                while (protectedQueue.weight > protectedMaximum && protectedQueue.head != node) {
+                    Node demoted = protectedQueue.head;
+                    protectedQueue.remove(demoted);
+                    demoted.queue = PROBATION;
+                    probation.addLast(demoted);
+                }
+            } else {
+                queueOf(node).moveToLast(node);
+            }
+        }
+
+        /**
+         * Moves overflow from the window into the main part, letting the sketch decide between each
+         * candidate and the contact it would push out, until the segment is back within its maximum.
+         */
+        private void evict() {
+            while (window.weight > windowMaximum && window.head != null) {
+                Node candidate = window.head;
+                window.remove(candidate);
+                candidate.queue = PROBATION;
+                probation.addLast(candidate);
+                long mainMaximum = maximum - windowMaximum;
+                while (probation.weight + protectedQueue.weight > mainMaximum) {
+                    Node victim = probation.head != candidate ? probation.head : protectedQueue.head;
+                    if (victim == null) {
+                        victim = candidate;
+                    } else if (sketch.frequency(candidate.contact.getId()) <= sketch.frequency(victim.contact.getId())) {
+                        victim = candidate; // The newcomer is not more popular than what it would replace
+                    }
+                    evictNode(victim);
+                    if (victim == candidate) {
+                        break;
+                    }
+                }
+            }
+            // A replaced contact can grow past the maximum without anything entering the window
+            while (window.weight + probation.weight + protectedQueue.weight > maximum) {
+                Node victim = probation.head != null ? probation.head
+                        : protectedQueue.head != null ? protectedQueue.head : window.head;
+                evictNode(victim);
+            }
+        }
+
+        private void evictNode(Node node) {
+            queueOf(node).remove(node);
+            nodes.remove(node.contact.getId());
+            evictions.increment();
+        }
+    }
+
+    private static final class Node {
+        Contact contact;
+        int weight;
+        byte queue;
+        Node previous;
+        Node next;
+
+        Node(Contact contact, int weight) {
+            this.contact = contact;
+            this.weight = weight;
+        }
+    }
+
+    /**
+     * An intrusive doubly linked LRU list: least recently used at the head. Tracks the total weight of its nodes.
+     */
+    private static final class Queue {
+        Node head;
+        Node tail;
+        long weight;
+
+        void addLast(Node node) {
+            node.previous = tail;
+            node.next = null;
+            if (tail == null) {
+                head = node;
+            } else {
+                tail.next = node;
+            }
+            tail = node;
+            weight += node.weight;
+        }
+
+        void remove(Node node) {
+            if (node.previous == null) {
+                head = node.next;
+            } else {
+                node.previous.next = node.next;
+            }
+            if (node.next == null) {
+                tail = node.previous;
+            } else {
+                node.next.previous = node.previous;
+            }
+            node.previous = null;
+            node.next = null;
+            weight -= node.weight;
+        }
+
+        void moveToLast(Node node) {
+            if (tail != node) {
+                remove(node);
+                addLast(node);
+            }
+        }
+
+        void clear() {
+            head = null;
+            tail = null;
+            weight = 0;
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.contactbook.service;
+
+import com.contactbook.model.Contact;
+
+/**
+ * Describes one change to the contacts held by ContactService.
+ * Events are published in the order the changes were applied, and each carries the row
+ * (position in the service's insertion order) it affected, so a view can apply just that delta.
+ */
+public final class ContactChangeEvent {
+
+    public enum Type {
+        /** A contact was added at the given row. */
+        ADDED,
+        /** The contact at the given row was replaced by a new version. */
+        UPDATED,
+        /** The contact at the given row was removed; later rows moved up by one. */
+        REMOVED,
+        /** All contacts were replaced at once (for example by a reload); the row is -1. */
+        RELOADED
+    }
+
+    private final Type type;
+    private final Contact contact;
+    private final int row;
+
+    public ContactChangeEvent(Type type, Contact contact, int row) {
+        this.type = type;
+        this.contact = contact;
+        this.row = row;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * @return The added, updated (new version) or removed contact, or null for RELOADED.
+     */
+    public Contact getContact() {
+        return contact;
+    }
+
+    public int getRow() {
+        return row;
+    }
+
+    @Override
+    public String toString() {
+        return type + " row " + row + (contact != null ? ": " + contact : "");
+    }
+}
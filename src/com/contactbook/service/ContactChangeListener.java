@@ -0,0 +1,13 @@
+package com.contactbook.service;
+
+/**
+ * Receives fine-grained change events from ContactService.
+ * Listeners are called one event at a time, in the order the changes happened, on the thread that made
+ * the change (or another writer's), after the contact store has released its lock. Other writers wait for
+ * a listener to return, so it should be quick. A UI listener should just hand the event over to its own
+ * thread (for Swing, the Event Dispatch Thread).
+ */
+public interface ContactChangeListener {
+
+    void contactsChanged(ContactChangeEvent event);
+}
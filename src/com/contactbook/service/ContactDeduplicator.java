@@ -0,0 +1,497 @@
+package com.contactbook.service;
+
+import com.contactbook.model.Contact;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Finds contacts that are probably the same person, without comparing every contact with every other one.
+ *
+ * Each contact is reduced to three keys:
+ * <ul>
+ *   <li>a phone key: the digits only, without leading zeros, and at most the last ten digits, so
+ *       "+91 98765 43210", "098765-43210" and "9876543210" are the same number;</li>
+ *   <li>an email key: the address trimmed and in lower case;</li>
+ *   <li>a name key: the name in lower case with punctuation removed and its words sorted,
+ *       so "Smith, John" and "john smith" are the same name.</li>
+ * </ul>
+ * Equal phone or email keys are found by hashing, in one pass. Similar names are found by blocking:
+ * a MinHash signature of each name's character trigrams is cut into bands, and only contacts that
+ * share a band (locality-sensitive hashing) are compared. Names that are alike by a few characters
+ * almost always share a band, while unrelated names almost never do. A band shared by a great many
+ * contacts (a very common name) is sorted by name and each contact is only compared with its nearest
+ * neighbours, so one popular name cannot make the work quadratic again.
+ *
+ * A similar name alone is weak evidence, so two contacts are only matched by name when neither their
+ * phone numbers nor their email addresses differ. The matching contacts are then joined into clusters.
+ *
+ * findClusters() is the batch mode for a whole contact book; with parallel set, keys, signatures and band
+ * comparisons are computed on the common fork-join pool. findMatches() is the cheap check for a single
+ * contact about to be added, against a handful of candidates.
+ */
+public final class ContactDeduplicator {
+
+    /** The default minimum trigram similarity (Jaccard index) for two names to count as the same name. */
+    public static final double DEFAULT_NAME_SIMILARITY = 0.6;
+
+    private static final int MIN_PHONE_DIGITS = 7; // Shorter numbers are extensions or typos, not identities
+    private static final int PHONE_KEY_DIGITS = 10; // Anything in front of the last ten digits is a country code
+    private static final int BANDS = 10;
+    private static final int ROWS_PER_BAND = 3;
+    private static final int HASHES = BANDS * ROWS_PER_BAND;
+    private static final int NEIGHBOURS = 16; // Sorted-neighbourhood window for members of oversized blocks
+    private static final int SORTED_CHUNK = 4096; // Positions of the sorted neighbourhood compared per task
+    // MinHash function h is x * MULTIPLIERS[h] + SEEDS[h]; trigram hashes are already well mixed, so this cheap
+    // one-to-one map per function is enough and keeps signatures off the profile
+    private static final int[] MULTIPLIERS = new int[HASHES];
+    private static final int[] SEEDS = new int[HASHES];
+    private static final Pattern NOT_NAME_CHARS = Pattern.compile("[^\\p{L}\\p{Nd}]+");
+
+    static {
+        // Fixed seeds, so the same contacts always give the same clusters
+        long state = 0x5DEECE66DL;
+        for (int i = 0; i < HASHES; i++) {
+            state += 0x9E3779B97F4A7C15L;
+            long random = mix64(state);
+            MULTIPLIERS[i] = (int) random | 1; // Odd, so the map is one-to-one
+            SEEDS[i] = (int) (random >>> 32);
+        }
+    }
+
+    private final double nameSimilarity;
+
+    public ContactDeduplicator() {
+        this(DEFAULT_NAME_SIMILARITY);
+    }
+
+    /**
+     * @param nameSimilarity The minimum trigram similarity, above 0 and at most 1, for two names to match.
+     *                       Higher values only match names that differ by a typo or two.
+     */
+    public ContactDeduplicator(double nameSimilarity) {
+        if (!(nameSimilarity > 0 && nameSimilarity <= 1)) {
+            throw new IllegalArgumentException("Invalid name similarity: " + nameSimilarity);
+        }
+        this.nameSimilarity = nameSimilarity;
+    }
+
+    /**
+     * Finds all clusters of duplicates in the given contacts.
+     * @param contacts The contacts to check, typically ContactService.getAllContacts().
+     * @param parallel true to spread the work over the common fork-join pool.
+     * @return The clusters, largest first. Contacts without duplicates are not included.
+     */
+    public List<DuplicateCluster> findClusters(Collection<Contact> contacts, boolean parallel) {
+        Contact[] all = contacts.toArray(new Contact[0]);
+        int n = all.length;
+        Keys[] keys = new Keys[n];
+        range(0, n, parallel).forEach(i -> keys[i] = Keys.of(all[i]));
+
+        UnionFind clusters = new UnionFind(n);
+        joinEqualKeys(keys, clusters);
+        joinSimilarNames(keys, clusters, parallel);
+        return collectClusters(all, clusters);
+    }
+
+    /**
+     * The per-insert check: which of the given contacts look like a duplicate of the new one.
+     * @param candidate The contact about to be added.
+     * @param others Existing contacts to compare with, usually a short list from the search index.
+     * @return The contacts in others that match the candidate, in their original order.
+     */
+    public List<Contact> findMatches(Contact candidate, Collection<Contact> others) {
+        Keys keys = Keys.of(candidate);
+        List<Contact> matches = new ArrayList<>();
+        for (Contact other : others) {
+            if (other != candidate && match(keys, Keys.of(other)) != null) {
+                matches.add(other);
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * @return Why the two contacts are duplicates of each other, or null if they are not.
+     */
+    public DuplicateCluster.Reason match(Contact a, Contact b) {
+        return match(Keys.of(a), Keys.of(b));
+    }
+
+    private DuplicateCluster.Reason match(Keys a, Keys b) {
+        if (a.phone != null && a.phone.equals(b.phone)) {
+            return DuplicateCluster.Reason.PHONE;
+        }
+        if (a.email != null && a.email.equals(b.email)) {
+            return DuplicateCluster.Reason.EMAIL;
+        }
+        return namesMatch(a, b) ? DuplicateCluster.Reason.NAME : null;
+    }
+
+    /**
+     * @return true if the names are similar enough and no phone number or email address tells the contacts apart.
+     */
+    private boolean namesMatch(Keys a, Keys b) {
+        return !conflicting(a.phone, b.phone) && !conflicting(a.email, b.email)
+                && !a.name.isEmpty() && !b.name.isEmpty()
+                && (a.name.equals(b.name) || similarity(a.shingles(), b.shingles()) >= nameSimilarity);
+    }
+
+    // --- Normalisation ---
+
+    /**
+     * @return The phone number as used for matching, or null if it has too few digits to identify anyone.
+     */
+    public static String phoneKey(String phone) {
+        String digits = ContactSearchIndex.normalizePhone(phone);
+        int start = 0;
+        while (start < digits.length() && digits.charAt(start) == '0') {
+            start++; // Trunk prefix ("0" in front of a national number) or international "00"
+        }
+        if (digits.length() - start < MIN_PHONE_DIGITS) {
+            return null;
+        }
+        return digits.substring(Math.max(start, digits.length() - PHONE_KEY_DIGITS));
+    }
+
+    /**
+     * @return The email address as used for matching, or null if it is not an address at all.
+     */
+    public static String emailKey(String email) {
+        String key = ContactSearchIndex.normalizeText(email);
+        int at = key.indexOf('@');
+        return at > 0 && at < key.length() - 1 ? key : null;
+    }
+
+    /**
+     * @return The name as used for matching: lower case, letters and digits only, words in sorted order.
+     */
+    public static String nameKey(String name) {
+        if (name == null) {
+            return "";
+        }
+        String cleaned = NOT_NAME_CHARS.matcher(name.toLowerCase(Locale.ROOT)).replaceAll(" ").trim();
+        if (cleaned.isEmpty()) {
+            return "";
+        }
+        String[] words = cleaned.split(" ");
+        Arrays.sort(words);
+        return String.join(" ", words);
+    }
+
+    private static boolean conflicting(String a, String b) {
+        return a != null && b != null && !a.equals(b);
+    }
+
+    // --- Batch mode ---
+
+    /**
+     * Exact matches: the first contact seen with a key is joined with every later contact that has it.
+     */
+    private static void joinEqualKeys(Keys[] keys, UnionFind clusters) {
+        Map<String, Integer> byPhone = new HashMap<>();
+        Map<String, Integer> byEmail = new HashMap<>();
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i].phone != null) {
+                Integer first = byPhone.putIfAbsent(keys[i].phone, i);
+                if (first != null) {
+                    clusters.union(first, i, DuplicateCluster.Reason.PHONE);
+                }
+            }
+            if (keys[i].email != null) {
+                Integer first = byEmail.putIfAbsent(keys[i].email, i);
+                if (first != null) {
+                    clusters.union(first, i, DuplicateCluster.Reason.EMAIL);
+                }
+            }
+        }
+    }
+
+    /**
+     * Fuzzy name matches through MinHash banding. Every band is a long[] of (band hash, contact index)
+     * pairs; sorting it brings contacts with the same band hash next to each other. Small blocks are
+     * compared in full. Members of oversized blocks are set aside and compared afterwards in a single
+     * sorted-neighbourhood pass, since a very common name puts the same contacts into a big block in every band.
+     */
+    private void joinSimilarNames(Keys[] keys, UnionFind clusters, boolean parallel) {
+        int[] named = IntStream.range(0, keys.length).filter(i -> !keys[i].name.isEmpty()).toArray();
+        long[][] bands = new long[BANDS][named.length];
+        range(0, named.length, parallel).forEach(j -> {
+            int i = named[j];
+            int[] signature = minHash(keys[i].shingles());
+            for (int band = 0; band < BANDS; band++) {
+                bands[band][j] = ((long) bandHash(signature, band) << 32) | i;
+            }
+        });
+
+        boolean[] crowded = new boolean[keys.length];
+        for (long[] band : bands) {
+            if (parallel) {
+                Arrays.parallelSort(band);
+            } else {
+                Arrays.sort(band);
+            }
+            // Runs of equal band hashes are the blocks to compare within
+            List<int[]> blocks = new ArrayList<>();
+            for (int start = 0; start < band.length; ) {
+                int end = start + 1;
+                while (end < band.length && (band[end] >>> 32) == (band[start] >>> 32)) {
+                    end++;
+                }
+                if (end - start > NEIGHBOURS + 1) {
+                    for (int k = start; k < end; k++) {
+                        crowded[(int) band[k]] = true;
+                    }
+                } else if (end - start > 1) {
+                    int[] members = new int[end - start];
+                    for (int k = start; k < end; k++) {
+                        members[k - start] = (int) band[k];
+                    }
+                    blocks.add(members);
+                }
+                start = end;
+            }
+            // Comparing is read-only, so blocks can be checked concurrently; joining happens afterwards
+            joinPairs(range(0, blocks.size(), parallel)
+                    .mapToObj(b -> compare(blocks.get(b), 0, blocks.get(b).length, blocks.get(b).length, keys, clusters)), clusters);
+        }
+
+        // Sorted neighbourhood: after sorting by name, similar names sit close together
+        IntStream crowdedIds = range(0, keys.length, parallel).filter(i -> crowded[i]);
+        int[] sorted = crowdedIds.boxed().sorted(Comparator.comparing((Integer i) -> keys[i].name))
+                .mapToInt(Integer::intValue).toArray();
+        int chunks = (sorted.length + SORTED_CHUNK - 1) / SORTED_CHUNK;
+        joinPairs(range(0, chunks, parallel).mapToObj(c -> compare(sorted, c * SORTED_CHUNK,
+                Math.min(sorted.length, (c + 1) * SORTED_CHUNK), NEIGHBOURS + 1, keys, clusters)), clusters);
+    }
+
+    private static void joinPairs(Stream<long[]> pairs, UnionFind clusters) {
+        for (long pair : pairs.flatMapToLong(Arrays::stream).toArray()) {
+            clusters.union((int) (pair >>> 32), (int) pair, DuplicateCluster.Reason.NAME);
+        }
+    }
+
+    /**
+     * Compares each contact in members[from..to) with the ones following it, up to window - 1 positions on.
+     * @return The pairs whose names match, each packed as (first index, second index).
+     */
+    private long[] compare(int[] members, int from, int to, int window, Keys[] keys, UnionFind clusters) {
+        long[] pairs = new long[4];
+        int count = 0;
+        for (int x = from; x < to; x++) {
+            for (int y = x + 1; y < members.length && y < x + window; y++) {
+                int a = members[x];
+                int b = members[y];
+                // Pairs already joined by phone, email or an earlier band are left out
+                if (namesMatch(keys[a], keys[b]) && clusters.root(a) != clusters.root(b)) {
+                    if (count == pairs.length) {
+                        pairs = Arrays.copyOf(pairs, count * 2);
+                    }
+                    pairs[count++] = ((long) a << 32) | (b & 0xFFFFFFFFL);
+                }
+            }
+        }
+        return Arrays.copyOf(pairs, count);
+    }
+
+    private static List<DuplicateCluster> collectClusters(Contact[] all, UnionFind clusters) {
+        Map<Integer, List<Contact>> members = new HashMap<>();
+        for (int i = 0; i < all.length; i++) {
+            int root = clusters.root(i);
+            if (clusters.size(root) > 1) {
+                members.computeIfAbsent(root, r -> new ArrayList<>()).add(all[i]);
+            }
+        }
+        List<DuplicateCluster> result = new ArrayList<>(members.size());
+        for (Map.Entry<Integer, List<Contact>> entry : members.entrySet()) {
+            result.add(new DuplicateCluster(entry.getValue(), clusters.reasons(entry.getKey())));
+        }
+        result.sort(Comparator.comparingInt(DuplicateCluster::size).reversed()
+                .thenComparingInt(c -> c.getContacts().get(0).getId()));
+        return result;
+    }
+
+    private static IntStream range(int from, int to, boolean parallel) {
+        IntStream range = IntStream.range(from, to);
+        return parallel ? range.parallel() : range;
+    }
+
+    // --- Name similarity ---
+
+    /**
+     * @return The name's character trigrams (with a space at each end) as sorted, distinct hashes.
+     */
+    private static int[] shingles(String name) {
+        String padded = " " + name + " ";
+        int[] grams = new int[Math.max(1, padded.length() - 2)];
+        for (int i = 0; i + 3 <= padded.length(); i++) {
+            long packed = ((long) padded.charAt(i) << 32) | ((long) padded.charAt(i + 1) << 16) | padded.charAt(i + 2);
+            grams[i] = (int) (mix64(packed) >>> 32);
+        }
+        Arrays.sort(grams);
+        int distinct = 0;
+        for (int i = 0; i < grams.length; i++) {
+            if (i == 0 || grams[i] != grams[i - 1]) {
+                grams[distinct++] = grams[i];
+            }
+        }
+        return Arrays.copyOf(grams, distinct);
+    }
+
+    /**
+     * Jaccard index of two sorted sets: shared trigrams divided by all distinct trigrams.
+     */
+    private static double similarity(int[] a, int[] b) {
+        int shared = 0;
+        for (int i = 0, j = 0; i < a.length && j < b.length; ) {
+            if (a[i] == b[j]) {
+                shared++;
+                i++;
+                j++;
+            } else if (a[i] < b[j]) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return (double) shared / (a.length + b.length - shared);
+    }
+
+    /**
+     * For each seed, the smallest hash of any trigram. Two names agree on each position with a probability
+     * equal to their Jaccard index, which is what makes banding work.
+     */
+    private static int[] minHash(int[] shingles) {
+        int[] signature = new int[HASHES];
+        Arrays.fill(signature, Integer.MAX_VALUE);
+        for (int shingle : shingles) {
+            for (int h = 0; h < HASHES; h++) {
+                int value = shingle * MULTIPLIERS[h] + SEEDS[h];
+                if (value < signature[h]) {
+                    signature[h] = value;
+                }
+            }
+        }
+        return signature;
+    }
+
+    private static int bandHash(int[] signature, int band) {
+        int hash = band;
+        for (int r = band * ROWS_PER_BAND; r < (band + 1) * ROWS_PER_BAND; r++) {
+            hash = hash * 0x9E3779B1 + signature[r];
+        }
+        return mix32(hash);
+    }
+
+    private static int mix32(int x) {
+        x ^= x >>> 16;
+        x *= 0x85EBCA6B;
+        x ^= x >>> 13;
+        x *= 0xC2B2AE35;
+        return x ^ (x >>> 16);
+    }
+
+    private static long mix64(long x) {
+        x = (x ^ (x >>> 30)) * 0xBF58476D1CE4E5B9L;
+        x = (x ^ (x >>> 27)) * 0x94D049BB133111EBL;
+        return x ^ (x >>> 31);
+    }
+
+    /**
+     * The matching keys of one contact. The trigrams are only computed when a name comparison needs them.
+     */
+    private static final class Keys {
+        final String phone;
+        final String email;
+        final String name;
+        private volatile int[] shingles;
+
+        private Keys(String phone, String email, String name) {
+            this.phone = phone;
+            this.email = email;
+            this.name = name;
+        }
+
+        static Keys of(Contact contact) {
+            return new Keys(phoneKey(contact.getPhone()), emailKey(contact.getEmail()), nameKey(contact.getName()));
+        }
+
+        int[] shingles() {
+            int[] s = shingles;
+            if (s == null) {
+                s = ContactDeduplicator.shingles(name);
+                shingles = s; // Two threads may both compute it; they get equal arrays
+            }
+            return s;
+        }
+    }
+
+    /**
+     * Disjoint sets over contact indexes, with the reasons that joined each set.
+     * root() does not compress paths, so it can be called from many threads while nothing is being joined.
+     */
+    private static final class UnionFind {
+        private final int[] parent;
+        private final int[] size;
+        private final int[] reasons; // Bit per DuplicateCluster.Reason ordinal, valid for roots
+
+        UnionFind(int n) {
+            parent = new int[n];
+            size = new int[n];
+            reasons = new int[n];
+            for (int i = 0; i < n; i++) {
+                parent[i] = i;
+                size[i] = 1;
+            }
+        }
+
+        int root(int i) {
+            while (parent[i] != i) {
+                i = parent[i];
+            }
+            return i;
+        }
+
+        int size(int root) {
+            return size[root];
+        }
+
+        Set<DuplicateCluster.Reason> reasons(int root) {
+            Set<DuplicateCluster.Reason> set = EnumSet.noneOf(DuplicateCluster.Reason.class);
+            for (DuplicateCluster.Reason reason : DuplicateCluster.Reason.values()) {
+                if ((reasons[root] & (1 << reason.ordinal())) != 0) {
+                    set.add(reason);
+                }
+            }
+            return set;
+        }
+
+        void union(int a, int b, DuplicateCluster.Reason reason) {
+            int ra = root(a);
+            int rb = root(b);
+            if (ra != rb) {
+                // Union by size keeps the trees shallow without path compression
+                if (size[ra] < size[rb]) {
+                    int t = ra;
+                    ra = rb;
+                    rb = t;
+                }
+                parent[rb] = ra;
+                size[ra] += size[rb];
+                reasons[ra] |= reasons[rb];
+            }
+            reasons[ra] |= 1 << reason.ordinal();
+        }
+    }
+}
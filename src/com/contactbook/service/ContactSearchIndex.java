@@ -0,0 +1,363 @@
+package com.contactbook.service;
+
+import com.contactbook.model.Contact;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+
+/**
+ * In-memory search index over contact names, emails and phone numbers.
+ *
+ * Two structures are kept up to date on every add, update and delete:
+ * <ul>
+ *   <li>A sorted term index (each name word and each email domain) that answers prefix queries
+ *       by walking a range of a TreeMap. Name words and domains are shared by many contacts,
+ *       so this stays small even for millions of contacts.</li>
+ *   <li>A trigram index that answers substring queries of three or more characters: the posting
+ *       list of the rarest trigram of the query is scanned and each candidate is verified.</li>
+ * </ul>
+ * Phone numbers are indexed as their digits only, so "(555) 123-4567", "555.123.4567" and
+ * "5551234567" all match the query "1234". Email trigrams are taken from the local part only;
+ * domains are shared by huge numbers of contacts and are served by the term index instead.
+ * Queries shorter than three characters only match name words and domains by prefix.
+ */
+final class ContactSearchIndex {
+
+    private static final int GRAM = 3;
+
+    private final NavigableMap<String, IntHashSet> terms = new TreeMap<>();
+    private final Map<Long, IntHashSet> textGrams = new HashMap<>();
+    private final Map<Long, IntHashSet> phoneGrams = new HashMap<>();
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    void add(Contact contact) {
+        lock.writeLock().lock();
+        try {
+            update(contact, true);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    void remove(Contact contact) {
+        lock.writeLock().lock();
+        try {
+            update(contact, false);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    void replace(Contact oldContact, Contact newContact) {
+        lock.writeLock().lock();
+        try {
+            if (oldContact != null) {
+                update(oldContact, false);
+            }
+            update(newContact, true);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Adds all entries of another index, which must cover different contacts than this one. A load builds
+     * one index per shard in parallel and merges them with this, which only unions the posting lists
+     * instead of taking every contact apart again. The other index must not be used afterwards: its
+     * posting lists may now belong to this one.
+     */
+    void addAll(ContactSearchIndex other) {
+        lock.writeLock().lock();
+        try {
+            mergePostings(terms, other.terms);
+            mergePostings(textGrams, other.textGrams);
+            mergePostings(phoneGrams, other.phoneGrams);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private static <K> void mergePostings(Map<K, IntHashSet> into, Map<K, IntHashSet> from) {
+        for (Map.Entry<K, IntHashSet> entry : from.entrySet()) {
+            IntHashSet ids = entry.getValue();
+            IntHashSet existing = into.putIfAbsent(entry.getKey(), ids);
+            if (existing == null) {
+                continue; // Taken over as it is
+            }
+            // Copy the smaller list into the larger one
+            if (existing.size() < ids.size()) {
+                into.put(entry.getKey(), ids);
+                ids.addAll(existing);
+            } else {
+                existing.addAll(ids);
+            }
+        }
+    }
+
+    void clear() {
+        lock.writeLock().lock();
+        try {
+            terms.clear();
+            textGrams.clear();
+            phoneGrams.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Finds contacts with a name word or email domain that starts with the query, then (for three or more
+     * characters) contacts whose name, email local part or phone digits contain it. Prefix matches come first.
+     * @param query The text to look for. Case is ignored; for phones only the digits count.
+     * @param limit The maximum number of contacts to return.
+     * @param lookup Resolves a contact ID to the current Contact (or null if it is gone).
+     * @return The matching contacts, at most limit of them.
+     */
+    List<Contact> search(String query, int limit, IntFunction<Contact> lookup) {
+        List<Contact> results = new ArrayList<>();
+        String text = normalizeText(query);
+        if (text.isEmpty() || limit <= 0) {
+            return results;
+        }
+        String digits = looksLikePhone(query) ? normalizePhone(query) : "";
+        IntHashSet seen = new IntHashSet();
+
+        lock.readLock().lock();
+        try {
+            // 1. Prefix matches from the sorted term index
+            collectPrefix(text, limit, lookup, seen, results);
+            // 2. Substring matches through the trigram indexes
+            if (results.size() < limit && text.length() >= GRAM) {
+                collectSubstring(textGrams, text, limit, lookup, seen, results, false);
+            }
+            if (results.size() < limit && digits.length() >= GRAM) {
+                collectSubstring(phoneGrams, digits, limit, lookup, seen, results, true);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return results;
+    }
+
+    private void collectPrefix(String prefix, int limit, IntFunction<Contact> lookup,
+                               IntHashSet seen, List<Contact> results) {
+        for (IntHashSet ids : terms.subMap(prefix, true, prefix + Character.MAX_VALUE, false).values()) {
+            boolean more = ids.forEach(id -> {
+                if (seen.add(id)) {
+                    Contact contact = lookup.apply(id);
+                    if (contact != null) {
+                        results.add(contact);
+                    }
+                }
+                return results.size() < limit;
+            });
+            if (!more) {
+                return;
+            }
+        }
+    }
+
+    private void collectSubstring(Map<Long, IntHashSet> grams, String needle, int limit, IntFunction<Contact> lookup,
+                                  IntHashSet seen, List<Contact> results, boolean phone) {
+        // Every match must contain every trigram of the needle: scan the rarest posting list,
+        // drop candidates missing from any other one, and only then verify against the contact itself
+        List<IntHashSet> postings = new ArrayList<>();
+        IntHashSet rarest = null;
+        for (int i = 0; i + GRAM <= needle.length(); i++) {
+            IntHashSet ids = grams.get(gramKey(needle, i));
+            if (ids == null) {
+                return; // Some trigram never occurs, so nothing can match
+            }
+            postings.add(ids);
+            if (rarest == null || ids.size() < rarest.size()) {
+                rarest = ids;
+            }
+        }
+        IntHashSet scanned = rarest;
+        rarest.forEach(id -> {
+            if (!seen.contains(id) && inAll(postings, scanned, id)) {
+                Contact contact = lookup.apply(id);
+                if (contact != null && matches(contact, needle, phone)) {
+                    seen.add(id);
+                    results.add(contact);
+                }
+            }
+            return results.size() < limit;
+        });
+    }
+
+    private static boolean inAll(List<IntHashSet> postings, IntHashSet skip, int id) {
+        for (IntHashSet ids : postings) {
+            if (ids != skip && !ids.contains(id)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean matches(Contact contact, String needle, boolean phone) {
+        if (phone) {
+            return normalizePhone(contact.getPhone()).contains(needle);
+        }
+        return normalizeText(contact.getName()).contains(needle)
+                || normalizeText(contact.getEmail()).contains(needle);
+    }
+
+    /**
+     * Adds (or removes) every index entry of one contact. Must be called with the write lock held.
+     */
+    private void update(Contact contact, boolean add) {
+        int id = contact.getId();
+        String name = normalizeText(contact.getName());
+        String email = normalizeText(contact.getEmail());
+        String phone = normalizePhone(contact.getPhone());
+
+        Set<String> contactTerms = new HashSet<>();
+        for (String word : name.split("\\s+")) {
+            if (!word.isEmpty()) {
+                contactTerms.add(word);
+            }
+        }
+        int at = email.indexOf('@');
+        if (at >= 0 && at + 1 < email.length()) {
+            contactTerms.add(email.substring(at + 1));
+        }
+        for (String term : contactTerms) {
+            updatePosting(terms, term, id, add);
+        }
+
+        Set<Long> contactGrams = new HashSet<>();
+        addGrams(name, contactGrams);
+        addGrams(at >= 0 ? email.substring(0, at) : email, contactGrams);
+        for (Long gram : contactGrams) {
+            updatePosting(textGrams, gram, id, add);
+        }
+        contactGrams.clear();
+        addGrams(phone, contactGrams);
+        for (Long gram : contactGrams) {
+            updatePosting(phoneGrams, gram, id, add);
+        }
+    }
+
+    private static <K> void updatePosting(Map<K, IntHashSet> index, K key, int id, boolean add) {
+        if (add) {
+            index.computeIfAbsent(key, k -> new IntHashSet()).add(id);
+        } else {
+            IntHashSet ids = index.get(key);
+            if (ids != null && ids.remove(id) && ids.isEmpty()) {
+                index.remove(key); // Drop empty posting lists so the index does not grow forever
+            }
+        }
+    }
+
+    private static void addGrams(String value, Set<Long> grams) {
+        for (int i = 0; i + GRAM <= value.length(); i++) {
+            grams.add(gramKey(value, i));
+        }
+    }
+
+    /**
+     * Packs three UTF-16 chars into one long key. The packed value is multiplied by an odd constant,
+     * which is a one-to-one mapping that spreads the bits so Long.hashCode() does not collide on ASCII text.
+     */
+    private static long gramKey(String value, int offset) {
+        long packed = ((long) value.charAt(offset) << 32) | ((long) value.charAt(offset + 1) << 16) | value.charAt(offset + 2);
+        return packed * 0x9E3779B97F4A7C15L;
+    }
+
+    /**
+     * Answers a query without an index, with the same rules as search(), by being handed every contact in
+     * turn. ContactService uses this in cache mode, where the contacts are not all in memory and a search
+     * streams the repository instead. Only the results are kept, never the contacts scanned.
+     */
+    static final class Scan implements Consumer<Contact> {
+        private final String text;
+        private final String digits;
+        private final int limit;
+        private final List<Contact> prefixMatches = new ArrayList<>();
+        private final List<Contact> substringMatches = new ArrayList<>();
+
+        Scan(String query, int limit) {
+            this.text = normalizeText(query);
+            this.digits = looksLikePhone(query) ? normalizePhone(query) : "";
+            this.limit = text.isEmpty() ? 0 : limit;
+        }
+
+        @Override
+        public void accept(Contact contact) {
+            if (prefixMatches.size() >= limit) {
+                return; // Prefix matches come first, so nothing can change the result any more
+            }
+            String name = normalizeText(contact.getName());
+            String email = normalizeText(contact.getEmail());
+            int at = email.indexOf('@');
+            boolean prefix = at >= 0 && email.startsWith(text, at + 1);
+            for (String word : name.split("\\s+")) {
+                prefix |= !word.isEmpty() && word.startsWith(text);
+            }
+            if (prefix) {
+                prefixMatches.add(contact);
+            } else if (substringMatches.size() < limit
+                    && ((text.length() >= GRAM && (name.contains(text) || (at >= 0 ? email.substring(0, at) : email).contains(text)))
+                    || (digits.length() >= GRAM && normalizePhone(contact.getPhone()).contains(digits)))) {
+                substringMatches.add(contact);
+            }
+        }
+
+        List<Contact> results() {
+            List<Contact> results = new ArrayList<>(prefixMatches);
+            for (Contact contact : substringMatches) {
+                if (results.size() >= limit) {
+                    break;
+                }
+                results.add(contact);
+            }
+            return results;
+        }
+    }
+
+    static String normalizeText(String value) {
+        return value == null ? "" : value.trim().toLowerCase(Locale.ROOT);
+    }
+
+    static String normalizePhone(String value) {
+        if (value == null) {
+            return "";
+        }
+        StringBuilder digits = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c >= '0' && c <= '9') {
+                digits.append(c);
+            }
+        }
+        return digits.toString();
+    }
+
+    /**
+     * A query is treated as a phone number if it has at least one digit and nothing but
+     * digits and the usual phone punctuation.
+     */
+    private static boolean looksLikePhone(String query) {
+        boolean hasDigit = false;
+        for (int i = 0; i < query.length(); i++) {
+            char c = query.charAt(i);
+            if (c >= '0' && c <= '9') {
+                hasDigit = true;
+            } else if ("+-(). /".indexOf(c) < 0) {
+                return false;
+            }
+        }
+        return hasDigit;
+    }
+}
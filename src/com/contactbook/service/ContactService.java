@@ -1,121 +1,2160 @@
 package com.contactbook.service;
 
-import com.contactbook.database.DatabaseManager;
+import com.contactbook.database.ContactRepository;
+import com.contactbook.database.MeteredContactRepository;
 import com.contactbook.model.Contact;
+import com.contactbook.monitoring.Histogram;
+import com.contactbook.monitoring.Log;
+import com.contactbook.monitoring.Metrics;
+import com.contactbook.monitoring.Timer;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.Timestamp;
 import java.util.ArrayList;
-import java.util.Collections; // For unmodifiable list
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
 
+/**
+ * Coordinates the in-memory contact store with the storage backend (a ContactRepository:
+ * MySQL by default, or the embedded file engine).
+ *
+ * ContactService is safe to use from several threads at once (the Swing EDT, background
+ * import jobs, a server facade). Reads go to the store without taking any lock. Writes to the
+ * same contact are serialised by a per-ID lock stripe held across the database call and the
+ * in-memory change, so memory always ends up in the same order as the database commits;
+ * writes to different contacts run in parallel. Contacts in the store are never changed in
+ * place: an update swaps in a new Contact object, so a reader never sees a half-updated contact.
+ *
+ * Every database-backed operation also has an ...Async variant that runs on a virtual thread
+ * and returns a CompletableFuture, so UI code never has to wait on MySQL.
+ *
+ * Views subscribe with addChangeListener() and receive one ContactChangeEvent per added, updated
+ * or removed contact (with its row), so they can apply just the delta instead of reloading everything.
+ *
+ * With useSnapshotFile(), the contacts are also saved to a local binary snapshot on shutdown and every few
+ * minutes. On the next start that snapshot is memory-mapped and served right away, decoding only the rows
+ * that are read, until the background load from the repository replaces it.
+ *
+ * With compact storage (-Dcontactbook.compactStorage=true, or the three-argument constructor) the store keeps
+ * IDs and versions in primitive arrays and the text in packed UTF-8 arenas, handing out flyweight Contacts.
+ * That takes a fraction of the heap of one Contact and three Strings per contact, and gives the GC far fewer
+ * objects to trace.
+ *
+ * With enableWriteBehind(), writes no longer wait for the database: they change memory at once and are recorded
+ * in a local journal, and a background flusher writes them to the repository in batches, merging repeated changes
+ * to the same contact on the way. New contacts carry a temporary negative ID until their insert is flushed
+ * (see WriteBehindQueue).
+ *
+ * In cache mode (-Dcontactbook.cacheSize=256m, or the four-argument constructor) the service does not hold all
+ * contacts at all. It keeps the ones in use in a ContactCache bounded by their size in bytes and reads everything
+ * else from the repository on demand: single contacts by ID, table rows a page at a time (see CachedContactStore).
+ * Heap use then stays flat however large the contacts table is. Search and getAllContacts() stream the repository,
+ * and the per-insert duplicate check only looks at the cached contacts. Write-behind and the startup snapshot,
+ * which both need every contact in memory, are not available in this mode.
+ *
+ * getContacts() lists contacts sorted by ID, name or email. Each order is kept in a ContactSortIndex, built the
+ * first time it is asked for and from then on updated with every change, so reading a page of it is
+ * O(log n + limit) and an edit moves a single entry.
+ *
+ * addContact(), updateContact() and deleteContact() can be undone and redone (see undo()), up to the last
+ * UndoHistory.DEFAULT_CAPACITY changes. getAllContacts() returns a snapshot that later changes never show up in;
+ * taking one is O(1) (see ContactSnapshot), so exports and reports can read a consistent contact book while
+ * writers carry on.
+ */
 public class ContactService {
 
-    private List<Contact> contacts; // The in-memory ArrayList to hold contacts
-    private DatabaseManager dbManager; // Instance of our DatabaseManager
+    /** System property that turns on compact (packed, columnar) in-memory storage. */
+    public static final String COMPACT_STORAGE_PROPERTY = "contactbook.compactStorage";
+    /** System property the GUI reads to turn on write-behind mode (see enableWriteBehind()). */
+    public static final String WRITE_BEHIND_PROPERTY = "contactbook.writeBehind";
+    /** System property that turns on cache mode, with the cache size in bytes ("512m", "2g", "65536k" or plain bytes). */
+    public static final String CACHE_SIZE_PROPERTY = "contactbook.cacheSize";
+    /** System property with the number of shards a full load reads in parallel; defaults to the number of cores. */
+    public static final String LOAD_SHARDS_PROPERTY = "contactbook.loadShards";
+
+    private static final int LOCK_STRIPES = 64;
+    private static final long SNAPSHOT_SAVE_INTERVAL_MS = 5 * 60 * 1000;
+
+    // Latency of every public operation that does real work; plain in-memory reads such as getContact() are
+    // left out, because timing them would cost about as much as the lookup itself
+    private static final Timer ADD_TIMER = Metrics.timer("service.addContact");
+    private static final Timer UPDATE_TIMER = Metrics.timer("service.updateContact");
+    static final LongAdder CONFLICTS = Metrics.counter("service.updateConflicts"); // Also counted by WriteBehindQueue
+    static final LongAdder MERGES = Metrics.counter("service.updateMerges");
+    private static final int MAX_UPDATE_ATTEMPTS = 3; // Rounds of catching up with other writers before giving up
+    private static final Timer DELETE_TIMER = Metrics.timer("service.deleteContact");
+    private static final Timer UNDO_TIMER = Metrics.timer("service.undo");
+    private static final Timer REDO_TIMER = Metrics.timer("service.redo");
+    private static final Timer ADD_BATCH_TIMER = Metrics.timer("service.addContacts");
+    private static final Timer UPDATE_BATCH_TIMER = Metrics.timer("service.updateContacts");
+    private static final Timer DELETE_BATCH_TIMER = Metrics.timer("service.deleteContacts");
+    private static final Timer SEARCH_TIMER = Metrics.timer("service.search");
+    private static final Timer SORTED_PAGE_TIMER = Metrics.timer("service.getContacts");
+    private static final Timer SORT_INDEX_BUILD_TIMER = Metrics.timer("service.sortIndex.build");
+    private static final Timer LOAD_TIMER = Metrics.timer("service.load");
+    private static final Timer DUPLICATE_CHECK_TIMER = Metrics.timer("service.findPossibleDuplicates");
+    private static final Timer DUPLICATE_SCAN_TIMER = Metrics.timer("service.findDuplicates");
+    private static final int DUPLICATE_CANDIDATES = 32; // Search results per field looked at by the per-insert check
+    private static final Histogram LOAD_ROWS = Metrics.histogram("service.load.rows");
+
+    private volatile ContactStore contacts; // The in-memory, id-indexed store holding contacts
+    private volatile ContactSearchIndex searchIndex; // Prefix/substring index kept in step with the store
+    // One sorted index per ContactSortKey, null until first asked for; dropped whenever the store is replaced
+    private final AtomicReferenceArray<ContactSortIndex> sortIndexes = new AtomicReferenceArray<>(ContactSortKey.values().length);
+    // Without an index (cache mode, startup snapshot): each order as a list of IDs, kept until the next change
+    private final AtomicReferenceArray<SortedIds> sortedIds = new AtomicReferenceArray<>(ContactSortKey.values().length);
+    private final ContactRepository repository; // Where contacts are persisted (MySQL or local files)
+    private final boolean compactStorage; // Packed columnar store instead of one Contact object per contact
+    private final ContactDeduplicator deduplicator = new ContactDeduplicator();
+    private volatile int loadShards = Math.max(1, Integer.getInteger(LOAD_SHARDS_PROPERTY, Runtime.getRuntime().availableProcessors()));
+    // Cache mode: only a bounded cache of contacts, reading through to the repository; null when all are loaded
+    private final CachedContactStore cachedStore;
+
+    private final List<ContactChangeListener> changeListeners = new CopyOnWriteArrayList<>();
+    private final Map<String, Supplier<? extends Number>> gauges = new LinkedHashMap<>(); // Registered by this service
+    private final AtomicLong changeCount = new AtomicLong(); // See getChangeCount()
+
+    private final StripedLocks idLocks = new StripedLocks(LOCK_STRIPES);
+    // Writers share this lock; a full reload takes it exclusively so no write lands in a store being replaced.
+    // It is only held exclusively for the swap at the end of a load, never while the repository is read.
+    private final ReentrantReadWriteLock reloadLock = new ReentrantReadWriteLock();
+    private final ReentrantLock loadLock = new ReentrantLock(); // One full load at a time
+    private volatile Set<Integer> changedDuringLoad; // IDs changed in memory while a full load reads the repository
+
+    // Runs the ...Async operations; one cheap virtual thread per task, the connection pool bounds real concurrency
+    private final ExecutorService asyncExecutor = Executors.newVirtualThreadPerTaskExecutor();
+    // Reload coalescing: at most one reload runs, and all requests made meanwhile share one follow-up reload
+    private CompletableFuture<Integer> runningReload;
+    private CompletableFuture<Integer> pendingReload;
+
+    // Incremental sync with other clients sharing the database (off until startSync() is called)
+    private final ContactSynchronizer synchronizer;
+
+    // Local startup snapshot (off until useSnapshotFile() is called)
+    private volatile Path snapshotFile;
+    // Served to readers after startup until the first full load completes; null afterwards
+    private volatile ContactSnapshotFile startupSnapshot;
+    // A damaged startup snapshot was dropped before the first load finished; writes and saves wait for that load
+    private volatile boolean startupLoadPending;
+    private ScheduledExecutorService snapshotSaver;
+    private final Object snapshotSaveLock = new Object(); // Serialises saves without blocking reload coalescing
+    private ContactSnapshot lastSavedSnapshot; // What was last written, so an unchanged store is not written again
+
+    // Write-behind mode (off until enableWriteBehind() is called)
+    private volatile WriteBehindQueue writeBehind;
+
+    // The user's own adds, edits and deletes, for undo() and redo(); not kept in write-behind mode
+    private final UndoHistory history = new UndoHistory(UndoHistory.DEFAULT_CAPACITY);
+    private final ReentrantLock undoLock = new ReentrantLock(); // One undo or redo at a time
 
     public ContactService() {
-        this.dbManager = new DatabaseManager();
-        this.contacts = new ArrayList<>();
-        loadContactsFromDatabase(); // Load existing contacts on service startup
+        this(true);
+    }
+
+    /**
+     * Creates the service.
+     * @param loadOnStartup true to load all contacts right away on the calling thread; false to start
+     *                      empty, typically followed by reloadContactsAsync() so the caller is not blocked.
+     */
+    public ContactService(boolean loadOnStartup) {
+        this(ContactRepository.openDefault(), loadOnStartup);
+    }
+
+    /**
+     * Creates the service on top of the given storage backend.
+     * @param repository The backend to load contacts from and write changes to. It is closed by shutdown().
+     * @param loadOnStartup true to load all contacts right away on the calling thread.
+     */
+    public ContactService(ContactRepository repository, boolean loadOnStartup) {
+        this(repository, loadOnStartup, Boolean.getBoolean(COMPACT_STORAGE_PROPERTY),
+                parseByteSize(System.getProperty(CACHE_SIZE_PROPERTY)));
+    }
+
+    /**
+     * Creates the service on top of the given storage backend.
+     * @param repository The backend to load contacts from and write changes to. It is closed by shutdown().
+     * @param loadOnStartup true to load all contacts right away on the calling thread.
+     * @param compactStorage true to keep contacts in packed columns instead of one object per contact.
+     */
+    public ContactService(ContactRepository repository, boolean loadOnStartup, boolean compactStorage) {
+        this(repository, loadOnStartup, compactStorage, 0);
+    }
+
+    /**
+     * Creates the service on top of the given storage backend.
+     * @param repository The backend to load contacts from and write changes to. It is closed by shutdown().
+     * @param loadOnStartup true to load all contacts right away on the calling thread. In cache mode nothing
+     *                      is loaded up front either way.
+     * @param compactStorage true to keep contacts in packed columns instead of one object per contact.
+     * @param cacheBytes The cache size for cache mode, or 0 to keep all contacts in memory.
+     */
+    public ContactService(ContactRepository repository, boolean loadOnStartup, boolean compactStorage, long cacheBytes) {
+        this.repository = MeteredContactRepository.wrap(repository); // Every storage call shows up in Metrics
+        this.compactStorage = compactStorage;
+        this.contacts = new ContactStore(16, compactStorage);
+        this.contacts.setChangeListener(this::fireContactsChanged);
+        this.searchIndex = new ContactSearchIndex();
+        this.synchronizer = new ContactSynchronizer(this.repository);
+        if (cacheBytes > 0) {
+            cachedStore = new CachedContactStore(this.repository, cacheBytes);
+            cachedStore.setChangeListener(this::fireContactsChanged);
+            Log.info("ContactService: Cache mode, keeping at most " + cacheBytes / (1024 * 1024) + " MB of contacts in memory.");
+        } else {
+            cachedStore = null;
+        }
+        if (loadOnStartup) {
+            loadContactsFromDatabase(); // Load existing contacts on service startup
+        }
+    }
+
+    /**
+     * Publishes this service's gauges (contact count, pending writes and, in cache mode, the cache figures)
+     * in Metrics, replacing those of an earlier service. shutdown() removes them again, unless a newer service
+     * has taken them over by then. Not done by the constructor, so no reference to a half-built service
+     * (or subclass) escapes to the metrics thread.
+     */
+    public synchronized void registerGauges() {
+        gauges.put("service.contacts", this::getContactCount);
+        gauges.put("service.pendingWrites", this::getPendingWriteCount);
+        if (cachedStore != null) {
+            ContactCache cache = cachedStore.cache();
+            gauges.put("cache.hits", cache::hitCount);
+            gauges.put("cache.misses", cache::missCount);
+            gauges.put("cache.hitRatio", cache::hitRatio);
+            gauges.put("cache.evictions", cache::evictionCount);
+            gauges.put("cache.entries", cache::size);
+            gauges.put("cache.bytes", cache::weight);
+        }
+        gauges.forEach(Metrics::gauge);
+    }
+
+    /**
+     * Loads all contacts from the database into the in-memory store.
+     * Rows are streamed straight into a fresh store, which then replaces the old one in a single step.
+     * Writers carry on while the rows are read; the contacts they change are noted, and only the swap waits
+     * for them: it copies those contacts over from the old store, then puts the new one in its place.
+     * With more than one load shard, the ID range is read in that many parts at once (see ParallelContactLoader).
+     * If the database cannot be read, the current contacts are kept.
+     * @return The number of contacts loaded, or -1 if loading failed.
+     */
+    private int loadContactsFromDatabase() {
+        long started = System.nanoTime();
+        int loaded = doLoadContactsFromDatabase();
+        LOAD_TIMER.record(started, loaded >= 0);
+        if (loaded >= 0) {
+            LOAD_ROWS.record(loaded);
+        }
+        return loaded;
+    }
+
+    private int doLoadContactsFromDatabase() {
+        loadLock.lock();
+        try {
+            if (cachedStore != null) {
+                return clearCache();
+            }
+            Set<Integer> changed = ConcurrentHashMap.newKeySet();
+            changedDuringLoad = changed; // Before reading, so no change the load might miss goes unnoted
+            // Take the sync watermark before reading, so changes made during the load are picked up afterwards
+            Timestamp loadStartedAt = repository.getDatabaseTime();
+            ContactStore store = new ContactStore(16, compactStorage);
+            ContactSearchIndex index;
+            long loaded;
+            int shards = Math.min(loadShards, repository.getMaxConcurrency());
+            if (shards > 1) {
+                index = new ParallelContactLoader(repository, shards).load(store);
+                loaded = index != null ? store.size() : -1;
+            } else {
+                ContactSearchIndex single = new ContactSearchIndex();
+                loaded = repository.forEachContact(contact -> {
+                    store.add(contact);
+                    single.add(contact);
+                });
+                index = single;
+            }
+            if (loaded < 0) {
+                changedDuringLoad = null;
+                Log.error("ContactService: Failed to load contacts from database, keeping " + contacts.size() + " in memory.");
+                return -1;
+            }
+            reloadLock.writeLock().lock();
+            try {
+                changedDuringLoad = null;
+                WriteBehindQueue queue = writeBehind;
+                if (queue != null) {
+                    // The database does not have these yet; without them the load would undo accepted writes
+                    overlayPendingChanges(queue, store, index);
+                }
+                replayChanges(changed, store, index);
+                store.setChangeListener(this::fireContactsChanged); // Only from now on; the load itself is one RELOADED event
+                contacts = store;
+                searchIndex = index;
+                clearSortIndexes(); // Built again from the new store when next asked for
+                startupSnapshot = null; // Real data from now on
+                startupLoadPending = false;
+                synchronizer.resetWatermark(loadStartedAt);
+                fireContactsChanged(new ContactChangeEvent(ContactChangeEvent.Type.RELOADED, null, -1));
+            } finally {
+                reloadLock.writeLock().unlock();
+            }
+            Log.info("ContactService: Loaded " + store.size() + " contacts from database"
+                    + (changed.isEmpty() ? "." : ", " + changed.size() + " changed while loading."));
+            return store.size();
+        } finally {
+            loadLock.unlock();
+        }
+    }
+
+    /**
+     * The cache-mode "load": there is nothing to read, so the cache is emptied and rows are read again as they
+     * are needed.
+     */
+    private int clearCache() {
+        reloadLock.writeLock().lock();
+        try {
+            // Take the sync watermark first, so changes made from now on are picked up
+            synchronizer.resetWatermark(repository.getDatabaseTime());
+            cachedStore.clear();
+            fireContactsChanged(new ContactChangeEvent(ContactChangeEvent.Type.RELOADED, null, -1));
+            return cachedStore.size();
+        } finally {
+            reloadLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Carries the contacts changed in memory while a full load was reading the repository over to the freshly
+     * loaded store. The current store has the latest version of each, whether the load read its row before or
+     * after the change reached the repository. Must be called with the reload lock held exclusively.
+     */
+    private void replayChanges(Set<Integer> changed, ContactStore store, ContactSearchIndex index) {
+        for (int id : changed) {
+            Contact current = contacts.get(id);
+            if (current != null) {
+                index.replace(store.add(current), current);
+            } else {
+                Contact removed = store.remove(id);
+                if (removed != null) {
+                    index.remove(removed);
+                }
+            }
+        }
+    }
+
+    /**
+     * Notes a change to the in-memory store for a full load that is reading the repository (see replayChanges()).
+     */
+    private void noteChange(int contactId) {
+        Set<Integer> changed = changedDuringLoad;
+        if (changed != null) {
+            changed.add(contactId);
+        }
     }
 
     /**
-     * Loads all contacts from the database into the in-memory ArrayList.
-     * This method is called once when the ContactService is initialized.
+     * Reloads all contacts from the database, replacing the in-memory contacts.
+     * @return The number of contacts loaded, or -1 if loading failed (the old contacts are then kept).
      */
-    private void loadContactsFromDatabase() {
-        contacts = dbManager.getAllContacts();
-        System.out.println("ContactService: Loaded " + contacts.size() + " contacts from database.");
+    public int reloadContacts() {
+        return loadContactsFromDatabase();
     }
 
     /**
-     * Retrieves all contacts currently managed by the service (from in-memory list).
+     * Reloads all contacts from the database in the background.
+     * Repeated calls are coalesced: while a reload is running, every further call shares a single
+     * follow-up reload, so hammering a refresh button costs at most two database scans.
+     * @return A future completing with the number of contacts loaded, or -1 if loading failed.
+     */
+    public synchronized CompletableFuture<Integer> reloadContactsAsync() {
+        if (pendingReload != null) {
+            return pendingReload; // A follow-up reload is already queued; share it
+        }
+        CompletableFuture<Integer> reload = new CompletableFuture<>();
+        if (runningReload == null) {
+            startReload(reload);
+        } else {
+            pendingReload = reload;
+            runningReload.whenComplete((count, error) -> startQueuedReload());
+        }
+        return reload;
+    }
+
+    private synchronized void startQueuedReload() {
+        CompletableFuture<Integer> queued = pendingReload;
+        pendingReload = null;
+        if (queued != null) {
+            startReload(queued);
+        }
+    }
+
+    /**
+     * Must be called while holding this object's monitor.
+     */
+    private void startReload(CompletableFuture<Integer> reload) {
+        runningReload = reload;
+        asyncExecutor.execute(() -> {
+            try {
+                if (!reload.isCancelled()) {
+                    reload.complete(loadContactsFromDatabase());
+                }
+            } catch (Throwable t) {
+                reload.completeExceptionally(t);
+            } finally {
+                synchronized (this) {
+                    if (runningReload == reload) {
+                        runningReload = null;
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Registers a listener for fine-grained change events. See ContactChangeListener for the threading rules.
+     * @param listener The listener to add.
+     */
+    public void addChangeListener(ContactChangeListener listener) {
+        changeListeners.add(listener);
+    }
+
+    /**
+     * @param listener The listener to remove.
+     */
+    public void removeChangeListener(ContactChangeListener listener) {
+        changeListeners.remove(listener);
+    }
+
+    private void fireContactsChanged(ContactChangeEvent event) {
+        changeCount.incrementAndGet();
+        for (ContactChangeListener listener : changeListeners) {
+            try {
+                listener.contactsChanged(event);
+            } catch (RuntimeException e) {
+                // A broken listener must not abort the change that is being applied
+                Log.error("ContactService: Change listener failed: " + e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * A counter that goes up with every change to the contacts: adds, updates, deletes, reloads and changes
+     * picked up from other clients. Two equal values mean nothing changed in between, which is what cache
+     * validators such as HTTP ETags need; the value itself means nothing.
+     * @return The current value of the change counter.
+     */
+    public long getChangeCount() {
+        return changeCount.get();
+    }
+
+    /**
+     * Retrieves all contacts currently managed by the service (from the in-memory store).
+     * In cache mode they are read from the repository, so the list takes as much heap as the whole table.
      * @return An unmodifiable List of Contact objects to prevent external direct modification.
      */
     public List<Contact> getAllContacts() {
-        // Return a new ArrayList containing all contacts to ensure modifications
-        // to the returned list do not affect the internal 'contacts' list directly.
-        return new ArrayList<>(contacts);
+        if (cachedStore != null) {
+            return Collections.unmodifiableList(repository.getAllContacts());
+        }
+        ContactSnapshotFile startup = startupSnapshot;
+        if (startup != null) {
+            return startup.asList();
+        }
+        // The snapshot is shared until the next add or delete, so repeated calls do not copy anything.
+        return contacts.snapshot();
+    }
+
+    /**
+     * Looks up a single contact by its ID in constant time.
+     * @param contactId The ID of the contact.
+     * @return The contact, or null if no contact has that ID.
+     */
+    public Contact getContact(int contactId) {
+        if (cachedStore != null) {
+            return cachedStore.get(contactId);
+        }
+        ContactSnapshotFile startup = startupSnapshot;
+        return startup != null ? startup.get(contactId) : contacts.get(resolveId(contactId));
+    }
+
+    /**
+     * @return The number of contacts currently managed by the service.
+     */
+    public int getContactCount() {
+        if (cachedStore != null) {
+            return cachedStore.size();
+        }
+        ContactSnapshotFile startup = startupSnapshot;
+        return startup != null ? startup.size() : contacts.size();
+    }
+
+    /**
+     * Returns the contact at a row of the service's ordering (insertion order), without copying the list.
+     * Table models use this to read only the rows that are actually on screen.
+     * @param row The row, from 0 to getContactCount() - 1.
+     * @return The contact at that row, or null if the row is out of range.
+     */
+    public Contact getContactAt(int row) {
+        if (cachedStore != null) {
+            return cachedStore.getAt(row); // Rows are in ID order in cache mode
+        }
+        ContactSnapshotFile startup = startupSnapshot;
+        return startup != null ? startup.getAt(row) : contacts.getAt(row);
+    }
+
+    /**
+     * @param contactId The ID of a contact.
+     * @return The row of that contact in the service's ordering, or -1 if no contact has that ID. In cache
+     *         mode also -1 if the contact is not on one of the table pages read recently.
+     */
+    public int getRowOf(int contactId) {
+        if (cachedStore != null) {
+            return cachedStore.rowOf(contactId);
+        }
+        ContactSnapshotFile startup = startupSnapshot;
+        return startup != null ? startup.rowOf(contactId) : contacts.rowOf(resolveId(contactId));
+    }
+
+    /**
+     * Returns one page of the contacts in the given order, for views that show them sorted.
+     * The first call for an order builds its index from all contacts (a few microseconds per contact for
+     * names and emails); after that a page costs O(log n + limit). In cache mode there is no index in memory:
+     * each page is read from the repository in that order (see ContactRepository.getContactsSortedAt(); for
+     * MySQL, from the column's index), so heap use stays flat, and the ID order is read a page at a time like
+     * the table. While the startup snapshot is served, the first call for an order streams all contacts once and
+     * keeps their IDs in order (4 bytes per contact), and later pages are read by ID until the contacts change.
+     * @param sortKey The order.
+     * @param offset The position of the first contact to return, from 0.
+     * @param limit The maximum number of contacts to return.
+     * @return The contacts at positions offset to offset + limit - 1 of the order; fewer at the end.
+     */
+    public List<Contact> getContacts(ContactSortKey sortKey, int offset, int limit) {
+        if (offset < 0 || limit <= 0) {
+            return Collections.emptyList();
+        }
+        long started = System.nanoTime();
+        List<Contact> page;
+        ContactSnapshotFile startup = startupSnapshot;
+        if (cachedStore != null && sortKey == ContactSortKey.ID) {
+            page = pageOfRows(offset, limit);
+        } else if (cachedStore != null) {
+            page = repository.getContactsSortedAt(sortKey == ContactSortKey.NAME
+                    ? ContactRepository.SortColumn.NAME : ContactRepository.SortColumn.EMAIL, offset, limit);
+        } else if (startup != null) {
+            page = pageOfIds(sortedIds(sortKey, startup, startup.asList()::forEach), offset, limit, startup::get);
+        } else {
+            ContactStore store = contacts;
+            page = pageOfIds(sortIndex(sortKey).idsAt(offset, limit), 0, limit, store::get);
+        }
+        SORTED_PAGE_TIMER.record(started, true);
+        return page;
+    }
+
+    /**
+     * Cache mode keeps rows in ID order already, so the ID order is read a page at a time like the table.
+     */
+    private List<Contact> pageOfRows(int offset, int limit) {
+        int end = (int) Math.min(cachedStore.size(), (long) offset + limit);
+        List<Contact> page = new ArrayList<>(Math.max(0, end - offset));
+        for (int row = offset; row < end; row++) {
+            Contact contact = cachedStore.getAt(row);
+            if (contact != null) {
+                page.add(contact);
+            }
+        }
+        return page;
+    }
+
+    private static List<Contact> pageOfIds(int[] ids, int offset, int limit, IntFunction<Contact> lookup) {
+        int end = (int) Math.min(ids.length, (long) offset + limit);
+        List<Contact> page = new ArrayList<>(Math.max(0, end - offset));
+        for (int i = offset; i < end; i++) {
+            Contact contact = lookup.apply(ids[i]);
+            if (contact != null) {
+                page.add(contact); // Otherwise deleted since the IDs were read
+            }
+        }
+        return page;
+    }
+
+    /**
+     * One sort order of the startup snapshot, collected by a pass over all its contacts, valid while source is
+     * served and changeCount has not moved.
+     */
+    private record SortedIds(Object source, long changeCount, int[] ids) {
+    }
+
+    /**
+     * @param source The snapshot the contacts come from; a list kept for another one is not used.
+     * @param pass Streams all contacts of the source to a consumer.
+     * @return The IDs of all contacts in the given order, collected now unless nothing changed since the last time.
+     */
+    private int[] sortedIds(ContactSortKey sortKey, Object source, Consumer<Consumer<Contact>> pass) {
+        int slot = sortKey.ordinal();
+        // Read before the pass, so a change made during it makes the result stale rather than hiding it
+        long stamp = changeCount.get();
+        SortedIds kept = sortedIds.get(slot);
+        if (kept != null && kept.source() == source && kept.changeCount() == stamp) {
+            return kept.ids();
+        }
+        long started = System.nanoTime();
+        ContactSortIndex.SortedIds collector = new ContactSortIndex.SortedIds(sortKey);
+        pass.accept(collector);
+        int[] ids = collector.ids();
+        sortedIds.set(slot, new SortedIds(source, stamp, ids));
+        SORT_INDEX_BUILD_TIMER.record(started, true);
+        return ids;
+    }
+
+    /**
+     * @return The index for an order, built first if needed.
+     */
+    private ContactSortIndex sortIndex(ContactSortKey sortKey) {
+        int slot = sortKey.ordinal();
+        ContactSortIndex index = sortIndexes.get(slot);
+        if (index != null) {
+            return index;
+        }
+        ContactSortIndex fresh = new ContactSortIndex(sortKey);
+        long started = System.nanoTime();
+        // Publish the index while it is locked, so every change from here on reaches it but waits until it is
+        // built; only then read the store, so it cannot miss a change that neither the store copy nor the index sees
+        if (!fresh.build(() -> sortIndexes.compareAndSet(slot, null, fresh), () -> contacts.snapshot())) {
+            ContactSortIndex winner = sortIndexes.get(slot); // Another thread is building it; its lock makes us wait
+            return winner != null ? winner : sortIndex(sortKey);
+        }
+        SORT_INDEX_BUILD_TIMER.record(started, true);
+        Log.info("ContactService: Built the " + sortKey.name().toLowerCase(Locale.ROOT) + " sort index over " + fresh.size() + " contacts in "
+                + (System.nanoTime() - started) / 1_000_000 + " ms.");
+        return fresh;
+    }
+
+    /**
+     * Drops the sort indexes, after the store was replaced or changed behind them. Must come after that change.
+     */
+    private void clearSortIndexes() {
+        for (int i = 0; i < sortIndexes.length(); i++) {
+            sortIndexes.set(i, null);
+            sortedIds.set(i, null);
+        }
+    }
+
+    /**
+     * Searches the in-memory contacts by name, email and phone number, without a database round trip.
+     * Contacts with a name word or an email domain that starts with the query come first. For queries of three
+     * or more characters they are followed by contacts whose name or email local part (before the @) contains
+     * the query, and, if the query looks like a phone number, contacts whose phone digits contain its digits.
+     * Emails and phone numbers are therefore not found by their first one or two characters: "as" finds
+     * "Asha Rao" and "x@ashford.org", but not "asha@example.com" or, for "55", "555-0101".
+     * While the startup snapshot is served, every query is matched as a substring instead.
+     * In cache mode there is no index, and every search streams the whole table from the repository.
+     * @param query The text to search for. Case is ignored, and phone formatting such as spaces or dashes does not matter.
+     * @param limit The maximum number of contacts to return.
+     * @return The matching contacts, at most limit of them.
+     */
+    public List<Contact> search(String query, int limit) {
+        ContactSnapshotFile startup = startupSnapshot;
+        if (startup != null) {
+            return startup.search(query, limit);
+        }
+        long started = System.nanoTime();
+        if (cachedStore != null) {
+            ContactSearchIndex.Scan scan = new ContactSearchIndex.Scan(query, limit);
+            long scanned = repository.forEachContact(scan);
+            SEARCH_TIMER.record(started, scanned >= 0);
+            return scan.results();
+        }
+        ContactStore store = contacts;
+        List<Contact> found = searchIndex.search(query, limit, store::get);
+        SEARCH_TIMER.record(started, true);
+        return found;
     }
 
     /**
-     * Adds a new contact. This operation involves both the database and the in-memory list.
+     * The cheap per-insert duplicate check: finds existing contacts that look like the same person as the
+     * given details, typically before adding them. Candidates come from the search index (same phone digits,
+     * same email, shared name words) and are then compared with ContactDeduplicator, so this never scans
+     * the whole contact book. A misspelt name is therefore only caught when another word of it matches.
+     * In cache mode, where a search would scan the table, only the cached contacts are compared.
+     * @return The likely duplicates, empty if there are none.
+     */
+    public List<Contact> findPossibleDuplicates(String name, String phone, String email) {
+        long started = System.nanoTime();
+        Contact candidate = new Contact(name, phone, email);
+        if (cachedStore != null) {
+            List<Contact> duplicates = deduplicator.findMatches(candidate, cachedStore.cache().values());
+            DUPLICATE_CHECK_TIMER.record(started, true);
+            return duplicates;
+        }
+        Map<Integer, Contact> candidates = new LinkedHashMap<>();
+        String phoneKey = ContactDeduplicator.phoneKey(phone);
+        if (phoneKey != null) {
+            addCandidates(candidates, phoneKey);
+        }
+        String emailKey = ContactDeduplicator.emailKey(email);
+        if (emailKey != null) {
+            addCandidates(candidates, emailKey.substring(0, emailKey.indexOf('@'))); // Only local parts are indexed
+        }
+        for (String word : ContactDeduplicator.nameKey(name).split(" ")) {
+            if (word.length() >= 3) {
+                addCandidates(candidates, word);
+            }
+        }
+        List<Contact> duplicates = deduplicator.findMatches(candidate, candidates.values());
+        DUPLICATE_CHECK_TIMER.record(started, true);
+        return duplicates;
+    }
+
+    private void addCandidates(Map<Integer, Contact> candidates, String query) {
+        for (Contact contact : search(query, DUPLICATE_CANDIDATES)) {
+            candidates.putIfAbsent(contact.getId(), contact);
+        }
+    }
+
+    /**
+     * Finds every group of duplicate contacts in the contact book (see ContactDeduplicator for how they are
+     * matched). The work is spread over all cores; a million contacts take a few seconds, so call this from
+     * a background thread.
+     * @return The clusters of duplicates, largest first.
+     */
+    public List<DuplicateCluster> findDuplicates() {
+        long started = System.nanoTime();
+        List<DuplicateCluster> clusters = deduplicator.findClusters(getAllContacts(), true);
+        DUPLICATE_SCAN_TIMER.record(started, true);
+        Log.info("ContactService: Found " + clusters.size() + " groups of duplicate contacts in "
+                + getContactCount() + " contacts.");
+        return clusters;
+    }
+
+    /**
+     * Adds a new contact. This operation involves both the database and the in-memory store.
      * @param name The name of the new contact.
      * @param phone The phone number of the new contact.
      * @param email The email of the new contact.
      * @return The newly added Contact object with its database-generated ID, or null if the addition failed.
      */
     public Contact addContact(String name, String phone, String email) {
+        long started = System.nanoTime();
+        Contact result = doAddContact(name, phone, email);
+        ADD_TIMER.record(started, result != null);
+        return result;
+    }
+
+    private Contact doAddContact(String name, String phone, String email) {
         Contact newContact = new Contact(name, phone, email);
-        if (dbManager.addContact(newContact)) { // Attempt to add to database
-            // If DB addition successful, add to in-memory list (newContact now has its DB ID)
-            contacts.add(newContact);
-            System.out.println("ContactService: Contact '" + newContact.getName() + "' added to service and DB.");
-            return newContact;
+        awaitStartupLoad();
+        WriteBehindQueue queue = writeBehind;
+        if (queue != null) {
+            return addContactBehind(queue, newContact);
+        }
+        reloadLock.readLock().lock();
+        try {
+            // A new contact gets a fresh ID from the database, so no other writer can touch it yet
+            if (repository.addContact(newContact)) { // Attempt to add to database
+                // If DB addition successful, add to in-memory store (newContact now has its DB ID)
+                storeAdd(copyOf(newContact));
+                history.record(null, newContact);
+                Log.debug(() -> "ContactService: Contact '" + newContact.getName() + "' added to service and DB.");
+                return newContact;
+            }
+        } finally {
+            reloadLock.readLock().unlock();
         }
-        System.err.println("ContactService: Failed to add contact '" + name + "' to database.");
+        Log.error("ContactService: Failed to add contact '" + name + "' to database.");
         return null; // Failed to add to database
     }
 
     /**
-     * Updates an existing contact. This operation updates both the database and the in-memory list.
+     * Updates an existing contact. This operation updates both the database and the in-memory store.
+     * The update is optimistic: it only goes through if nobody changed the contact since this service last
+     * saw it. If another client did, the changes are merged field by field where they do not overlap (see
+     * updateContact(base, ...)), and the update fails if both changed the same field differently.
      * @param contactId The ID of the contact to update.
      * @param newName The new name for the contact.
      * @param newPhone The new phone number for the contact.
      * @param newEmail The new email for the contact.
-     * @return true if the contact was updated successfully, false otherwise.
+     * @return true if the contact was updated successfully (possibly merged), false otherwise.
      */
     public boolean updateContact(int contactId, String newName, String newPhone, String newEmail) {
-        Contact contactToUpdate = null;
-        int contactIndex = -1;
+        long started = System.nanoTime();
+        UpdateResult result = doUpdateContact(contactId, null, newName, newPhone, newEmail, true, true);
+        UPDATE_TIMER.record(started, result.getStatus() != UpdateResult.Status.FAILED);
+        return result.isSaved();
+    }
+
+    /**
+     * Updates a contact that an editor changed, with optimistic concurrency: the changes were made to the
+     * base version, and are only saved as they are if the contact is still at that version. The version is
+     * checked by the database in the UPDATE itself, so no row or table is locked while the user edits.
+     *
+     * If someone else changed the contact since the base version, the result is CONFLICT with the current
+     * version, unless merge is true: then every field the editor did not change takes the other change, and
+     * the merge is saved (MERGED) as long as no field was changed differently by both.
+     * To overwrite the other change after a CONFLICT, call this again with the current version as the base.
+     * @param base The contact as the editor loaded it (from getContact() or a table row).
+     * @param merge true to merge with changes made to other fields meanwhile instead of reporting a conflict.
+     * @return What happened; never null.
+     */
+    public UpdateResult updateContact(Contact base, String newName, String newPhone, String newEmail, boolean merge) {
+        long started = System.nanoTime();
+        UpdateResult result = doUpdateContact(base.getId(), base, newName, newPhone, newEmail, merge, true);
+        UPDATE_TIMER.record(started, result.getStatus() != UpdateResult.Status.FAILED);
+        return result;
+    }
 
-        // Find the contact in the in-memory list by its ID
-        for (int i = 0; i < contacts.size(); i++) {
-            if (contacts.get(i).getId() == contactId) {
-                contactToUpdate = contacts.get(i);
-                contactIndex = i;
-                break;
+    /**
+     * @param base The version the changes were made to, or null for the one in memory when the lock is taken.
+     * @param record true to record the update for undo().
+     */
+    private UpdateResult doUpdateContact(int contactId, Contact base, String newName, String newPhone, String newEmail, boolean merge,
+                                         boolean record) {
+        awaitStartupLoad();
+        WriteBehindQueue queue = writeBehind;
+        if (queue != null) {
+            return updateContactBehind(queue, contactId, base, newName, newPhone, newEmail, merge);
+        }
+        reloadLock.readLock().lock();
+        ReentrantLock idLock = idLocks.forId(contactId);
+        idLock.lock();
+        try {
+            // Find the contact in the in-memory store by its ID
+            Contact existing = stored(contactId);
+            if (existing == null) {
+                Log.warn("ContactService: Contact with ID " + contactId + " not found in memory for update.");
+                return new UpdateResult(UpdateResult.Status.NOT_FOUND, null);
             }
+            Contact edited = new Contact(contactId, newName, newPhone, newEmail);
+            Contact from = base != null ? base : existing;
+            boolean upToDate = false; // Whether existing was just read from the repository
+            for (int attempt = 0; attempt < MAX_UPDATE_ATTEMPTS; attempt++) {
+                // Build a new Contact object with the updated details. The one in the store is never
+                // modified in place, because other threads and snapshots might be reading it.
+                UpdateResult.Status status = UpdateResult.Status.UPDATED;
+                Contact target = edited;
+                if (from.getVersion() != existing.getVersion()) {
+                    target = merge ? mergeFields(from, edited, existing) : null;
+                    if (target == null && !upToDate) {
+                        // Report the conflict against the version the database has, not a possibly older one in memory
+                        Contact current = repository.getContact(contactId);
+                        upToDate = true;
+                        if (current != null && current.getVersion() > existing.getVersion()) {
+                            storeReplace(current);
+                            existing = current;
+                            attempt--;
+                            continue;
+                        }
+                    }
+                    if (target == null) {
+                        CONFLICTS.increment();
+                        Log.info("ContactService: Update of contact " + contactId + " conflicts with a change made meanwhile.");
+                        return new UpdateResult(UpdateResult.Status.CONFLICT, existing);
+                    }
+                    status = UpdateResult.Status.MERGED;
+                    MERGES.increment();
+                    if (sameFields(target, existing)) {
+                        return new UpdateResult(status, existing); // The other change already has ours
+                    }
+                }
+                Contact updatedContact = new Contact(contactId, target.getName(), target.getPhone(), target.getEmail(), existing.getVersion() + 1);
+                int updated = repository.updateContactIfVersion(updatedContact, existing.getVersion());
+                if (updated > 0) {
+                    // If DB update successful, swap the new Contact object into the store
+                    storeReplace(updatedContact);
+                    if (record) {
+                        history.record(existing, updatedContact);
+                    }
+                    Log.debug(() -> "ContactService: Contact with ID " + contactId + " updated in service and DB.");
+                    return new UpdateResult(status, updatedContact);
+                }
+                if (updated < 0) {
+                    Log.error("ContactService: Failed to update contact with ID " + contactId + " in database.");
+                    return new UpdateResult(UpdateResult.Status.FAILED, null);
+                }
+                // Another client changed the row since the last sync: catch up with it, then merge again
+                Contact current = repository.getContact(contactId);
+                if (current == null) {
+                    Log.info("ContactService: Contact with ID " + contactId + " was deleted by another client.");
+                    return new UpdateResult(UpdateResult.Status.NOT_FOUND, null);
+                }
+                if (current.getVersion() > existing.getVersion()) {
+                    storeReplace(current);
+                }
+                existing = current;
+                upToDate = true;
+            }
+            CONFLICTS.increment(); // Still racing another writer; let the caller decide
+            return new UpdateResult(UpdateResult.Status.CONFLICT, existing);
+        } finally {
+            idLock.unlock();
+            reloadLock.readLock().unlock();
         }
+    }
 
-        if (contactToUpdate != null) {
-            // Create a temporary Contact object with the updated details for DB operation
-            // This is important because the 'contactToUpdate' object might be referenced elsewhere.
-            Contact tempContactForDBUpdate = new Contact(contactId, newName, newPhone, newEmail);
-
-            if (dbManager.updateContact(tempContactForDBUpdate)) { // Update in database
-                // If DB update successful, update the in-memory Contact object directly
-                contactToUpdate.setName(newName);
-                contactToUpdate.setPhone(newPhone);
-                contactToUpdate.setEmail(newEmail);
-                System.out.println("ContactService: Contact with ID " + contactId + " updated in service and DB.");
-                return true;
-            } else {
-                System.err.println("ContactService: Failed to update contact with ID " + contactId + " in database.");
-            }
-        } else {
-            System.err.println("ContactService: Contact with ID " + contactId + " not found in memory for update.");
+    /**
+     * Three-way merge of an edit with a change someone else made to the same base version. Each field takes
+     * whichever side changed it; a field both sides changed to different values is a conflict.
+     * @return The merged details (ID and version are not set), or null if the changes conflict.
+     */
+    static Contact mergeFields(Contact base, Contact mine, Contact theirs) {
+        if (conflicts(base.getName(), mine.getName(), theirs.getName())
+                || conflicts(base.getPhone(), mine.getPhone(), theirs.getPhone())
+                || conflicts(base.getEmail(), mine.getEmail(), theirs.getEmail())) {
+            return null;
         }
-        return false; // Contact not found or failed to update
+        return new Contact(
+                Objects.equals(mine.getName(), base.getName()) ? theirs.getName() : mine.getName(),
+                Objects.equals(mine.getPhone(), base.getPhone()) ? theirs.getPhone() : mine.getPhone(),
+                Objects.equals(mine.getEmail(), base.getEmail()) ? theirs.getEmail() : mine.getEmail());
+    }
+
+    private static boolean conflicts(String base, String mine, String theirs) {
+        return !Objects.equals(mine, theirs) && !Objects.equals(mine, base) && !Objects.equals(theirs, base);
+    }
+
+    static boolean sameFields(Contact a, Contact b) {
+        return Objects.equals(a.getName(), b.getName()) && Objects.equals(a.getPhone(), b.getPhone())
+                && Objects.equals(a.getEmail(), b.getEmail());
     }
 
     /**
-     * Deletes a contact. This operation deletes from both the database and the in-memory list.
+     * Deletes a contact. This operation deletes from both the database and the in-memory store.
      * @param contactId The ID of the contact to delete.
      * @return true if the contact was deleted successfully, false otherwise.
      */
     public boolean deleteContact(int contactId) {
-        if (dbManager.deleteContact(contactId)) { // Attempt to delete from database
-            // If DB deletion successful, remove from in-memory list
-            boolean removed = contacts.removeIf(c -> c.getId() == contactId);
-            if (removed) {
-                System.out.println("ContactService: Contact with ID " + contactId + " deleted from service and DB.");
-                return true;
-            } else {
-                System.err.println("ContactService: Contact with ID " + contactId + " deleted from DB but not found in memory (should not happen).");
-                return false; // This implies a logical inconsistency
+        long started = System.nanoTime();
+        boolean result = doDeleteContact(contactId, true);
+        DELETE_TIMER.record(started, result);
+        return result;
+    }
+
+    /**
+     * @param record true to record the delete for undo().
+     */
+    private boolean doDeleteContact(int contactId, boolean record) {
+        awaitStartupLoad();
+        WriteBehindQueue queue = writeBehind;
+        if (queue != null) {
+            return deleteContactBehind(queue, contactId);
+        }
+        reloadLock.readLock().lock();
+        ReentrantLock idLock = idLocks.forId(contactId);
+        idLock.lock();
+        try {
+            if (repository.deleteContact(contactId)) { // Attempt to delete from database
+                // If DB deletion successful, remove from in-memory store (in cache mode it may just not be cached)
+                Contact deleted = storeRemove(contactId);
+                boolean removed = deleted != null || cachedStore != null;
+                if (deleted != null && record) {
+                    history.record(deleted, null); // An uncached contact is gone for good; its details are not known here
+                }
+                if (removed) {
+                    Log.debug(() -> "ContactService: Contact with ID " + contactId + " deleted from service and DB.");
+                    return true;
+                } else {
+                    Log.warn("ContactService: Contact with ID " + contactId + " deleted from DB but not found in memory (should not happen).");
+                    return false; // This implies a logical inconsistency
+                }
             }
+        } finally {
+            idLock.unlock();
+            reloadLock.readLock().unlock();
         }
-        System.err.println("ContactService: Failed to delete contact with ID " + contactId + " from database.");
+        Log.error("ContactService: Failed to delete contact with ID " + contactId + " from database.");
         return false; // Failed to delete from database
     }
+
+    /**
+     * Sets how many shards the next full loads read in parallel, each over its own connection. The repository
+     * caps it at getMaxConcurrency(), and small tables use fewer shards. 1 reads everything over one result set.
+     * @param shards The number of shards, must be at least 1.
+     */
+    public void setLoadShards(int shards) {
+        if (shards < 1) {
+            throw new IllegalArgumentException("Load shards must be at least 1: " + shards);
+        }
+        this.loadShards = shards;
+    }
+
+    /**
+     * @return The number of shards a full load reads in parallel (see setLoadShards()).
+     */
+    public int getLoadShards() {
+        return loadShards;
+    }
+
+    /**
+     * Sets how many contacts the bulk methods send to the database per batch (and per transaction).
+     * @param batchSize The batch size, must be at least 1.
+     */
+    public void setBatchSize(int batchSize) {
+        repository.setBatchSize(batchSize);
+    }
+
+    /**
+     * Adds many contacts at once using batched database inserts.
+     * The in-memory store is updated once per committed batch rather than once per contact. The service
+     * keeps its own copies, so changing the given objects afterwards does not change the stored contacts.
+     * @param newContacts The contacts to add. Their IDs are set from the database as they are inserted
+     *                    (in write-behind mode, to the temporary IDs they are known by until flushed).
+     * @return The contacts that were added successfully.
+     */
+    public List<Contact> addContacts(Collection<Contact> newContacts) {
+        long started = System.nanoTime();
+        List<Contact> result = doAddContacts(newContacts);
+        ADD_BATCH_TIMER.record(started, result.size() == newContacts.size());
+        return result;
+    }
+
+    private List<Contact> doAddContacts(Collection<Contact> newContacts) {
+        awaitStartupLoad();
+        List<Contact> all = new ArrayList<>(newContacts);
+        List<Contact> addedContacts = new ArrayList<>(all.size());
+        int chunkSize = repository.getBatchSize();
+        WriteBehindQueue queue = writeBehind;
+        for (int from = 0; from < all.size(); from += chunkSize) {
+            List<Contact> chunk = all.subList(from, Math.min(from + chunkSize, all.size()));
+            if (queue != null) {
+                if (!addContactsBehind(queue, chunk)) {
+                    break;
+                }
+                addedContacts.addAll(chunk);
+                continue;
+            }
+            reloadLock.readLock().lock();
+            try {
+                boolean[] added = repository.addContacts(chunk);
+                List<Contact> addedInChunk = new ArrayList<>(chunk.size());
+                for (int i = 0; i < added.length; i++) {
+                    if (added[i]) {
+                        addedInChunk.add(chunk.get(i));
+                    }
+                }
+                for (Contact contact : addedInChunk) {
+                    storeAdd(copyOf(contact));
+                }
+                addedContacts.addAll(addedInChunk);
+            } finally {
+                reloadLock.readLock().unlock();
+            }
+        }
+        Log.debug(() -> "ContactService: Added " + addedContacts.size() + " of " + all.size() + " contacts in bulk.");
+        return addedContacts;
+    }
+
+    /**
+     * Updates many contacts at once using batched database updates.
+     * Each given Contact carries the ID to update and its new name, phone and email.
+     * Contacts whose ID is not known to the service are skipped. Unlike updateContact(), bulk updates are
+     * not version-checked: they overwrite whatever the rows hold.
+     * @param updatedContacts The contacts with their new details.
+     * @return The number of contacts that were updated.
+     */
+    public int updateContacts(Collection<Contact> updatedContacts) {
+        long started = System.nanoTime();
+        int result = doUpdateContacts(updatedContacts);
+        UPDATE_BATCH_TIMER.record(started, result == updatedContacts.size());
+        return result;
+    }
+
+    private int doUpdateContacts(Collection<Contact> updatedContacts) {
+        awaitStartupLoad();
+        WriteBehindQueue queue = writeBehind;
+        List<Contact> known = new ArrayList<>(updatedContacts.size());
+        for (Contact contact : updatedContacts) {
+            if (queue != null && contact.getId() < 0) {
+                // Added in write-behind mode; its insert may have been flushed since
+                contact = new Contact(queue.resolve(contact.getId()), contact.getName(), contact.getPhone(), contact.getEmail());
+            }
+            if (stored(contact.getId()) != null) {
+                known.add(contact);
+            } else {
+                Log.warn("ContactService: Contact with ID " + contact.getId() + " not found in memory for update.");
+            }
+        }
+
+        int updatedCount = 0;
+        int chunkSize = repository.getBatchSize();
+        for (int from = 0; from < known.size(); from += chunkSize) {
+            List<Contact> chunk = known.subList(from, Math.min(from + chunkSize, known.size()));
+            int[] ids = new int[chunk.size()];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = chunk.get(i).getId();
+            }
+            if (queue != null) {
+                int updated = updateContactsBehind(queue, chunk, ids);
+                if (updated < 0) {
+                    break;
+                }
+                updatedCount += updated;
+                continue;
+            }
+            reloadLock.readLock().lock();
+            List<ReentrantLock> taken = idLocks.lockAll(ids);
+            try {
+                boolean[] updated = repository.updateContacts(chunk);
+                for (int i = 0; i < updated.length; i++) {
+                    if (updated[i]) {
+                        Contact source = chunk.get(i);
+                        // Store a private copy, so later changes to the caller's object do not leak in
+                        Contact existing = stored(source.getId());
+                        long version = existing != null ? existing.getVersion() + 1 : source.getVersion();
+                        storeReplace(new Contact(source.getId(), source.getName(), source.getPhone(), source.getEmail(), version));
+                        updatedCount++;
+                    }
+                }
+            } finally {
+                StripedLocks.unlockAll(taken);
+                reloadLock.readLock().unlock();
+            }
+        }
+        int total = updatedCount;
+        Log.debug(() -> "ContactService: Updated " + total + " of " + updatedContacts.size() + " contacts in bulk.");
+        return updatedCount;
+    }
+
+    /**
+     * Deletes many contacts at once using batched database deletes.
+     * The in-memory store is updated as each batch commits.
+     * @param contactIds The IDs of the contacts to delete.
+     * @return The number of contacts that were deleted.
+     */
+    public int deleteContacts(int[] contactIds) {
+        long started = System.nanoTime();
+        int result = doDeleteContacts(contactIds);
+        DELETE_BATCH_TIMER.record(started, result == contactIds.length);
+        return result;
+    }
+
+    private int doDeleteContacts(int[] contactIds) {
+        awaitStartupLoad();
+        int deletedCount = 0;
+        int chunkSize = repository.getBatchSize();
+        WriteBehindQueue queue = writeBehind;
+        for (int from = 0; from < contactIds.length; from += chunkSize) {
+            int[] chunk = Arrays.copyOfRange(contactIds, from, Math.min(from + chunkSize, contactIds.length));
+            if (queue != null) {
+                int deleted = deleteContactsBehind(queue, chunk);
+                if (deleted < 0) {
+                    break;
+                }
+                deletedCount += deleted;
+                continue;
+            }
+            reloadLock.readLock().lock();
+            List<ReentrantLock> taken = idLocks.lockAll(chunk);
+            try {
+                boolean[] deleted = repository.deleteContacts(chunk);
+                for (int i = 0; i < deleted.length; i++) {
+                    if (deleted[i] && (storeRemove(chunk[i]) != null || cachedStore != null)) {
+                        deletedCount++;
+                    }
+                }
+            } finally {
+                StripedLocks.unlockAll(taken);
+                reloadLock.readLock().unlock();
+            }
+        }
+        int total = deletedCount;
+        Log.debug(() -> "ContactService: Deleted " + total + " of " + contactIds.length + " contacts in bulk.");
+        return deletedCount;
+    }
+
+    /**
+     * While the startup snapshot is being served, the store is still empty, so a write has to wait for the
+     * load that replaces the snapshot. Otherwise its change event would refer to rows nobody can see.
+     */
+    private void awaitStartupLoad() {
+        if (startupSnapshot == null && !startupLoadPending) {
+            return;
+        }
+        CompletableFuture<Integer> load;
+        synchronized (this) {
+            load = pendingReload != null ? pendingReload : runningReload;
+            if (load == null) {
+                load = reloadContactsAsync();
+            }
+        }
+        try {
+            load.join();
+        } catch (RuntimeException e) {
+            // Reported by whoever started the load; the write below then fails or succeeds on its own
+        }
+    }
+
+    // --- In-memory changes. Every change to the store goes through these, so the search and sort indexes never drift. ---
+
+    /**
+     * @return The current version of a contact, from the store (in cache mode from the cache or the repository).
+     */
+    private Contact stored(int contactId) {
+        return cachedStore != null ? cachedStore.get(contactId) : contacts.get(contactId);
+    }
+
+    private void storeAdd(Contact contact) {
+        if (cachedStore != null) {
+            cachedStore.add(contact);
+            return;
+        }
+        noteChange(contact.getId());
+        Contact previous = contacts.add(contact);
+        searchIndex.replace(previous, contact);
+        updateSortIndexes(previous, contact);
+    }
+
+    private Contact storeReplace(Contact contact) {
+        if (cachedStore != null) {
+            changeCount.incrementAndGet(); // Updates of rows nobody is showing are not published, but still count
+            return cachedStore.replace(contact);
+        }
+        noteChange(contact.getId());
+        Contact previous = contacts.replace(contact);
+        if (previous != null) {
+            searchIndex.replace(previous, contact);
+            updateSortIndexes(previous, contact);
+        }
+        return previous;
+    }
+
+    private Contact storeRemove(int contactId) {
+        if (cachedStore != null) {
+            return cachedStore.remove(contactId);
+        }
+        noteChange(contactId);
+        Contact removed = contacts.remove(contactId);
+        if (removed != null) {
+            searchIndex.remove(removed);
+            removeFromSortIndexes(contactId);
+        }
+        return removed;
+    }
+
+    /**
+     * A private copy of a contact for the store, so later changes to the caller's object do not leak in
+     * behind the search and sort indexes.
+     */
+    private static Contact copyOf(Contact contact) {
+        return new Contact(contact.getId(), contact.getName(), contact.getPhone(), contact.getEmail(), contact.getVersion());
+    }
+
+    private void updateSortIndexes(Contact previous, Contact contact) {
+        for (int i = 0; i < sortIndexes.length(); i++) {
+            ContactSortIndex index = sortIndexes.get(i);
+            if (index != null) {
+                index.replace(previous, contact);
+            }
+        }
+    }
+
+    private void removeFromSortIndexes(int contactId) {
+        for (int i = 0; i < sortIndexes.length(); i++) {
+            ContactSortIndex index = sortIndexes.get(i);
+            if (index != null) {
+                index.remove(contactId);
+            }
+        }
+    }
+
+    // --- Asynchronous variants. Each runs the blocking operation on a virtual thread. ---
+
+    /**
+     * Asynchronous version of addContact(name, phone, email).
+     * @return A future completing with the added contact, or null if the addition failed.
+     */
+    public CompletableFuture<Contact> addContactAsync(String name, String phone, String email) {
+        return CompletableFuture.supplyAsync(() -> addContact(name, phone, email), asyncExecutor);
+    }
+
+    /**
+     * Asynchronous version of updateContact(contactId, newName, newPhone, newEmail).
+     * @return A future completing with true if the contact was updated.
+     */
+    public CompletableFuture<Boolean> updateContactAsync(int contactId, String newName, String newPhone, String newEmail) {
+        return CompletableFuture.supplyAsync(() -> updateContact(contactId, newName, newPhone, newEmail), asyncExecutor);
+    }
+
+    /**
+     * Asynchronous version of updateContact(base, newName, newPhone, newEmail, merge).
+     * @return A future completing with the outcome.
+     */
+    public CompletableFuture<UpdateResult> updateContactAsync(Contact base, String newName, String newPhone, String newEmail, boolean merge) {
+        return CompletableFuture.supplyAsync(() -> updateContact(base, newName, newPhone, newEmail, merge), asyncExecutor);
+    }
+
+    /**
+     * Asynchronous version of deleteContact(contactId).
+     * @return A future completing with true if the contact was deleted.
+     */
+    public CompletableFuture<Boolean> deleteContactAsync(int contactId) {
+        return CompletableFuture.supplyAsync(() -> deleteContact(contactId), asyncExecutor);
+    }
+
+    /**
+     * Asynchronous version of findPossibleDuplicates(name, phone, email), for the EDT: the check is a few index
+     * lookups normally, but a scan while the startup snapshot is served and a pass over the cached contacts in cache mode.
+     * @return A future completing with the possible duplicates.
+     */
+    public CompletableFuture<List<Contact>> findPossibleDuplicatesAsync(String name, String phone, String email) {
+        return CompletableFuture.supplyAsync(() -> findPossibleDuplicates(name, phone, email), asyncExecutor);
+    }
+
+    /**
+     * Asynchronous version of getContacts(sortKey, offset, limit), for views on the EDT: a page may have to be
+     * read from the repository (cache mode) or found by a scan (the first page of an order).
+     * @return A future completing with the page.
+     */
+    public CompletableFuture<List<Contact>> getContactsAsync(ContactSortKey sortKey, int offset, int limit) {
+        return CompletableFuture.supplyAsync(() -> getContacts(sortKey, offset, limit), asyncExecutor);
+    }
+
+    /**
+     * Asynchronous version of getContactCount(), which in cache mode may have to count the table.
+     * @return A future completing with the number of contacts.
+     */
+    public CompletableFuture<Integer> getContactCountAsync() {
+        return CompletableFuture.supplyAsync(this::getContactCount, asyncExecutor);
+    }
+
+    /**
+     * Asynchronous version of undo().
+     * @return A future completing with the outcome, or with null if there was nothing to undo.
+     */
+    public CompletableFuture<UpdateResult> undoAsync() {
+        return CompletableFuture.supplyAsync(this::undo, asyncExecutor);
+    }
+
+    /**
+     * Asynchronous version of redo().
+     * @return A future completing with the outcome, or with null if there was nothing to redo.
+     */
+    public CompletableFuture<UpdateResult> redoAsync() {
+        return CompletableFuture.supplyAsync(this::redo, asyncExecutor);
+    }
+
+    // --- Undo and redo ---
+
+    /**
+     * Reverts the newest change made with addContact(), updateContact() or deleteContact() that is not undone
+     * yet: an added contact is deleted again, an edit is reverted, and a deleted contact is restored under its
+     * old ID. Bulk changes, imports and other clients' changes (applied by sync) are not recorded.
+     *
+     * Undo is a new write like any other, checked against the contact's version. If someone else changed the
+     * contact since, an edit is merged with theirs (see updateContact(base, ...)), and anything that would
+     * overwrite their change is refused with CONFLICT instead. After CONFLICT or NOT_FOUND the change is
+     * dropped from the history; after FAILED it stays, so undo can be tried again.
+     * @return What happened, or null if there is nothing to undo. For a reverted add the contact is null.
+     */
+    public UpdateResult undo() {
+        long started = System.nanoTime();
+        undoLock.lock();
+        try {
+            UndoHistory.Change change = history.nextUndo();
+            if (change == null || writeBehind != null) {
+                return null;
+            }
+            UpdateResult result = transition(change.after(), change.before());
+            if (result.getStatus() != UpdateResult.Status.FAILED) {
+                // What redo() has to do is go from where undo left the contact back to the change's result
+                history.undone(change, result.isSaved() ? new UndoHistory.Change(result.getContact(), change.after()) : null);
+            }
+            UNDO_TIMER.record(started, result.getStatus() != UpdateResult.Status.FAILED);
+            Log.info("ContactService: Undo of " + change.describe() + ": " + result.getStatus());
+            return result;
+        } finally {
+            undoLock.unlock();
+        }
+    }
+
+    /**
+     * Makes the newest undone change again. Any other change made after the undo empties the redo history.
+     * Works and reports like undo().
+     * @return What happened, or null if there is nothing to redo. For a redone delete the contact is null.
+     */
+    public UpdateResult redo() {
+        long started = System.nanoTime();
+        undoLock.lock();
+        try {
+            UndoHistory.Change change = history.nextRedo();
+            if (change == null || writeBehind != null) {
+                return null;
+            }
+            UpdateResult result = transition(change.before(), change.after());
+            if (result.getStatus() != UpdateResult.Status.FAILED) {
+                history.redone(change, result.isSaved() ? new UndoHistory.Change(change.before(), result.getContact()) : null);
+            }
+            REDO_TIMER.record(started, result.getStatus() != UpdateResult.Status.FAILED);
+            Log.info("ContactService: Redo of " + change.describe() + ": " + result.getStatus());
+            return result;
+        } finally {
+            undoLock.unlock();
+        }
+    }
+
+    /**
+     * @return true if undo() has a change to revert.
+     */
+    public boolean canUndo() {
+        return writeBehind == null && history.nextUndo() != null;
+    }
+
+    /**
+     * @return true if redo() has a change to make again.
+     */
+    public boolean canRedo() {
+        return writeBehind == null && history.nextRedo() != null;
+    }
+
+    /**
+     * @return What undo() would revert, such as "delete of Asha Rao", or null if there is nothing to undo.
+     */
+    public String getUndoDescription() {
+        UndoHistory.Change change = canUndo() ? history.nextUndo() : null;
+        return change != null ? change.describe() : null;
+    }
+
+    /**
+     * @return What redo() would make again, such as "delete of Asha Rao", or null if there is nothing to redo.
+     */
+    public String getRedoDescription() {
+        UndoHistory.Change change = canRedo() ? history.nextRedo() : null;
+        return change != null ? change.describe() : null;
+    }
+
+    /**
+     * Takes a contact from one recorded state to another, provided it is still in the first one.
+     * @param from The contact as it should be now, or null if it should not exist.
+     * @param to The contact as it should be afterwards, or null to delete it.
+     */
+    private UpdateResult transition(Contact from, Contact to) {
+        if (from != null && to != null) {
+            // An edit: the optimistic update already merges with or refuses changes made since
+            return doUpdateContact(to.getId(), from, to.getName(), to.getPhone(), to.getEmail(), true, false);
+        }
+        awaitStartupLoad();
+        int contactId = from != null ? from.getId() : to.getId();
+        reloadLock.readLock().lock();
+        ReentrantLock idLock = idLocks.forId(contactId);
+        idLock.lock();
+        try {
+            Contact current = stored(contactId);
+            if (to == null) {
+                // Delete the contact, but not a version someone else has changed since
+                if (current == null) {
+                    return new UpdateResult(UpdateResult.Status.NOT_FOUND, null);
+                }
+                if (current.getVersion() != from.getVersion()) {
+                    CONFLICTS.increment();
+                    return new UpdateResult(UpdateResult.Status.CONFLICT, current);
+                }
+                // Memory may be behind another client's change, so the database checks the version as well
+                int deleted = repository.deleteContactIfVersion(contactId, from.getVersion());
+                if (deleted > 0) {
+                    storeRemove(contactId);
+                    Log.debug(() -> "ContactService: Contact with ID " + contactId + " deleted from service and DB.");
+                    return new UpdateResult(UpdateResult.Status.UPDATED, null);
+                }
+                if (deleted < 0) {
+                    Log.error("ContactService: Failed to delete contact with ID " + contactId + " from database.");
+                    return new UpdateResult(UpdateResult.Status.FAILED, null);
+                }
+                // Changed or deleted by another client since the last sync: catch up with it
+                Contact latest = repository.getContact(contactId);
+                if (latest == null) {
+                    storeRemove(contactId);
+                    return new UpdateResult(UpdateResult.Status.NOT_FOUND, null);
+                }
+                if (latest.getVersion() > current.getVersion()) {
+                    storeReplace(latest);
+                }
+                CONFLICTS.increment();
+                return new UpdateResult(UpdateResult.Status.CONFLICT, latest);
+            }
+            if (current != null) {
+                CONFLICTS.increment(); // Restored already, e.g. by another client's undo
+                return new UpdateResult(UpdateResult.Status.CONFLICT, current);
+            }
+            Contact restored = new Contact(contactId, to.getName(), to.getPhone(), to.getEmail(), to.getVersion() + 1);
+            if (repository.restoreContact(restored)) {
+                storeAdd(restored);
+                Log.debug(() -> "ContactService: Contact with ID " + contactId + " restored in service and DB.");
+                return new UpdateResult(UpdateResult.Status.UPDATED, restored);
+            }
+            Contact existing = repository.getContact(contactId);
+            if (existing != null) {
+                // The ID is taken in the database but not known here yet: catch up with it
+                storeAdd(existing);
+                CONFLICTS.increment();
+                return new UpdateResult(UpdateResult.Status.CONFLICT, existing);
+            }
+            Log.error("ContactService: Failed to restore contact with ID " + contactId + " in database.");
+            return new UpdateResult(UpdateResult.Status.FAILED, null);
+        } finally {
+            idLock.unlock();
+            reloadLock.readLock().unlock();
+        }
+    }
+
+    // --- Write-behind mode ---
+
+    /**
+     * Switches writes to write-behind mode: add, update and delete change memory immediately and return
+     * without waiting for the database; a background flusher writes the changes in batches every
+     * flushIntervalMillis. Each change is journaled to a local file first, so nothing accepted is lost if
+     * the application stops before it is flushed: the journal is replayed when write-behind is enabled on
+     * the next start. Call this before loading contacts. Not available in cache mode, and it turns off undo and redo.
+     *
+     * A contact added in this mode gets a temporary negative ID until its insert is flushed; after that
+     * getContact(), updateContact() and deleteContact() still accept the temporary ID.
+     * @param journalFile The journal file. Its directory is created if needed.
+     * @param flushIntervalMillis How often pending changes are written to the repository.
+     * @param maxPending How many contacts may have unflushed changes. When the queue is full, writers wait
+     *                   (up to 30 seconds) for the flusher to catch up, then fail.
+     */
+    public void enableWriteBehind(Path journalFile, long flushIntervalMillis, int maxPending) {
+        synchronized (this) {
+            if (writeBehind != null) {
+                throw new IllegalStateException("Write-behind is already enabled.");
+            }
+            if (cachedStore != null) {
+                throw new IllegalStateException("Write-behind needs all contacts in memory and is not available in cache mode.");
+            }
+            WriteBehindQueue queue = new WriteBehindQueue(this, repository, reloadLock.readLock(), journalFile,
+                    flushIntervalMillis, maxPending);
+            reloadLock.writeLock().lock();
+            try {
+                if (startupSnapshot == null && contacts.size() > 0) {
+                    // Contacts are already loaded, so recovered changes must be applied to them right here
+                    overlayPendingChanges(queue, contacts, searchIndex);
+                    clearSortIndexes(); // The overlay bypasses them
+                }
+                writeBehind = queue;
+                history.clear(); // Writes are not recorded for undo in this mode
+            } finally {
+                reloadLock.writeLock().unlock();
+            }
+            queue.start();
+        }
+    }
+
+    /**
+     * Writes all pending write-behind changes to the repository now, instead of waiting for the next interval.
+     * Does nothing when write-behind is off.
+     */
+    public void flushWriteBehind() {
+        WriteBehindQueue queue = writeBehind;
+        if (queue != null) {
+            queue.flush();
+        }
+    }
+
+    /**
+     * Streams every contact straight from the repository (a database cursor for MySQL), without building a list,
+     * for exports that must work in constant memory however many contacts there are. Pending write-behind changes
+     * are flushed first, so the repository is up to date.
+     * @param action Called for each contact, on the calling thread.
+     * @return The number of contacts streamed, or -1 if the repository could not be read.
+     */
+    public long forEachStoredContact(Consumer<Contact> action) {
+        flushWriteBehind();
+        return repository.forEachContact(action);
+    }
+
+    /**
+     * @return true if the service runs in cache mode, holding only a bounded cache of the contacts.
+     */
+    public boolean isCacheMode() {
+        return cachedStore != null;
+    }
+
+    /**
+     * @return true if write-behind is on (see enableWriteBehind()), so writes are not recorded for undo.
+     */
+    public boolean isWriteBehind() {
+        return writeBehind != null;
+    }
+
+    /**
+     * Parses a size such as "512m", "2g", "65536k" or "1048576" (bytes).
+     * @return The size in bytes, or 0 for null or an empty string.
+     * @throws IllegalArgumentException if the size cannot be parsed.
+     */
+    static long parseByteSize(String size) {
+        if (size == null || size.isBlank()) {
+            return 0;
+        }
+        String value = size.trim().toLowerCase(Locale.ROOT);
+        long unit = 1;
+        char last = value.charAt(value.length() - 1);
+        if (last == 'k' || last == 'm' || last == 'g') {
+            unit = last == 'k' ? 1024L : last == 'm' ? 1024L * 1024 : 1024L * 1024 * 1024;
+            value = value.substring(0, value.length() - 1);
+        }
+        try {
+            return Long.parseLong(value.trim()) * unit;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid size for " + CACHE_SIZE_PROPERTY + ": " + size);
+        }
+    }
+
+    /**
+     * @return The number of contacts with changes not yet written to the repository; 0 when write-behind is off.
+     */
+    public int getPendingWriteCount() {
+        WriteBehindQueue queue = writeBehind;
+        return queue == null ? 0 : queue.size();
+    }
+
+    private Contact addContactBehind(WriteBehindQueue queue, Contact newContact) {
+        if (!queue.awaitCapacity()) {
+            Log.error("ContactService: Write-behind queue is full, could not add contact '" + newContact.getName() + "'.");
+            return null;
+        }
+        reloadLock.readLock().lock();
+        try {
+            newContact.setId(queue.nextTempId());
+            ReentrantLock idLock = idLocks.forId(newContact.getId());
+            idLock.lock();
+            try {
+                if (!queue.enqueue(List.of(WriteBehindQueue.PendingChange.insert(newContact)))) {
+                    return null;
+                }
+                storeAdd(copyOf(newContact));
+                Log.debug(() -> "ContactService: Contact '" + newContact.getName() + "' added to service, queued for DB.");
+                return newContact;
+            } finally {
+                idLock.unlock();
+            }
+        } finally {
+            reloadLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * In write-behind mode memory is ahead of the database, so the changes are checked against the contact
+     * in memory. Its version only moves when a flush lands, so it is the fields that tell whether someone
+     * changed the contact since the base.
+     */
+    private UpdateResult updateContactBehind(WriteBehindQueue queue, int contactId, Contact base, String newName, String newPhone,
+                                             String newEmail, boolean merge) {
+        if (!queue.awaitCapacity()) {
+            Log.error("ContactService: Write-behind queue is full, could not update contact with ID " + contactId + ".");
+            return new UpdateResult(UpdateResult.Status.FAILED, null);
+        }
+        // Twice at most: a temporary ID can be replaced by the real one between resolving it and taking its lock
+        for (int attempt = 0; attempt < 2; attempt++) {
+            int id = queue.resolve(contactId);
+            reloadLock.readLock().lock();
+            ReentrantLock idLock = idLocks.forId(id);
+            idLock.lock();
+            try {
+                Contact existing = contacts.get(id);
+                if (existing == null) {
+                    if (id < 0 && queue.resolve(id) != id) {
+                        continue;
+                    }
+                    Log.warn("ContactService: Contact with ID " + contactId + " not found in memory for update.");
+                    return new UpdateResult(UpdateResult.Status.NOT_FOUND, null);
+                }
+                UpdateResult.Status status = UpdateResult.Status.UPDATED;
+                Contact target = new Contact(id, newName, newPhone, newEmail);
+                if (base != null && !sameFields(base, existing)) {
+                    target = merge ? mergeFields(base, target, existing) : null;
+                    if (target == null) {
+                        CONFLICTS.increment();
+                        return new UpdateResult(UpdateResult.Status.CONFLICT, existing);
+                    }
+                    status = UpdateResult.Status.MERGED;
+                    MERGES.increment();
+                }
+                // The version moves on once the database has the change (see applyFlushedUpdate)
+                Contact updatedContact = new Contact(id, target.getName(), target.getPhone(), target.getEmail(), existing.getVersion());
+                if (!queue.enqueue(List.of(WriteBehindQueue.PendingChange.update(updatedContact, existing)))) {
+                    return new UpdateResult(UpdateResult.Status.FAILED, null);
+                }
+                storeReplace(updatedContact);
+                Log.debug(() -> "ContactService: Contact with ID " + id + " updated in service, queued for DB.");
+                return new UpdateResult(status, updatedContact);
+            } finally {
+                idLock.unlock();
+                reloadLock.readLock().unlock();
+            }
+        }
+        return new UpdateResult(UpdateResult.Status.NOT_FOUND, null);
+    }
+
+    private boolean deleteContactBehind(WriteBehindQueue queue, int contactId) {
+        if (!queue.awaitCapacity()) {
+            Log.error("ContactService: Write-behind queue is full, could not delete contact with ID " + contactId + ".");
+            return false;
+        }
+        for (int attempt = 0; attempt < 2; attempt++) {
+            int id = queue.resolve(contactId);
+            reloadLock.readLock().lock();
+            ReentrantLock idLock = idLocks.forId(id);
+            idLock.lock();
+            try {
+                if (!contacts.contains(id)) {
+                    if (id < 0 && queue.resolve(id) != id) {
+                        continue;
+                    }
+                    Log.warn("ContactService: Contact with ID " + contactId + " not found in memory for delete.");
+                    return false;
+                }
+                if (!queue.enqueue(List.of(WriteBehindQueue.PendingChange.delete(id)))) {
+                    return false;
+                }
+                storeRemove(id);
+                Log.debug(() -> "ContactService: Contact with ID " + id + " deleted from service, queued for DB.");
+                return true;
+            } finally {
+                idLock.unlock();
+                reloadLock.readLock().unlock();
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Queues one chunk of a bulk add. The contacts are given temporary IDs.
+     * @return false if the queue stayed full or the journal could not be written; nothing was added then.
+     */
+    private boolean addContactsBehind(WriteBehindQueue queue, List<Contact> chunk) {
+        if (!queue.awaitCapacity()) {
+            Log.warn("ContactService: Write-behind queue is full, stopping bulk add.");
+            return false;
+        }
+        reloadLock.readLock().lock();
+        try {
+            int[] ids = new int[chunk.size()];
+            List<WriteBehindQueue.PendingChange> changes = new ArrayList<>(chunk.size());
+            for (int i = 0; i < ids.length; i++) {
+                Contact contact = chunk.get(i);
+                contact.setId(queue.nextTempId());
+                ids[i] = contact.getId();
+                changes.add(WriteBehindQueue.PendingChange.insert(contact));
+            }
+            List<ReentrantLock> taken = idLocks.lockAll(ids);
+            try {
+                if (!queue.enqueue(changes)) {
+                    return false;
+                }
+                for (Contact contact : chunk) {
+                    storeAdd(copyOf(contact));
+                }
+                return true;
+            } finally {
+                StripedLocks.unlockAll(taken);
+            }
+        } finally {
+            reloadLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Queues one chunk of a bulk update.
+     * @return The number of contacts updated, or -1 if the queue stayed full or the journal could not be written.
+     */
+    private int updateContactsBehind(WriteBehindQueue queue, List<Contact> chunk, int[] ids) {
+        if (!queue.awaitCapacity()) {
+            Log.warn("ContactService: Write-behind queue is full, stopping bulk update.");
+            return -1;
+        }
+        reloadLock.readLock().lock();
+        List<ReentrantLock> taken = idLocks.lockAll(ids);
+        try {
+            List<Contact> updated = new ArrayList<>(chunk.size());
+            List<WriteBehindQueue.PendingChange> changes = new ArrayList<>(chunk.size());
+            for (Contact source : chunk) {
+                Contact existing = contacts.get(source.getId());
+                if (existing != null) {
+                    Contact contact = new Contact(source.getId(), source.getName(), source.getPhone(), source.getEmail(), existing.getVersion());
+                    updated.add(contact);
+                    changes.add(WriteBehindQueue.PendingChange.update(contact, existing));
+                }
+            }
+            if (!queue.enqueue(changes)) {
+                return -1;
+            }
+            for (Contact contact : updated) {
+                storeReplace(contact);
+            }
+            return updated.size();
+        } finally {
+            StripedLocks.unlockAll(taken);
+            reloadLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Queues one chunk of a bulk delete.
+     * @return The number of contacts deleted, or -1 if the queue stayed full or the journal could not be written.
+     */
+    private int deleteContactsBehind(WriteBehindQueue queue, int[] chunk) {
+        if (!queue.awaitCapacity()) {
+            Log.warn("ContactService: Write-behind queue is full, stopping bulk delete.");
+            return -1;
+        }
+        int[] ids = new int[chunk.length];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = queue.resolve(chunk[i]);
+        }
+        reloadLock.readLock().lock();
+        List<ReentrantLock> taken = idLocks.lockAll(ids);
+        try {
+            List<WriteBehindQueue.PendingChange> changes = new ArrayList<>(ids.length);
+            for (int id : ids) {
+                if (contacts.contains(id)) {
+                    changes.add(WriteBehindQueue.PendingChange.delete(id));
+                }
+            }
+            if (!queue.enqueue(changes)) {
+                return -1;
+            }
+            for (WriteBehindQueue.PendingChange change : changes) {
+                storeRemove(change.id);
+            }
+            return changes.size();
+        } finally {
+            StripedLocks.unlockAll(taken);
+            reloadLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Called by the flusher (holding the reload lock) once a contact added under a temporary ID is in the
+     * database. The contact keeps its row and takes its real ID.
+     */
+    void applyFlushedInsert(int tempId, int realId) {
+        List<ReentrantLock> taken = idLocks.lockAll(new int[]{tempId, realId});
+        try {
+            Contact current = contacts.get(tempId);
+            if (current == null) {
+                return; // Deleted meanwhile; that delete is queued and will reach the real row
+            }
+            Contact existing = contacts.get(realId);
+            if (existing != null) {
+                // The sync already brought the new row in; keep that row, with our latest values
+                storeRemove(tempId);
+                storeReplace(new Contact(realId, current.getName(), current.getPhone(), current.getEmail(), existing.getVersion()));
+                return;
+            }
+            Contact rekeyed = new Contact(realId, current.getName(), current.getPhone(), current.getEmail(), 1);
+            noteChange(tempId);
+            noteChange(realId);
+            Contact previous = contacts.rekey(tempId, rekeyed);
+            if (previous != null) {
+                searchIndex.replace(previous, rekeyed);
+                updateSortIndexes(previous, rekeyed);
+            }
+        } finally {
+            StripedLocks.unlockAll(taken);
+        }
+    }
+
+    /**
+     * Called by the flusher (holding the reload lock) once the database has answered a queued update, to bring
+     * memory in line with the row it now holds: our change, our change merged with another client's, or the
+     * other client's after a conflict. Fields edited again since the update was sent keep the newer value;
+     * that edit is still queued.
+     * @param sent The row the flusher sent.
+     * @param stored The row the database now holds, with its version, or null if another client deleted it.
+     */
+    void applyFlushedUpdate(Contact sent, Contact stored) {
+        int contactId = sent.getId();
+        ReentrantLock idLock = idLocks.forId(contactId);
+        idLock.lock();
+        try {
+            Contact existing = contacts.get(contactId);
+            if (existing == null) {
+                return; // Deleted meanwhile; that delete is queued
+            }
+            if (stored == null) {
+                if (sameFields(existing, sent)) {
+                    storeRemove(contactId); // Nothing edited since, so nothing left to save
+                }
+                return;
+            }
+            if (existing.getVersion() < stored.getVersion()) {
+                storeReplace(new Contact(contactId,
+                        Objects.equals(existing.getName(), sent.getName()) ? stored.getName() : existing.getName(),
+                        Objects.equals(existing.getPhone(), sent.getPhone()) ? stored.getPhone() : existing.getPhone(),
+                        Objects.equals(existing.getEmail(), sent.getEmail()) ? stored.getEmail() : existing.getEmail(),
+                        stored.getVersion()));
+            }
+        } finally {
+            idLock.unlock();
+        }
+    }
+
+    /**
+     * Called by the flusher (holding the reload lock) when the repository kept rejecting a queued change and it
+     * was abandoned, to undo it in memory: a contact added under a temporary ID is removed, any other contact
+     * goes back to the row the repository holds. A contact with a newer change queued is left alone; that
+     * change is still to be flushed.
+     * @param contactId The temporary ID of an abandoned insert, or the real ID of an abandoned update or delete.
+     */
+    void applyAbandonedChange(int contactId) {
+        Contact stored = contactId < 0 ? null : repository.getContact(contactId);
+        ReentrantLock idLock = idLocks.forId(contactId);
+        idLock.lock();
+        try {
+            WriteBehindQueue queue = writeBehind;
+            if (contactId >= 0 && queue != null && queue.hasPending(contactId)) {
+                return;
+            }
+            if (stored == null) {
+                storeRemove(contactId);
+            } else {
+                storeAdd(stored); // Replaces an updated row, brings back a deleted one
+            }
+        } finally {
+            idLock.unlock();
+        }
+    }
+
+    /**
+     * Applies the queued changes to a freshly loaded store and index, before they replace the current ones.
+     */
+    private static void overlayPendingChanges(WriteBehindQueue queue, ContactStore store, ContactSearchIndex index) {
+        for (WriteBehindQueue.PendingChange change : queue.pendingChanges()) {
+            if (change.type == WriteBehindQueue.INSERT) {
+                Contact contact = change.toContact(change.id, 1);
+                index.replace(store.add(contact), contact);
+                continue;
+            }
+            int id = queue.resolve(change.id);
+            Contact existing = store.get(id);
+            if (existing == null) {
+                continue; // Deleted by another client; the queued change will fail on its own
+            }
+            if (change.type == WriteBehindQueue.UPDATE) {
+                Contact contact = change.toContact(id, existing.getVersion());
+                index.replace(store.replace(contact), contact);
+            } else {
+                index.remove(store.remove(id));
+            }
+        }
+    }
+
+    /**
+     * @return The real ID of a contact added in write-behind mode whose insert has been flushed, otherwise the ID itself.
+     */
+    private int resolveId(int contactId) {
+        WriteBehindQueue queue = writeBehind;
+        return queue == null ? contactId : queue.resolve(contactId);
+    }
+
+    // --- Incremental sync with other writers ---
+
+    /**
+     * Starts polling the database for rows other clients changed, so this cache stays consistent
+     * with them without ever re-running the full SELECT. Changed rows are found through the
+     * updated_at column and deletes through the contact_tombstones table; both are applied as
+     * ordinary change events.
+     * @param intervalMillis How often to poll.
+     */
+    public void startSync(long intervalMillis) {
+        synchronizer.start(this, intervalMillis);
+    }
+
+    /**
+     * Stops the incremental sync started by startSync().
+     */
+    public void stopSync() {
+        synchronizer.stop();
+    }
+
+    /**
+     * Applies a row that another client inserted or updated. Older versions than the one
+     * in memory are ignored, so re-reading a row is harmless.
+     */
+    void applyRemoteUpsert(Contact contact) {
+        reloadLock.readLock().lock();
+        ReentrantLock idLock = idLocks.forId(contact.getId());
+        idLock.lock();
+        try {
+            WriteBehindQueue queue = writeBehind;
+            if (queue != null && queue.hasPending(contact.getId())) {
+                return; // Our own queued change is newer; it will overwrite this row when flushed
+            }
+            if (cachedStore != null) {
+                Contact cached = cachedStore.cache().peek(contact.getId());
+                if (cached == null) {
+                    cachedStore.invalidate(contact.getId()); // A new row or an uncached one; either way rows may have moved
+                } else if (contact.getVersion() > cached.getVersion()) {
+                    storeReplace(contact);
+                }
+                return;
+            }
+            Contact existing = contacts.get(contact.getId());
+            if (existing == null) {
+                storeAdd(contact);
+            } else if (contact.getVersion() > existing.getVersion()) {
+                storeReplace(contact);
+            }
+        } finally {
+            idLock.unlock();
+            reloadLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Applies a delete made by another client. Deleting an ID that is already gone is harmless.
+     */
+    void applyRemoteDelete(int contactId) {
+        reloadLock.readLock().lock();
+        ReentrantLock idLock = idLocks.forId(contactId);
+        idLock.lock();
+        try {
+            if (cachedStore != null) {
+                cachedStore.invalidate(contactId); // It may be gone already, so the count is read again
+            } else {
+                storeRemove(contactId);
+            }
+        } finally {
+            idLock.unlock();
+            reloadLock.readLock().unlock();
+        }
+    }
+
+    // --- Startup snapshot ---
+
+    /**
+     * Keeps a local snapshot of the contacts in the given file for fast startup.
+     * If the file holds a snapshot from an earlier run and nothing has been loaded yet, it is served at once
+     * (every reader sees its contacts, decoded lazily) until a full load replaces it, so call this before
+     * reloadContactsAsync(). From then on the snapshot is rewritten every few minutes when contacts changed,
+     * and on shutdown().
+     * @param file The path of the snapshot. Each save writes a new generation next to it ("file.1", "file.2", ...,
+     *             see ContactSnapshotFile). Its directory is created when the snapshot is first written.
+     * @return The number of contacts served from the existing snapshot, or -1 if there was none to serve.
+     *         In cache mode the call is ignored and returns -1: a snapshot would hold every contact.
+     */
+    public int useSnapshotFile(Path file) {
+        if (cachedStore != null) {
+            Log.info("ContactService: No startup snapshot in cache mode.");
+            return -1;
+        }
+        int served = -1;
+        synchronized (this) {
+            if (snapshotFile != null) {
+                throw new IllegalStateException("A snapshot file is already in use: " + snapshotFile);
+            }
+            snapshotFile = file;
+            if (contacts.size() == 0 && runningReload == null) {
+                ContactSnapshotFile startup = ContactSnapshotFile.open(file);
+                if (startup != null) {
+                    startup.setDamageListener(() -> startupSnapshotDamaged(startup));
+                    startupSnapshot = startup;
+                    served = startup.size();
+                    Log.info("ContactService: Serving " + served + " contacts from snapshot " + file
+                            + " (saved " + new Timestamp(startup.getSavedAtMillis()) + ") until the full load completes.");
+                }
+            }
+            snapshotSaver = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "ContactService-snapshot");
+                t.setDaemon(true);
+                return t;
+            });
+            snapshotSaver.scheduleWithFixedDelay(this::saveSnapshot, SNAPSHOT_SAVE_INTERVAL_MS,
+                    SNAPSHOT_SAVE_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        }
+        if (served >= 0) {
+            fireContactsChanged(new ContactChangeEvent(ContactChangeEvent.Type.RELOADED, null, -1));
+        }
+        return served;
+    }
+
+    /**
+     * Stops serving a startup snapshot in which a damaged record was found. Readers see the store from now on,
+     * which is empty until the full load fills it, and writes still wait for that load. A RELOADED event tells
+     * views to read everything again.
+     */
+    private void startupSnapshotDamaged(ContactSnapshotFile startup) {
+        synchronized (this) {
+            if (startupSnapshot != startup) {
+                return; // Replaced by the load already
+            }
+            startupLoadPending = true;
+            startupSnapshot = null;
+            if (runningReload == null && pendingReload == null) {
+                reloadContactsAsync();
+            }
+        }
+        fireContactsChanged(new ContactChangeEvent(ContactChangeEvent.Type.RELOADED, null, -1));
+    }
+
+    /**
+     * Writes the current contacts to the snapshot file set by useSnapshotFile(), if they changed since the last save.
+     * Nothing is written while the startup snapshot is still being served, since that is what the file already holds.
+     * @return true if the snapshot file is up to date afterwards.
+     */
+    public boolean saveSnapshot() {
+        synchronized (snapshotSaveLock) {
+            Path file = snapshotFile;
+            if (file == null || startupSnapshot != null || startupLoadPending) {
+                return false;
+            }
+            ContactSnapshot current = contacts.snapshot();
+            if (current == lastSavedSnapshot) {
+                return true;
+            }
+            try {
+                long started = System.nanoTime();
+                ContactSnapshotFile.write(file, current);
+                lastSavedSnapshot = current;
+                Log.info("ContactService: Saved " + current.size() + " contacts to snapshot " + file + " in "
+                        + (System.nanoTime() - started) / 1_000_000 + " ms.");
+                return true;
+            } catch (IOException e) {
+                Log.error("ContactService: Error saving snapshot " + file + ": " + e.getMessage(), e);
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Stops the background executor and closes the database connections.
+     * Pending write-behind changes are flushed and the startup snapshot, if one is in use, is saved first.
+     * Call this when the application shuts down.
+     */
+    public void shutdown() {
+        synchronizer.stop();
+        WriteBehindQueue queue = writeBehind;
+        if (queue != null) {
+            queue.close(); // Last flush; whatever still fails stays in the journal for the next start
+        }
+        synchronized (this) {
+            if (snapshotSaver != null) {
+                snapshotSaver.shutdown();
+            }
+        }
+        saveSnapshot();
+        asyncExecutor.shutdown();
+        repository.close();
+        gauges.forEach(Metrics::removeGauge);
+        Log.flush(); // Let the log writer catch up before the JVM exits
+    }
 }
@@ -0,0 +1,131 @@
+package com.contactbook.service;
+
+import com.contactbook.model.Contact;
+
+import java.util.Arrays;
+
+/**
+ * The slot array a ContactStore keeps its contacts in. Slot numbers, growth, compaction and locking
+ * are all handled by ContactStore; a ContactSlots only decides how the contents of each slot are held.
+ * <ul>
+ *   <li>ContactSlots.ObjectArray keeps a plain Contact[]: the simplest layout, one Contact object
+ *       (and three Strings) per contact.</li>
+ *   <li>PackedContactSlots keeps IDs and versions in primitive arrays and the text in packed UTF-8
+ *       byte arenas, handing out flyweight Contact views: a fraction of the heap for large stores.</li>
+ * </ul>
+ * Readers call get() and toArray() without a lock while a writer may be changing the slots
+ * (see ContactStore's optimistic reads). Those calls may then return wrong values, which the caller
+ * discards, but they must never throw or loop forever.
+ */
+abstract class ContactSlots {
+
+    /**
+     * @param packed true for the packed columnar layout, false for a plain Contact array.
+     * @param capacity The initial number of slots.
+     */
+    static ContactSlots create(boolean packed, int capacity) {
+        return packed ? new PackedContactSlots(capacity) : new ObjectArray(capacity);
+    }
+
+    abstract int capacity();
+
+    abstract boolean isLive(int slot);
+
+    /**
+     * @return The contact in the slot, or null if the slot is empty or out of range.
+     */
+    abstract Contact get(int slot);
+
+    /**
+     * @return The ID of the contact in a live slot.
+     */
+    abstract int idAt(int slot);
+
+    abstract void set(int slot, Contact contact);
+
+    abstract void clear(int slot);
+
+    /**
+     * @return Fresh slots of the given capacity holding the same contacts in the same slots. The old
+     *         instance stays readable, so optimistic readers holding it are not disturbed.
+     */
+    abstract ContactSlots grow(int newCapacity);
+
+    /**
+     * @return Fresh, empty slots of the same layout.
+     */
+    abstract ContactSlots newEmpty(int capacity);
+
+    /**
+     * Copies the contact in one slot into a slot of another instance of the same layout.
+     */
+    void copyTo(int slot, ContactSlots target, int targetSlot) {
+        target.set(targetSlot, get(slot));
+    }
+
+    /**
+     * @return The contacts of slots [0, count), with null for empty slots.
+     */
+    abstract Contact[] toArray(int count);
+
+    /**
+     * The plain layout: one Contact object per slot.
+     */
+    static final class ObjectArray extends ContactSlots {
+
+        private final Contact[] contacts;
+
+        ObjectArray(int capacity) {
+            this.contacts = new Contact[capacity];
+        }
+
+        private ObjectArray(Contact[] contacts) {
+            this.contacts = contacts;
+        }
+
+        @Override
+        int capacity() {
+            return contacts.length;
+        }
+
+        @Override
+        boolean isLive(int slot) {
+            return contacts[slot] != null;
+        }
+
+        @Override
+        Contact get(int slot) {
+            return slot >= 0 && slot < contacts.length ? contacts[slot] : null;
+        }
+
+        @Override
+        int idAt(int slot) {
+            return contacts[slot].getId();
+        }
+
+        @Override
+        void set(int slot, Contact contact) {
+            contacts[slot] = contact;
+        }
+
+        @Override
+        void clear(int slot) {
+            contacts[slot] = null;
+        }
+
+        @Override
+        ContactSlots grow(int newCapacity) {
+            return new ObjectArray(Arrays.copyOf(contacts, newCapacity));
+        }
+
+        @Override
+        ContactSlots newEmpty(int capacity) {
+            return new ObjectArray(capacity);
+        }
+
+        @Override
+        Contact[] toArray(int count) {
+            return Arrays.copyOf(contacts, Math.min(count, contacts.length));
+        }
+    }
+}
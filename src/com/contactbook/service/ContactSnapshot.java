@@ -0,0 +1,55 @@
+package com.contactbook.service;
+
+import com.contactbook.model.Contact;
+
+import java.util.AbstractList;
+import java.util.Iterator;
+import java.util.RandomAccess;
+import java.util.function.Consumer;
+
+/**
+ * An unmodifiable view of the contacts in a ContactStore at one version.
+ * A snapshot is built once per structural change and then shared by every reader,
+ * so getAllContacts() no longer copies the whole list on each call.
+ *
+ * It is backed by a PersistentContactVector, and later changes to the store never show up in it: a reader can
+ * keep it for as long as it likes, e.g. for a long export, and still see one consistent contact book. Unless
+ * the store is packed, taking one copies nothing. get(i) is O(log n); iterating is O(1) per contact.
+ */
+public final class ContactSnapshot extends AbstractList<Contact> implements RandomAccess {
+
+    private final PersistentContactVector contacts;
+    private final long version;
+
+    ContactSnapshot(PersistentContactVector contacts, long version) {
+        this.contacts = contacts;
+        this.version = version;
+    }
+
+    @Override
+    public Contact get(int index) {
+        return contacts.getAt(index);
+    }
+
+    @Override
+    public int size() {
+        return contacts.size();
+    }
+
+    @Override
+    public Iterator<Contact> iterator() {
+        return contacts.iterator();
+    }
+
+    @Override
+    public void forEach(Consumer<? super Contact> action) {
+        contacts.forEach(action);
+    }
+
+    /**
+     * @return The store version this snapshot was taken at. A higher version means a newer snapshot.
+     */
+    public long getVersion() {
+        return version;
+    }
+}
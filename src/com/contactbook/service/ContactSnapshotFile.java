@@ -0,0 +1,409 @@
+package com.contactbook.service;
+
+import com.contactbook.model.Contact;
+import com.contactbook.monitoring.Log;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A local binary copy of all contacts that ContactService can serve straight after startup,
+ * while the real load from the repository runs in the background.
+ *
+ * The file is memory-mapped and nothing is decoded up front: opening it costs the same for ten
+ * contacts as for ten million. Records are decoded only when a row is actually read, which for a
+ * table means the rows on screen. Layout (big-endian):
+ * <pre>
+ * header   magic, format, count, reserved, savedAtMillis
+ * offsets  count x int   file position of the record at each row
+ * id index count x (int id, int row), sorted by id, so a lookup by ID is a binary search
+ * records  count x (int id, long version, name, phone, email), strings as [length][UTF-8], -1 for null
+ * </pre>
+ * The file has no checksum, because verifying one would mean reading all of it. Out-of-range offsets are
+ * never followed, and a record that cannot be decoded marks the whole snapshot as damaged: the damage
+ * listener is told (ContactService then stops serving it and waits for the real load), and the list view
+ * throws rather than hand out a null contact.
+ *
+ * Every save goes to a new generation, "name.1", "name.2" and so on next to the given path, and older
+ * generations are deleted afterwards. A file that is still mapped, by this process or by an earlier snapshot
+ * nobody has garbage-collected yet, is therefore never replaced or renamed onto, which Windows refuses. If
+ * an old generation cannot be deleted yet it is left for a later save, and open() always takes the newest
+ * generation that is valid.
+ */
+final class ContactSnapshotFile {
+
+    private static final int MAGIC = 0x43425353; // "CBSS"
+    private static final int FORMAT = 1;
+    private static final int HEADER_BYTES = 4 + 4 + 4 + 4 + 8;
+    private static final int CACHE_SIZE = 4096; // Decoded rows kept, a few screens' worth
+
+    private final Path file;
+    private final MappedByteBuffer map;
+    private final int count;
+    private final long savedAtMillis;
+    private final int indexStart;
+    private final Contact[] cache = new Contact[CACHE_SIZE]; // Direct-mapped by row; racy but each entry is immutable
+    private final AtomicBoolean damaged = new AtomicBoolean();
+    private volatile Runnable damageListener;
+
+    private ContactSnapshotFile(Path file, MappedByteBuffer map, int count, long savedAtMillis) {
+        this.file = file;
+        this.map = map;
+        this.count = count;
+        this.savedAtMillis = savedAtMillis;
+        this.indexStart = HEADER_BYTES + 4 * count;
+    }
+
+    /**
+     * Maps the newest valid snapshot written by write() for the given path.
+     * @return The snapshot, or null if there is none or none of the files is a valid snapshot.
+     */
+    static ContactSnapshotFile open(Path file) {
+        for (Path generation : generations(file)) {
+            ContactSnapshotFile snapshot = openGeneration(generation);
+            if (snapshot != null) {
+                return snapshot;
+            }
+        }
+        return null;
+    }
+
+    private static ContactSnapshotFile openGeneration(Path file) {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_BYTES || size > Integer.MAX_VALUE) {
+                throw new IOException("unexpected file size " + size);
+            }
+            // The mapping stays valid after the channel is closed
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (map.getInt(0) != MAGIC || map.getInt(4) != FORMAT) {
+                throw new IOException("not a contact snapshot");
+            }
+            int count = map.getInt(8);
+            if (count < 0 || HEADER_BYTES + 12L * count > size) {
+                throw new IOException("truncated snapshot");
+            }
+            return new ContactSnapshotFile(file, map, count, map.getLong(16));
+        } catch (IOException e) {
+            Log.warn("ContactSnapshotFile: Ignoring unusable snapshot " + file + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * @return The snapshot files saved for the given path, newest generation first. A file at the path itself
+     *         (as saved before generations were used) comes last.
+     */
+    private static List<Path> generations(Path file) {
+        List<Path> generations = new ArrayList<>();
+        Path parent = file.toAbsolutePath().getParent();
+        String prefix = file.getFileName() + ".";
+        if (parent != null && Files.isDirectory(parent)) {
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(parent, entry -> generationOf(entry, prefix) > 0)) {
+                entries.forEach(generations::add);
+            } catch (IOException e) {
+                Log.warn("ContactSnapshotFile: Cannot list snapshots in " + parent + ": " + e.getMessage());
+            }
+        }
+        generations.sort(Comparator.comparingLong((Path entry) -> generationOf(entry, prefix)).reversed());
+        if (Files.isRegularFile(file)) {
+            generations.add(file);
+        }
+        return generations;
+    }
+
+    /**
+     * @return The generation number in a file name such as "contacts.snapshot.12", or -1 if it is not one.
+     */
+    private static long generationOf(Path entry, String prefix) {
+        String name = entry.getFileName().toString();
+        if (!name.startsWith(prefix) || name.length() == prefix.length() || name.length() - prefix.length() > 18) {
+            return -1;
+        }
+        for (int i = prefix.length(); i < name.length(); i++) {
+            if (!Character.isDigit(name.charAt(i))) {
+                return -1; // E.g. "contacts.snapshot.12.tmp", a save that did not finish
+            }
+        }
+        return Long.parseLong(name.substring(prefix.length()));
+    }
+
+    /**
+     * Writes the given contacts as the next generation of the snapshot for the given path, then deletes the
+     * older generations that can be deleted. The new file only appears, under its final name, once it is
+     * complete, so open() never sees half a snapshot.
+     * @param file The path the snapshot is saved for.
+     * @param contacts The contacts, in row order.
+     * @return The file written.
+     */
+    static Path write(Path file, List<Contact> contacts) throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        String prefix = file.getFileName() + ".";
+        List<Path> older = generations(file);
+        long generation = older.isEmpty() || older.get(0).equals(file) ? 1 : generationOf(older.get(0), prefix) + 1;
+        Path target = file.resolveSibling(prefix + generation);
+        Path temp = file.resolveSibling(prefix + generation + ".tmp");
+        int count = contacts.size();
+        int[] offsets = new int[count];
+        long[] idIndex = new long[count];
+        long dataStart = HEADER_BYTES + 12L * count;
+
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            // Records first, straight after the space reserved for the header and tables
+            channel.position(dataStart);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 256 * 1024));
+            long position = dataStart;
+            for (int row = 0; row < count; row++) {
+                Contact contact = contacts.get(row);
+                if (position > Integer.MAX_VALUE) {
+                    throw new IOException("Too many contacts for one snapshot file.");
+                }
+                offsets[row] = (int) position;
+                idIndex[row] = ((long) contact.getId() << 32) | row;
+                out.writeInt(contact.getId());
+                out.writeLong(contact.getVersion());
+                position += 12;
+                position += writeString(out, contact.getName());
+                position += writeString(out, contact.getPhone());
+                position += writeString(out, contact.getEmail());
+            }
+            out.flush();
+
+            // Then the header and the two tables, now that the offsets are known
+            Arrays.sort(idIndex); // Sorts by ID, since the ID sits in the high half
+            ByteBuffer head = ByteBuffer.allocate((int) dataStart);
+            head.putInt(MAGIC).putInt(FORMAT).putInt(count).putInt(0).putLong(System.currentTimeMillis());
+            for (int offset : offsets) {
+                head.putInt(offset);
+            }
+            for (long entry : idIndex) {
+                head.putInt((int) (entry >>> 32)).putInt((int) entry);
+            }
+            head.flip();
+            long at = 0;
+            while (head.hasRemaining()) {
+                at += channel.write(head, at);
+            }
+            channel.force(true);
+        }
+        // A name no one has mapped, so the rename never has to replace an open file
+        Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+        for (Path old : older) {
+            try {
+                Files.deleteIfExists(old);
+            } catch (IOException e) {
+                // Most likely still mapped (Windows); open() ignores it, and the next save tries again
+                Log.debug(() -> "ContactSnapshotFile: Cannot delete old snapshot " + old + " yet: " + e.getMessage());
+            }
+        }
+        return target;
+    }
+
+    /**
+     * Sets what to do when a record turns out to be damaged. It is called at most once, on the reading thread.
+     */
+    void setDamageListener(Runnable listener) {
+        this.damageListener = listener;
+    }
+
+    /**
+     * @return Whether a damaged record was found; the snapshot should then no longer be served.
+     */
+    boolean isDamaged() {
+        return damaged.get();
+    }
+
+    Path getFile() {
+        return file;
+    }
+
+    int size() {
+        return count;
+    }
+
+    long getSavedAtMillis() {
+        return savedAtMillis;
+    }
+
+    /**
+     * @return The contact at the given row, or null if the row is out of range or cannot be decoded (in which
+     *         case the snapshot is marked as damaged).
+     */
+    Contact getAt(int row) {
+        if (row < 0 || row >= count) {
+            return null;
+        }
+        int slot = row & (CACHE_SIZE - 1);
+        Contact cached = cache[slot];
+        if (cached != null && cachedRowMatches(cached, row)) {
+            return cached;
+        }
+        Contact contact = decode(map.getInt(HEADER_BYTES + 4 * row));
+        if (contact == null) {
+            markDamaged("record at row " + row);
+            return null;
+        }
+        cache[slot] = contact;
+        return contact;
+    }
+
+    /**
+     * @return The contact with the given ID, or null if there is none.
+     */
+    Contact get(int id) {
+        int row = rowOf(id);
+        if (row >= count) {
+            markDamaged("id index entry for ID " + id);
+            return null;
+        }
+        return row < 0 ? null : getAt(row);
+    }
+
+    /**
+     * @return The row of the contact with the given ID, or -1 if there is none. A binary search over the id index.
+     */
+    int rowOf(int id) {
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int midId = map.getInt(indexStart + 8 * mid);
+            if (midId < id) {
+                low = mid + 1;
+            } else if (midId > id) {
+                high = mid - 1;
+            } else {
+                return map.getInt(indexStart + 8 * mid + 4);
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return A read-only list view over the snapshot; contacts are decoded as they are read.
+     */
+    List<Contact> asList() {
+        return new RowList();
+    }
+
+    /**
+     * Searches by scanning every record. Only used until the real load (and its search index) is ready,
+     * so it trades speed for needing no index: names and emails are matched by substring, phones by digits.
+     */
+    List<Contact> search(String query, int limit) {
+        List<Contact> results = new ArrayList<>();
+        String text = ContactSearchIndex.normalizeText(query);
+        String digits = ContactSearchIndex.normalizePhone(query);
+        for (int row = 0; row < count && results.size() < limit && !text.isEmpty(); row++) {
+            Contact contact = getAt(row);
+            if (contact != null && (ContactSearchIndex.normalizeText(contact.getName()).contains(text)
+                    || ContactSearchIndex.normalizeText(contact.getEmail()).contains(text)
+                    || (!digits.isEmpty() && ContactSearchIndex.normalizePhone(contact.getPhone()).contains(digits)))) {
+                results.add(contact);
+            }
+        }
+        return results;
+    }
+
+    private void markDamaged(String what) {
+        if (!damaged.compareAndSet(false, true)) {
+            return;
+        }
+        Log.warn("ContactSnapshotFile: Snapshot " + file + " is damaged (" + what + "); it will not be served any longer.");
+        Runnable listener = damageListener;
+        if (listener != null) {
+            listener.run();
+        }
+    }
+
+    private boolean cachedRowMatches(Contact cached, int row) {
+        // The cache is keyed by row modulo its size, so confirm the entry really belongs to this row
+        return rowIdAt(row) == cached.getId();
+    }
+
+    private int rowIdAt(int row) {
+        int offset = map.getInt(HEADER_BYTES + 4 * row);
+        return offset >= 0 && offset <= map.limit() - 4 ? map.getInt(offset) : Integer.MIN_VALUE;
+    }
+
+    private Contact decode(int offset) {
+        try {
+            ByteBuffer in = map.duplicate();
+            in.position(offset);
+            int id = in.getInt();
+            long version = in.getLong();
+            String name = readString(in);
+            String phone = readString(in);
+            String email = readString(in);
+            return new Contact(id, name, phone, email, version);
+        } catch (RuntimeException e) {
+            return null; // A damaged record; the caller marks the snapshot as damaged
+        }
+    }
+
+    private static String readString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return The number of bytes written.
+     */
+    private static int writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return 4;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+        return 4 + bytes.length;
+    }
+
+    private final class RowList extends AbstractList<Contact> implements RandomAccess {
+        @Override
+        public Contact get(int index) {
+            if (index < 0 || index >= count) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + count);
+            }
+            Contact contact = getAt(index);
+            if (contact == null) {
+                // Never a null element: the caller would trip over it far from here
+                throw new IllegalStateException("Snapshot " + file + " is damaged at row " + index + "; it is being replaced by the full load.");
+            }
+            return contact;
+        }
+
+        @Override
+        public int size() {
+            return count;
+        }
+    }
+}
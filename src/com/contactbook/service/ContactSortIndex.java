@@ -0,0 +1,391 @@
+package com.contactbook.service;
+
+import com.contactbook.model.Contact;
+
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Keeps the contacts sorted by one ContactSortKey, so ContactService.getContacts() can return any page of
+ * that order in O(log n + limit) instead of sorting the whole list for every view.
+ *
+ * The order is held in an indexable skip list: every link also records how many entries it skips, so the
+ * entry at a given position is found in O(log n), the same way a lookup by key is. An edit repositions only
+ * the one contact that changed, again in O(log n). Each entry holds just the contact's ID and its sort key;
+ * the contacts themselves stay in the ContactStore.
+ *
+ * Sort keys are java.text collation keys for the default locale, computed once per contact when it enters
+ * the index. Only the primary level is kept ("zoe", "Zoe" and "Zoë" compare equal and fall back to the ID),
+ * which halves their size and is all a contact list needs. Computing them is the expensive part (a few
+ * microseconds each), so build() spreads it over all cores and edits compute the new key before taking the lock.
+ */
+final class ContactSortIndex {
+
+    private static final int MAX_LEVEL = 24; // Plenty for 4^24 entries
+    private static final int LEVEL_ODDS = 4; // Each level links a quarter of the entries of the level below
+
+    // Empty keys sort last; the ID breaks ties and is the whole order for ContactSortKey.ID
+    private static final Comparator<Node> ORDER = (a, b) -> compare(a.key, a.id, b.key, b.id);
+
+    private final ContactSortKey sortKey;
+    private final Collator collator; // Used by edits only; guarded by itself
+    private final Node head = new Node(null, 0);
+    private final Map<Integer, Node> nodesById = new HashMap<>();
+    private final SplittableRandom random = new SplittableRandom(); // Guarded by the write lock
+    private int level = 1;
+    private int size;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    ContactSortIndex(ContactSortKey sortKey) {
+        this.sortKey = sortKey;
+        this.collator = newCollator();
+        head.link(MAX_LEVEL);
+    }
+
+    ContactSortKey sortKey() {
+        return sortKey;
+    }
+
+    /**
+     * Publishes this new index and fills it. The write lock is taken before publish runs and held until the
+     * index is filled, so no edit can reach the index before it is built: writers that find it wait, and
+     * their edits are applied afterwards. The contacts are only read once the index is published, so every
+     * change is either in them or still to come; since add() and remove() are idempotent, an edit the
+     * contacts already include does no harm.
+     * @param publish Makes the index visible to writers, returning false if another index got there first.
+     * @param contacts Reads the contacts to fill the index with. Not called if publish failed.
+     * @return false if publish failed; the index then stays empty and unused.
+     */
+    boolean build(BooleanSupplier publish, Supplier<? extends List<Contact>> contacts) {
+        lock.writeLock().lock();
+        try {
+            if (!publish.getAsBoolean()) {
+                return false;
+            }
+            fill(contacts.get());
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Fills the still empty index with the given contacts. Must be called with the write lock held.
+     */
+    private void fill(List<Contact> contacts) {
+        Node[] nodes = new Node[contacts.size()];
+        if (sortKey == ContactSortKey.ID) {
+            for (int i = 0; i < nodes.length; i++) {
+                nodes[i] = new Node(null, contacts.get(i).getId());
+            }
+        } else {
+            // Collators are not thread-safe, so every worker thread gets a copy of its own
+            ThreadLocal<Collator> collators = ThreadLocal.withInitial(ContactSortIndex::newCollator);
+            Arrays.parallelSetAll(nodes, i -> {
+                Contact contact = contacts.get(i);
+                return new Node(keyOf(collators.get(), sortKey, contact), contact.getId());
+            });
+        }
+        Arrays.parallelSort(nodes, ORDER);
+
+        // The entries arrive in order, so each one is appended after the last node of each of its levels
+        Node[] last = new Node[MAX_LEVEL];
+        int[] lastPosition = new int[MAX_LEVEL];
+        Arrays.fill(last, head);
+        for (int i = 0; i < nodes.length; i++) {
+            Node node = nodes[i];
+            int position = i + 1; // The head is position 0
+            int nodeLevel = randomLevel();
+            node.link(nodeLevel);
+            for (int l = 0; l < nodeLevel; l++) {
+                last[l].next[l] = node;
+                last[l].width[l] = position - lastPosition[l];
+                last[l] = node;
+                lastPosition[l] = position;
+            }
+            level = Math.max(level, nodeLevel);
+            nodesById.put(node.id, node);
+        }
+        size = nodes.length;
+        for (int l = 0; l < MAX_LEVEL; l++) {
+            last[l].width[l] = size - lastPosition[l]; // A link to the end spans the entries left
+        }
+    }
+
+    /**
+     * Adds a contact, or moves it to its new place if it is already in the index.
+     */
+    void add(Contact contact) {
+        byte[] key = keyOf(contact);
+        lock.writeLock().lock();
+        try {
+            Node existing = nodesById.get(contact.getId());
+            if (existing != null) {
+                if (Arrays.equals(existing.key, key)) {
+                    return; // Same place as before
+                }
+                unlink(existing);
+            }
+            insert(new Node(key, contact.getId()));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Applies an update. Nothing moves unless the sorted field changed.
+     */
+    void replace(Contact previous, Contact contact) {
+        if (previous != null && previous.getId() == contact.getId() && sameField(previous, contact)) {
+            return;
+        }
+        if (previous != null && previous.getId() != contact.getId()) {
+            remove(previous.getId());
+        }
+        add(contact);
+    }
+
+    /**
+     * Removes a contact; an ID that is not in the index is ignored.
+     */
+    void remove(int id) {
+        lock.writeLock().lock();
+        try {
+            Node node = nodesById.get(id);
+            if (node != null) {
+                unlink(node);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return The IDs of the contacts at positions offset to offset + limit - 1 of the order (fewer at the end).
+     */
+    int[] idsAt(int offset, int limit) {
+        lock.readLock().lock();
+        try {
+            if (offset < 0 || offset >= size || limit <= 0) {
+                return new int[0];
+            }
+            int[] ids = new int[Math.min(limit, size - offset)];
+            Node node = nodeAt(offset + 1);
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = node.id;
+                node = node.next[0];
+            }
+            return ids;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // --- The skip list ---
+
+    private void insert(Node node) {
+        Node[] update = new Node[MAX_LEVEL];
+        int[] rank = new int[MAX_LEVEL]; // Position of update[l]
+        Node x = head;
+        for (int l = level - 1; l >= 0; l--) {
+            rank[l] = l == level - 1 ? 0 : rank[l + 1];
+            while (x.next[l] != null && ORDER.compare(x.next[l], node) < 0) {
+                rank[l] += x.width[l];
+                x = x.next[l];
+            }
+            update[l] = x;
+        }
+        int nodeLevel = randomLevel();
+        if (nodeLevel > level) {
+            for (int l = level; l < nodeLevel; l++) {
+                rank[l] = 0;
+                update[l] = head;
+                head.width[l] = size;
+            }
+            level = nodeLevel;
+        }
+        node.link(nodeLevel);
+        for (int l = 0; l < nodeLevel; l++) {
+            node.next[l] = update[l].next[l];
+            update[l].next[l] = node;
+            node.width[l] = update[l].width[l] - (rank[0] - rank[l]);
+            update[l].width[l] = rank[0] - rank[l] + 1;
+        }
+        for (int l = nodeLevel; l < level; l++) {
+            update[l].width[l]++; // Links passing over the new node now skip one more entry
+        }
+        nodesById.put(node.id, node);
+        size++;
+    }
+
+    private void unlink(Node node) {
+        Node x = head;
+        for (int l = level - 1; l >= 0; l--) {
+            while (x.next[l] != null && ORDER.compare(x.next[l], node) < 0) {
+                x = x.next[l];
+            }
+            if (x.next[l] == node) {
+                x.width[l] += node.width[l] - 1;
+                x.next[l] = node.next[l];
+            } else {
+                x.width[l]--;
+            }
+        }
+        while (level > 1 && head.next[level - 1] == null) {
+            level--;
+        }
+        nodesById.remove(node.id);
+        size--;
+    }
+
+    /**
+     * @param position From 1 to size.
+     */
+    private Node nodeAt(int position) {
+        Node x = head;
+        int passed = 0;
+        for (int l = level - 1; l >= 0; l--) {
+            while (x.next[l] != null && passed + x.width[l] <= position) {
+                passed += x.width[l];
+                x = x.next[l];
+            }
+            if (passed == position) {
+                return x;
+            }
+        }
+        throw new IllegalStateException("Sort index is corrupt: no entry at position " + position);
+    }
+
+    private int randomLevel() {
+        int l = 1;
+        while (l < MAX_LEVEL && random.nextInt(LEVEL_ODDS) == 0) {
+            l++;
+        }
+        return l;
+    }
+
+    private static final class Node {
+        final byte[] key;
+        final int id;
+        Node[] next;
+        int[] width; // width[l]: how many positions next[l] is ahead of this node
+
+        Node(byte[] key, int id) {
+            this.key = key;
+            this.id = id;
+        }
+
+        void link(int levels) {
+            next = new Node[levels];
+            width = new int[levels];
+        }
+    }
+
+    // --- Sort keys ---
+
+    private boolean sameField(Contact a, Contact b) {
+        switch (sortKey) {
+            case NAME:
+                return a.getName() == null ? b.getName() == null : a.getName().equals(b.getName());
+            case EMAIL:
+                return a.getEmail() == null ? b.getEmail() == null : a.getEmail().equals(b.getEmail());
+            case ID:
+            default:
+                return true;
+        }
+    }
+
+    private byte[] keyOf(Contact contact) {
+        if (sortKey == ContactSortKey.ID) {
+            return null;
+        }
+        synchronized (collator) {
+            return keyOf(collator, sortKey, contact);
+        }
+    }
+
+    private static byte[] keyOf(Collator collator, ContactSortKey sortKey, Contact contact) {
+        String value = sortKey == ContactSortKey.NAME ? contact.getName()
+                : sortKey == ContactSortKey.EMAIL ? contact.getEmail() : null;
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        return collator.getCollationKey(value.trim()).toByteArray();
+    }
+
+    private static Collator newCollator() {
+        Collator collator = Collator.getInstance();
+        collator.setStrength(Collator.PRIMARY);
+        return collator;
+    }
+
+    private static int compare(byte[] aKey, int aId, byte[] bKey, int bId) {
+        if (aKey != bKey) {
+            if (aKey == null) {
+                return 1;
+            }
+            if (bKey == null) {
+                return -1;
+            }
+            int c = Arrays.compareUnsigned(aKey, bKey);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return Integer.compare(aId, bId);
+    }
+
+    /**
+     * Collects the whole of a sort order as an array of IDs by streaming contacts past it, for when there is
+     * no index (cache mode and the startup snapshot). ContactService keeps the result until the contacts
+     * change, so paging through the order costs one pass instead of one per page. Only the key and ID of
+     * each contact are kept while collecting, and only the IDs afterwards.
+     */
+    static final class SortedIds implements Consumer<Contact> {
+        private final ContactSortKey sortKey;
+        private final Collator collator = newCollator();
+        private final List<Node> nodes = new ArrayList<>();
+
+        SortedIds(ContactSortKey sortKey) {
+            this.sortKey = sortKey;
+        }
+
+        @Override
+        public void accept(Contact contact) {
+            byte[] key = sortKey == ContactSortKey.ID ? null : keyOf(collator, sortKey, contact);
+            nodes.add(new Node(key, contact.getId()));
+        }
+
+        /**
+         * @return The IDs of the contacts streamed, in order.
+         */
+        int[] ids() {
+            Node[] sorted = nodes.toArray(new Node[0]);
+            Arrays.parallelSort(sorted, ORDER);
+            int[] ids = new int[sorted.length];
+            for (int i = 0; i < sorted.length; i++) {
+                ids[i] = sorted[i].id;
+            }
+            return ids;
+        }
+    }
+}
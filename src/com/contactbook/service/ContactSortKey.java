@@ -0,0 +1,15 @@
+package com.contactbook.service;
+
+/**
+ * The orders ContactService.getContacts() can list contacts in. Names and emails are compared with the
+ * default locale's collation rules, ignoring case and accents; contacts without the field come last.
+ * Contacts that compare equal are ordered by ID.
+ */
+public enum ContactSortKey {
+    /** By contact ID, oldest contact first. */
+    ID,
+    /** By name. */
+    NAME,
+    /** By email address. */
+    EMAIL
+}
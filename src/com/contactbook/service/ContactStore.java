@@ -0,0 +1,533 @@
+package com.contactbook.service;
+
+import com.contactbook.model.Contact;
+
+import java.util.Collection;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * The in-memory contact store behind ContactService.
+ * Contacts are kept in an array in insertion order, and a primitive id-to-slot hash map
+ * gives constant-time lookup, update and delete. Deleted slots are left empty and
+ * compacted away once they make up half of the array, so deletes stay O(1) amortised.
+ * A Fenwick tree over the slots counts the live contacts, which maps a row (the position among
+ * live contacts, in insertion order) to its contact and back in O(log n) without building a list.
+ *
+ * The store is thread-safe. Writers hold a StampedLock write lock only for the O(1) change
+ * itself; readers use optimistic reads and never block a writer, falling back to a read lock
+ * only after repeated interference.
+ *
+ * An optional change listener is told about every add, replace and remove, with the affected row. The events
+ * are queued while the write lock is held, which keeps them in exactly the order the changes happened, and
+ * delivered after it is released (see ChangeEventQueue), so a listener never holds up readers.
+ *
+ * How each slot's contact is held is up to a ContactSlots: plain Contact objects by default, or packed
+ * columns with flyweight Contact views (see PackedContactSlots) for stores too large for one object per field.
+ *
+ * With plain Contact objects the slots are mirrored in a PersistentContactVector as well, changed alongside
+ * them under the write lock. A snapshot is then just the current version of that vector, taken in O(1) and
+ * left untouched by later changes, so readers such as export can keep one as long as they like while writers
+ * carry on. Only the first snapshot of a store takes the write lock to freeze the vector; after that every
+ * change publishes the new version itself before it releases the lock, and snapshot() just reads it, so
+ * readers do not hold up writers here either. Packed stores copy their contacts for each snapshot instead, as one object per slot would undo
+ * the packing.
+ */
+final class ContactStore {
+
+    private static final int NO_SLOT = -1;
+    private static final int OPTIMISTIC_ATTEMPTS = 3;
+
+    private final StampedLock lock = new StampedLock();
+    private final IntIntHashMap slotById;
+    private ContactSlots slots;
+    private final PersistentContactVector.Builder versions; // null for packed stores
+    private int[] liveTree; // Fenwick tree (1-based) of live-slot counts, sized slots.capacity() + 1
+    private int slotCount; // Number of slots in use, including emptied ones
+    private int size; // Number of live contacts
+
+    private long version; // Bumped on every change
+    private volatile ContactSnapshot snapshot; // Cached view for the current version, built lazily
+    // Set by the first snapshot of a plain store; from then on every change publishes the next one itself
+    private volatile boolean publishSnapshots;
+    private final ChangeEventQueue events = new ChangeEventQueue();
+
+    ContactStore() {
+        this(16);
+    }
+
+    ContactStore(int expectedSize) {
+        this(expectedSize, false);
+    }
+
+    /**
+     * @param expectedSize The number of contacts to size the store for.
+     * @param packed true to hold contacts in packed columns (PackedContactSlots) instead of one object each.
+     */
+    ContactStore(int expectedSize, boolean packed) {
+        this.slotById = new IntIntHashMap(expectedSize, NO_SLOT);
+        this.slots = ContactSlots.create(packed, Math.max(16, expectedSize));
+        this.liveTree = new int[slots.capacity() + 1];
+        this.versions = packed ? null : new PersistentContactVector.Builder();
+    }
+
+    /**
+     * Sets the listener that is told about every change, or null for none.
+     */
+    void setChangeListener(ContactChangeListener listener) {
+        events.setListener(listener);
+    }
+
+    int size() {
+        long stamp = lock.tryOptimisticRead();
+        int n = size;
+        if (lock.validate(stamp)) {
+            return n;
+        }
+        stamp = lock.readLock();
+        try {
+            return size;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * @return The current version. It changes whenever a contact is added, replaced or removed.
+     */
+    long version() {
+        long stamp = lock.tryOptimisticRead();
+        long v = version;
+        if (lock.validate(stamp)) {
+            return v;
+        }
+        stamp = lock.readLock();
+        try {
+            return version;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * @return The contact with the given ID, or null if there is none.
+     */
+    Contact get(int id) {
+        for (int attempt = 0; attempt < OPTIMISTIC_ATTEMPTS; attempt++) {
+            long stamp = lock.tryOptimisticRead();
+            if (stamp == 0) {
+                continue; // A writer holds the lock right now
+            }
+            int slot = slotById.get(id);
+            Contact contact = slots.get(slot); // Out-of-range slots (including NO_SLOT) read as null
+            if (lock.validate(stamp)) {
+                return contact;
+            }
+        }
+        long stamp = lock.readLock();
+        try {
+            int slot = slotById.get(id);
+            return slot == NO_SLOT ? null : slots.get(slot);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    boolean contains(int id) {
+        return get(id) != null;
+    }
+
+    /**
+     * @param row The position among all live contacts, in insertion order.
+     * @return The contact at that row, or null if the row is out of range.
+     */
+    Contact getAt(int row) {
+        for (int attempt = 0; attempt < OPTIMISTIC_ATTEMPTS; attempt++) {
+            long stamp = lock.tryOptimisticRead();
+            if (stamp == 0) {
+                continue;
+            }
+            ContactSlots array = slots;
+            int[] tree = liveTree;
+            int slot = row >= 0 && row < size ? select(tree, row) : -1;
+            Contact contact = array.get(slot);
+            if (lock.validate(stamp)) {
+                return contact;
+            }
+        }
+        long stamp = lock.readLock();
+        try {
+            return row >= 0 && row < size ? slots.get(select(liveTree, row)) : null;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * @return The row (position among live contacts, in insertion order) of the contact with
+     *         the given ID, or -1 if there is none.
+     */
+    int rowOf(int id) {
+        for (int attempt = 0; attempt < OPTIMISTIC_ATTEMPTS; attempt++) {
+            long stamp = lock.tryOptimisticRead();
+            if (stamp == 0) {
+                continue;
+            }
+            int slot = slotById.get(id);
+            int[] tree = liveTree;
+            int row = slot >= 0 && slot + 1 < tree.length ? countLive(tree, slot) - 1 : -1;
+            if (lock.validate(stamp)) {
+                return row;
+            }
+        }
+        long stamp = lock.readLock();
+        try {
+            int slot = slotById.get(id);
+            return slot == NO_SLOT ? -1 : countLive(liveTree, slot) - 1;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Adds a contact at the end of the insertion order. A contact with the same ID is replaced in place,
+     * keeping its position.
+     * @return The contact that was replaced, or null if the ID was new.
+     */
+    Contact add(Contact contact) {
+        long stamp = lock.writeLock();
+        try {
+            return addLocked(contact);
+        } finally {
+            publishSnapshot();
+            lock.unlockWrite(stamp);
+            events.deliver();
+        }
+    }
+
+    void addAll(Collection<Contact> contacts) {
+        long stamp = lock.writeLock();
+        try {
+            for (Contact contact : contacts) {
+                addLocked(contact);
+            }
+        } finally {
+            publishSnapshot();
+            lock.unlockWrite(stamp);
+            events.deliver();
+        }
+    }
+
+    /**
+     * Replaces the contact with the same ID as the given one, but only if that ID is present.
+     * @return The contact that was replaced, or null if no contact had that ID.
+     */
+    Contact replace(Contact contact) {
+        long stamp = lock.writeLock();
+        try {
+            int slot = slotById.get(contact.getId());
+            if (slot == NO_SLOT) {
+                return null;
+            }
+            Contact previous = slots.get(slot);
+            slots.set(slot, contact);
+            setVersioned(slot, contact);
+            version++;
+            publish(ContactChangeEvent.Type.UPDATED, contact, slot);
+            return previous;
+        } finally {
+            publishSnapshot();
+            lock.unlockWrite(stamp);
+            events.deliver();
+        }
+    }
+
+    /**
+     * Gives a contact a new ID in place, keeping its row. Used when a contact added under a temporary ID
+     * gets its real ID from the database. Listeners see an UPDATED event for the row.
+     * @param oldId The current ID.
+     * @param contact The contact under its new ID, which must not be in use.
+     * @return The contact that had the old ID, or null if there was none.
+     */
+    Contact rekey(int oldId, Contact contact) {
+        long stamp = lock.writeLock();
+        try {
+            if (slotById.containsKey(contact.getId())) {
+                throw new IllegalArgumentException("ID " + contact.getId() + " is already in use");
+            }
+            int slot = slotById.remove(oldId);
+            if (slot == NO_SLOT) {
+                return null;
+            }
+            slotById.put(contact.getId(), slot);
+            Contact previous = slots.get(slot);
+            slots.set(slot, contact);
+            setVersioned(slot, contact);
+            version++;
+            publish(ContactChangeEvent.Type.UPDATED, contact, slot);
+            return previous;
+        } finally {
+            publishSnapshot();
+            lock.unlockWrite(stamp);
+            events.deliver();
+        }
+    }
+
+    /**
+     * @return The removed contact, or null if no contact had the given ID.
+     */
+    Contact remove(int id) {
+        long stamp = lock.writeLock();
+        try {
+            int slot = slotById.remove(id);
+            if (slot == NO_SLOT) {
+                return null;
+            }
+            Contact removed = slots.get(slot);
+            publish(ContactChangeEvent.Type.REMOVED, removed, slot); // Before the slot is cleared, so the row is still valid
+            slots.clear(slot);
+            setVersioned(slot, null);
+            adjustLive(slot, -1);
+            size--;
+            version++;
+            if (slotCount > 64 && size < slotCount / 2) {
+                compact();
+            }
+            return removed;
+        } finally {
+            publishSnapshot();
+            lock.unlockWrite(stamp);
+            events.deliver();
+        }
+    }
+
+    /**
+     * @return An unmodifiable snapshot of all contacts in insertion order. The same snapshot
+     *         is returned until the next change, and later changes never show up in it.
+     */
+    ContactSnapshot snapshot() {
+        ContactSnapshot current = snapshot;
+        if (current != null && current.getVersion() == version()) {
+            return current;
+        }
+        if (versions != null) {
+            if (publishSnapshots) {
+                // A writer is between its change and publishing it; its snapshot is moments away
+                return awaitSnapshot();
+            }
+            // The first snapshot: freeze under the write lock once, and have every change publish its own from now on
+            long stamp = lock.writeLock();
+            try {
+                publishSnapshots = true;
+                publishSnapshot();
+                return snapshot;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+        // Copy the slot array optimistically so building a snapshot never holds up writers
+        Contact[] copy = null;
+        long copiedVersion = 0;
+        int copiedSize = 0;
+        for (int attempt = 0; attempt < OPTIMISTIC_ATTEMPTS && copy == null; attempt++) {
+            long stamp = lock.tryOptimisticRead();
+            if (stamp == 0) {
+                Thread.onSpinWait();
+                continue;
+            }
+            ContactSlots array = slots;
+            int count = slotCount;
+            copiedVersion = version;
+            copiedSize = size;
+            Contact[] candidate = array.toArray(count);
+            if (lock.validate(stamp)) {
+                copy = candidate;
+            }
+        }
+        if (copy == null) {
+            long stamp = lock.readLock();
+            try {
+                copy = slots.toArray(slotCount);
+                copiedVersion = version;
+                copiedSize = size;
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        Contact[] live = new Contact[copiedSize];
+        int n = 0;
+        for (Contact contact : copy) {
+            if (contact != null && n < live.length) {
+                live[n++] = contact;
+            }
+        }
+        current = new ContactSnapshot(PersistentContactVector.of(live), copiedVersion);
+        ContactSnapshot cached = snapshot;
+        if (cached == null || cached.getVersion() < copiedVersion) {
+            snapshot = current;
+        }
+        return current;
+    }
+
+    /**
+     * Publishes the current version as the snapshot, once snapshots are being taken and unless it already is.
+     * Freezing is O(1); the cost is that the next change copies the nodes on its path instead of changing them
+     * in place. A store nobody takes snapshots of, such as one being loaded, never pays it.
+     * Must be called with the write lock held.
+     */
+    private void publishSnapshot() {
+        if (versions == null || !publishSnapshots) {
+            return;
+        }
+        ContactSnapshot current = snapshot;
+        if (current == null || current.getVersion() != version) {
+            snapshot = new ContactSnapshot(versions.freeze(), version);
+        }
+    }
+
+    /**
+     * @return The snapshot of the current version, read without a lock. Spins only while a writer that already
+     *         changed the version has yet to publish (it does so before releasing the lock); falls back to the
+     *         read lock if it keeps missing.
+     */
+    private ContactSnapshot awaitSnapshot() {
+        for (int attempt = 0; attempt < OPTIMISTIC_ATTEMPTS; attempt++) {
+            long stamp = lock.tryOptimisticRead();
+            ContactSnapshot current = snapshot;
+            long v = version;
+            if (stamp != 0 && lock.validate(stamp) && current != null && current.getVersion() == v) {
+                return current;
+            }
+            Thread.onSpinWait();
+        }
+        long stamp = lock.readLock();
+        try {
+            return snapshot;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    private Contact addLocked(Contact contact) {
+        int existing = slotById.get(contact.getId());
+        Contact previous = null;
+        if (existing != NO_SLOT) {
+            previous = slots.get(existing);
+            slots.set(existing, contact);
+            setVersioned(existing, contact);
+            version++;
+            publish(ContactChangeEvent.Type.UPDATED, contact, existing);
+        } else {
+            if (slotCount == slots.capacity()) {
+                slots = slots.grow(slots.capacity() + (slots.capacity() >> 1));
+                rebuildLiveTree();
+            }
+            slots.set(slotCount, contact);
+            if (versions != null) {
+                versions.append(contact);
+            }
+            adjustLive(slotCount, 1);
+            slotById.put(contact.getId(), slotCount);
+            slotCount++;
+            size++;
+            version++;
+            publish(ContactChangeEvent.Type.ADDED, contact, slotCount - 1);
+        }
+        return previous;
+    }
+
+    /**
+     * Squeezes out emptied slots while keeping insertion order, and repoints the index.
+     * Compaction writes into a fresh array so optimistic readers of the old one see consistent data.
+     */
+    private void compact() {
+        ContactSlots compacted = slots.newEmpty(Math.max(16, size + (size >> 1)));
+        int n = 0;
+        for (int i = 0; i < slotCount; i++) {
+            if (slots.isLive(i)) {
+                slots.copyTo(i, compacted, n);
+                slotById.put(slots.idAt(i), n);
+                n++;
+            }
+        }
+        slots = compacted;
+        slotCount = n;
+        rebuildLiveTree();
+        if (versions != null) {
+            // Slot numbers changed, so the vector starts over; snapshots already taken keep the old one
+            versions.clear();
+            for (int i = 0; i < n; i++) {
+                versions.append(compacted.get(i));
+            }
+        }
+    }
+
+    private void setVersioned(int slot, Contact contact) {
+        if (versions != null) {
+            versions.set(slot, contact);
+        }
+    }
+
+    /**
+     * Queues an event for delivery once the write lock is released. Must be called with the write lock held.
+     */
+    private void publish(ContactChangeEvent.Type type, Contact contact, int slot) {
+        if (events.hasListener()) {
+            events.add(new ContactChangeEvent(type, contact, countLive(liveTree, slot) - 1));
+        }
+    }
+
+    // --- Fenwick tree over live slots ---
+
+    private void adjustLive(int slot, int delta) {
+        int[] tree = liveTree;
+        for (int i = slot + 1; i < tree.length; i += i & -i) {
+            tree[i] += delta;
+        }
+    }
+
+    /**
+     * Rebuilds the tree for the current slot array in O(n). A fresh array is used so
+     * optimistic readers holding the old one are not disturbed.
+     */
+    private void rebuildLiveTree() {
+        int[] tree = new int[slots.capacity() + 1];
+        for (int i = 1; i < tree.length; i++) {
+            if (i - 1 < slotCount && slots.isLive(i - 1)) {
+                tree[i]++;
+            }
+            int parent = i + (i & -i);
+            if (parent < tree.length) {
+                tree[parent] += tree[i];
+            }
+        }
+        liveTree = tree;
+    }
+
+    /**
+     * @return The number of live slots in [0, slot].
+     */
+    private static int countLive(int[] tree, int slot) {
+        int count = 0;
+        for (int i = slot + 1; i > 0; i -= i & -i) {
+            count += tree[i];
+        }
+        return count;
+    }
+
+    /**
+     * @return The slot holding the live contact at the given row (0-based), found by binary lifting.
+     */
+    private static int select(int[] tree, int row) {
+        int position = 0;
+        int remaining = row + 1;
+        for (int step = Integer.highestOneBit(tree.length - 1); step > 0; step >>= 1) {
+            int next = position + step;
+            if (next < tree.length && tree[next] < remaining) {
+                position = next;
+                remaining -= tree[next];
+            }
+        }
+        return position; // 1-based index position + 1 is the answer, i.e. slot = position
+    }
+}
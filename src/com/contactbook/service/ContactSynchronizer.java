@@ -0,0 +1,129 @@
+package com.contactbook.service;
+
+import com.contactbook.database.ContactRepository;
+import com.contactbook.model.Contact;
+import com.contactbook.monitoring.Log;
+
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Polls the database for changes made by other clients and applies them to a ContactService.
+ *
+ * Every contacts row carries an updated_at timestamp and a version, and every delete leaves a row
+ * in contact_tombstones. Each poll reads only the rows and tombstones newer than a watermark (taken
+ * from the database clock), so many clients stay consistent without re-running the full SELECT.
+ *
+ * The watermark is moved back by a small overlap on each poll, because a transaction can commit
+ * after a later-started poll has already read past its updated_at. Rows seen twice are harmless:
+ * versions that are not newer than the cached one are ignored, and deletes are idempotent.
+ */
+final class ContactSynchronizer {
+
+    private static final long OVERLAP_MS = 5_000;
+    // Tombstones older than this are purged; a client that has not synced for longer does a full reload
+    private static final long TOMBSTONE_RETENTION_MS = 7L * 24 * 60 * 60 * 1000;
+    private static final long PURGE_INTERVAL_MS = 60 * 60 * 1000;
+
+    private final ContactRepository repository;
+    private ContactService service; // Set by start(); only the poll reads it
+
+    private ScheduledExecutorService scheduler;
+    private ScheduledFuture<?> task;
+    // Database time up to which all changes have been applied; null until the first full load
+    private final AtomicReference<Timestamp> watermark = new AtomicReference<>();
+    private long lastPurgeMillis;
+
+    ContactSynchronizer(ContactRepository repository) {
+        this.repository = repository;
+    }
+
+    /**
+     * @param service The service the changes are applied to.
+     * @param intervalMillis How often to poll.
+     */
+    synchronized void start(ContactService service, long intervalMillis) {
+        if (task != null) {
+            return;
+        }
+        this.service = service;
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "ContactSynchronizer");
+            t.setDaemon(true);
+            return t;
+        });
+        task = scheduler.scheduleWithFixedDelay(this::pollSafely, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        Log.info("ContactSynchronizer: Polling for changes every " + intervalMillis + " ms.");
+    }
+
+    synchronized void stop() {
+        if (task != null) {
+            task.cancel(false);
+            scheduler.shutdown();
+            task = null;
+            scheduler = null;
+        }
+    }
+
+    /**
+     * Called after a full load: everything up to the given database time is now in memory.
+     */
+    void resetWatermark(Timestamp loadStartedAt) {
+        watermark.set(loadStartedAt);
+    }
+
+    private void pollSafely() {
+        try {
+            poll();
+        } catch (RuntimeException e) {
+            // Keep the schedule alive; the next poll retries from the same watermark
+            Log.error("ContactSynchronizer: Poll failed: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Applies every change committed since the watermark, then advances it.
+     */
+    void poll() {
+        Timestamp since = watermark.get();
+        if (since == null) {
+            return; // No full load has completed yet
+        }
+        Timestamp now = repository.getDatabaseTime();
+        if (now == null) {
+            return;
+        }
+        if (now.getTime() - since.getTime() > TOMBSTONE_RETENTION_MS) {
+            // Deletes older than the retention window may already be purged, so only a full load is safe
+            Log.info("ContactSynchronizer: Watermark too old, doing a full reload.");
+            service.reloadContacts();
+            return;
+        }
+
+        Timestamp from = new Timestamp(since.getTime() - OVERLAP_MS);
+        // Read rows before tombstones: a row deleted after it was read still shows up as a tombstone below
+        List<Contact> changed = repository.getContactsChangedSince(from);
+        int[] deleted = repository.getDeletedIdsSince(from);
+        if (changed == null || deleted == null) {
+            return; // Retry from the same watermark next time
+        }
+        for (Contact contact : changed) {
+            service.applyRemoteUpsert(contact);
+        }
+        for (int id : deleted) {
+            service.applyRemoteDelete(id);
+        }
+        // A reload may have moved the watermark meanwhile; never move it backwards
+        watermark.compareAndSet(since, now);
+
+        if (now.getTime() - lastPurgeMillis > PURGE_INTERVAL_MS) {
+            lastPurgeMillis = now.getTime();
+            repository.purgeTombstones(new Timestamp(now.getTime() - TOMBSTONE_RETENTION_MS));
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.contactbook.service;
+
+import com.contactbook.model.Contact;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A group of contacts that ContactDeduplicator believes describe the same person, together with
+ * the kinds of evidence that joined them. Matching is transitive: if A shares a phone number with B
+ * and B shares an email address with C, all three end up in one cluster.
+ */
+public final class DuplicateCluster {
+
+    public enum Reason {
+        /** Two contacts have the same phone number once formatting and country/trunk prefixes are ignored. */
+        PHONE,
+        /** Two contacts have the same email address, ignoring case and surrounding spaces. */
+        EMAIL,
+        /** Two contacts have very similar names and no phone number or email address that tells them apart. */
+        NAME
+    }
+
+    private final List<Contact> contacts;
+    private final Set<Reason> reasons;
+
+    DuplicateCluster(List<Contact> contacts, Set<Reason> reasons) {
+        this.contacts = Collections.unmodifiableList(contacts);
+        this.reasons = Collections.unmodifiableSet(reasons);
+    }
+
+    /**
+     * @return The contacts in the cluster (at least two), in the order they were given to the deduplicator.
+     */
+    public List<Contact> getContacts() {
+        return contacts;
+    }
+
+    public Set<Reason> getReasons() {
+        return reasons;
+    }
+
+    public int size() {
+        return contacts.size();
+    }
+
+    @Override
+    public String toString() {
+        return contacts.size() + " contacts by " + reasons + ": " + contacts;
+    }
+}
@@ -0,0 +1,102 @@
+package com.contactbook.service;
+
+/**
+ * A count-min sketch of how often each contact ID was asked for recently, used by ContactCache to decide
+ * which contacts are worth keeping (the TinyLFU admission policy).
+ *
+ * Counters are four bits wide, sixteen to a long, and every ID is counted in four of them; its estimated
+ * frequency is the smallest of the four, which is never below the true count. After ten increments per
+ * slot all counters are halved, so the sketch follows the working set as it changes instead of remembering
+ * what was popular an hour ago. It takes eight bytes per slot however many distinct IDs are seen.
+ *
+ * Not thread-safe; ContactCache only uses each sketch under its segment lock.
+ */
+final class FrequencySketch {
+
+    private static final long RESET_MASK = 0x7777777777777777L; // Clears the bit shifted in from the next counter
+    private static final long ONE_MASK = 0x1111111111111111L; // The lowest bit of every counter
+    private static final int MAX_COUNT = 15;
+    // One odd multiplier per hash function
+    private static final long[] SEEDS = {0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+
+    private final long[] table;
+    private final int tableMask;
+    private final int sampleSize;
+    private int additions; // Increments since the last halving
+
+    /**
+     * @param expectedEntries About how many entries the cache holds; the sketch gets one long per entry.
+     */
+    FrequencySketch(int expectedEntries) {
+        int size = Integer.highestOneBit(Math.max(16, Math.min(expectedEntries, 1 << 24)) - 1) << 1;
+        this.table = new long[size];
+        this.tableMask = size - 1;
+        this.sampleSize = 10 * size;
+    }
+
+    /**
+     * @return The estimated number of recent requests for the ID, from 0 to 15.
+     */
+    int frequency(int id) {
+        int hash = spread(id);
+        int start = (hash & 3) << 2; // Which group of four counters inside each long this ID uses
+        int frequency = MAX_COUNT;
+        for (int i = 0; i < 4; i++) {
+            int index = indexOf(hash, i);
+            int count = (int) ((table[index] >>> ((start + i) << 2)) & 0xfL);
+            frequency = Math.min(frequency, count);
+        }
+        return frequency;
+    }
+
+    /**
+     * Counts one request for the ID.
+     */
+    void increment(int id) {
+        int hash = spread(id);
+        int start = (hash & 3) << 2;
+        boolean added = false;
+        for (int i = 0; i < 4; i++) {
+            added |= incrementAt(indexOf(hash, i), start + i);
+        }
+        if (added && ++additions == sampleSize) {
+            reset();
+        }
+    }
+
+    private boolean incrementAt(int index, int counter) {
+        int offset = counter << 2;
+        long mask = 0xfL << offset;
+        if ((table[index] & mask) != mask) {
+            table[index] += 1L << offset;
+            return true;
+        }
+        return false; // Saturated at 15
+    }
+
+    /**
+     * Halves every counter, so old popularity fades away.
+     */
+    private void reset() {
+        int odd = 0;
+        for (int i = 0; i < table.length; i++) {
+            odd += Long.bitCount(table[i] & ONE_MASK);
+            table[i] = (table[i] >>> 1) & RESET_MASK;
+        }
+        additions = (additions >>> 1) - (odd >>> 2); // Each ID is counted four times, so odd / 4 roundings were lost
+    }
+
+    private int indexOf(int hash, int i) {
+        long h = (hash + SEEDS[i]) * SEEDS[i];
+        h += h >>> 32;
+        return (int) h & tableMask;
+    }
+
+    /**
+     * Contact IDs are sequential, so their bits are mixed before use.
+     */
+    private static int spread(int id) {
+        int h = id * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,167 @@
+package com.contactbook.service;
+
+import java.util.function.IntPredicate;
+
+/**
+ * A minimal open-addressing set of ints, used for the posting lists of the search index.
+ * Like IntIntHashMap it stores plain ints (no boxing) and uses backward-shift deletion.
+ */
+final class IntHashSet {
+
+    private static final int EMPTY = 0; // Marks a free slot
+    private static final float LOAD_FACTOR = 0.75f;
+
+    private int[] keys;
+    private int mask;
+    private int size;
+    private int resizeAt;
+    private boolean hasZero; // 0 cannot live in the array because it marks free slots
+
+    IntHashSet() {
+        allocate(4);
+    }
+
+    int size() {
+        return size + (hasZero ? 1 : 0);
+    }
+
+    boolean isEmpty() {
+        return size() == 0;
+    }
+
+    boolean contains(int value) {
+        if (value == EMPTY) {
+            return hasZero;
+        }
+        int slot = mix(value) & mask;
+        int k;
+        while ((k = keys[slot]) != EMPTY) {
+            if (k == value) {
+                return true;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return false;
+    }
+
+    boolean add(int value) {
+        if (value == EMPTY) {
+            boolean added = !hasZero;
+            hasZero = true;
+            return added;
+        }
+        int slot = mix(value) & mask;
+        int k;
+        while ((k = keys[slot]) != EMPTY) {
+            if (k == value) {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = value;
+        if (++size >= resizeAt) {
+            rehash(keys.length << 1);
+        }
+        return true;
+    }
+
+    /**
+     * Adds every value of another set, growing the table once up front rather than step by step.
+     */
+    void addAll(IntHashSet other) {
+        int needed = size + other.size;
+        if (needed >= resizeAt) {
+            int capacity = keys.length;
+            while (needed >= (int) (capacity * LOAD_FACTOR)) {
+                capacity <<= 1;
+            }
+            rehash(capacity);
+        }
+        if (other.hasZero) {
+            hasZero = true;
+        }
+        for (int k : other.keys) {
+            if (k != EMPTY) {
+                add(k);
+            }
+        }
+    }
+
+    boolean remove(int value) {
+        if (value == EMPTY) {
+            boolean removed = hasZero;
+            hasZero = false;
+            return removed;
+        }
+        int slot = mix(value) & mask;
+        int k;
+        while ((k = keys[slot]) != EMPTY) {
+            if (k == value) {
+                shiftKeys(slot);
+                size--;
+                return true;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return false;
+    }
+
+    /**
+     * Calls the visitor for each value until it returns false.
+     * @return false if the visitor stopped the iteration early.
+     */
+    boolean forEach(IntPredicate visitor) {
+        if (hasZero && !visitor.test(EMPTY)) {
+            return false;
+        }
+        for (int k : keys) {
+            if (k != EMPTY && !visitor.test(k)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void shiftKeys(int gap) {
+        int slot = gap;
+        while (true) {
+            slot = (slot + 1) & mask;
+            int k = keys[slot];
+            if (k == EMPTY) {
+                break;
+            }
+            int home = mix(k) & mask;
+            boolean movable = gap <= slot ? (home <= gap || home > slot) : (home <= gap && home > slot);
+            if (movable) {
+                keys[gap] = k;
+                gap = slot;
+            }
+        }
+        keys[gap] = EMPTY;
+    }
+
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        mask = capacity - 1;
+        resizeAt = Math.max(1, (int) (capacity * LOAD_FACTOR));
+    }
+
+    private void rehash(int newCapacity) {
+        int[] oldKeys = keys;
+        allocate(newCapacity);
+        for (int k : oldKeys) {
+            if (k != EMPTY) {
+                int slot = mix(k) & mask;
+                while (keys[slot] != EMPTY) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = k;
+            }
+        }
+    }
+
+    private static int mix(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,198 @@
+package com.contactbook.service;
+
+import java.util.Arrays;
+
+/**
+ * A minimal open-addressing hash map from int keys to int values.
+ * Keys and values live in two flat int arrays, so there is no Integer boxing and
+ * no per-entry object. Removal uses backward-shift deletion, so no tombstones build up.
+ *
+ * The map is not thread-safe. get() and containsKey() are however written so that a call racing
+ * with a writer can only return a wrong answer, never throw or spin forever; callers that read
+ * optimistically (see ContactStore) validate the result afterwards.
+ */
+final class IntIntHashMap {
+
+    private static final int EMPTY = 0; // Marks a free slot in the key array
+    private static final float LOAD_FACTOR = 0.6f;
+
+    private final int missingValue; // Returned by get/remove when a key is absent
+
+    private int[] keys;
+    private int[] values;
+    private int mask;
+    private int size;
+    private int resizeAt;
+
+    // The key 0 cannot be stored in the arrays because it marks free slots
+    private boolean hasZeroKey;
+    private int zeroValue;
+
+    IntIntHashMap(int missingValue) {
+        this(16, missingValue);
+    }
+
+    IntIntHashMap(int expectedSize, int missingValue) {
+        this.missingValue = missingValue;
+        int capacity = Integer.highestOneBit(Math.max(4, (int) (expectedSize / LOAD_FACTOR)) - 1) << 1;
+        allocate(capacity);
+    }
+
+    int size() {
+        return size + (hasZeroKey ? 1 : 0);
+    }
+
+    int get(int key) {
+        if (key == EMPTY) {
+            return hasZeroKey ? zeroValue : missingValue;
+        }
+        // Read the arrays once into locals: a concurrent rehash may swap them underneath us
+        int[] ks = keys;
+        int[] vs = values;
+        int m = ks.length - 1;
+        int slot = mix(key) & m;
+        for (int probes = 0; probes <= m; probes++) {
+            int k = ks[slot];
+            if (k == EMPTY) {
+                break;
+            }
+            if (k == key) {
+                return slot < vs.length ? vs[slot] : missingValue;
+            }
+            slot = (slot + 1) & m;
+        }
+        return missingValue;
+    }
+
+    boolean containsKey(int key) {
+        if (key == EMPTY) {
+            return hasZeroKey;
+        }
+        int[] ks = keys;
+        int m = ks.length - 1;
+        int slot = mix(key) & m;
+        for (int probes = 0; probes <= m; probes++) {
+            int k = ks[slot];
+            if (k == EMPTY) {
+                break;
+            }
+            if (k == key) {
+                return true;
+            }
+            slot = (slot + 1) & m;
+        }
+        return false;
+    }
+
+    /**
+     * @return The previous value for the key, or the missing value if there was none.
+     */
+    int put(int key, int value) {
+        if (key == EMPTY) {
+            int previous = hasZeroKey ? zeroValue : missingValue;
+            hasZeroKey = true;
+            zeroValue = value;
+            return previous;
+        }
+        int slot = mix(key) & mask;
+        int k;
+        while ((k = keys[slot]) != EMPTY) {
+            if (k == key) {
+                int previous = values[slot];
+                values[slot] = value;
+                return previous;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        if (++size >= resizeAt) {
+            rehash(keys.length << 1);
+        }
+        return missingValue;
+    }
+
+    /**
+     * @return The removed value, or the missing value if the key was absent.
+     */
+    int remove(int key) {
+        if (key == EMPTY) {
+            int previous = hasZeroKey ? zeroValue : missingValue;
+            hasZeroKey = false;
+            return previous;
+        }
+        int slot = mix(key) & mask;
+        int k;
+        while ((k = keys[slot]) != EMPTY) {
+            if (k == key) {
+                int previous = values[slot];
+                shiftKeys(slot);
+                size--;
+                return previous;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return missingValue;
+    }
+
+    void clear() {
+        Arrays.fill(keys, EMPTY);
+        size = 0;
+        hasZeroKey = false;
+    }
+
+    /**
+     * Closes the gap left by a removed entry by moving later entries of the same probe run back.
+     */
+    private void shiftKeys(int gap) {
+        int slot = gap;
+        while (true) {
+            slot = (slot + 1) & mask;
+            int k = keys[slot];
+            if (k == EMPTY) {
+                break;
+            }
+            int home = mix(k) & mask;
+            // Move the entry into the gap unless its home slot lies cyclically between the gap and its current slot
+            boolean movable = gap <= slot ? (home <= gap || home > slot) : (home <= gap && home > slot);
+            if (movable) {
+                keys[gap] = k;
+                values[gap] = values[slot];
+                gap = slot;
+            }
+        }
+        keys[gap] = EMPTY;
+    }
+
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        values = new int[capacity];
+        mask = capacity - 1;
+        resizeAt = (int) (capacity * LOAD_FACTOR);
+    }
+
+    private void rehash(int newCapacity) {
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(newCapacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            int k = oldKeys[i];
+            if (k != EMPTY) {
+                int slot = mix(k) & mask;
+                while (keys[slot] != EMPTY) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = k;
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    /**
+     * Spreads sequential ids (AUTO_INCREMENT) across the table.
+     */
+    private static int mix(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,381 @@
+package com.contactbook.service;
+
+import com.contactbook.model.Contact;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Columnar slot storage for ContactStore, for stores with millions of contacts.
+ *
+ * A plain Contact costs an object plus three Strings, each with its own byte[]: roughly 200 bytes of
+ * heap per contact, most of it headers and padding, and four objects for the GC to trace. Here each slot
+ * costs an int ID, a long version and a long arena position; name, phone and email are appended back to
+ * back as UTF-8 into large shared byte[] chunks:
+ * <pre>
+ * record = field field field      (name, phone, email)
+ * field  = varint(length + 1) bytes   (varint 0 means null)
+ * </pre>
+ * get() returns a PackedContact flyweight that holds only the chunk and offset and decodes a field
+ * when it is asked for. Records are never overwritten: an update appends a new record and the old one
+ * becomes garbage, so flyweights handed out earlier keep reading the values they were created with.
+ * Once garbage outweighs live data, the live records are copied into fresh chunks.
+ */
+final class PackedContactSlots extends ContactSlots {
+
+    private static final int FIRST_CHUNK_SIZE = 64 * 1024;
+    private static final int MAX_CHUNK_SIZE = 1024 * 1024;
+    private static final long EMPTY = -1; // Position of an empty slot
+
+    private final int[] ids;
+    private final long[] versions;
+    private long[] positions; // (chunk index << 32) | offset of each slot's record, or EMPTY
+    private Arena arena;
+    private long liveBytes;
+    private long garbageBytes;
+
+    PackedContactSlots(int capacity) {
+        this(new int[capacity], new long[capacity], emptyPositions(capacity), new Arena(), 0, 0);
+    }
+
+    private PackedContactSlots(int[] ids, long[] versions, long[] positions, Arena arena, long liveBytes, long garbageBytes) {
+        this.ids = ids;
+        this.versions = versions;
+        this.positions = positions;
+        this.arena = arena;
+        this.liveBytes = liveBytes;
+        this.garbageBytes = garbageBytes;
+    }
+
+    @Override
+    int capacity() {
+        return ids.length;
+    }
+
+    @Override
+    boolean isLive(int slot) {
+        return positions[slot] != EMPTY;
+    }
+
+    @Override
+    Contact get(int slot) {
+        // Read every field once: a racing writer may swap the arrays, so check bounds against what was read
+        long[] pos = positions;
+        Arena a = arena;
+        if (slot < 0 || slot >= pos.length || slot >= ids.length) {
+            return null;
+        }
+        long position = pos[slot];
+        if (position == EMPTY) {
+            return null;
+        }
+        byte[] chunk = a.chunkAt((int) (position >>> 32));
+        int offset = (int) position;
+        if (chunk == null || offset < 0 || offset >= chunk.length) {
+            return null;
+        }
+        return new PackedContact(ids[slot], versions[slot], chunk, offset);
+    }
+
+    @Override
+    int idAt(int slot) {
+        return ids[slot];
+    }
+
+    @Override
+    void set(int slot, Contact contact) {
+        byte[] name = toBytes(contact.getName());
+        byte[] phone = toBytes(contact.getPhone());
+        byte[] email = toBytes(contact.getEmail());
+        int length = fieldLength(name) + fieldLength(phone) + fieldLength(email);
+        long position = arena.reserve(length);
+        byte[] chunk = arena.chunkAt((int) (position >>> 32));
+        int offset = (int) position;
+        offset = writeField(chunk, offset, name);
+        offset = writeField(chunk, offset, phone);
+        writeField(chunk, offset, email);
+
+        release(slot);
+        ids[slot] = contact.getId();
+        versions[slot] = contact.getVersion();
+        positions[slot] = position; // Last, so the slot only points at a complete record
+        liveBytes += length;
+        compactArenaIfWasteful();
+    }
+
+    @Override
+    void clear(int slot) {
+        release(slot);
+        positions[slot] = EMPTY;
+    }
+
+    @Override
+    ContactSlots grow(int newCapacity) {
+        long[] grownPositions = Arrays.copyOf(positions, newCapacity);
+        Arrays.fill(grownPositions, positions.length, newCapacity, EMPTY);
+        // The arena is shared: the old instance only ever reads records it already points at
+        return new PackedContactSlots(Arrays.copyOf(ids, newCapacity), Arrays.copyOf(versions, newCapacity),
+                grownPositions, arena, liveBytes, garbageBytes);
+    }
+
+    @Override
+    ContactSlots newEmpty(int capacity) {
+        return new PackedContactSlots(capacity);
+    }
+
+    /**
+     * Copies the raw record bytes, so compaction never decodes and re-encodes strings.
+     */
+    @Override
+    void copyTo(int slot, ContactSlots target, int targetSlot) {
+        if (!(target instanceof PackedContactSlots)) {
+            super.copyTo(slot, target, targetSlot);
+            return;
+        }
+        PackedContactSlots packed = (PackedContactSlots) target;
+        long position = positions[slot];
+        byte[] chunk = arena.chunkAt((int) (position >>> 32));
+        int offset = (int) position;
+        int length = recordLength(chunk, offset);
+        long targetPosition = packed.arena.reserve(length);
+        System.arraycopy(chunk, offset, packed.arena.chunkAt((int) (targetPosition >>> 32)), (int) targetPosition, length);
+        packed.ids[targetSlot] = ids[slot];
+        packed.versions[targetSlot] = versions[slot];
+        packed.positions[targetSlot] = targetPosition;
+        packed.liveBytes += length;
+    }
+
+    @Override
+    Contact[] toArray(int count) {
+        Contact[] contacts = new Contact[Math.min(count, capacity())];
+        for (int slot = 0; slot < contacts.length; slot++) {
+            contacts[slot] = get(slot);
+        }
+        return contacts;
+    }
+
+    /**
+     * Counts the record in a slot that is about to be overwritten or emptied as garbage.
+     */
+    private void release(int slot) {
+        long position = positions[slot];
+        if (position != EMPTY) {
+            int length = recordLength(arena.chunkAt((int) (position >>> 32)), (int) position);
+            liveBytes -= length;
+            garbageBytes += length;
+        }
+    }
+
+    /**
+     * Copies the live records into a fresh arena once more than half of the current one is garbage.
+     * The old chunks are left untouched, so flyweights and optimistic readers still pointing into them stay valid.
+     */
+    private void compactArenaIfWasteful() {
+        if (garbageBytes < MAX_CHUNK_SIZE || garbageBytes < liveBytes) {
+            return;
+        }
+        Arena fresh = new Arena();
+        long[] freshPositions = emptyPositions(positions.length);
+        for (int slot = 0; slot < positions.length; slot++) {
+            long position = positions[slot];
+            if (position != EMPTY) {
+                byte[] chunk = arena.chunkAt((int) (position >>> 32));
+                int length = recordLength(chunk, (int) position);
+                long target = fresh.reserve(length);
+                System.arraycopy(chunk, (int) position, fresh.chunkAt((int) (target >>> 32)), (int) target, length);
+                freshPositions[slot] = target;
+            }
+        }
+        positions = freshPositions;
+        arena = fresh;
+        garbageBytes = 0;
+    }
+
+    private static long[] emptyPositions(int capacity) {
+        long[] positions = new long[capacity];
+        Arrays.fill(positions, EMPTY);
+        return positions;
+    }
+
+    // --- Record encoding ---
+
+    private static byte[] toBytes(String value) {
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int fieldLength(byte[] bytes) {
+        return bytes == null ? 1 : varintLength(bytes.length + 1) + bytes.length;
+    }
+
+    private static int writeField(byte[] chunk, int offset, byte[] bytes) {
+        int value = bytes == null ? 0 : bytes.length + 1;
+        while ((value & ~0x7F) != 0) {
+            chunk[offset++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        chunk[offset++] = (byte) value;
+        if (bytes != null) {
+            System.arraycopy(bytes, 0, chunk, offset, bytes.length);
+            offset += bytes.length;
+        }
+        return offset;
+    }
+
+    private static int varintLength(int value) {
+        int length = 1;
+        while ((value & ~0x7F) != 0) {
+            value >>>= 7;
+            length++;
+        }
+        return length;
+    }
+
+    /**
+     * @return The total length of the record starting at offset.
+     */
+    static int recordLength(byte[] chunk, int offset) {
+        int at = offset;
+        for (int field = 0; field < 3; field++) {
+            at = skipField(chunk, at);
+        }
+        return at - offset;
+    }
+
+    /**
+     * Decodes one field (0 = name, 1 = phone, 2 = email) of the record starting at offset.
+     * Every read is bounds-checked, so a damaged record yields a wrong value rather than an exception.
+     */
+    static String readField(byte[] chunk, int offset, int field) {
+        int at = offset;
+        for (int i = 0; i < field; i++) {
+            at = skipField(chunk, at);
+        }
+        int value = 0;
+        int shift = 0;
+        while (at < chunk.length && shift < 32) {
+            byte b = chunk[at++];
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                break;
+            }
+            shift += 7;
+        }
+        if (value == 0) {
+            return null;
+        }
+        int length = Math.min(value - 1, chunk.length - at);
+        return length < 0 ? null : new String(chunk, at, length, StandardCharsets.UTF_8);
+    }
+
+    private static int skipField(byte[] chunk, int at) {
+        int value = 0;
+        int shift = 0;
+        while (at < chunk.length && shift < 32) {
+            byte b = chunk[at++];
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                break;
+            }
+            shift += 7;
+        }
+        return value <= 0 ? at : (int) Math.min((long) at + value - 1, chunk.length);
+    }
+
+    /**
+     * Append-only storage for records, in chunks that grow up to MAX_CHUNK_SIZE. A record never spans
+     * two chunks; one larger than a chunk gets a chunk of its own.
+     */
+    private static final class Arena {
+        private byte[][] chunks = new byte[4][];
+        private int chunkCount;
+        private int used; // Bytes used in the last chunk
+
+        byte[] chunkAt(int index) {
+            byte[][] all = chunks;
+            return index >= 0 && index < all.length ? all[index] : null;
+        }
+
+        /**
+         * @return The position ((chunk << 32) | offset) of length fresh bytes.
+         */
+        long reserve(int length) {
+            byte[] last = chunkCount == 0 ? null : chunks[chunkCount - 1];
+            if (last == null || last.length - used < length) {
+                int size = last == null ? FIRST_CHUNK_SIZE : Math.min(MAX_CHUNK_SIZE, last.length * 2);
+                if (chunkCount == chunks.length) {
+                    chunks = Arrays.copyOf(chunks, chunkCount * 2);
+                }
+                chunks[chunkCount++] = new byte[Math.max(size, length)];
+                used = 0;
+            }
+            long position = ((long) (chunkCount - 1) << 32) | used;
+            used += length;
+            return position;
+        }
+    }
+
+    /**
+     * A Contact that decodes its name, phone and email from the arena only when they are read.
+     * Calling a setter first copies all three values into the Contact itself, after which it
+     * behaves like a plain Contact.
+     */
+    static final class PackedContact extends Contact {
+
+        private final byte[] chunk;
+        private final int offset;
+        private volatile boolean materialized;
+
+        PackedContact(int id, long version, byte[] chunk, int offset) {
+            super(id, null, null, null, version);
+            this.chunk = chunk;
+            this.offset = offset;
+        }
+
+        @Override
+        public String getName() {
+            return materialized ? super.getName() : readField(chunk, offset, 0);
+        }
+
+        @Override
+        public String getPhone() {
+            return materialized ? super.getPhone() : readField(chunk, offset, 1);
+        }
+
+        @Override
+        public String getEmail() {
+            return materialized ? super.getEmail() : readField(chunk, offset, 2);
+        }
+
+        @Override
+        public void setName(String name) {
+            materialize();
+            super.setName(name);
+        }
+
+        @Override
+        public void setPhone(String phone) {
+            materialize();
+            super.setPhone(phone);
+        }
+
+        @Override
+        public void setEmail(String email) {
+            materialize();
+            super.setEmail(email);
+        }
+
+        @Override
+        public String toString() {
+            return "ID: " + getId() + ", Name: " + getName() + ", Phone: " + getPhone() + ", Email: " + getEmail();
+        }
+
+        private synchronized void materialize() {
+            if (!materialized) {
+                super.setName(readField(chunk, offset, 0));
+                super.setPhone(readField(chunk, offset, 1));
+                super.setEmail(readField(chunk, offset, 2));
+                materialized = true;
+            }
+        }
+    }
+}
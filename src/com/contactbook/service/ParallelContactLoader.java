@@ -0,0 +1,145 @@
+package com.contactbook.service;
+
+import com.contactbook.database.ContactRepository;
+import com.contactbook.model.Contact;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Loads every contact for ContactService by splitting the ID range into shards and reading them at the
+ * same time, each over its own connection, on a fork-join pool.
+ *
+ * A load over one result set is bounded by the single thread decoding its rows and, above all, indexing
+ * them for search, which is most of the work. Here every shard decodes its own rows and builds a search
+ * index of its own. The shards are then merged pairwise up the fork-join tree, so the merging runs in
+ * parallel too, and only the final step fills the store, in ID order as a plain load would.
+ *
+ * The range is split evenly by ID, not by row count. IDs come from AUTO_INCREMENT, so shards are balanced
+ * unless large stretches were deleted, and then a shard is merely finished early.
+ */
+final class ParallelContactLoader {
+
+    /** Below this many IDs per shard the threads cost more than they save, so fewer shards are used. */
+    static final int MIN_IDS_PER_SHARD = 10_000;
+
+    private final ContactRepository repository;
+    private final int shards;
+
+    /**
+     * @param shards The most shards (and threads, and connections) to use.
+     */
+    ParallelContactLoader(ContactRepository repository, int shards) {
+        if (shards < 1) {
+            throw new IllegalArgumentException("shards must be at least 1: " + shards);
+        }
+        this.repository = repository;
+        this.shards = shards;
+    }
+
+    /**
+     * Reads every contact into the given (empty) store.
+     * @return The search index of the loaded contacts, or null if the repository could not be read;
+     *         the store may then hold some of the contacts and should be thrown away.
+     */
+    ContactSearchIndex load(ContactStore store) {
+        int[] range = repository.getIdRange();
+        if (range == null) {
+            return null;
+        }
+        if (range.length == 0) {
+            return new ContactSearchIndex(); // No contacts
+        }
+        long span = (long) range[1] - range[0] + 1;
+        int count = (int) Math.max(1, Math.min(shards, span / MIN_IDS_PER_SHARD));
+        ForkJoinPool pool = new ForkJoinPool(count, p -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+            thread.setName("contact-loader-" + thread.getPoolIndex());
+            return thread;
+        }, null, false);
+        try {
+            Shard loaded = pool.invoke(new ShardTask(range[0], span, count, 0, count));
+            if (loaded == null) {
+                return null;
+            }
+            for (List<Contact> contacts : loaded.contacts) {
+                store.addAll(contacts);
+            }
+            return loaded.index;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * The contacts of one or more neighbouring shards, in ID order, and their search index.
+     */
+    private static final class Shard {
+        final List<List<Contact>> contacts = new ArrayList<>();
+        final ContactSearchIndex index;
+
+        Shard(ContactSearchIndex index) {
+            this.index = index;
+        }
+    }
+
+    /**
+     * Reads shards first to first + count - 1: a single shard directly, more by splitting them in two halves
+     * that run in parallel and merging the results.
+     */
+    private final class ShardTask extends RecursiveTask<Shard> {
+        private static final long serialVersionUID = 1L;
+
+        private final int minId;
+        private final long span;
+        private final int total;
+        private final int first;
+        private final int count;
+
+        ShardTask(int minId, long span, int total, int first, int count) {
+            this.minId = minId;
+            this.span = span;
+            this.total = total;
+            this.first = first;
+            this.count = count;
+        }
+
+        @Override
+        protected Shard compute() {
+            if (count == 1) {
+                return read();
+            }
+            int half = count / 2;
+            ShardTask right = new ShardTask(minId, span, total, first + half, count - half);
+            right.fork();
+            Shard left = new ShardTask(minId, span, total, first, half).compute();
+            Shard rest = right.join();
+            if (left == null || rest == null) {
+                return null; // One failed shard fails the load
+            }
+            left.index.addAll(rest.index);
+            left.contacts.addAll(rest.contacts);
+            return left;
+        }
+
+        private Shard read() {
+            int fromId = (int) (minId + span * first / total);
+            int toId = (int) (minId + span * (first + 1) / total - 1);
+            List<Contact> contacts = new ArrayList<>();
+            ContactSearchIndex index = new ContactSearchIndex();
+            long read = repository.forEachContactInRange(fromId, toId, contact -> {
+                contacts.add(contact);
+                index.add(contact);
+            });
+            if (read < 0) {
+                return null;
+            }
+            Shard shard = new Shard(index);
+            shard.contacts.add(contacts);
+            return shard;
+        }
+    }
+}
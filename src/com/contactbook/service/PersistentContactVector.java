@@ -0,0 +1,284 @@
+package com.contactbook.service;
+
+import com.contactbook.model.Contact;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.Consumer;
+
+/**
+ * An immutable vector of contacts by slot, the versioned twin of a ContactStore's slot array. Empty slots
+ * (deleted contacts) are null, and the contacts are read in slot order, which is insertion order.
+ *
+ * It is a 32-way trie, as in Clojure's persistent vector. A change copies only the path from the root to its
+ * slot, about four small arrays for a million contacts, and every other node is shared with the earlier
+ * version. Holding on to a version therefore costs nothing up front, and the versions kept alive share all
+ * but the paths that changed between them. Each inner node also counts the live contacts below each child,
+ * so the contact at a given row (position among live contacts) is found in O(log n).
+ *
+ * A Builder makes the changes. Between two calls of freeze() it changes the nodes it created itself in place,
+ * the way Clojure's transients do, so a long run of changes that nobody takes a version of (such as a load)
+ * copies nothing at all. freeze() returns the current version and from then on copies those nodes before
+ * changing them, which leaves the version returned untouched.
+ */
+final class PersistentContactVector {
+
+    private static final int BITS = 5;
+    private static final int WIDTH = 1 << BITS;
+    private static final int MASK = WIDTH - 1;
+
+    static final PersistentContactVector EMPTY = new PersistentContactVector(new Node(null, false), 0, 0, 0);
+
+    private final Node root;
+    private final int shift; // BITS times the number of inner levels
+    private final int length; // Slots, including empty ones
+    private final int size; // Live contacts
+
+    private PersistentContactVector(Node root, int shift, int length, int size) {
+        this.root = root;
+        this.shift = shift;
+        this.length = length;
+        this.size = size;
+    }
+
+    /**
+     * Builds a version holding the given contacts, bottom-up in O(n): leaves of 32 contacts, then inner levels
+     * of 32 nodes until one root is left.
+     * @param contacts The contacts, none of them null.
+     */
+    static PersistentContactVector of(Contact[] contacts) {
+        if (contacts.length == 0) {
+            return EMPTY;
+        }
+        Node[] level = new Node[(contacts.length + MASK) >>> BITS];
+        int[] counts = new int[level.length];
+        for (int i = 0; i < level.length; i++) {
+            Node leaf = new Node(null, false);
+            counts[i] = Math.min(WIDTH, contacts.length - (i << BITS));
+            System.arraycopy(contacts, i << BITS, leaf.array, 0, counts[i]);
+            level[i] = leaf;
+        }
+        int shift = 0;
+        while (level.length > 1) {
+            Node[] parents = new Node[(level.length + MASK) >>> BITS];
+            int[] parentCounts = new int[parents.length];
+            for (int i = 0; i < level.length; i++) {
+                Node parent = parents[i >>> BITS];
+                if (parent == null) {
+                    parent = parents[i >>> BITS] = new Node(null, true);
+                }
+                parent.array[i & MASK] = level[i];
+                parent.counts[i & MASK] = counts[i];
+                parentCounts[i >>> BITS] += counts[i];
+            }
+            level = parents;
+            counts = parentCounts;
+            shift += BITS;
+        }
+        return new PersistentContactVector(level[0], shift, contacts.length, contacts.length);
+    }
+
+    /**
+     * @return The number of contacts (non-empty slots).
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return The contact at the given row, counting live contacts in slot order from 0.
+     */
+    Contact getAt(int row) {
+        if (row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException("Row " + row + " of " + size);
+        }
+        Node node = root;
+        int remaining = row;
+        for (int level = shift; level > 0; level -= BITS) {
+            int child = 0;
+            while (remaining >= node.counts[child]) {
+                remaining -= node.counts[child];
+                child++;
+            }
+            node = (Node) node.array[child];
+        }
+        for (Object value : node.array) {
+            if (value != null && remaining-- == 0) {
+                return (Contact) value;
+            }
+        }
+        throw new IllegalStateException("Contact vector is corrupt: no contact at row " + row);
+    }
+
+    /**
+     * Hands every contact to the action, in slot order.
+     */
+    void forEach(Consumer<? super Contact> action) {
+        forEach(root, shift, action);
+    }
+
+    private static void forEach(Node node, int level, Consumer<? super Contact> action) {
+        for (Object value : node.array) {
+            if (value == null) {
+                continue;
+            }
+            if (level == 0) {
+                action.accept((Contact) value);
+            } else {
+                forEach((Node) value, level - BITS, action);
+            }
+        }
+    }
+
+    /**
+     * @return An iterator over the contacts in slot order. It looks up each leaf once, so a full pass is O(n).
+     */
+    Iterator<Contact> iterator() {
+        return new Iterator<Contact>() {
+            private int leafStart = -WIDTH; // First slot of the current leaf
+            private Object[] leaf;
+            private int slot;
+            private Contact next = advance();
+
+            private Contact advance() {
+                while (slot < length) {
+                    if (slot - leafStart >= WIDTH) {
+                        leafStart = slot & ~MASK;
+                        leaf = leafFor(slot);
+                    }
+                    Object value = leaf[slot++ & MASK];
+                    if (value != null) {
+                        return (Contact) value;
+                    }
+                }
+                return null;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public Contact next() {
+                if (next == null) {
+                    throw new NoSuchElementException();
+                }
+                Contact current = next;
+                next = advance();
+                return current;
+            }
+        };
+    }
+
+    private Object[] leafFor(int slot) {
+        Node node = root;
+        for (int level = shift; level > 0; level -= BITS) {
+            node = (Node) node.array[(slot >>> level) & MASK];
+        }
+        return node.array;
+    }
+
+    /**
+     * One node of the trie. A leaf holds up to 32 contacts; an inner node holds up to 32 children and the
+     * number of contacts below each. edit is the Builder generation allowed to change the node in place.
+     */
+    private static final class Node {
+        final Object edit;
+        final Object[] array;
+        final int[] counts; // null for leaves
+
+        Node(Object edit, boolean inner) {
+            this.edit = edit;
+            this.array = new Object[WIDTH];
+            this.counts = inner ? new int[WIDTH] : null;
+        }
+
+        Node(Object edit, Node copyOf) {
+            this.edit = edit;
+            this.array = copyOf.array.clone();
+            this.counts = copyOf.counts != null ? copyOf.counts.clone() : null;
+        }
+    }
+
+    /**
+     * Makes changes and hands out versions. Not thread-safe: ContactStore only uses it under its write lock.
+     */
+    static final class Builder {
+        private Object edit = new Object(); // Nodes carrying this token belong to no published version yet
+        private Node root = new Node(edit, false);
+        private int shift;
+        private int length;
+        private int size;
+        private final Node[] path = new Node[7]; // Inner nodes walked by set(); 32^7 slots exceed any int
+
+        /**
+         * Adds a slot at the end.
+         * @param contact The contact for the new slot, or null for an empty one.
+         */
+        void append(Contact contact) {
+            if (length == WIDTH << shift) {
+                // Full: the old root becomes the first child of a new, taller one
+                Node newRoot = new Node(edit, true);
+                newRoot.array[0] = root;
+                newRoot.counts[0] = size;
+                root = newRoot;
+                shift += BITS;
+            }
+            length++;
+            set(length - 1, contact);
+        }
+
+        /**
+         * Puts a contact in a slot, or empties it for null.
+         */
+        void set(int slot, Contact contact) {
+            if (slot < 0 || slot >= length) {
+                throw new IndexOutOfBoundsException("Slot " + slot + " of " + length);
+            }
+            root = editable(root);
+            Node node = root;
+            // Walk down first to learn whether the slot gains or loses a contact, then fix the counts on the way
+            for (int level = shift, depth = 0; level > 0; level -= BITS, depth++) {
+                int child = (slot >>> level) & MASK;
+                Node next = (Node) node.array[child];
+                next = next == null ? new Node(edit, level > BITS) : editable(next);
+                node.array[child] = next;
+                path[depth] = node;
+                node = next;
+            }
+            Object previous = node.array[slot & MASK];
+            node.array[slot & MASK] = contact;
+            int delta = (contact != null ? 1 : 0) - (previous != null ? 1 : 0);
+            if (delta != 0) {
+                for (int level = shift, depth = 0; level > 0; level -= BITS, depth++) {
+                    path[depth].counts[(slot >>> level) & MASK] += delta;
+                }
+                size += delta;
+            }
+        }
+
+        /**
+         * Starts over with no slots, e.g. when the store compacts its slots and numbers them anew.
+         */
+        void clear() {
+            edit = new Object();
+            root = new Node(edit, false);
+            shift = 0;
+            length = 0;
+            size = 0;
+        }
+
+        /**
+         * @return The current version. Later changes leave it as it is.
+         */
+        PersistentContactVector freeze() {
+            edit = new Object(); // Every node so far now belongs to a published version
+            return new PersistentContactVector(root, shift, length, size);
+        }
+
+        private Node editable(Node node) {
+            return node.edit == edit ? node : new Node(edit, node);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.contactbook.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A fixed set of locks that contact IDs are hashed onto.
+ * ContactService holds the lock for an ID across the database call and the in-memory change,
+ * so two writers of the same contact are applied in the same order in both places,
+ * while writers of different contacts (almost always on different stripes) run in parallel.
+ */
+final class StripedLocks {
+
+    private final ReentrantLock[] stripes;
+    private final int mask;
+
+    StripedLocks(int stripeCount) {
+        int n = Integer.highestOneBit(Math.max(1, stripeCount - 1)) << 1;
+        this.stripes = new ReentrantLock[n];
+        for (int i = 0; i < n; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+        this.mask = n - 1;
+    }
+
+    ReentrantLock forId(int id) {
+        return stripes[stripeIndex(id)];
+    }
+
+    /**
+     * Locks the stripes of all given IDs. Stripes are always taken in ascending order,
+     * so two bulk writers can never deadlock on each other.
+     * @return The locks that were taken, to pass to unlockAll().
+     */
+    List<ReentrantLock> lockAll(int[] ids) {
+        boolean[] needed = new boolean[stripes.length];
+        for (int id : ids) {
+            needed[stripeIndex(id)] = true;
+        }
+        List<ReentrantLock> taken = new ArrayList<>();
+        for (int i = 0; i < stripes.length; i++) {
+            if (needed[i]) {
+                stripes[i].lock();
+                taken.add(stripes[i]);
+            }
+        }
+        return taken;
+    }
+
+    static void unlockAll(List<ReentrantLock> taken) {
+        for (int i = taken.size() - 1; i >= 0; i--) {
+            taken.get(i).unlock();
+        }
+    }
+
+    private int stripeIndex(int id) {
+        int h = id * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+}
@@ -0,0 +1,119 @@
+package com.contactbook.service;
+
+import com.contactbook.model.Contact;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * The undo and redo stacks of ContactService: the user's recent adds, edits and deletes, newest first.
+ *
+ * Each entry keeps the contact as it was before and after the change, which is all undo needs. It keeps its
+ * own copies: Contact has setters, and the objects the service hands out must not be able to change an entry,
+ * least of all the version undo checks against. Undoing means writing "before" again, and only if the contact
+ * is still at "after", so a change someone else made meanwhile is never overwritten (see ContactService.undo()).
+ *
+ * Only the newest capacity changes are kept. The methods are synchronized, so they can be called from
+ * any writer thread; ContactService makes sure only one undo or redo runs at a time.
+ */
+final class UndoHistory {
+
+    /** The number of changes kept for undo. */
+    static final int DEFAULT_CAPACITY = 100;
+
+    /**
+     * One change of one contact.
+     * @param before The contact before the change, or null if it was added.
+     * @param after The contact after the change, or null if it was deleted.
+     */
+    record Change(Contact before, Contact after) {
+
+        Change {
+            before = copyOf(before);
+            after = copyOf(after);
+        }
+
+        private static Contact copyOf(Contact contact) {
+            return contact == null ? null
+                    : new Contact(contact.getId(), contact.getName(), contact.getPhone(), contact.getEmail(), contact.getVersion());
+        }
+
+        int contactId() {
+            return before != null ? before.getId() : after.getId();
+        }
+
+        /**
+         * @return A description for the user, e.g. "delete of Asha Rao".
+         */
+        String describe() {
+            if (before == null) {
+                return "add of " + after.getName();
+            }
+            return (after == null ? "delete of " : "edit of ") + before.getName();
+        }
+    }
+
+    private final int capacity;
+    private final Deque<Change> undo = new ArrayDeque<>();
+    private final Deque<Change> redo = new ArrayDeque<>();
+
+    UndoHistory(int capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * Records a change the user just made. It can be undone next, and nothing is left to redo.
+     */
+    synchronized void record(Contact before, Contact after) {
+        push(undo, new Change(before, after));
+        redo.clear();
+    }
+
+    /**
+     * @return The change undo() would revert, or null if there is none.
+     */
+    synchronized Change nextUndo() {
+        return undo.peekFirst();
+    }
+
+    /**
+     * @return The change redo() would make again, or null if there is none.
+     */
+    synchronized Change nextRedo() {
+        return redo.peekFirst();
+    }
+
+    /**
+     * Takes a change off the undo stack.
+     * @param redoEntry What redo() should do next to make the change again, or null if it cannot be redone.
+     */
+    synchronized void undone(Change change, Change redoEntry) {
+        undo.removeFirstOccurrence(change);
+        if (redoEntry != null) {
+            push(redo, redoEntry);
+        }
+    }
+
+    /**
+     * Takes a change off the redo stack.
+     * @param undoEntry What undo() should do next to revert it again, or null if it cannot be undone.
+     */
+    synchronized void redone(Change change, Change undoEntry) {
+        redo.removeFirstOccurrence(change);
+        if (undoEntry != null) {
+            push(undo, undoEntry);
+        }
+    }
+
+    synchronized void clear() {
+        undo.clear();
+        redo.clear();
+    }
+
+    private void push(Deque<Change> stack, Change change) {
+        stack.addFirst(change);
+        if (stack.size() > capacity) {
+            stack.removeLast(); // The oldest change is forgotten
+        }
+    }
+}
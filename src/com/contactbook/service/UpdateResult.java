@@ -0,0 +1,57 @@
+package com.contactbook.service;
+
+import com.contactbook.model.Contact;
+
+/**
+ * The outcome of ContactService.updateContact(base, ...), the optimistic update: whether the change was
+ * saved, merged with someone else's change, or refused because it conflicts with one.
+ * ContactService.undo() and redo() report the same way, since they are optimistic writes too.
+ */
+public final class UpdateResult {
+
+    public enum Status {
+        /** The contact was unchanged since the base version, and the new details were saved. */
+        UPDATED,
+        /** Someone else changed other fields since the base version; both changes were kept and saved. */
+        MERGED,
+        /** Someone else changed the same fields differently since the base version. Nothing was saved. */
+        CONFLICT,
+        /** The contact has been deleted. */
+        NOT_FOUND,
+        /** The contact could not be saved (for example, the database is unreachable). */
+        FAILED
+    }
+
+    private final Status status;
+    private final Contact contact;
+
+    UpdateResult(Status status, Contact contact) {
+        this.status = status;
+        this.contact = contact;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    /**
+     * @return For UPDATED and MERGED the contact as saved (null if an undo or redo deleted it); for CONFLICT
+     *         the current version, which an editor can show next to its own changes and pass as the base to
+     *         overwrite it; otherwise null.
+     */
+    public Contact getContact() {
+        return contact;
+    }
+
+    /**
+     * @return true if the changes were saved (UPDATED or MERGED).
+     */
+    public boolean isSaved() {
+        return status == Status.UPDATED || status == Status.MERGED;
+    }
+
+    @Override
+    public String toString() {
+        return "UpdateResult{status=" + status + ", contact=" + contact + "}";
+    }
+}
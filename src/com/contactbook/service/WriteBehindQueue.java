@@ -0,0 +1,891 @@
+package com.contactbook.service;
+
+import com.contactbook.database.ContactRepository;
+import com.contactbook.model.Contact;
+import com.contactbook.monitoring.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32C;
+
+/**
+ * The write-behind queue of ContactService (see ContactService.enableWriteBehind()).
+ *
+ * In write-behind mode a change is applied to memory at once and recorded here; a background flusher
+ * writes the queued changes to the repository in batches. Changes are coalesced per contact ID while they
+ * wait: two updates become one, an update after an insert is folded into the insert, and an insert
+ * followed by a delete disappears without ever reaching the database.
+ *
+ * A contact added in this mode has no database ID yet, so it gets a temporary negative ID. When its insert
+ * is flushed, the contact is given its real ID in place (same row) and later changes queued under the
+ * temporary ID are translated.
+ *
+ * Every queued change is first appended to a journal file and forced to disk, so nothing that was
+ * accepted is lost if the application dies. On the next start the journal is replayed: the changes not
+ * yet marked as flushed are queued again and overlaid on the contacts loaded from the repository.
+ * Delivery is at least once: if the application dies after a batch committed but before the journal
+ * recorded it, that batch is sent again (harmless for updates and deletes, a duplicate row for inserts).
+ *
+ * Updates are written with the same version check as ContactService.updateContact(base, ...): a row is
+ * only changed if it is still at the version the change was made to. If another client changed it since,
+ * the two changes are merged field by field; if both changed a field differently, the queued change is
+ * dropped as a conflict and memory takes the other client's row.
+ *
+ * Deletes are not version-checked, like ContactService.deleteContact(): a queued delete removes the row
+ * even if another client changed it since. A row that is already gone counts as deleted.
+ *
+ * A change that fails stays queued. While the repository cannot be reached at all, failed changes are
+ * kept however long the outage lasts, and flushes back off up to MAX_RETRY_DELAY_MS apart. A change that
+ * fails while the repository answers is sent on its own from then on, so that one bad row cannot sink a
+ * whole batch; after MAX_ATTEMPTS such failures the repository has rejected it, and it is abandoned and
+ * undone in memory (see ContactService.applyAbandonedChange()).
+ *
+ * The queue is bounded by the number of distinct contacts with pending changes. When it is full, writers
+ * wait for the flusher to make room and fail after a timeout, so a database outage cannot exhaust memory.
+ */
+final class WriteBehindQueue {
+
+    static final byte INSERT = 1;
+    static final byte UPDATE = 2;
+    static final byte DELETE = 3;
+    private static final byte DONE = 4; // Journal record: changes to an ID up to a sequence number were flushed
+    private static final byte RESOLVED = 5; // Journal record: a temporary ID was given a real one
+
+    private static final int MAX_ATTEMPTS = 5; // A change the reachable repository fails this often is abandoned
+    private static final long MAX_RETRY_DELAY_MS = 30_000;
+    private static final long BACK_PRESSURE_TIMEOUT_MS = 30_000;
+    private static final long JOURNAL_REWRITE_BYTES = 4L * 1024 * 1024;
+
+    /**
+     * One coalesced pending change for one contact ID.
+     */
+    static final class PendingChange {
+        final byte type;
+        final int id; // The ID the change was queued under; negative for contacts not yet inserted
+        final String name;
+        final String phone;
+        final String email;
+        final long baseVersion; // The version in memory when the change was first queued
+        // The contact in memory when an update was first queued, to merge with changes made meanwhile by
+        // other clients. Null for inserts and deletes, and for updates replayed from an older journal.
+        final Contact base;
+        long lastSeq; // Journal sequence number of the newest change folded in
+        int attempts; // Flushes that failed while the repository was reachable
+
+        PendingChange(byte type, int id, String name, String phone, String email, long baseVersion) {
+            this(type, id, name, phone, email, baseVersion, null);
+        }
+
+        PendingChange(byte type, int id, String name, String phone, String email, long baseVersion, Contact base) {
+            this.type = type;
+            this.id = id;
+            this.name = name;
+            this.phone = phone;
+            this.email = email;
+            this.baseVersion = baseVersion;
+            this.base = base;
+        }
+
+        static PendingChange insert(Contact contact) {
+            return new PendingChange(INSERT, contact.getId(), contact.getName(), contact.getPhone(), contact.getEmail(), 1);
+        }
+
+        /**
+         * @param contact The updated contact.
+         * @param base The contact in memory before the update; its version is the one the update is checked against.
+         */
+        static PendingChange update(Contact contact, Contact base) {
+            return new PendingChange(UPDATE, contact.getId(), contact.getName(), contact.getPhone(), contact.getEmail(),
+                    base.getVersion(), base);
+        }
+
+        static PendingChange delete(int id) {
+            return new PendingChange(DELETE, id, null, null, null, 0);
+        }
+
+        Contact toContact(int contactId, long version) {
+            return new Contact(contactId, name, phone, email, version);
+        }
+
+        /**
+         * Folds a newer change to the same ID into this one.
+         * @return The combined change, or null if the two cancel out (an insert that is deleted again).
+         */
+        PendingChange merge(PendingChange newer) {
+            PendingChange merged;
+            if (type == DELETE) {
+                merged = this; // Nothing can follow a delete in memory; keep it
+            } else if (newer.type == DELETE) {
+                if (type == INSERT) {
+                    return null;
+                }
+                merged = newer;
+            } else {
+                // An insert stays an insert, an update stays an update; either way the newest values win
+                merged = new PendingChange(type, id, newer.name, newer.phone, newer.email, baseVersion, base);
+            }
+            if (merged != this) {
+                merged.attempts = attempts;
+            }
+            merged.lastSeq = Math.max(lastSeq, newer.lastSeq);
+            return merged;
+        }
+
+        /**
+         * Moves an update queued while an earlier one was being flushed onto the row that flush stored, so it
+         * is not mistaken for a conflict with our own write. Fields still as they were sent take the stored
+         * value, which may hold another client's merged change.
+         */
+        PendingChange rebase(Contact sent, Contact stored) {
+            PendingChange rebased = new PendingChange(type, id,
+                    Objects.equals(name, sent.getName()) ? stored.getName() : name,
+                    Objects.equals(phone, sent.getPhone()) ? stored.getPhone() : phone,
+                    Objects.equals(email, sent.getEmail()) ? stored.getEmail() : email,
+                    stored.getVersion(), stored);
+            rebased.lastSeq = lastSeq;
+            rebased.attempts = attempts;
+            return rebased;
+        }
+    }
+
+    /**
+     * An update the flush is finished with.
+     * @param sent The row as queued, at the change's base version.
+     * @param stored The row the database now holds, or null if another client deleted it.
+     * @param written Whether the stored row has our change (possibly merged), rather than a conflicting one.
+     */
+    private record FlushedUpdate(PendingChange change, Contact sent, Contact stored, boolean written) {
+    }
+
+    private final ContactService service;
+    private final ContactRepository repository;
+    private final Lock reloadReadLock; // Held while flushing, so a full reload never swaps stores in the middle of a batch
+    private final Path journalFile;
+    private final long flushIntervalMillis;
+    private final int maxPending;
+
+    private final ReentrantLock queueLock = new ReentrantLock();
+    private final Condition spaceAvailable = queueLock.newCondition();
+    // --- Guarded by queueLock ---
+    private final LinkedHashMap<Integer, PendingChange> pending = new LinkedHashMap<>(); // In first-queued order
+    private final Map<Integer, Integer> resolvedIds = new HashMap<>(); // Temporary ID -> real ID
+    private FileChannel journal;
+    private long journalBytes;
+    private long nextSeq = 1;
+    private int nextTempId = -1;
+
+    private final ReentrantLock flushLock = new ReentrantLock(); // One flush at a time
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+    private ScheduledExecutorService flusher;
+    private long retryDelayMillis; // Guarded by flushLock; 0 while flushes succeed
+    private volatile long retryAtMillis; // Scheduled and requested flushes wait until then after a failure
+
+    // --- Metrics ---
+    private long flushedChanges;
+    private long coalescedChanges;
+    private long conflictedChanges;
+
+    /**
+     * Opens the journal and replays the changes it holds that were never flushed.
+     * @throws RuntimeException if the journal cannot be read or written.
+     */
+    WriteBehindQueue(ContactService service, ContactRepository repository, Lock reloadReadLock,
+                     Path journalFile, long flushIntervalMillis, int maxPending) {
+        if (flushIntervalMillis < 1 || maxPending < 1) {
+            throw new IllegalArgumentException("Invalid write-behind settings: flushIntervalMillis="
+                    + flushIntervalMillis + ", maxPending=" + maxPending);
+        }
+        this.service = service;
+        this.repository = repository;
+        this.reloadReadLock = reloadReadLock;
+        this.journalFile = journalFile;
+        this.flushIntervalMillis = flushIntervalMillis;
+        this.maxPending = maxPending;
+        try {
+            Path parent = journalFile.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            if (Files.exists(journalFile)) {
+                replay(Files.readAllBytes(journalFile));
+            }
+            rewriteJournal(); // Starts a clean journal holding only what is still pending
+        } catch (IOException e) {
+            Log.error("WriteBehindQueue: Could not open journal " + journalFile + ": " + e.getMessage(), e);
+            throw new RuntimeException("Failed to open write-behind journal " + journalFile, e);
+        }
+        if (!pending.isEmpty()) {
+            Log.info("WriteBehindQueue: Recovered " + pending.size() + " unflushed changes from " + journalFile + ".");
+        }
+    }
+
+    void start() {
+        flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "ContactService-writeBehind");
+            t.setDaemon(true);
+            return t;
+        });
+        flusher.scheduleWithFixedDelay(this::flushSafely, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+        Log.info("WriteBehindQueue: Flushing every " + flushIntervalMillis + " ms, at most "
+                + maxPending + " contacts pending.");
+    }
+
+    /**
+     * Stops the flusher after one last flush. Whatever cannot be flushed stays in the journal for the next start.
+     */
+    void close() {
+        if (flusher != null) {
+            flusher.shutdown();
+            try {
+                flusher.awaitTermination(30, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        flush();
+        queueLock.lock();
+        try {
+            journal.close();
+            Log.info("WriteBehindQueue: Closed with " + pending.size() + " changes pending; flushed "
+                    + flushedChanges + ", coalesced " + coalescedChanges + ", dropped as conflicts " + conflictedChanges + ".");
+        } catch (IOException e) {
+            Log.error("WriteBehindQueue: Error closing journal: " + e.getMessage());
+        } finally {
+            queueLock.unlock();
+        }
+    }
+
+    int nextTempId() {
+        queueLock.lock();
+        try {
+            return nextTempId--;
+        } finally {
+            queueLock.unlock();
+        }
+    }
+
+    /**
+     * @return The real ID for a temporary ID that has been flushed, otherwise the ID itself.
+     */
+    int resolve(int id) {
+        if (id >= 0) {
+            return id;
+        }
+        queueLock.lock();
+        try {
+            return resolvedIds.getOrDefault(id, id);
+        } finally {
+            queueLock.unlock();
+        }
+    }
+
+    /**
+     * @return true if a change to the contact is waiting to be flushed.
+     */
+    boolean hasPending(int id) {
+        queueLock.lock();
+        try {
+            return pending.containsKey(id);
+        } finally {
+            queueLock.unlock();
+        }
+    }
+
+    int size() {
+        queueLock.lock();
+        try {
+            return pending.size();
+        } finally {
+            queueLock.unlock();
+        }
+    }
+
+    /**
+     * @return The pending changes in the order they were first queued, for overlaying on freshly loaded contacts.
+     */
+    List<PendingChange> pendingChanges() {
+        queueLock.lock();
+        try {
+            return new ArrayList<>(pending.values());
+        } finally {
+            queueLock.unlock();
+        }
+    }
+
+    /**
+     * Back-pressure: waits until the queue has room, asking the flusher to run right away.
+     * Call this before taking any other lock, since the flusher needs them to make room.
+     * @return false if the queue was still full after the timeout.
+     */
+    boolean awaitCapacity() {
+        queueLock.lock();
+        try {
+            long remaining = TimeUnit.MILLISECONDS.toNanos(BACK_PRESSURE_TIMEOUT_MS);
+            while (pending.size() >= maxPending) {
+                requestFlush();
+                if (remaining <= 0) {
+                    Log.warn("WriteBehindQueue: Queue still full after " + BACK_PRESSURE_TIMEOUT_MS + " ms.");
+                    return false;
+                }
+                remaining = spaceAvailable.awaitNanos(remaining);
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            queueLock.unlock();
+        }
+    }
+
+    /**
+     * Journals the changes (one forced write) and folds them into the queue.
+     * The caller must hold the ID locks of the changed contacts and apply the same changes to memory
+     * afterwards, so memory and queue see the changes to one contact in the same order.
+     * @return false if the journal could not be written; nothing was queued then.
+     */
+    boolean enqueue(List<PendingChange> changes) {
+        queueLock.lock();
+        try {
+            long seq = nextSeq;
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            for (PendingChange change : changes) {
+                change.lastSeq = seq++;
+                writeChangeRecord(bytes, change);
+            }
+            if (!appendToJournal(bytes.toByteArray(), true)) {
+                return false;
+            }
+            nextSeq = seq;
+            for (PendingChange change : changes) {
+                fold(change);
+            }
+            if (pending.size() >= maxPending) {
+                requestFlush();
+            }
+            return true;
+        } finally {
+            queueLock.unlock();
+        }
+    }
+
+    void requestFlush() {
+        ScheduledExecutorService executor = flusher;
+        if (executor != null && flushRequested.compareAndSet(false, true)) {
+            try {
+                executor.execute(this::flushSafely);
+            } catch (RuntimeException e) {
+                flushRequested.set(false); // Shutting down
+            }
+        }
+    }
+
+    private void flushSafely() {
+        flushRequested.set(false);
+        if (System.currentTimeMillis() < retryAtMillis) {
+            return; // Backing off after a failed flush
+        }
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            Log.error("WriteBehindQueue: Flush failed: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Writes every pending change to the repository: inserts, updates and deletes each as one batch, except
+     * for changes that failed before while the repository was reachable, which are sent one at a time.
+     * Changes that fail stay queued (merged with anything queued meanwhile) and are retried on the next flush.
+     * Updates are version-checked; the ones another client got in first go through resolveStale().
+     */
+    void flush() {
+        flushLock.lock();
+        reloadReadLock.lock();
+        try {
+            List<PendingChange> batch = takeBatch();
+            if (batch.isEmpty()) {
+                return;
+            }
+            List<PendingChange> inserts = new ArrayList<>();
+            List<PendingChange> updates = new ArrayList<>();
+            List<PendingChange> deletes = new ArrayList<>();
+            List<PendingChange> done = new ArrayList<>();
+            List<PendingChange> failed = new ArrayList<>();
+            Map<PendingChange, Integer> targetIds = new HashMap<>();
+            for (PendingChange change : batch) {
+                if (change.type == INSERT) {
+                    inserts.add(change);
+                    continue;
+                }
+                int target = resolve(change.id);
+                if (target < 0) {
+                    // Its insert was abandoned and the contact removed from memory, so there is no row to change
+                    Log.warn("WriteBehindQueue: Dropping change to contact " + change.id + " that was never inserted.");
+                    done.add(change);
+                    continue;
+                }
+                targetIds.put(change, target);
+                (change.type == UPDATE ? updates : deletes).add(change);
+            }
+
+            List<int[]> resolved = new ArrayList<>(); // {temporary ID, real ID}
+            for (List<PendingChange> group : groups(inserts)) {
+                List<Contact> rows = new ArrayList<>(group.size());
+                for (PendingChange change : group) {
+                    rows.add(change.toContact(0, 1));
+                }
+                boolean[] ok = repository.addContacts(rows);
+                for (int i = 0; i < ok.length; i++) {
+                    if (ok[i]) {
+                        resolved.add(new int[]{group.get(i).id, rows.get(i).getId()});
+                        done.add(group.get(i));
+                    } else {
+                        failed.add(group.get(i));
+                    }
+                }
+            }
+            recordResolved(resolved); // Before memory is rekeyed, so a writer missing the old ID can find the new one
+            List<FlushedUpdate> updated = new ArrayList<>();
+            for (List<PendingChange> group : groups(updates)) {
+                List<Contact> rows = new ArrayList<>(group.size());
+                for (PendingChange change : group) {
+                    rows.add(change.toContact(targetIds.get(change), change.baseVersion));
+                }
+                int[] results = repository.updateContactsIfVersion(rows); // Sets the stored version on the rows it updated
+                for (int i = 0; i < results.length; i++) {
+                    PendingChange change = group.get(i);
+                    Contact sent = change.toContact(targetIds.get(change), change.baseVersion);
+                    FlushedUpdate flushed = results[i] > 0 ? new FlushedUpdate(change, sent, rows.get(i), true)
+                            : results[i] == 0 ? resolveStale(change, sent) : null;
+                    if (flushed == null) {
+                        failed.add(change);
+                    } else {
+                        updated.add(flushed);
+                        done.add(change);
+                    }
+                }
+            }
+            List<PendingChange> undeleted = new ArrayList<>();
+            for (List<PendingChange> group : groups(deletes)) {
+                int[] ids = new int[group.size()];
+                for (int i = 0; i < ids.length; i++) {
+                    ids[i] = targetIds.get(group.get(i));
+                }
+                boolean[] ok = repository.deleteContacts(ids);
+                for (int i = 0; i < ok.length; i++) {
+                    (ok[i] ? done : undeleted).add(group.get(i));
+                }
+            }
+
+            // A repository that cannot even count its rows is unreachable: nothing it failed was rejected
+            boolean reachable = (failed.isEmpty() && undeleted.isEmpty()) || repository.getContactCount() >= 0;
+            for (PendingChange change : undeleted) {
+                if (reachable && repository.getContact(targetIds.get(change)) == null) {
+                    done.add(change); // Already deleted, e.g. by another client
+                } else {
+                    failed.add(change);
+                }
+            }
+            List<PendingChange> abandoned = new ArrayList<>();
+            if (reachable) {
+                for (PendingChange change : failed) {
+                    if (++change.attempts >= MAX_ATTEMPTS) {
+                        Log.error("WriteBehindQueue: The repository rejected the change to contact " + change.id
+                                + " " + change.attempts + " times; abandoning it.");
+                        abandoned.add(change);
+                    }
+                }
+                failed.removeAll(abandoned);
+                done.addAll(abandoned);
+            }
+            scheduleRetry(failed.size(), reachable);
+
+            // Bring memory in line with what the database now holds
+            for (int[] ids : resolved) {
+                service.applyFlushedInsert(ids[0], ids[1]);
+            }
+            for (FlushedUpdate flushed : updated) {
+                service.applyFlushedUpdate(flushed.sent(), flushed.stored());
+            }
+            for (PendingChange change : abandoned) {
+                service.applyAbandonedChange(change.type == INSERT ? change.id : targetIds.get(change));
+            }
+            finishBatch(resolved, updated, done, failed);
+        } finally {
+            reloadReadLock.unlock();
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * Splits changes of one kind into the batches they are sent in: one batch for the changes that have not
+     * failed yet, and one of its own for each change that has.
+     */
+    private static List<List<PendingChange>> groups(List<PendingChange> changes) {
+        List<List<PendingChange>> groups = new ArrayList<>();
+        List<PendingChange> fresh = new ArrayList<>(changes.size());
+        for (PendingChange change : changes) {
+            if (change.attempts == 0) {
+                fresh.add(change);
+            } else {
+                groups.add(List.of(change));
+            }
+        }
+        if (!fresh.isEmpty()) {
+            groups.add(0, fresh);
+        }
+        return groups;
+    }
+
+    /**
+     * Backs off after a flush that left changes queued, doubling the delay up to MAX_RETRY_DELAY_MS.
+     * Must be called with flushLock held.
+     */
+    private void scheduleRetry(int failedChanges, boolean reachable) {
+        if (failedChanges == 0) {
+            if (retryDelayMillis > 0) {
+                Log.info("WriteBehindQueue: Flushing again after failed attempts.");
+            }
+            retryDelayMillis = 0;
+            retryAtMillis = 0;
+            return;
+        }
+        retryDelayMillis = Math.min(MAX_RETRY_DELAY_MS, Math.max(flushIntervalMillis, retryDelayMillis * 2));
+        retryAtMillis = System.currentTimeMillis() + retryDelayMillis;
+        Log.warn("WriteBehindQueue: " + failedChanges + " changes could not be flushed"
+                + (reachable ? "" : " (repository unreachable)") + "; they stay queued, next try in " + retryDelayMillis + " ms.");
+    }
+
+    /**
+     * Deals with a queued update the database refused because the row is no longer at the change's base
+     * version. The change is merged with the other client's like ContactService.updateContact(base, ..., true)
+     * does: each field takes whichever side changed it. If both changed a field differently, the queued change
+     * is dropped as a conflict; the caller that queued it has long had its answer, so the conflict is logged.
+     * @return What the database now holds, or null to retry the change on the next flush.
+     */
+    private FlushedUpdate resolveStale(PendingChange change, Contact sent) {
+        Contact current = repository.getContact(sent.getId());
+        if (current == null) {
+            Log.warn("WriteBehindQueue: Contact " + sent.getId() + " was deleted by another client; dropping its queued update.");
+            return new FlushedUpdate(change, sent, null, false);
+        }
+        Contact merged = change.base != null ? ContactService.mergeFields(change.base, sent, current)
+                : ContactService.sameFields(sent, current) ? sent : null;
+        if (merged == null) {
+            ContactService.CONFLICTS.increment();
+            queueLock.lock();
+            try {
+                conflictedChanges++;
+            } finally {
+                queueLock.unlock();
+            }
+            Log.warn("WriteBehindQueue: Queued update of contact " + sent.getId()
+                    + " conflicts with a change made by another client; keeping theirs (version " + current.getVersion() + ").");
+            return new FlushedUpdate(change, sent, current, false);
+        }
+        if (ContactService.sameFields(merged, current)) {
+            return new FlushedUpdate(change, sent, current, true); // Already there, e.g. a batch sent again after a restart
+        }
+        Contact row = new Contact(sent.getId(), merged.getName(), merged.getPhone(), merged.getEmail(), current.getVersion());
+        if (repository.updateContactsIfVersion(List.of(row))[0] <= 0) {
+            return null; // Changed yet again, or an error; try once more on the next flush
+        }
+        ContactService.MERGES.increment();
+        Log.info("WriteBehindQueue: Merged queued update of contact " + sent.getId() + " with a change made by another client.");
+        return new FlushedUpdate(change, sent, row, true);
+    }
+
+    private List<PendingChange> takeBatch() {
+        queueLock.lock();
+        try {
+            List<PendingChange> batch = new ArrayList<>(pending.values());
+            pending.clear();
+            return batch;
+        } finally {
+            queueLock.unlock();
+        }
+    }
+
+    private void recordResolved(List<int[]> resolved) {
+        queueLock.lock();
+        try {
+            for (int[] ids : resolved) {
+                resolvedIds.put(ids[0], ids[1]);
+            }
+        } finally {
+            queueLock.unlock();
+        }
+    }
+
+    private void finishBatch(List<int[]> resolved, List<FlushedUpdate> updated, List<PendingChange> done,
+                             List<PendingChange> failed) {
+        queueLock.lock();
+        try {
+            boolean rebased = false;
+            for (FlushedUpdate flushed : updated) {
+                // An update queued for the contact while this one was in flight was based on the old version
+                for (int key : new int[]{flushed.change().id, flushed.sent().getId()}) {
+                    PendingChange newer = pending.get(key);
+                    if (flushed.written() && newer != null && newer.type == UPDATE
+                            && newer.baseVersion < flushed.stored().getVersion()) {
+                        pending.put(key, newer.rebase(flushed.sent(), flushed.stored()));
+                        rebased = true;
+                    }
+                }
+            }
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            for (int[] ids : resolved) {
+                writeResolvedRecord(bytes, ids[0], ids[1]);
+            }
+            for (PendingChange change : failed) {
+                // Put it back in front of anything queued for the same contact meanwhile
+                PendingChange newer = pending.remove(change.id);
+                PendingChange merged = newer == null ? change : change.merge(newer);
+                if (merged != null) {
+                    pending.put(change.id, merged);
+                }
+            }
+            for (PendingChange change : done) {
+                writeDoneRecord(bytes, change.id, change.lastSeq);
+            }
+            flushedChanges += done.size();
+            if (!appendToJournal(bytes.toByteArray(), true)) {
+                Log.error("WriteBehindQueue: Flushed changes could not be marked as done; they may be sent again after a restart.");
+            }
+            if (pending.isEmpty() || rebased || journalBytes > JOURNAL_REWRITE_BYTES) {
+                try {
+                    rewriteJournal();
+                } catch (IOException e) {
+                    Log.error("WriteBehindQueue: Could not compact journal: " + e.getMessage());
+                }
+            }
+            spaceAvailable.signalAll();
+        } finally {
+            queueLock.unlock();
+        }
+    }
+
+    /**
+     * Must be called with queueLock held.
+     */
+    private void fold(PendingChange change) {
+        PendingChange existing = pending.get(change.id);
+        if (existing == null) {
+            pending.put(change.id, change);
+            return;
+        }
+        coalescedChanges++;
+        PendingChange merged = existing.merge(change);
+        if (merged == null) {
+            pending.remove(change.id); // Inserted and deleted before it was ever flushed
+        } else {
+            pending.put(change.id, merged);
+        }
+    }
+
+    // --- Journal. Records are [length][CRC32C][payload], like the log of FileContactRepository. ---
+
+    /**
+     * Must be called with queueLock held.
+     */
+    private boolean appendToJournal(byte[] records, boolean force) {
+        if (records.length == 0) {
+            return true;
+        }
+        try {
+            long start = journal.position();
+            try {
+                ByteBuffer buffer = ByteBuffer.wrap(records);
+                while (buffer.hasRemaining()) {
+                    journal.write(buffer);
+                }
+                if (force) {
+                    journal.force(false);
+                }
+            } catch (IOException e) {
+                journal.truncate(start); // Never leave a torn record in front of later ones
+                journal.position(start);
+                throw e;
+            }
+            journalBytes += records.length;
+            return true;
+        } catch (IOException e) {
+            Log.error("WriteBehindQueue: Error writing journal " + journalFile + ": " + e.getMessage(), e);
+            return false;
+        }
+    }
+
+    /**
+     * Replaces the journal with one holding just the pending changes (and the ID mappings they still need).
+     * Must be called with queueLock held, or from the constructor.
+     */
+    private void rewriteJournal() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        for (PendingChange change : pending.values()) {
+            Integer real = change.id < 0 ? resolvedIds.get(change.id) : null;
+            if (real != null) {
+                writeResolvedRecord(bytes, change.id, real);
+            }
+        }
+        for (PendingChange change : pending.values()) {
+            writeChangeRecord(bytes, change);
+        }
+        Path temp = journalFile.resolveSibling(journalFile.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+        if (journal != null) {
+            journal.close();
+        }
+        Files.move(temp, journalFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        journal = FileChannel.open(journalFile, StandardOpenOption.WRITE);
+        journal.position(journal.size());
+        journalBytes = journal.size();
+    }
+
+    /**
+     * Rebuilds the queue from a journal: every change is folded in unless a later DONE record covers it.
+     */
+    private void replay(byte[] data) {
+        ByteBuffer in = ByteBuffer.wrap(data);
+        CRC32C crc = new CRC32C();
+        List<ByteBuffer> records = new ArrayList<>();
+        while (in.remaining() >= 8) {
+            int length = in.getInt(in.position());
+            if (length <= 0 || length > in.remaining() - 8) {
+                break;
+            }
+            ByteBuffer payload = in.slice(in.position() + 8, length);
+            crc.reset();
+            crc.update(payload.duplicate());
+            if ((int) crc.getValue() != in.getInt(in.position() + 4)) {
+                break;
+            }
+            records.add(payload);
+            in.position(in.position() + 8 + length);
+        }
+        if (in.hasRemaining()) {
+            Log.warn("WriteBehindQueue: Ignoring " + in.remaining() + " bytes of incomplete journal data.");
+        }
+
+        Map<Integer, Long> doneUpTo = new HashMap<>();
+        for (ByteBuffer record : records) {
+            byte type = record.get(0);
+            if (type == DONE) {
+                doneUpTo.merge(record.getInt(1), record.getLong(5), Math::max);
+            } else if (type == RESOLVED) {
+                resolvedIds.put(record.getInt(1), record.getInt(5));
+                nextTempId = Math.min(nextTempId, record.getInt(1) - 1);
+            }
+        }
+        for (ByteBuffer record : records) {
+            byte type = record.get();
+            if (type != INSERT && type != UPDATE && type != DELETE) {
+                continue;
+            }
+            long seq = record.getLong();
+            int id = record.getInt();
+            long baseVersion = record.getLong();
+            String name = readString(record);
+            String phone = readString(record);
+            String email = readString(record);
+            Contact base = null;
+            if (record.hasRemaining() && record.get() != 0) { // Journals written before bases were recorded end here
+                base = new Contact(id, readString(record), readString(record), readString(record), baseVersion);
+            }
+            PendingChange change = new PendingChange(type, id, name, phone, email, baseVersion, base);
+            change.lastSeq = seq;
+            nextSeq = Math.max(nextSeq, seq + 1);
+            if (id < 0) {
+                nextTempId = Math.min(nextTempId, id - 1);
+            }
+            if (seq > doneUpTo.getOrDefault(id, 0L)) {
+                fold(change);
+            }
+        }
+    }
+
+    private static void writeChangeRecord(ByteArrayOutputStream bytes, PendingChange change) {
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(payload);
+        try {
+            out.writeByte(change.type);
+            out.writeLong(change.lastSeq);
+            out.writeInt(change.id);
+            out.writeLong(change.baseVersion);
+            writeString(out, change.name);
+            writeString(out, change.phone);
+            writeString(out, change.email);
+            out.writeBoolean(change.base != null);
+            if (change.base != null) {
+                writeString(out, change.base.getName());
+                writeString(out, change.base.getPhone());
+                writeString(out, change.base.getEmail());
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // Cannot happen with an in-memory stream
+        }
+        writeRecord(bytes, payload.toByteArray());
+    }
+
+    private static void writeDoneRecord(ByteArrayOutputStream bytes, int id, long seq) {
+        writeRecord(bytes, ByteBuffer.allocate(1 + 4 + 8).put(DONE).putInt(id).putLong(seq).array());
+    }
+
+    private static void writeResolvedRecord(ByteArrayOutputStream bytes, int tempId, int realId) {
+        writeRecord(bytes, ByteBuffer.allocate(1 + 4 + 4).put(RESOLVED).putInt(tempId).putInt(realId).array());
+    }
+
+    private static void writeRecord(ByteArrayOutputStream bytes, byte[] payload) {
+        CRC32C crc = new CRC32C();
+        crc.update(payload);
+        bytes.writeBytes(ByteBuffer.allocate(8).putInt(payload.length).putInt((int) crc.getValue()).array());
+        bytes.writeBytes(payload);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+        } else {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private static String readString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
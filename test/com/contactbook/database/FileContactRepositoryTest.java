@@ -0,0 +1,124 @@
+package com.contactbook.database;
+
+import com.contactbook.model.Contact;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * FileContactRepository across restarts: contacts, versions and deletes written to the logs must survive a
+ * reopen, a compaction into a snapshot, and a reopen from that snapshot plus the logs written after it.
+ */
+class FileContactRepositoryTest {
+
+    private static final long COMPACTION_TIMEOUT_MS = 10_000;
+
+    @TempDir
+    Path directory;
+
+    private FileContactRepository repository;
+
+    @AfterEach
+    void close() {
+        if (repository != null) {
+            repository.close();
+        }
+    }
+
+    @Test
+    void contentsVersionsAndDeletesSurviveReopenAndCompaction() throws Exception {
+        repository = new FileContactRepository(directory);
+        Contact asha = add("Asha Rao", "555-0101", "asha@example.com");
+        Contact bala = add("Bala Krishnan", "555-0102", "bala@example.com");
+        Contact chitra = add("Chitra Iyer", "555-0103", "chitra@example.com");
+        Contact deepa = add("Deepa Nair", "555-0104", "");
+        assertEquals(1, repository.updateContactIfVersion(
+                new Contact(asha.getId(), "Asha Menon", "555-0199", asha.getEmail(), asha.getVersion() + 1), asha.getVersion()));
+        assertEquals(1, repository.updateContactIfVersion(
+                new Contact(asha.getId(), "Asha Menon", "555-0199", "asha@corp.test", asha.getVersion() + 2), asha.getVersion() + 1));
+        assertTrue(repository.deleteContact(bala.getId()));
+        assertTrue(repository.deleteContact(deepa.getId())); // The highest ID, so only the log remembers it was used
+        List<String> expected = describe(repository.getAllContacts());
+
+        reopen();
+        assertEquals(expected, describe(repository.getAllContacts()));
+        assertEquals(3, repository.getContact(asha.getId()).getVersion());
+        assertNull(repository.getContact(bala.getId()));
+        assertFalse(repository.deleteContact(bala.getId())); // Still gone
+
+        compact();
+        assertTrue(Files.exists(directory.resolve("contacts.snapshot")));
+        reopen();
+        assertEquals(expected, describe(repository.getAllContacts()));
+        assertNull(repository.getContact(deepa.getId()));
+
+        // Changes after the snapshot are replayed from the log on top of it
+        assertTrue(repository.deleteContact(chitra.getId()));
+        Contact esha = add("Esha Das", "555-0105", "esha@example.com");
+        assertTrue(esha.getId() > deepa.getId(), "Deleted IDs are never handed out again");
+        expected = describe(repository.getAllContacts());
+
+        reopen();
+        assertEquals(expected, describe(repository.getAllContacts()));
+        assertEquals(List.of(asha.getId(), esha.getId()), ids(repository.getAllContacts()));
+        assertEquals(3, repository.getContact(asha.getId()).getVersion());
+        assertEquals(deepa.getId() + 2, add("Farah Khan", "555-0106", "").getId());
+    }
+
+    private Contact add(String name, String phone, String email) {
+        Contact contact = new Contact(name, phone, email);
+        assertTrue(repository.addContact(contact));
+        return repository.getContact(contact.getId());
+    }
+
+    private void reopen() {
+        repository.close();
+        repository = new FileContactRepository(directory);
+    }
+
+    /**
+     * Every open starts a new log, and the background thread compacts once there are more than eight;
+     * so reopen until there are, then wait for the snapshot to replace them.
+     */
+    private void compact() throws IOException, InterruptedException {
+        for (int i = 0; i < 9; i++) {
+            reopen();
+        }
+        long deadline = System.currentTimeMillis() + COMPACTION_TIMEOUT_MS;
+        while (!Files.exists(directory.resolve("contacts.snapshot")) || countLogs() > 1) {
+            assertTrue(System.currentTimeMillis() < deadline, "No compaction within " + COMPACTION_TIMEOUT_MS + " ms");
+            Thread.sleep(50);
+        }
+    }
+
+    private long countLogs() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.getFileName().toString().endsWith(".log")).count();
+        }
+    }
+
+    private static List<String> describe(List<Contact> contacts) {
+        List<String> described = new ArrayList<>();
+        for (Contact contact : contacts) {
+            described.add(contact.getId() + "|" + contact.getName() + "|" + contact.getPhone() + "|" + contact.getEmail()
+                    + "|" + contact.getVersion());
+        }
+        return described;
+    }
+
+    private static List<Integer> ids(List<Contact> contacts) {
+        return contacts.stream().map(Contact::getId).toList();
+    }
+}
@@ -0,0 +1,204 @@
+package com.contactbook.database;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * StatementCache over a stub connection whose statements record what is done to them: statements handed back
+ * and out again, statements whose settings were changed being closed instead of reused, and LRU eviction.
+ */
+class StatementCacheTest {
+
+    private static final String SELECT = "SELECT * FROM contacts WHERE id = ?";
+    private static final String INSERT = "INSERT INTO contacts (name) VALUES (?)";
+    private static final String DELETE = "DELETE FROM contacts WHERE id = ?";
+
+    private final StubConnection connection = new StubConnection();
+
+    @Test
+    void closedStatementIsHandedOutAgainWithItsParametersCleared() throws SQLException {
+        StatementCache cache = new StatementCache(connection.proxy(), 4);
+
+        PreparedStatement first = cache.prepare(SELECT, Statement.NO_GENERATED_KEYS);
+        first.setInt(1, 42);
+        first.close();
+        PreparedStatement second = cache.prepare(SELECT, Statement.NO_GENERATED_KEYS);
+
+        assertEquals(1, connection.prepared.size());
+        StubStatement statement = connection.prepared.get(0);
+        assertFalse(statement.closed);
+        assertTrue(statement.calls.contains("clearParameters"));
+        assertNotSame(first, second);
+        assertTrue(first.isClosed());
+        assertFalse(second.isClosed());
+        assertThrows(SQLException.class, () -> first.setInt(1, 7));
+
+        first.close(); // Closing the old handle again must not hand back the new one
+        assertFalse(second.isClosed());
+    }
+
+    @Test
+    void generatedKeysAreASeparateStatement() throws SQLException {
+        StatementCache cache = new StatementCache(connection.proxy(), 4);
+
+        cache.prepare(INSERT, Statement.NO_GENERATED_KEYS).close();
+        cache.prepare(INSERT, Statement.RETURN_GENERATED_KEYS).close();
+
+        assertEquals(2, connection.prepared.size());
+    }
+
+    @Test
+    void sameSqlTwiceAtOnceGetsItsOwnStatement() throws SQLException {
+        StatementCache cache = new StatementCache(connection.proxy(), 4);
+
+        PreparedStatement outer = cache.prepare(SELECT, Statement.NO_GENERATED_KEYS);
+        PreparedStatement inner = cache.prepare(SELECT, Statement.NO_GENERATED_KEYS);
+        inner.close();
+        outer.close();
+        cache.prepare(SELECT, Statement.NO_GENERATED_KEYS).close();
+
+        assertEquals(2, connection.prepared.size());
+        assertFalse(connection.prepared.get(0).closed);
+        assertTrue(connection.prepared.get(1).closed);
+    }
+
+    @Test
+    void statementWithChangedSettingsIsClosedInsteadOfReused() throws SQLException {
+        StatementCache cache = new StatementCache(connection.proxy(), 4);
+
+        PreparedStatement statement = cache.prepare(SELECT, Statement.NO_GENERATED_KEYS);
+        statement.setFetchSize(500);
+        statement.close();
+
+        assertTrue(connection.prepared.get(0).closed);
+        cache.prepare(SELECT, Statement.NO_GENERATED_KEYS).close();
+        assertEquals(2, connection.prepared.size());
+        assertFalse(connection.prepared.get(1).closed);
+    }
+
+    @Test
+    void leastRecentlyUsedStatementIsEvicted() throws SQLException {
+        StatementCache cache = new StatementCache(connection.proxy(), 2);
+
+        cache.prepare(SELECT, Statement.NO_GENERATED_KEYS).close();
+        cache.prepare(INSERT, Statement.NO_GENERATED_KEYS).close();
+        cache.prepare(SELECT, Statement.NO_GENERATED_KEYS).close(); // INSERT is now the least recently used
+        cache.prepare(DELETE, Statement.NO_GENERATED_KEYS).close();
+
+        assertEquals(List.of(SELECT, INSERT, DELETE), connection.preparedSql());
+        assertFalse(connection.prepared.get(0).closed);
+        assertTrue(connection.prepared.get(1).closed);
+        assertFalse(connection.prepared.get(2).closed);
+
+        cache.prepare(SELECT, Statement.NO_GENERATED_KEYS).close();
+        assertEquals(3, connection.prepared.size());
+    }
+
+    @Test
+    void statementInUseIsNotEvicted() throws SQLException {
+        StatementCache cache = new StatementCache(connection.proxy(), 1);
+
+        PreparedStatement select = cache.prepare(SELECT, Statement.NO_GENERATED_KEYS);
+        cache.prepare(INSERT, Statement.NO_GENERATED_KEYS).close();
+
+        assertFalse(connection.prepared.get(0).closed);
+        assertFalse(select.isClosed());
+        select.close();
+    }
+
+    @Test
+    void forgottenStatementIsReclaimed() throws SQLException {
+        StatementCache cache = new StatementCache(connection.proxy(), 4);
+
+        PreparedStatement forgotten = cache.prepare(SELECT, Statement.NO_GENERATED_KEYS);
+        cache.reclaim();
+
+        assertTrue(forgotten.isClosed());
+        cache.prepare(SELECT, Statement.NO_GENERATED_KEYS).close();
+        assertEquals(1, connection.prepared.size());
+    }
+
+    @Test
+    void sizeZeroTurnsCachingOff() throws SQLException {
+        StatementCache cache = new StatementCache(connection.proxy(), 0);
+
+        cache.prepare(SELECT, Statement.NO_GENERATED_KEYS).close();
+        cache.prepare(SELECT, Statement.NO_GENERATED_KEYS).close();
+
+        assertEquals(2, connection.prepared.size());
+        assertTrue(connection.prepared.get(0).closed);
+    }
+
+    /**
+     * A Connection that only prepares statements, each a StubStatement.
+     */
+    private static final class StubConnection {
+        final List<StubStatement> prepared = new ArrayList<>();
+
+        Connection proxy() {
+            return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{Connection.class},
+                    (proxy, method, args) -> {
+                        if (!method.getName().equals("prepareStatement")) {
+                            throw new UnsupportedOperationException(method.getName());
+                        }
+                        StubStatement statement = new StubStatement((String) args[0]);
+                        prepared.add(statement);
+                        return statement.proxy();
+                    });
+        }
+
+        List<String> preparedSql() {
+            return prepared.stream().map(statement -> statement.sql).toList();
+        }
+    }
+
+    /**
+     * A PreparedStatement that records the names of the methods called on it and whether it was closed.
+     */
+    private static final class StubStatement {
+        final String sql;
+        final List<String> calls = new ArrayList<>();
+        boolean closed;
+
+        StubStatement(String sql) {
+            this.sql = sql;
+        }
+
+        PreparedStatement proxy() {
+            return (PreparedStatement) Proxy.newProxyInstance(getClass().getClassLoader(),
+                    new Class<?>[]{PreparedStatement.class}, (proxy, method, args) -> {
+                        String name = method.getName();
+                        switch (name) {
+                            case "isClosed":
+                                return closed;
+                            case "close":
+                                closed = true;
+                                return null;
+                            default:
+                                break;
+                        }
+                        if (closed) {
+                            throw new SQLException("Statement is closed.");
+                        }
+                        calls.add(name);
+                        if (method.getReturnType() == void.class || name.equals("getResultSet")) {
+                            return null;
+                        }
+                        throw new UnsupportedOperationException(name);
+                    });
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package com.contactbook.io;
+
+import com.contactbook.database.FileContactRepository;
+import com.contactbook.model.Contact;
+import com.contactbook.service.ContactService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Whole-file imports through the reader, checker and writer stages, and exports read back in.
+ */
+class ContactImporterTest {
+
+    @TempDir
+    Path directory;
+
+    private final List<ContactService> services = new ArrayList<>();
+
+    @AfterEach
+    void shutdown() {
+        services.forEach(ContactService::shutdown);
+    }
+
+    @Test
+    void importSpanningSeveralChunksAndReadsKeepsEveryRow() throws IOException {
+        // 2,500 rows of about 130 bytes: three chunks of records and two 256 KB reads, with quoted line breaks
+        // and multi-byte characters landing on the read boundary somewhere
+        StringBuilder csv = new StringBuilder("﻿Name,Phone,Email\r\n");
+        for (int i = 0; i < 2500; i++) {
+            csv.append("\"Zoë ").append(i).append(",\r\nÅberg ").append("x".repeat(60)).append("\",555-")
+                    .append(i).append(",zoe").append(i).append("@example.com\r\n");
+        }
+        Path file = write("many.csv", csv.toString());
+        assertTrue(Files.size(file) > 256 * 1024);
+
+        ContactService service = newService("many");
+        List<Long> progress = new ArrayList<>();
+        ImportResult result = new ContactImporter(service, 2).importFile(file, ContactFileFormat.CSV,
+                (done, total, contacts) -> progress.add(contacts));
+
+        assertEquals(2500, result.getImported());
+        assertEquals(0, result.getRejected());
+        assertEquals(0, result.getFailed());
+        assertEquals(List.of(1000L, 2000L, 2500L), progress);
+        List<Contact> contacts = service.getAllContacts();
+        assertEquals(2500, contacts.size());
+        for (int i = 0; i < 2500; i++) {
+            Contact contact = contacts.get(i); // Chunks are written in file order
+            assertEquals("Zoë " + i + ", Åberg " + "x".repeat(60), contact.getName());
+            assertEquals("555-" + i, contact.getPhone());
+        }
+    }
+
+    @Test
+    void malformedRowsAreReportedAndTheRestImported() throws IOException {
+        Path file = write("mixed.csv", "Name,Phone,Email\n"
+                + "Asha Rao,555-0101,asha@example.com\n"
+                + ",555-0102,nobody@example.com\n"
+                + "Ben Ode,555-0103,not an address\n"
+                + "Chen Li,555-0104,\n");
+        ContactService service = newService("mixed");
+
+        ImportResult result = new ContactImporter(service, 1).importFile(file, ContactFileFormat.CSV, null);
+
+        assertEquals(2, result.getImported());
+        assertEquals(2, result.getRejected());
+        assertEquals(List.of("Line 3: no name", "Line 4: 'not an address' is not an email address"),
+                result.getProblems());
+        assertEquals(List.of("Asha Rao", "Chen Li"), names(service.getAllContacts()));
+    }
+
+    @Test
+    void csvExportImportsBackUnchanged() throws IOException {
+        roundTrip(ContactFileFormat.CSV);
+    }
+
+    @Test
+    void vCardExportImportsBackUnchanged() throws IOException {
+        roundTrip(ContactFileFormat.VCARD);
+    }
+
+    private void roundTrip(ContactFileFormat format) throws IOException {
+        ContactService source = newService("source");
+        List<String> expected = new ArrayList<>();
+        String[][] rows = {
+                {"Rao, Asha", "555-0101", "asha@example.com"},
+                {"Ben \"The Builder\" Ode", "", "ben@example.com"},
+                {"Chen; Li \\ Wei", "+44 20 7946 0958", ""},
+                {"Ørjan Sønstebø " + "Long".repeat(30), "555-0104", "orjan@example.com"}, // Folded in a vCard
+                {"Dev", "", ""},
+        };
+        for (String[] row : rows) {
+            source.addContact(row[0], row[1], row[2]);
+            expected.add(String.join("|", row));
+        }
+        Path file = directory.resolve("export." + format.getExtension());
+        assertEquals(rows.length, new ContactExporter(source).exportFile(file, format, null));
+
+        ContactService target = newService("target");
+        ImportResult result = new ContactImporter(target, 2).importFile(file, ContactFileFormat.of(file), null);
+
+        assertEquals(rows.length, result.getImported());
+        assertEquals(0, result.getRejected());
+        List<String> imported = new ArrayList<>();
+        for (Contact contact : target.getAllContacts()) {
+            imported.add(contact.getName() + "|" + contact.getPhone() + "|" + contact.getEmail());
+        }
+        assertEquals(expected, imported);
+    }
+
+    private ContactService newService(String name) {
+        ContactService service = new ContactService(new FileContactRepository(directory.resolve(name)), true, false);
+        services.add(service);
+        return service;
+    }
+
+    private Path write(String name, String text) throws IOException {
+        return Files.writeString(directory.resolve(name), text, StandardCharsets.UTF_8);
+    }
+
+    private static List<String> names(List<Contact> contacts) {
+        List<String> names = new ArrayList<>();
+        for (Contact contact : contacts) {
+            names.add(contact.getName());
+        }
+        return names;
+    }
+}
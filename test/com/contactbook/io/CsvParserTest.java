@@ -0,0 +1,106 @@
+package com.contactbook.io;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Quoting, line endings, header and delimiter detection, and records split across the buffers the importer feeds.
+ */
+class CsvParserTest {
+
+    @Test
+    void quotedFieldsKeepDelimitersQuotesAndLineBreaks() throws IOException {
+        List<String> records = parse("Name,Phone,Email\n"
+                + "\"Rao, Asha\",555-0101,asha@example.com\n"
+                + "\"Ben \"\"The Builder\"\" Ode\",,ben@example.com\n"
+                + "\"Chen\nLi\",\"555-0103\",\n");
+        assertEquals(List.of(
+                "2|Rao, Asha|555-0101|asha@example.com",
+                "3|Ben \"The Builder\" Ode||ben@example.com",
+                "4|Chen\nLi|555-0103|"), records);
+    }
+
+    @Test
+    void crlfAndLfLineEndingsGiveTheSameRecords() throws IOException {
+        String text = "Name,Phone,Email\n\"Chen\nLi\",555-0103,chen@example.com\nDev Patel,555-0104,\n";
+        List<String> lf = parse(text);
+        assertEquals(lf, parse(text.replace("\n", "\r\n")));
+        assertEquals(2, lf.size());
+    }
+
+    @Test
+    void byteOrderMarkDoesNotHideTheHeader() throws IOException {
+        assertEquals(List.of("2|Asha Rao|555-0101|asha@example.com"),
+                parse("\uFEFFName,Phone,Email\r\nAsha Rao,555-0101,asha@example.com\r\n"));
+    }
+
+    @Test
+    void headerColumnsAreFoundInAnyOrder() throws IOException {
+        assertEquals(List.of("2|Asha Rao|555-0101|asha@example.com"),
+                parse("E-mail;Full Name;Mobile\nasha@example.com;Asha Rao;555-0101\n"));
+    }
+
+    @Test
+    void withoutAHeaderColumnsAreNamePhoneEmail() throws IOException {
+        assertEquals(List.of(
+                        "1|Asha Rao|555-0101|asha@example.com",
+                        "2|Ben, Ode|555-0102|"),
+                parse("Asha Rao\t555-0101\tasha@example.com\nBen, Ode\t555-0102\n"));
+    }
+
+    @Test
+    void recordsSplitAcrossBuffersAreReadWhole() throws IOException {
+        String text = "\uFEFFName;Phone;Email\r\n\"Rao; Asha\";555-0101;asha@example.com\r\n"
+                + "\"Chen\r\nLi \"\"CL\"\"\";555-0103;chen@example.com\r\nDev Patel;;dev@example.com";
+        List<String> whole = parse(text);
+        assertEquals(3, whole.size());
+        // The delimiter is taken from the first read, which the importer makes 256 KB long, so splits start after it
+        int header = text.indexOf('\n') + 1;
+        for (int split = header; split < text.length(); split++) {
+            assertEquals(whole, parse(text.substring(0, split), text.substring(split)), "Split at " + split);
+        }
+        List<String> pieces = new ArrayList<>(List.of(text.substring(0, header)));
+        pieces.addAll(List.of(text.substring(header).split("")));
+        assertEquals(whole, parse(pieces.toArray(new String[0])));
+    }
+
+    @Test
+    void unterminatedQuoteFailsWithTheLineItStartedOn() {
+        IOException e = assertThrows(IOException.class,
+                () -> parse("Name,Phone,Email\nAsha Rao,555-0101,\n\"Ben Ode,555-0102\n"));
+        assertTrue(e.getMessage().startsWith("Line 3:"), e.getMessage());
+    }
+
+    /**
+     * Feeds the pieces one after another, as the importer feeds successive reads, and describes each record
+     * as "line|name|phone|email".
+     */
+    static List<String> parse(String... pieces) throws IOException {
+        return parse(new CsvParser(), pieces);
+    }
+
+    static List<String> parse(RecordParser parser, String... pieces) throws IOException {
+        List<String> records = new ArrayList<>();
+        for (String piece : pieces) {
+            parser.feed(CharBuffer.wrap(piece), record -> records.add(describe(record)));
+        }
+        parser.finish(record -> records.add(describe(record)));
+        return records;
+    }
+
+    private static String describe(ContactRecord record) {
+        return record.line + "|" + blank(record.name) + "|" + blank(record.phone) + "|" + blank(record.email);
+    }
+
+    private static String blank(String value) {
+        return value != null ? value : "";
+    }
+}
@@ -0,0 +1,51 @@
+package com.contactbook.io;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.List;
+
+import static com.contactbook.io.CsvParserTest.parse;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Folded lines, escapes, the N fallback and cards split across the buffers the importer feeds.
+ */
+class VCardParserTest {
+
+    private static final String CARDS = "\uFEFFBEGIN:VCARD\r\n"
+            + "VERSION:3.0\r\n"
+            + "FN:Asha Rao\\, MD\r\n"
+            + "TEL;TYPE=CELL:555-0101\r\n"
+            + "TEL:555-0199\r\n"
+            + "EMAIL;TYPE=INTERNET:asha@exa\r\n"
+            + " mple.com\r\n"
+            + "END:VCARD\r\n"
+            + "BEGIN:VCARD\r\n"
+            + "VERSION:2.1\r\n"
+            + "N;CHARSET=UTF-8;ENCODING=QUOTED-PRINTABLE:Ode;Beno=C3=AEt;;;\r\n"
+            + "item1.EMAIL:ben@example.com\r\n"
+            + "PHOTO;ENCODING=b:AAAA\r\n"
+            + "END:VCARD\r\n";
+
+    @Test
+    void readsFoldedEscapedAndGroupedProperties() throws IOException {
+        assertEquals(List.of(
+                "1|Asha Rao, MD|555-0101|asha@example.com",
+                "9|Benoît Ode||ben@example.com"), parse(new VCardParser(), CARDS));
+    }
+
+    @Test
+    void lfLineEndingsGiveTheSameCards() throws IOException {
+        assertEquals(parse(new VCardParser(), CARDS), parse(new VCardParser(), CARDS.replace("\r\n", "\n")));
+    }
+
+    @Test
+    void cardsSplitAcrossBuffersAreReadWhole() throws IOException {
+        List<String> whole = parse(new VCardParser(), CARDS);
+        for (int split = 1; split < CARDS.length(); split++) {
+            assertEquals(whole, parse(new VCardParser(), CARDS.substring(0, split), CARDS.substring(split)),
+                    "Split at " + split);
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package com.contactbook.server;
+
+import com.contactbook.database.FileContactRepository;
+import com.contactbook.model.Contact;
+import com.contactbook.service.ContactService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Drives a ContactServer on a free port with java.net.http.HttpClient, over a FileContactRepository in a
+ * temporary directory.
+ */
+class ContactServerTest {
+
+    private static final Pattern ID = Pattern.compile("\"id\":(\\d+)");
+
+    @TempDir
+    Path directory;
+
+    private FileContactRepository repository;
+    private ContactService service;
+    private ContactServer server;
+    private final HttpClient client = HttpClient.newHttpClient();
+
+    @BeforeEach
+    void startServer() throws IOException {
+        repository = new FileContactRepository(directory);
+        service = new ContactService(repository, true, false);
+        server = new ContactServer(service, new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 8);
+        server.start();
+    }
+
+    @AfterEach
+    void stopServer() {
+        client.close();
+        server.stop();
+        service.shutdown();
+    }
+
+    @Test
+    void addGetUpdateAndDelete() throws Exception {
+        HttpResponse<String> created = send("POST", "/contacts", "{\"name\": \"Asha Rao\", \"phone\": \"555-0101\", \"email\": \"asha@example.com\"}");
+        assertEquals(201, created.statusCode());
+        Map<String, String> contact = Json.parseObject(created.body());
+        String id = contact.get("id");
+        assertEquals("/contacts/" + id, created.headers().firstValue("Location").orElse(null));
+        assertEquals("Asha Rao", contact.get("name"));
+
+        HttpResponse<String> fetched = send("GET", "/contacts/" + id, null);
+        assertEquals(200, fetched.statusCode());
+        assertEquals("asha@example.com", Json.parseObject(fetched.body()).get("email"));
+        String etag = fetched.headers().firstValue("ETag").orElseThrow();
+        assertEquals(304, send("GET", "/contacts/" + id, null, "If-None-Match", etag).statusCode());
+
+        HttpResponse<String> updated = send("PUT", "/contacts/" + id, "{\"name\": \"Asha R. Rao\", \"phone\": \"555-0101\", \"email\": \"asha@example.com\"}");
+        assertEquals(200, updated.statusCode());
+        assertEquals("Asha R. Rao", Json.parseObject(updated.body()).get("name"));
+        assertEquals("Asha R. Rao", service.getContact(Integer.parseInt(id)).getName());
+
+        assertEquals(204, send("DELETE", "/contacts/" + id, null).statusCode());
+        assertEquals(404, send("GET", "/contacts/" + id, null).statusCode());
+        assertEquals(0, service.getContactCount());
+    }
+
+    @Test
+    void pagesThroughTheContacts() throws Exception {
+        for (int i = 0; i < 25; i++) {
+            service.addContact(String.format("Contact %02d", 24 - i), "555-" + i, "c" + i + "@example.com");
+        }
+        HttpResponse<String> page = send("GET", "/contacts?offset=20&limit=10", null);
+        assertEquals(200, page.statusCode());
+        assertTrue(page.body().startsWith("{\"total\":25,\"offset\":20,\"limit\":10,"), page.body());
+        assertEquals(5, count(ID.matcher(page.body())));
+
+        HttpResponse<String> sorted = send("GET", "/contacts?sort=name&offset=0&limit=3", null);
+        assertEquals(200, sorted.statusCode());
+        int first = sorted.body().indexOf("Contact 00");
+        int second = sorted.body().indexOf("Contact 01");
+        assertTrue(first > 0 && second > first, sorted.body());
+        assertEquals(3, count(ID.matcher(sorted.body())));
+
+        String etag = page.headers().firstValue("ETag").orElseThrow();
+        assertEquals(304, send("GET", "/contacts?offset=20&limit=10", null, "If-None-Match", etag).statusCode());
+        service.addContact("One more", "555-99", "more@example.com");
+        assertEquals(200, send("GET", "/contacts?offset=20&limit=10", null, "If-None-Match", etag).statusCode());
+    }
+
+    @Test
+    void rejectsBadRequests() throws Exception {
+        assertEquals(400, send("POST", "/contacts", "{\"name\": ").statusCode());
+        assertEquals(400, send("POST", "/contacts", "[\"Asha\"]").statusCode());
+        assertEquals(400, send("POST", "/contacts", "{\"phone\": \"555\"}").statusCode());
+        assertEquals(400, send("GET", "/contacts?limit=lots", null).statusCode());
+        assertEquals(400, send("GET", "/contacts?sort=phone", null).statusCode());
+        assertEquals(400, send("GET", "/contacts/search", null).statusCode());
+        assertEquals(405, send("PATCH", "/contacts", "{}").statusCode());
+    }
+
+    @Test
+    void reportsMissingContacts() throws Exception {
+        assertEquals(404, send("GET", "/contacts/12345", null).statusCode());
+        assertEquals(404, send("PUT", "/contacts/12345", "{\"name\": \"Nobody\"}").statusCode());
+        assertEquals(404, send("DELETE", "/contacts/12345", null).statusCode());
+        assertEquals(404, send("GET", "/contacts/not-a-number", null).statusCode());
+    }
+
+    @Test
+    void reportsVersionConflicts() throws Exception {
+        Contact added = service.addContact("Asha Rao", "555-0101", "asha@example.com");
+        String path = "/contacts/" + added.getId();
+        String stale = send("GET", path, null).headers().firstValue("ETag").orElseThrow();
+
+        // Another client renames the contact behind the service's back
+        Contact theirs = new Contact(added.getId(), "Asha Menon", added.getPhone(), added.getEmail(), added.getVersion() + 1);
+        assertEquals(1, repository.updateContactIfVersion(theirs, added.getVersion()));
+
+        // A change to another field is merged with theirs
+        HttpResponse<String> merged = send("PUT", path, "{\"name\": \"Asha Rao\", \"phone\": \"555-0199\", \"email\": \"asha@example.com\"}");
+        assertEquals(200, merged.statusCode());
+        assertEquals("Asha Menon", Json.parseObject(merged.body()).get("name"));
+        assertEquals("555-0199", Json.parseObject(merged.body()).get("phone"));
+
+        // A change to the same field is a conflict, and so is an update of a version that is gone
+        assertEquals(1, repository.updateContactIfVersion(
+                new Contact(added.getId(), "Asha M.", "555-0199", added.getEmail(), 0), service.getContact(added.getId()).getVersion()));
+        HttpResponse<String> conflict = send("PUT", path, "{\"name\": \"Asha Rao-Menon\", \"phone\": \"555-0199\", \"email\": \"asha@example.com\"}");
+        assertEquals(409, conflict.statusCode());
+        assertEquals("Asha M.", service.getContact(added.getId()).getName());
+        assertEquals(412, send("PUT", path, "{\"name\": \"Asha\"}", "If-Match", stale).statusCode());
+    }
+
+    private HttpResponse<String> send(String method, String path, String body, String... headers) throws Exception {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + server.getPort() + path))
+                .method(method, body != null ? HttpRequest.BodyPublishers.ofString(body) : HttpRequest.BodyPublishers.noBody());
+        for (int i = 0; i < headers.length; i += 2) {
+            request.header(headers[i], headers[i + 1]);
+        }
+        return client.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private static int count(Matcher matcher) {
+        int count = 0;
+        while (matcher.find()) {
+            count++;
+        }
+        return count;
+    }
+}
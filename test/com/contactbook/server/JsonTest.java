@@ -0,0 +1,56 @@
+package com.contactbook.server;
+
+import com.contactbook.model.Contact;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class JsonTest {
+
+    @Test
+    void writtenContactParsesBack() throws IOException {
+        Contact contact = new Contact(42, "Zoë \"Zed\" O'Neil\\", "555\t0101", "line\nbreak\u2028@example.com", 7);
+        StringWriter out = new StringWriter();
+        Json.writeContact(out, contact);
+        Map<String, String> members = Json.parseObject(out.toString());
+        assertEquals("42", members.get("id"));
+        assertEquals(contact.getName(), members.get("name"));
+        assertEquals(contact.getPhone(), members.get("phone"));
+        assertEquals(contact.getEmail(), members.get("email"));
+        assertEquals("7", members.get("version"));
+        assertTrue(out.toString().contains("\\u2028"), "U+2028 must be escaped for JavaScript clients");
+    }
+
+    @Test
+    void nullIsWrittenAsLiteral() throws IOException {
+        StringWriter out = new StringWriter();
+        Json.writeString(out, null);
+        assertEquals("null", out.toString());
+    }
+
+    @Test
+    void parsesScalarsAndEscapes() {
+        Map<String, String> members = Json.parseObject(" { \"a\" : \"x\\u0041\\/\" , \"b\": -1.5e3, \"c\": true, \"d\": null } ");
+        assertEquals("xA/", members.get("a"));
+        assertEquals("-1.5e3", members.get("b"));
+        assertEquals("true", members.get("c"));
+        assertTrue(members.containsKey("d"));
+        assertNull(members.get("d"));
+        assertTrue(Json.parseObject("{}").isEmpty());
+    }
+
+    @Test
+    void rejectsWhatIsNotAFlatObject() {
+        for (String text : new String[]{"", "[]", "{\"a\": {}}", "{\"a\": [1]}", "{\"a\": 1", "{\"a\" 1}", "{\"a\": 1} x",
+                "{\"a\": nope}", "{\"a\": \"\\q\"}", "{\"a\": \"\\u12\"}", "{\"a\": \"open}"}) {
+            assertThrows(IllegalArgumentException.class, () -> Json.parseObject(text), text);
+        }
+    }
+}
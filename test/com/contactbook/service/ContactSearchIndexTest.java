@@ -0,0 +1,128 @@
+package com.contactbook.service;
+
+import com.contactbook.model.Contact;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * ContactSearchIndex: prefix matches on name words and email domains, substring matches on names, email local
+ * parts and phone digits, and the index staying in step with updates and deletes. Each query is also run
+ * through ContactSearchIndex.Scan, which must give the same answer without an index.
+ */
+class ContactSearchIndexTest {
+
+    private final ContactSearchIndex index = new ContactSearchIndex();
+    private final Map<Integer, Contact> contacts = new HashMap<>();
+
+    @BeforeEach
+    void addContacts() {
+        add(new Contact(1, "Asha Rao", "(555) 123-4567", "asha.rao@example.com"));
+        add(new Contact(2, "Bala Krishnan", "555.987.6543", "bala@mail.test"));
+        add(new Contact(3, "Krishna Das", "5551110000", "kd@example.com"));
+    }
+
+    @Test
+    void findsNameWordsAndDomainsByPrefix() {
+        assertEquals(List.of(3, 2), search("kri")); // Krishnan contains it, after the prefix match
+        assertEquals(List.of(1), search("RAO"));
+        assertEquals(List.of(1, 3), sorted(search("exam"))); // One term, so in no particular order
+        assertEquals(List.of(2), search("ma")); // Short queries match prefixes only
+        assertEquals(List.of(), search("sh"));
+    }
+
+    @Test
+    void findsSubstringsOfNamesAndEmailLocalParts() {
+        assertEquals(List.of(3, 2), search("krishn")); // The prefix match comes first
+        assertEquals(List.of(1), search("sha r"));
+        assertEquals(List.of(1), search("a.ra"));
+        assertEquals(List.of(), search("ample.c")); // Domains are matched by prefix only
+    }
+
+    @Test
+    void findsPhoneNumbersByTheirDigits() {
+        assertEquals(List.of(1), search("1234"));
+        assertEquals(List.of(1), search("123-45"));
+        assertEquals(List.of(2), search("(987) 65"));
+        assertEquals(List.of(1, 2, 3), sorted(search("555")));
+    }
+
+    @Test
+    void stopsAtTheLimit() {
+        assertEquals(1, index.search("555", 1, contacts::get).size());
+        assertEquals(List.of(), index.search("555", 0, contacts::get));
+        assertEquals(List.of(), index.search("  ", 10, contacts::get));
+    }
+
+    @Test
+    void followsUpdates() {
+        Contact previous = contacts.get(1);
+        Contact renamed = new Contact(1, "Asha Menon", "555-000-1111", "asha@corp.test");
+        contacts.put(1, renamed);
+        index.replace(previous, renamed);
+
+        assertEquals(List.of(), search("rao"));
+        assertEquals(List.of(), search("exam").stream().filter(id -> id == 1).toList());
+        assertEquals(List.of(), search("4567"));
+        assertEquals(List.of(1), search("menon"));
+        assertEquals(List.of(1), search("corp"));
+        assertEquals(List.of(1), search("0001111"));
+        assertEquals(List.of(1), search("sha me"));
+    }
+
+    @Test
+    void followsDeletes() {
+        index.remove(contacts.remove(3));
+
+        assertEquals(List.of(2), search("krishn"));
+        assertEquals(List.of(1), search("exam"));
+        assertEquals(List.of(), search("1110000"));
+
+        index.remove(contacts.remove(2));
+        index.remove(contacts.remove(1));
+        assertEquals(List.of(), search("555"));
+    }
+
+    @Test
+    void mergedIndexesAnswerLikeOne() {
+        ContactSearchIndex merged = new ContactSearchIndex();
+        ContactSearchIndex shard = new ContactSearchIndex();
+        merged.add(contacts.get(1));
+        merged.add(contacts.get(2));
+        shard.add(contacts.get(3));
+        merged.addAll(shard);
+
+        for (String query : List.of("kri", "krishn", "exam", "555", "a.ra")) {
+            assertEquals(sorted(search(query)), sorted(ids(merged.search(query, 10, contacts::get))), query);
+        }
+    }
+
+    private void add(Contact contact) {
+        contacts.put(contact.getId(), contact);
+        index.add(contact);
+    }
+
+    /**
+     * @return The IDs of the matches, after checking that a scan without the index finds the same ones.
+     */
+    private List<Integer> search(String query) {
+        List<Integer> found = ids(index.search(query, 10, contacts::get));
+        ContactSearchIndex.Scan scan = new ContactSearchIndex.Scan(query, 10);
+        contacts.values().forEach(scan);
+        assertEquals(sorted(found), sorted(ids(scan.results())), "Scan of " + query);
+        return found;
+    }
+
+    private static List<Integer> ids(List<Contact> contacts) {
+        return contacts.stream().map(Contact::getId).toList();
+    }
+
+    private static List<Integer> sorted(List<Integer> ids) {
+        return ids.stream().sorted().toList();
+    }
+}
@@ -0,0 +1,88 @@
+package com.contactbook.service;
+
+import com.contactbook.database.FileContactRepository;
+import com.contactbook.model.Contact;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Sorted pages in cache mode, which are read from the repository in order instead of sorted in memory.
+ */
+class ContactServiceCacheModeTest {
+
+    @TempDir
+    Path directory;
+
+    private ContactService service;
+
+    @BeforeEach
+    void createService() {
+        FileContactRepository repository = new FileContactRepository(directory);
+        String[][] rows = {
+                {"delta", "d@example.com"},
+                {"Alpha", null},
+                {"charlie", "c@example.com"},
+                {"Bravo", ""},
+                {"Écho", "a@example.com"},
+        };
+        for (String[] row : rows) {
+            assertTrue(repository.addContact(new Contact(row[0], "555-0100", row[1])));
+        }
+        service = new ContactService(repository, true, false, 1024 * 1024);
+    }
+
+    @AfterEach
+    void shutdown() {
+        service.shutdown();
+    }
+
+    @Test
+    void pagesByNameIgnoreCaseAndAccents() {
+        assertEquals(List.of("Alpha", "Bravo", "charlie", "delta", "Écho"), names(ContactSortKey.NAME, 2));
+    }
+
+    @Test
+    void contactsWithoutAnEmailComeLastInIdOrder() {
+        assertEquals(List.of("Écho", "charlie", "delta", "Alpha", "Bravo"), names(ContactSortKey.EMAIL, 2));
+        assertEquals(List.of("Bravo"), names(service.getContacts(ContactSortKey.EMAIL, 4, 10)));
+        assertEquals(List.of(), service.getContacts(ContactSortKey.EMAIL, 5, 10));
+    }
+
+    @Test
+    void sortedPagesFollowEdits() {
+        Contact alpha = service.getContacts(ContactSortKey.NAME, 0, 1).get(0);
+        assertTrue(service.updateContact(alpha.getId(), "Zulu", alpha.getPhone(), alpha.getEmail()));
+        assertEquals(List.of("Bravo", "charlie", "delta", "Écho", "Zulu"), names(ContactSortKey.NAME, 3));
+    }
+
+    /**
+     * Reads the whole order a page at a time.
+     */
+    private List<String> names(ContactSortKey sortKey, int pageSize) {
+        List<String> names = new ArrayList<>();
+        for (int offset = 0; ; offset += pageSize) {
+            List<Contact> page = service.getContacts(sortKey, offset, pageSize);
+            names.addAll(names(page));
+            if (page.size() < pageSize) {
+                return names;
+            }
+        }
+    }
+
+    private static List<String> names(List<Contact> contacts) {
+        List<String> names = new ArrayList<>();
+        for (Contact contact : contacts) {
+            names.add(contact.getName());
+        }
+        return names;
+    }
+}
@@ -0,0 +1,267 @@
+package com.contactbook.service;
+
+import com.contactbook.database.FileContactRepository;
+import com.contactbook.model.Contact;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * Runs adds, updates and deletes on a ContactService from several threads while other threads reload the
+ * contacts and take snapshots, over a FileContactRepository in a temporary directory.
+ *
+ * Each writer only touches the contacts it added itself and remembers the name it last gave each one. At the
+ * end the service, and a second service reading the same files, must hold exactly those contacts and names:
+ * a reload may not drop a write that was accepted, and no update may overwrite another.
+ */
+class ContactServiceStressTest {
+
+    private static final int WRITERS = 4;
+    private static final int OPERATIONS = 1_500; // Per writer
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void concurrentWritesReloadsAndSnapshotsLoseNothing() throws Exception {
+        ContactService service = new ContactService(new FileContactRepository(directory), true, false);
+        List<Map<Integer, String>> expected = new ArrayList<>();
+        ConcurrentLinkedQueue<Throwable> failures = new ConcurrentLinkedQueue<>();
+        AtomicBoolean writing = new AtomicBoolean(true);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> writers = new ArrayList<>();
+        List<Thread> others = new ArrayList<>();
+        try {
+            for (int w = 0; w < WRITERS; w++) {
+                Map<Integer, String> mine = new HashMap<>();
+                expected.add(mine);
+                int writer = w;
+                writers.add(Thread.ofPlatform().start(() -> guard(failures, () -> {
+                    start.await();
+                    write(service, writer, mine);
+                })));
+            }
+            others.add(Thread.ofPlatform().start(() -> guard(failures, () -> {
+                start.await();
+                while (writing.get()) {
+                    assertTrue(service.reloadContacts() >= 0, "reload failed");
+                    Thread.sleep(5);
+                }
+            })));
+            others.add(Thread.ofPlatform().start(() -> guard(failures, () -> {
+                start.await();
+                while (writing.get()) {
+                    List<Contact> snapshot = service.getAllContacts();
+                    List<String> before = contentsOf(snapshot);
+                    Thread.sleep(1);
+                    assertEquals(before, contentsOf(snapshot), "a snapshot changed after it was taken");
+                }
+            })));
+            start.countDown();
+            for (Thread thread : writers) {
+                thread.join();
+            }
+        } finally {
+            writing.set(false);
+            for (Thread thread : others) {
+                thread.join();
+            }
+        }
+        if (!failures.isEmpty()) {
+            service.shutdown();
+            fail(failures.peek());
+        }
+
+        Map<Integer, String> live = new HashMap<>();
+        expected.forEach(live::putAll);
+        assertMatches(live, service);
+        service.shutdown();
+
+        // Everything accepted must also have reached the files
+        ContactService reopened = new ContactService(new FileContactRepository(directory), true, false);
+        try {
+            assertMatches(live, reopened);
+        } finally {
+            reopened.shutdown();
+        }
+    }
+
+    @Test
+    void writesDoNotWaitForALoadReadingTheRepository() throws Exception {
+        AtomicBoolean hold = new AtomicBoolean();
+        CountDownLatch reading = new CountDownLatch(1);
+        CountDownLatch resume = new CountDownLatch(1);
+        FileContactRepository repository = new FileContactRepository(directory) {
+            @Override
+            public long forEachContact(Consumer<Contact> action) {
+                return super.forEachContact(contact -> {
+                    action.accept(contact);
+                    if (hold.get()) {
+                        reading.countDown();
+                        try {
+                            resume.await(); // Holds the load in the middle of its scan
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                });
+            }
+        };
+        Contact read = new Contact("Asha Rao", "555-0101", "asha@example.com");
+        Contact unread = new Contact("Ben Okafor", "555-0102", "ben@example.com");
+        Contact deleted = new Contact("Chen Wei", "555-0103", "chen@example.com");
+        for (Contact contact : List.of(read, unread, deleted)) {
+            assertTrue(repository.addContact(contact));
+        }
+        ContactService service = new ContactService(repository, false, false);
+        try {
+            service.setLoadShards(1);
+            assertEquals(3, service.reloadContacts());
+            hold.set(true);
+            CompletableFuture<Integer> load = service.reloadContactsAsync();
+            assertTrue(reading.await(10, TimeUnit.SECONDS), "the load never started reading");
+
+            // Each of these times out if it waits for the load, which has read the first contact only
+            assertTrue(service.updateContactAsync(read.getId(), "Asha Menon", read.getPhone(), read.getEmail())
+                    .get(10, TimeUnit.SECONDS));
+            assertTrue(service.updateContactAsync(unread.getId(), "Ben O.", unread.getPhone(), unread.getEmail())
+                    .get(10, TimeUnit.SECONDS));
+            assertTrue(service.deleteContactAsync(deleted.getId()).get(10, TimeUnit.SECONDS));
+            Contact added = service.addContactAsync("Dara Singh", "555-0104", "dara@example.com").get(10, TimeUnit.SECONDS);
+            assertNotNull(added);
+            resume.countDown();
+            assertEquals(3, load.get(10, TimeUnit.SECONDS));
+
+            // The loaded store has every change, whether the scan read the row before or after it
+            Map<Integer, String> live = Map.of(read.getId(), "Asha Menon", unread.getId(), "Ben O.",
+                    added.getId(), "Dara Singh");
+            assertMatches(live, service);
+        } finally {
+            resume.countDown();
+            service.shutdown();
+        }
+    }
+
+    @Test
+    void changesReachListenersBeforeTheWriteReturns() throws Exception {
+        ContactService service = new ContactService(new FileContactRepository(directory), true, false);
+        Set<Integer> announced = ConcurrentHashMap.newKeySet();
+        // A slow first listener keeps one writer busy delivering while the others finish their writes
+        service.addChangeListener(event -> Thread.yield());
+        service.addChangeListener(event -> {
+            if (event.getType() == ContactChangeEvent.Type.ADDED) {
+                announced.add(event.getContact().getId());
+            }
+        });
+        ConcurrentLinkedQueue<Throwable> failures = new ConcurrentLinkedQueue<>();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> writers = new ArrayList<>();
+        try {
+            for (int w = 0; w < WRITERS; w++) {
+                int writer = w;
+                writers.add(Thread.ofPlatform().start(() -> guard(failures, () -> {
+                    start.await();
+                    for (int i = 0; i < OPERATIONS; i++) {
+                        long before = service.getChangeCount();
+                        Contact added = service.addContact("Writer " + writer + " contact " + i, "", "");
+                        assertNotNull(added, "add failed");
+                        // What a REST client's ETag is built from must already show the write
+                        assertTrue(service.getChangeCount() > before, "the change count lags a finished add");
+                        assertTrue(announced.contains(added.getId()), "contact " + added.getId() + " was not announced yet");
+                    }
+                })));
+            }
+            start.countDown();
+            for (Thread thread : writers) {
+                thread.join();
+            }
+            if (!failures.isEmpty()) {
+                fail(failures.peek());
+            }
+        } finally {
+            service.shutdown();
+        }
+    }
+
+    private static void write(ContactService service, int writer, Map<Integer, String> mine) {
+        Random random = new Random(writer);
+        List<Integer> ids = new ArrayList<>();
+        for (int i = 0; i < OPERATIONS; i++) {
+            int choice = random.nextInt(10);
+            if (ids.isEmpty() || choice < 4) {
+                String name = "Writer " + writer + " contact " + i;
+                Contact added = service.addContact(name, "555-" + writer + "-" + i, "w" + writer + "c" + i + "@example.com");
+                assertNotNull(added, "add failed");
+                ids.add(added.getId());
+                mine.put(added.getId(), name);
+            } else if (choice < 8) {
+                int id = ids.get(random.nextInt(ids.size()));
+                Contact current = service.getContact(id);
+                assertNotNull(current, "own contact " + id + " vanished");
+                assertEquals(mine.get(id), current.getName(), "own contact " + id + " has a name this writer never gave it");
+                String name = "Writer " + writer + " update " + i;
+                assertTrue(service.updateContact(id, name, current.getPhone(), current.getEmail()), "update of " + id + " failed");
+                mine.put(id, name);
+            } else {
+                int id = ids.remove(random.nextInt(ids.size()));
+                assertTrue(service.deleteContact(id), "delete of " + id + " failed");
+                mine.remove(id);
+            }
+        }
+    }
+
+    /**
+     * Checks that the service holds exactly the given contacts, and that its rows and IDs agree.
+     */
+    private static void assertMatches(Map<Integer, String> live, ContactService service) {
+        assertEquals(live.size(), service.getContactCount(), "count must equal the number of live IDs");
+        for (Map.Entry<Integer, String> entry : live.entrySet()) {
+            Contact contact = service.getContact(entry.getKey());
+            assertNotNull(contact, "contact " + entry.getKey() + " was lost");
+            assertEquals(entry.getValue(), contact.getName(), "update of contact " + entry.getKey() + " was lost");
+            int row = service.getRowOf(entry.getKey());
+            assertEquals(entry.getKey().intValue(), service.getContactAt(row).getId(), "getRowOf and getContactAt disagree");
+        }
+        Set<Integer> seen = new HashSet<>();
+        for (Contact contact : service.getAllContacts()) {
+            assertTrue(seen.add(contact.getId()), "contact " + contact.getId() + " shows up twice");
+        }
+        assertEquals(live.keySet(), seen);
+    }
+
+    private static List<String> contentsOf(List<Contact> contacts) {
+        List<String> contents = new ArrayList<>(contacts.size());
+        for (Contact contact : contacts) {
+            contents.add(contact.getId() + "=" + contact.getName());
+        }
+        return contents;
+    }
+
+    private static void guard(ConcurrentLinkedQueue<Throwable> failures, ContactStoreStressTest.ThrowingRunnable body) {
+        try {
+            body.run();
+        } catch (Throwable t) {
+            failures.add(t);
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.contactbook.service;
+
+import com.contactbook.database.FileContactRepository;
+import com.contactbook.model.Contact;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Undo and redo against changes another client made in the repository that this service has not synced yet.
+ */
+class ContactServiceUndoTest {
+
+    @TempDir
+    Path directory;
+
+    private FileContactRepository repository;
+    private ContactService service;
+
+    @BeforeEach
+    void createService() {
+        repository = new FileContactRepository(directory);
+        service = new ContactService(repository, true, false);
+    }
+
+    @AfterEach
+    void shutdown() {
+        service.shutdown();
+    }
+
+    @Test
+    void undoOfAnAddDeletesTheContact() {
+        Contact added = service.addContact("Asha Rao", "555-0101", "asha@example.com");
+        assertEquals(UpdateResult.Status.UPDATED, service.undo().getStatus());
+        assertNull(service.getContact(added.getId()));
+        assertNull(repository.getContact(added.getId()));
+    }
+
+    @Test
+    void undoOfAnAddKeepsAContactChangedElsewhere() {
+        Contact added = service.addContact("Asha Rao", "555-0101", "asha@example.com");
+        Contact theirs = new Contact(added.getId(), "Asha Menon", added.getPhone(), added.getEmail(), added.getVersion() + 1);
+        assertEquals(1, repository.updateContactIfVersion(theirs, added.getVersion()));
+
+        // Memory still has the version undo expects; the repository must refuse the delete
+        UpdateResult result = service.undo();
+        assertEquals(UpdateResult.Status.CONFLICT, result.getStatus());
+        assertEquals("Asha Menon", result.getContact().getName());
+        assertNotNull(repository.getContact(added.getId()));
+        assertEquals("Asha Menon", service.getContact(added.getId()).getName());
+    }
+
+    @Test
+    void undoOfAnAddOfAContactDeletedElsewhere() {
+        Contact added = service.addContact("Asha Rao", "555-0101", "asha@example.com");
+        assertEquals(1, repository.deleteContactIfVersion(added.getId(), added.getVersion()));
+        assertEquals(UpdateResult.Status.NOT_FOUND, service.undo().getStatus());
+        assertNull(service.getContact(added.getId()));
+    }
+
+    @Test
+    void changingTheReturnedContactDoesNotChangeWhatUndoRestores() {
+        Contact added = service.addContact("Asha Rao", "555-0101", "asha@example.com");
+        added.setName("Someone Else");
+        added.setVersion(added.getVersion() + 5); // Undo would then expect a version the contact never had
+
+        assertEquals(UpdateResult.Status.UPDATED, service.undo().getStatus());
+        assertNull(service.getContact(added.getId()));
+        assertNull(repository.getContact(added.getId()));
+        assertEquals(UpdateResult.Status.UPDATED, service.redo().getStatus());
+        assertEquals("Asha Rao", service.getContact(added.getId()).getName());
+    }
+}
@@ -0,0 +1,173 @@
+package com.contactbook.service;
+
+import com.contactbook.database.FileContactRepository;
+import com.contactbook.model.Contact;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Optimistic updates against changes another client made in the repository that this service has not synced yet:
+ * the three-way merge, conflicts, contacts deleted elsewhere and writers that keep getting in first.
+ */
+class ContactServiceUpdateTest {
+
+    @TempDir
+    Path directory;
+
+    private RacingRepository repository;
+    private ContactService service;
+    private Contact asha; // As this service's editor loaded it
+
+    @BeforeEach
+    void createService() {
+        repository = new RacingRepository(directory);
+        service = new ContactService(repository, true, false);
+        asha = service.addContact("Asha Rao", "555-0101", "asha@example.com");
+    }
+
+    @AfterEach
+    void shutdown() {
+        service.shutdown();
+    }
+
+    @Test
+    void editOfOtherFieldsIsMerged() {
+        theyChange(new Contact(asha.getId(), asha.getName(), "555-0199", asha.getEmail()));
+
+        UpdateResult result = service.updateContact(asha, "Asha Menon", asha.getPhone(), asha.getEmail(), true);
+
+        assertEquals(UpdateResult.Status.MERGED, result.getStatus());
+        Contact stored = repository.getContact(asha.getId());
+        assertEquals("Asha Menon", stored.getName());
+        assertEquals("555-0199", stored.getPhone());
+        assertEquals(asha.getVersion() + 2, stored.getVersion());
+        Contact inMemory = service.getContact(asha.getId());
+        assertEquals("Asha Menon", inMemory.getName());
+        assertEquals("555-0199", inMemory.getPhone());
+        assertEquals(stored.getVersion(), inMemory.getVersion());
+    }
+
+    @Test
+    void editOfOtherFieldsIsAConflictWithoutMerge() {
+        theyChange(new Contact(asha.getId(), asha.getName(), "555-0199", asha.getEmail()));
+
+        UpdateResult result = service.updateContact(asha, "Asha Menon", asha.getPhone(), asha.getEmail(), false);
+
+        assertEquals(UpdateResult.Status.CONFLICT, result.getStatus());
+        assertEquals("555-0199", result.getContact().getPhone());
+        assertEquals("Asha Rao", repository.getContact(asha.getId()).getName());
+    }
+
+    @Test
+    void editOfTheSameFieldIsAConflictThatKeepsTheirs() {
+        theyChange(new Contact(asha.getId(), "Asha R. Menon", asha.getPhone(), asha.getEmail()));
+
+        UpdateResult result = service.updateContact(asha, "Asha Menon", asha.getPhone(), asha.getEmail(), true);
+
+        assertEquals(UpdateResult.Status.CONFLICT, result.getStatus());
+        assertEquals("Asha R. Menon", result.getContact().getName());
+        assertEquals(asha.getVersion() + 1, result.getContact().getVersion());
+        assertEquals("Asha R. Menon", repository.getContact(asha.getId()).getName());
+        assertEquals("Asha R. Menon", service.getContact(asha.getId()).getName());
+
+        // Editing again from the version the conflict reported overwrites theirs
+        UpdateResult retry = service.updateContact(result.getContact(), "Asha Menon", asha.getPhone(), asha.getEmail(), true);
+        assertEquals(UpdateResult.Status.UPDATED, retry.getStatus());
+        assertEquals("Asha Menon", repository.getContact(asha.getId()).getName());
+    }
+
+    @Test
+    void sameEditOnBothSidesIsMergedWithoutAWrite() {
+        theyChange(new Contact(asha.getId(), "Asha Menon", asha.getPhone(), asha.getEmail()));
+
+        UpdateResult result = service.updateContact(asha, "Asha Menon", asha.getPhone(), asha.getEmail(), true);
+
+        assertEquals(UpdateResult.Status.MERGED, result.getStatus());
+        assertEquals(asha.getVersion() + 1, repository.getContact(asha.getId()).getVersion());
+    }
+
+    @Test
+    void editOfAContactDeletedElsewhereIsNotFound() {
+        assertEquals(1, repository.deleteContactIfVersion(asha.getId(), asha.getVersion()));
+
+        UpdateResult result = service.updateContact(asha, "Asha Menon", asha.getPhone(), asha.getEmail(), true);
+
+        assertEquals(UpdateResult.Status.NOT_FOUND, result.getStatus());
+        assertNull(repository.getContact(asha.getId()));
+    }
+
+    @Test
+    void writerThatGetsInFirstOnceIsMergedWith() {
+        repository.racesLeft.set(1);
+
+        UpdateResult result = service.updateContact(asha, "Asha Menon", asha.getPhone(), asha.getEmail(), true);
+
+        assertEquals(UpdateResult.Status.MERGED, result.getStatus());
+        Contact stored = repository.getContact(asha.getId());
+        assertEquals("Asha Menon", stored.getName());
+        assertEquals("Racer 1", stored.getEmail());
+    }
+
+    @Test
+    void writerThatAlwaysGetsInFirstEndsInAConflict() {
+        repository.racesLeft.set(Integer.MAX_VALUE);
+
+        UpdateResult result = service.updateContact(asha, "Asha Menon", asha.getPhone(), asha.getEmail(), true);
+
+        assertEquals(UpdateResult.Status.CONFLICT, result.getStatus());
+        assertEquals("Asha Rao", repository.getContact(asha.getId()).getName());
+    }
+
+    @Test
+    void mergeTakesEachFieldFromTheSideThatChangedIt() {
+        Contact base = new Contact(1, "Asha Rao", "555-0101", "asha@example.com");
+        Contact mine = new Contact(1, "Asha Menon", "555-0101", "asha@example.com");
+        Contact theirs = new Contact(1, "Asha Rao", "555-0199", "");
+
+        Contact merged = ContactService.mergeFields(base, mine, theirs);
+        assertEquals("Asha Menon", merged.getName());
+        assertEquals("555-0199", merged.getPhone());
+        assertEquals("", merged.getEmail());
+
+        assertNull(ContactService.mergeFields(base, mine, new Contact(1, "A. Rao", "555-0101", "asha@example.com")));
+        assertEquals("Asha Menon", ContactService.mergeFields(base, mine, mine).getName());
+    }
+
+    /**
+     * Saves a change as another client would: straight to the repository, unseen by the service.
+     */
+    private void theyChange(Contact contact) {
+        assertEquals(1, repository.updateContactIfVersion(contact, asha.getVersion()));
+    }
+
+    /**
+     * A repository where another writer changes the email of a contact just before each of the next few
+     * version-checked updates, so that update finds a newer version than it expected.
+     */
+    private static final class RacingRepository extends FileContactRepository {
+        final AtomicInteger racesLeft = new AtomicInteger();
+        private int races;
+
+        RacingRepository(Path directory) {
+            super(directory);
+        }
+
+        @Override
+        public int updateContactIfVersion(Contact contact, long expectedVersion) {
+            if (racesLeft.getAndUpdate(n -> Math.max(0, n - 1)) > 0) {
+                Contact current = super.getContact(contact.getId());
+                Contact theirs = new Contact(current.getId(), current.getName(), current.getPhone(), "Racer " + ++races);
+                super.updateContactIfVersion(theirs, current.getVersion());
+            }
+            return super.updateContactIfVersion(contact, expectedVersion);
+        }
+    }
+}
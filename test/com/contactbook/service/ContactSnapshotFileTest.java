@@ -0,0 +1,81 @@
+package com.contactbook.service;
+
+import com.contactbook.model.Contact;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ContactSnapshotFileTest {
+
+    private static final int HEADER_BYTES = 24;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void everySaveIsANewGenerationAndOpenTakesTheNewest() throws IOException {
+        Path file = directory.resolve("contacts.snapshot");
+        Path first = ContactSnapshotFile.write(file, List.of(new Contact(1, "Asha", "555", "asha@example.com", 1)));
+        ContactSnapshotFile mapped = ContactSnapshotFile.open(file);
+        assertEquals(1, mapped.size());
+
+        // The first generation is still mapped; the next save must not need to replace it
+        Path second = ContactSnapshotFile.write(file, List.of(new Contact(1, "Asha", "555", "asha@example.com", 1),
+                new Contact(2, "Ben", null, "ben@example.com", 3)));
+        assertNotEquals(first, second);
+        assertEquals("Asha", mapped.getAt(0).getName());
+        ContactSnapshotFile reopened = ContactSnapshotFile.open(file);
+        assertEquals(second, reopened.getFile());
+        assertEquals(2, reopened.size());
+        assertEquals("Ben", reopened.get(2).getName());
+        assertNull(reopened.get(2).getPhone());
+        assertEquals(1, reopened.rowOf(2));
+        assertFalse(Files.exists(file));
+    }
+
+    @Test
+    void skipsAnUnusableNewestGeneration() throws IOException {
+        Path file = directory.resolve("contacts.snapshot");
+        Path good = ContactSnapshotFile.write(file, List.of(new Contact(7, "Chen", "555", "chen@example.com", 1)));
+        Files.writeString(directory.resolve("contacts.snapshot.99"), "not a snapshot");
+        Files.writeString(directory.resolve("contacts.snapshot.100.tmp"), "half a save");
+        assertEquals(good, ContactSnapshotFile.open(file).getFile());
+    }
+
+    @Test
+    void aDamagedRecordMarksTheSnapshotInsteadOfReturningNull() throws IOException {
+        Path file = directory.resolve("contacts.snapshot");
+        Path written = ContactSnapshotFile.write(file, List.of(new Contact(1, "Asha", "555", "asha@example.com", 1),
+                new Contact(2, "Ben", "556", "ben@example.com", 1)));
+        // Point the second row at the last four bytes of the file, where no record fits
+        try (FileChannel channel = FileChannel.open(written, StandardOpenOption.WRITE, StandardOpenOption.READ)) {
+            ByteBuffer offset = ByteBuffer.allocate(4).putInt((int) channel.size() - 4).flip();
+            channel.write(offset, HEADER_BYTES + 4);
+        }
+        ContactSnapshotFile snapshot = ContactSnapshotFile.open(file);
+        AtomicInteger told = new AtomicInteger();
+        snapshot.setDamageListener(told::incrementAndGet);
+
+        assertEquals("Asha", snapshot.asList().get(0).getName());
+        assertFalse(snapshot.isDamaged());
+        assertThrows(IllegalStateException.class, () -> snapshot.asList().get(1));
+        assertNull(snapshot.getAt(1));
+        assertTrue(snapshot.isDamaged());
+        assertEquals(1, told.get());
+    }
+}
@@ -0,0 +1,163 @@
+package com.contactbook.service;
+
+import com.contactbook.database.FileContactRepository;
+import com.contactbook.model.Contact;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * ContactSortIndex on its own and behind ContactService.getContacts(): paging by name and by email, case and
+ * accent folding, contacts without the field sorting last, and the order following adds, updates and deletes.
+ */
+class ContactSortIndexTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void pagesByName() {
+        ContactSortIndex index = build(ContactSortKey.NAME,
+                new Contact(1, "Chitra Iyer", "", "c@example.com"),
+                new Contact(2, "Asha Rao", "", "z@example.com"),
+                new Contact(3, "Bala Krishnan", "", "a@example.com"),
+                new Contact(4, "Deepa Nair", "", ""));
+
+        assertArrayEquals(new int[]{2, 3}, index.idsAt(0, 2));
+        assertArrayEquals(new int[]{1, 4}, index.idsAt(2, 2));
+        assertArrayEquals(new int[]{4}, index.idsAt(3, 10));
+        assertArrayEquals(new int[0], index.idsAt(4, 2));
+        assertArrayEquals(new int[0], index.idsAt(-1, 2));
+    }
+
+    @Test
+    void pagesByEmailWithBlankEmailsLast() {
+        ContactSortIndex index = build(ContactSortKey.EMAIL,
+                new Contact(1, "Chitra Iyer", "", "   "),
+                new Contact(2, "Asha Rao", "", "z@example.com"),
+                new Contact(3, "Bala Krishnan", "", "a@example.com"),
+                new Contact(4, "Deepa Nair", "", ""),
+                new Contact(5, "Esha Das", "", null));
+
+        assertArrayEquals(new int[]{3, 2, 1, 4, 5}, index.idsAt(0, 5));
+        assertArrayEquals(new int[]{1, 4}, index.idsAt(2, 2));
+    }
+
+    @Test
+    void namesCompareWithoutCaseOrAccents() {
+        ContactSortIndex index = build(ContactSortKey.NAME,
+                new Contact(1, "Eve", "", ""),
+                new Contact(2, "émile", "", ""),
+                new Contact(3, "Zoë", "", ""),
+                new Contact(4, "Émile", "", ""),
+                new Contact(5, "zoe", "", ""),
+                new Contact(6, "Arun", "", ""));
+
+        // Equal names fall back to the ID
+        assertArrayEquals(new int[]{6, 2, 4, 1, 3, 5}, index.idsAt(0, 6));
+    }
+
+    @Test
+    void followsAddsUpdatesAndDeletes() {
+        Contact asha = new Contact(1, "Asha Rao", "", "asha@example.com");
+        Contact bala = new Contact(2, "Bala Krishnan", "", "bala@example.com");
+        ContactSortIndex index = build(ContactSortKey.NAME, asha, bala);
+
+        index.add(new Contact(3, "Aarav Shah", "", ""));
+        assertArrayEquals(new int[]{3, 1, 2}, index.idsAt(0, 10));
+
+        index.replace(asha, new Contact(1, "Zara Rao", "", "asha@example.com"));
+        assertArrayEquals(new int[]{3, 2, 1}, index.idsAt(0, 10));
+
+        index.replace(bala, new Contact(2, "Bala Krishnan", "555-0101", "b@example.com")); // Name unchanged
+        assertArrayEquals(new int[]{3, 2, 1}, index.idsAt(0, 10));
+
+        index.remove(3);
+        index.remove(3); // Gone already
+        assertArrayEquals(new int[]{2, 1}, index.idsAt(0, 10));
+        assertEquals(2, index.size());
+    }
+
+    @Test
+    void staysInOrderThroughManyRandomEdits() {
+        Random random = new Random(7);
+        Map<Integer, Contact> expected = new HashMap<>();
+        for (int id = 1; id <= 2_000; id++) {
+            expected.put(id, new Contact(id, randomName(random), "", ""));
+        }
+        ContactSortIndex index = build(ContactSortKey.NAME, expected.values().toArray(new Contact[0]));
+
+        int nextId = expected.size() + 1;
+        for (int i = 0; i < 5_000; i++) {
+            int id = 1 + random.nextInt(nextId);
+            Contact previous = expected.get(id);
+            if (previous != null && random.nextInt(3) == 0) {
+                index.remove(id);
+                expected.remove(id);
+            } else {
+                Contact contact = new Contact(previous != null ? id : nextId++, randomName(random), "", "");
+                index.replace(previous, contact);
+                expected.put(contact.getId(), contact);
+            }
+        }
+
+        int[] ids = expected.values().stream()
+                .sorted(Comparator.comparing(Contact::getName).thenComparingInt(Contact::getId))
+                .mapToInt(Contact::getId).toArray();
+        assertEquals(ids.length, index.size());
+        assertArrayEquals(ids, index.idsAt(0, ids.length));
+        for (int offset = 0; offset < ids.length; offset += 97) {
+            assertArrayEquals(Arrays.copyOfRange(ids, offset, Math.min(ids.length, offset + 25)), index.idsAt(offset, 25));
+        }
+    }
+
+    @Test
+    void serviceKeepsItsOrderThroughEdits() {
+        ContactService service = new ContactService(new FileContactRepository(directory), true, false);
+        try {
+            service.addContact("Chitra Iyer", "555-0103", "chitra@example.com");
+            Contact asha = service.addContact("Asha Rao", "555-0101", "");
+            Contact bala = service.addContact("Bala Krishnan", "555-0102", "bala@example.com");
+            assertEquals(List.of("Asha Rao", "Bala Krishnan"), names(service.getContacts(ContactSortKey.NAME, 0, 2)));
+            assertEquals(List.of("Bala Krishnan", "Chitra Iyer", "Asha Rao"),
+                    names(service.getContacts(ContactSortKey.EMAIL, 0, 10)));
+
+            service.updateContact(asha.getId(), "Zara Rao", asha.getPhone(), "aaa@example.com");
+            service.deleteContact(bala.getId());
+
+            assertEquals(List.of("Chitra Iyer", "Zara Rao"), names(service.getContacts(ContactSortKey.NAME, 0, 10)));
+            assertEquals(List.of("Zara Rao", "Chitra Iyer"), names(service.getContacts(ContactSortKey.EMAIL, 0, 10)));
+            assertEquals(List.of("Zara Rao"), names(service.getContacts(ContactSortKey.NAME, 1, 10)));
+        } finally {
+            service.shutdown();
+        }
+    }
+
+    private static ContactSortIndex build(ContactSortKey sortKey, Contact... contacts) {
+        ContactSortIndex index = new ContactSortIndex(sortKey);
+        index.build(() -> true, () -> new ArrayList<>(List.of(contacts)));
+        return index;
+    }
+
+    /**
+     * Lowercase letters and digits only, so plain string order is also the collation order.
+     */
+    private static String randomName(Random random) {
+        return "name" + random.nextInt(500);
+    }
+
+    private static List<String> names(List<Contact> contacts) {
+        return contacts.stream().map(Contact::getName).toList();
+    }
+}
@@ -0,0 +1,200 @@
+package com.contactbook.service;
+
+import com.contactbook.model.Contact;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * Hammers one ContactStore with writers and readers at once, then checks that nothing was lost or mixed up.
+ *
+ * Every writer owns its own range of IDs and remembers what it last wrote to each of them, so at the end the
+ * store must hold exactly those contacts, with exactly those names. Readers meanwhile take snapshots and
+ * check that each one is consistent in itself and never changes afterwards.
+ * Change listeners must be able to read and write the store without holding up anyone.
+ */
+class ContactStoreStressTest {
+
+    private static final int WRITERS = 4;
+    private static final int READERS = 2;
+    private static final int OPERATIONS = 20_000; // Per writer
+    private static final int ID_RANGE = 1_000_000; // Writer w owns the IDs from w * ID_RANGE + 1 on
+
+    @ParameterizedTest(name = "packed = {0}")
+    @ValueSource(booleans = {false, true})
+    void concurrentWritersKeepTheStoreConsistent(boolean packed) throws Exception {
+        ContactStore store = new ContactStore(16, packed);
+        List<Map<Integer, String>> expected = new ArrayList<>();
+        ConcurrentLinkedQueue<Throwable> failures = new ConcurrentLinkedQueue<>();
+        AtomicBoolean writing = new AtomicBoolean(true);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> writers = new ArrayList<>();
+        List<Thread> readers = new ArrayList<>();
+
+        for (int w = 0; w < WRITERS; w++) {
+            Map<Integer, String> mine = new HashMap<>();
+            expected.add(mine);
+            int writer = w;
+            writers.add(Thread.ofPlatform().start(() -> guard(failures, () -> {
+                start.await();
+                write(store, writer, mine);
+            })));
+        }
+        for (int r = 0; r < READERS; r++) {
+            readers.add(Thread.ofPlatform().start(() -> guard(failures, () -> {
+                start.await();
+                read(store, writing);
+            })));
+        }
+        start.countDown();
+        for (Thread thread : writers) {
+            thread.join();
+        }
+        writing.set(false);
+        for (Thread thread : readers) {
+            thread.join();
+        }
+        if (!failures.isEmpty()) {
+            fail(failures.peek());
+        }
+
+        Map<Integer, String> live = new HashMap<>();
+        expected.forEach(live::putAll);
+        assertEquals(live.size(), store.size(), "size must equal the number of live IDs");
+        for (Map.Entry<Integer, String> entry : live.entrySet()) {
+            Contact contact = store.get(entry.getKey());
+            assertNotNull(contact, "contact " + entry.getKey() + " was lost");
+            assertEquals(entry.getValue(), contact.getName(), "update of contact " + entry.getKey() + " was lost");
+            int row = store.rowOf(entry.getKey());
+            assertEquals(entry.getKey().intValue(), store.getAt(row).getId(), "rowOf and getAt disagree");
+        }
+        Set<Integer> seen = new HashSet<>();
+        for (int row = 0; row < store.size(); row++) {
+            Contact contact = store.getAt(row);
+            assertEquals(row, store.rowOf(contact.getId()), "getAt and rowOf disagree");
+            assertTrue(seen.add(contact.getId()), "contact " + contact.getId() + " shows up twice");
+        }
+        assertEquals(live.keySet(), seen);
+        ContactSnapshot snapshot = store.snapshot();
+        assertEquals(live.size(), snapshot.size());
+        for (Contact contact : snapshot) {
+            assertEquals(live.get(contact.getId()), contact.getName());
+        }
+    }
+
+    @Test
+    void listenersRunOutsideTheWriteLockInTheOrderOfTheChanges() {
+        ContactStore store = new ContactStore();
+        List<String> events = new ArrayList<>();
+        store.setChangeListener(event -> {
+            events.add(event.getType() + " " + event.getRow());
+            if (event.getType() == ContactChangeEvent.Type.ADDED) {
+                int id = event.getContact().getId();
+                // Under the write lock, a reader on another thread would wait for this listener forever
+                Contact read = CompletableFuture.supplyAsync(() -> store.get(id)).orTimeout(5, TimeUnit.SECONDS).join();
+                assertEquals(event.getContact().getName(), read.getName());
+                store.replace(new Contact(id, read.getName() + " (checked)", read.getPhone(), read.getEmail()));
+            }
+        });
+
+        store.add(new Contact(1, "Asha Rao", "555-0101", ""));
+        store.add(new Contact(2, "Ben Ode", "555-0102", ""));
+
+        assertEquals(List.of("ADDED 0", "UPDATED 0", "ADDED 1", "UPDATED 1"), events);
+        assertEquals("Ben Ode (checked)", store.get(2).getName());
+    }
+
+    /**
+     * Adds, renames and deletes contacts in the writer's own ID range, remembering what is left.
+     */
+    private static void write(ContactStore store, int writer, Map<Integer, String> mine) {
+        Random random = new Random(writer);
+        List<Integer> ids = new ArrayList<>();
+        int nextId = writer * ID_RANGE + 1;
+        for (int i = 0; i < OPERATIONS; i++) {
+            int choice = random.nextInt(10);
+            if (ids.isEmpty() || choice < 4) {
+                int id = nextId++;
+                String name = "Contact " + id;
+                store.add(new Contact(id, name, "555-" + id, "c" + id + "@example.com"));
+                ids.add(id);
+                mine.put(id, name);
+            } else if (choice < 8) {
+                int id = ids.get(random.nextInt(ids.size()));
+                String name = "Contact " + id + " v" + i;
+                Contact previous = store.replace(new Contact(id, name, "555-" + id, "c" + id + "@example.com"));
+                assertNotNull(previous, "own contact " + id + " vanished");
+                assertEquals(mine.get(id), previous.getName(), "another write to contact " + id + " got in between");
+                mine.put(id, name);
+            } else {
+                int id = ids.remove(random.nextInt(ids.size()));
+                assertNotNull(store.remove(id), "own contact " + id + " vanished before its delete");
+                mine.remove(id);
+            }
+        }
+    }
+
+    /**
+     * Takes snapshots while the writers run. Each must be consistent in itself and stay as it was.
+     */
+    private static void read(ContactStore store, AtomicBoolean writing) {
+        ContactSnapshot previous = null;
+        List<String> previousContents = null;
+        while (writing.get()) {
+            ContactSnapshot snapshot = store.snapshot();
+            List<String> contents = contentsOf(snapshot);
+            assertEquals(snapshot.size(), contents.size(), "snapshot size and contents disagree");
+            for (int i = 0; i < contents.size(); i += Math.max(1, contents.size() / 16)) {
+                Contact contact = snapshot.get(i);
+                assertEquals(contents.get(i), contact.getId() + "=" + contact.getName(), "get(i) and iteration disagree");
+            }
+            Set<Integer> ids = new HashSet<>();
+            snapshot.forEach(contact -> assertTrue(ids.add(contact.getId()), "a snapshot holds contact " + contact.getId() + " twice"));
+            if (previous != null) {
+                assertEquals(previousContents, contentsOf(previous), "a snapshot changed after it was taken");
+                assertTrue(snapshot.getVersion() >= previous.getVersion(), "snapshot versions went backwards");
+            }
+            previous = snapshot;
+            previousContents = contents;
+        }
+    }
+
+    private static List<String> contentsOf(ContactSnapshot snapshot) {
+        List<String> contents = new ArrayList<>(snapshot.size());
+        for (Contact contact : snapshot) {
+            contents.add(contact.getId() + "=" + contact.getName());
+        }
+        return contents;
+    }
+
+    private static void guard(ConcurrentLinkedQueue<Throwable> failures, ThrowingRunnable body) {
+        try {
+            body.run();
+        } catch (Throwable t) {
+            failures.add(t);
+        }
+    }
+
+    @FunctionalInterface
+    interface ThrowingRunnable {
+        void run() throws Exception;
+    }
+}
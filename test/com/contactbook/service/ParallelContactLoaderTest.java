@@ -0,0 +1,97 @@
+package com.contactbook.service;
+
+import com.contactbook.database.FileContactRepository;
+import com.contactbook.model.Contact;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * ParallelContactLoader over a FileContactRepository with enough contacts for several shards, some of them
+ * thinned out by deletes: the store and search index must come out the same as a single-stream load gives.
+ */
+class ParallelContactLoaderTest {
+
+    private static final int CONTACTS = 6 * ParallelContactLoader.MIN_IDS_PER_SHARD + 123;
+
+    @TempDir
+    Path directory;
+
+    private FileContactRepository repository;
+
+    @BeforeEach
+    void fillRepository() {
+        repository = new FileContactRepository(directory);
+        List<Contact> contacts = new ArrayList<>(CONTACTS);
+        for (int i = 0; i < CONTACTS; i++) {
+            contacts.add(new Contact("Contact " + i, String.format("555-%07d", i), "contact" + i + "@example.com"));
+        }
+        repository.addContacts(contacts);
+        // A stretch missing from the middle of one shard and a few from the end of the ID range
+        repository.deleteContacts(IntStream.rangeClosed(15_000, 24_000).toArray());
+        repository.deleteContacts(IntStream.rangeClosed(CONTACTS - 50, CONTACTS).toArray());
+    }
+
+    @AfterEach
+    void close() {
+        repository.close();
+    }
+
+    @Test
+    void loadsTheSameContactsInTheSameOrderAsOneStream() {
+        ContactStore single = new ContactStore(16);
+        ContactSearchIndex singleIndex = new ContactSearchIndex();
+        assertTrue(repository.forEachContact(contact -> {
+            single.add(contact);
+            singleIndex.add(contact);
+        }) > 0);
+
+        for (int shards : new int[]{2, 4, 7}) {
+            ContactStore parallel = new ContactStore(16);
+            ContactSearchIndex parallelIndex = new ParallelContactLoader(repository, shards).load(parallel);
+
+            assertNotNull(parallelIndex);
+            assertEquals(describe(single.snapshot()), describe(parallel.snapshot()), shards + " shards");
+            for (String query : List.of("contact 4", "contact1234", "9999", "example", "ntact 6000")) {
+                assertEquals(ids(singleIndex.search(query, CONTACTS, single::get)),
+                        ids(parallelIndex.search(query, CONTACTS, parallel::get)),
+                        query + " with " + shards + " shards");
+            }
+        }
+    }
+
+    @Test
+    void emptyRepositoryLoadsNothing() {
+        FileContactRepository empty = new FileContactRepository(directory.resolve("empty"));
+        try {
+            ContactStore store = new ContactStore(16);
+            assertNotNull(new ParallelContactLoader(empty, 4).load(store));
+            assertEquals(0, store.size());
+        } finally {
+            empty.close();
+        }
+    }
+
+    private static List<String> describe(List<Contact> contacts) {
+        List<String> described = new ArrayList<>(contacts.size());
+        for (Contact contact : contacts) {
+            described.add(contact.getId() + "|" + contact.getName() + "|" + contact.getPhone() + "|" + contact.getEmail()
+                    + "|" + contact.getVersion());
+        }
+        return described;
+    }
+
+    private static List<Integer> ids(List<Contact> contacts) {
+        return contacts.stream().map(Contact::getId).sorted().toList();
+    }
+}
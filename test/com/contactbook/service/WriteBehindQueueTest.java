@@ -0,0 +1,219 @@
+package com.contactbook.service;
+
+import com.contactbook.database.FileContactRepository;
+import com.contactbook.model.Contact;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Flushing queued updates against changes another client made to the same rows meanwhile, and queued
+ * changes during a repository outage or after the repository rejected them.
+ */
+class WriteBehindQueueTest {
+
+    @TempDir
+    Path directory;
+
+    private FlakyRepository repository;
+    private ContactService service;
+    private Contact asha;
+
+    @BeforeEach
+    void createService() {
+        repository = new FlakyRepository(directory.resolve("data"));
+        asha = new Contact("Asha Rao", "555-0101", "asha@example.com");
+        assertTrue(repository.addContact(asha));
+        service = new ContactService(repository, false, false);
+        service.enableWriteBehind(directory.resolve("journal"), 60_000, 100); // Flushed by hand below
+        service.reloadContacts();
+    }
+
+    @AfterEach
+    void shutdown() {
+        service.shutdown();
+    }
+
+    @Test
+    void writesAreNotRecordedForUndo() {
+        assertTrue(service.isWriteBehind());
+        assertTrue(service.updateContact(asha.getId(), "Asha Menon", asha.getPhone(), asha.getEmail()));
+        assertFalse(service.canUndo());
+    }
+
+    @Test
+    void flushedUpdateTakesTheVersionTheRepositoryStored() {
+        assertTrue(service.updateContact(asha.getId(), "Asha Menon", asha.getPhone(), asha.getEmail()));
+        service.flushWriteBehind();
+
+        Contact stored = repository.getContact(asha.getId());
+        assertEquals("Asha Menon", stored.getName());
+        assertEquals(stored.getVersion(), service.getContact(asha.getId()).getVersion());
+        assertEquals(0, service.getPendingWriteCount());
+    }
+
+    @Test
+    void queuedUpdateIsMergedWithAnotherClientsChangeToOtherFields() {
+        assertTrue(service.updateContact(asha.getId(), asha.getName(), asha.getPhone(), "asha@work.example"));
+        Contact theirs = new Contact(asha.getId(), asha.getName(), "555-0199", asha.getEmail(), asha.getVersion() + 1);
+        assertEquals(1, repository.updateContactIfVersion(theirs, asha.getVersion()));
+
+        service.flushWriteBehind();
+
+        Contact stored = repository.getContact(asha.getId());
+        assertEquals("555-0199", stored.getPhone());
+        assertEquals("asha@work.example", stored.getEmail());
+        Contact inMemory = service.getContact(asha.getId());
+        assertEquals("555-0199", inMemory.getPhone());
+        assertEquals("asha@work.example", inMemory.getEmail());
+        assertEquals(stored.getVersion(), inMemory.getVersion());
+    }
+
+    @Test
+    void conflictingQueuedUpdateDoesNotOverwriteAnotherClientsChange() {
+        assertTrue(service.updateContact(asha.getId(), "Asha R.", asha.getPhone(), asha.getEmail()));
+        Contact theirs = new Contact(asha.getId(), "Asha Menon", asha.getPhone(), asha.getEmail(), asha.getVersion() + 1);
+        assertEquals(1, repository.updateContactIfVersion(theirs, asha.getVersion()));
+
+        service.flushWriteBehind();
+
+        Contact stored = repository.getContact(asha.getId());
+        assertEquals("Asha Menon", stored.getName());
+        assertEquals(asha.getVersion() + 1, stored.getVersion());
+        Contact inMemory = service.getContact(asha.getId());
+        assertEquals("Asha Menon", inMemory.getName());
+        assertEquals(stored.getVersion(), inMemory.getVersion());
+        assertEquals(0, service.getPendingWriteCount());
+    }
+
+    @Test
+    void queuedUpdateOfAContactDeletedElsewhereIsDropped() {
+        assertTrue(service.updateContact(asha.getId(), "Asha Menon", asha.getPhone(), asha.getEmail()));
+        assertEquals(1, repository.deleteContactIfVersion(asha.getId(), asha.getVersion()));
+
+        service.flushWriteBehind();
+
+        assertNull(repository.getContact(asha.getId()));
+        assertNull(service.getContact(asha.getId()));
+        assertEquals(0, service.getPendingWriteCount());
+    }
+
+    @Test
+    void changesQueuedDuringAnOutageAreKeptUntilTheRepositoryIsBack() {
+        repository.down = true;
+        assertNotNull(service.addContact("Ben Ode", "555-0102", "ben@example.com"));
+        assertTrue(service.updateContact(asha.getId(), "Asha Menon", asha.getPhone(), asha.getEmail()));
+        for (int i = 0; i < 10; i++) {
+            service.flushWriteBehind(); // Far more failed flushes than a rejected change gets
+        }
+        assertEquals(2, service.getPendingWriteCount());
+        assertEquals(List.of("Asha Menon", "Ben Ode"), names(service.getAllContacts()));
+
+        repository.down = false;
+        service.flushWriteBehind();
+
+        assertEquals(0, service.getPendingWriteCount());
+        assertEquals(List.of("Asha Menon", "Ben Ode"), names(repository.getAllContacts()));
+        assertEquals(List.of("Asha Menon", "Ben Ode"), names(service.getAllContacts()));
+    }
+
+    @Test
+    void rejectedInsertIsAbandonedAndUndoneWithoutTheRestOfItsBatch() {
+        List<Contact> added = service.addContacts(List.of(
+                new Contact("Ben Ode", "555-0102", ""),
+                new Contact(FlakyRepository.REJECTED, "555-0103", ""),
+                new Contact("Chen Li", "555-0104", "")));
+        assertEquals(3, added.size());
+
+        service.flushWriteBehind(); // The batch fails as a whole
+        assertEquals(List.of("Asha Rao"), names(repository.getAllContacts()));
+        service.flushWriteBehind(); // Each change on its own: only the rejected one fails
+        assertEquals(List.of("Asha Rao", "Ben Ode", "Chen Li"), names(repository.getAllContacts()));
+        assertEquals(1, service.getPendingWriteCount());
+        for (int i = 0; i < 3; i++) {
+            service.flushWriteBehind();
+        }
+
+        assertEquals(0, service.getPendingWriteCount());
+        assertEquals(List.of("Asha Rao", "Ben Ode", "Chen Li"), names(service.getAllContacts()));
+    }
+
+    @Test
+    void queuedDeleteOfAContactDeletedElsewhereIsDone() {
+        assertTrue(service.deleteContact(asha.getId()));
+        assertTrue(repository.deleteContact(asha.getId()));
+
+        service.flushWriteBehind();
+
+        assertEquals(0, service.getPendingWriteCount());
+        assertNull(service.getContact(asha.getId()));
+    }
+
+    private static List<String> names(List<Contact> contacts) {
+        List<String> names = new ArrayList<>();
+        for (Contact contact : contacts) {
+            names.add(contact.getName());
+        }
+        names.sort(null);
+        return names;
+    }
+
+    /**
+     * A file repository that can be taken down, failing every call as an unreachable database would, and that
+     * rejects contacts with one particular name, failing the whole batch they are in as MySQL does.
+     */
+    private static final class FlakyRepository extends FileContactRepository {
+        static final String REJECTED = "Rejected";
+
+        volatile boolean down;
+
+        FlakyRepository(Path directory) {
+            super(directory);
+        }
+
+        @Override
+        public boolean[] addContacts(List<Contact> contacts) {
+            if (down || contacts.stream().anyMatch(c -> REJECTED.equals(c.getName()))) {
+                return new boolean[contacts.size()];
+            }
+            return super.addContacts(contacts);
+        }
+
+        @Override
+        public int[] updateContactsIfVersion(List<Contact> contacts) {
+            if (down) {
+                int[] results = new int[contacts.size()];
+                Arrays.fill(results, -1);
+                return results;
+            }
+            return super.updateContactsIfVersion(contacts);
+        }
+
+        @Override
+        public boolean[] deleteContacts(int[] contactIds) {
+            return down ? new boolean[contactIds.length] : super.deleteContacts(contactIds);
+        }
+
+        @Override
+        public Contact getContact(int contactId) {
+            return down ? null : super.getContact(contactId);
+        }
+
+        @Override
+        public int getContactCount() {
+            return down ? -1 : super.getContactCount();
+        }
+    }
+}